@@ -28,4 +28,5 @@ public class PhilTestBindingConstants {
     public final static String CHANNEL_BRIGHTNESS = "channelBrightness";
 
     public final static String PARAM_SERIALPORT = "serialport";
+    public final static String PARAM_BAUDRATE = "baudrate";
 }
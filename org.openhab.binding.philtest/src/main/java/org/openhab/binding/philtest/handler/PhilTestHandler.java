@@ -9,16 +9,16 @@ package org.openhab.binding.philtest.handler;
 
 import static org.openhab.binding.philtest.PhilTestBindingConstants.*;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 
 import org.eclipse.smarthome.core.library.types.OnOffType;
 import org.eclipse.smarthome.core.library.types.PercentType;
 import org.eclipse.smarthome.core.thing.ChannelUID;
 import org.eclipse.smarthome.core.thing.Thing;
-import org.eclipse.smarthome.core.thing.ThingStatus;
-import org.eclipse.smarthome.core.thing.ThingStatusDetail;
-import org.eclipse.smarthome.core.thing.binding.BaseThingHandler;
 import org.eclipse.smarthome.core.types.Command;
+import org.openhab.binding.serialthing.handler.SupervisedSerialHandler;
+import org.openhab.binding.serialthing.transport.SerialTransportProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,14 +28,21 @@ import org.slf4j.LoggerFactory;
  *
  * @author Philipp - Initial contribution
  */
-public class PhilTestHandler extends BaseThingHandler implements SerialTestHandler {
+public class PhilTestHandler extends SupervisedSerialHandler implements SerialTestHandler {
 
     private Logger logger = LoggerFactory.getLogger(PhilTestHandler.class);
     // private SerialPort portToUse = null;
-    private SerialPortCommunicator serialPortComm;
+
+    /** Changed with the {@link #connectionLock}, read by the framework threads sending commands. */
+    private volatile SerialPortCommunicator serialPortComm;
 
     public PhilTestHandler(Thing thing) {
-        super(thing);
+        super(thing, PARAM_SERIALPORT, PARAM_BAUDRATE);
+    }
+
+    @Override
+    protected SerialTransportProvider getTransportProvider() {
+        return SerialPortCommunicator.TRANSPORT_PROVIDER;
     }
 
     @Override
@@ -43,12 +50,17 @@ public class PhilTestHandler extends BaseThingHandler implements SerialTestHandl
         if (channelUID.getId().equals(CHANNEL_1)) {
             if (command instanceof OnOffType) {
                 OnOffType onOffType = (OnOffType) command;
+                SerialPortCommunicator communicator = serialPortComm;
+                if (communicator == null) {
+                    logger.warn("handleCommand: serial port not connected -> command {} ignored", command);
+                    return;
+                }
                 switch (onOffType) {
                     case ON:
-                        serialPortComm.switchON();
+                        communicator.switchON();
                         break;
                     case OFF:
-                        serialPortComm.switchOFF();
+                        communicator.switchOFF();
                         break;
                 }
             }
@@ -60,46 +72,24 @@ public class PhilTestHandler extends BaseThingHandler implements SerialTestHandl
         }
     }
 
+    /**
+     * The port is opened by the {@link org.openhab.binding.serialthing.handler.ReconnectSupervisor}, see
+     * {@link SupervisedSerialHandler}.
+     */
     @Override
-    public void dispose() {
-        serialPortComm.close();
-        super.dispose();
+    protected String openConnection(String serialPortToUse, int baudRate) throws IOException {
+        SerialPortCommunicator communicator = new SerialPortCommunicator(this);
+        communicator.initialize(serialPortToUse, baudRate);
+        serialPortComm = communicator;
+        return communicator.getPortName();
     }
 
     @Override
-    public void initialize() {
-
-        updateStatus(ThingStatus.INITIALIZING);
-
-        String serialPortToUse = getConfiguredSerialPort();
-
-        if (serialPortToUse != null) {
-            logger.info("initialize: use specific serial port configured by user: '" + serialPortToUse + "'");
-        }
-
-        serialPortComm = new SerialPortCommunicator(this);
-        String errorMesssage = serialPortComm.initialize(serialPortToUse);
-
-        if (errorMesssage == null) {
-            updateStatus(ThingStatus.ONLINE);
-        } else {
-            updateStatus(ThingStatus.UNINITIALIZED, ThingStatusDetail.HANDLER_INITIALIZING_ERROR, errorMesssage);
+    protected void closeConnection() {
+        if (serialPortComm != null) {
+            serialPortComm.close();
+            serialPortComm = null;
         }
-
-        // Note: When initialization can NOT be done set the status with more details for further
-        // analysis. See also class ThingStatusDetail for all available status details.
-        // Add a description to give user information to understand why thing does not work
-        // as expected. E.g.
-        // updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
-        // "Can not access device as username and/or password are invalid");
-    }
-
-    private String getConfiguredSerialPort() {
-        Object portObj = getThing().getConfiguration().get(PARAM_SERIALPORT);
-        if (portObj != null) {
-            return (String) portObj;
-        }
-        return null;
     }
 
     @Override
@@ -112,4 +102,10 @@ public class PhilTestHandler extends BaseThingHandler implements SerialTestHandl
     public void onLedOnOffStateChanged(boolean on) {
         updateState(new ChannelUID(getThing().getUID(), CHANNEL_LEDONOFFSTATE), on ? OnOffType.ON : OnOffType.OFF);
     }
+
+    @Override
+    public void onConnectionLost(String cause) {
+        // called by the serial event thread, which must not wait for the lock held while the port is closed
+        connectionLost(new IOException(cause));
+    }
 }
@@ -1,192 +1,193 @@
 package org.openhab.binding.philtest.handler;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.util.Enumeration;
-
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.openhab.binding.serialthing.protocol.CommandDispatcher;
+import org.openhab.binding.serialthing.protocol.CommandDispatcher.BooleanDecoder;
+import org.openhab.binding.serialthing.protocol.CommandDispatcher.CommandDecoder;
+import org.openhab.binding.serialthing.protocol.CommandDispatcher.IntDecoder;
+import org.openhab.binding.serialthing.protocol.Frames;
+import org.openhab.binding.serialthing.protocol.LineFramer;
+import org.openhab.binding.serialthing.transport.RxtxSerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransportListener;
+import org.openhab.binding.serialthing.transport.SerialTransportProvider;
+import org.openhab.binding.serialthing.transport.SerialTransports;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import gnu.io.CommPortIdentifier;
-import gnu.io.SerialPort;
-import gnu.io.SerialPortEvent;
-import gnu.io.SerialPortEventListener;
-
-public class SerialPortCommunicator implements SerialPortEventListener {
+/**
+ * Accesses the port by RXTX through the {@link SerialTransport} of the serial thing binding. The received bytes are
+ * read without blocking and framed incrementally, so every complete line is dispatched by the event which completed
+ * it.
+ */
+public class SerialPortCommunicator implements SerialTransportListener {
 
     private static final Logger logger = LoggerFactory.getLogger(SerialPortCommunicator.class);
 
-    /** The port we're normally going to use. */
-    private static final String PORT_NAMES[] = { "/dev/tty.usbserial-A9007UX1", // Mac OS X
-            "/dev/ttyACM0", // Raspberry Pi
-            "/dev/ttyUSB0", // Linux
-            "COM3", // Windows
-    };
-
-    SerialPort serialPort;
-    /**
-     * A BufferedReader which will be fed by a InputStreamReader
-     * converting the bytes into characters
-     * making the displayed results codepage independent
-     */
-    private BufferedReader input;
-    /** The output stream to the port */
-    private OutputStream output;
-    /** Milliseconds to block while waiting for port open */
-    private static final int TIME_OUT = 2000;
     /** Default bits per second for COM port. */
-    private static final int DATA_RATE = 9600;
+    public static final int DEFAULT_DATA_RATE = 9600;
+
+    /** The ports are accessed by RXTX, independent of the library selected for the serial thing binding. */
+    public static final SerialTransportProvider TRANSPORT_PROVIDER = new RxtxSerialTransport.Provider();
+
+    private static final byte[] ON = "ON\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] OFF = "OFF\n".getBytes(StandardCharsets.US_ASCII);
 
     /** This handler gets the value of an incoming serial event. */
-    private SerialTestHandler handler;
+    private final SerialTestHandler handler;
+
+    /** Only used by the event thread of the transport */
+    private final LineFramer framer;
+
+    /** Receives the bytes read by one serial event */
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(256);
+
+    /** Set by {@link #initialize(String, int)} and cleared by {@link #close()} */
+    private volatile SerialTransport transport;
+
+    /** Set by {@link #close()}, so a pending serial event stops reading */
+    private volatile boolean closed;
 
     public SerialPortCommunicator(SerialTestHandler handler) {
         this.handler = handler;
+        this.framer = new LineFramer(createCommands());
+    }
+
+    private CommandDispatcher createCommands() {
+        return new CommandDispatcher().register("LEDSTATE=", new BooleanDecoder("ON") {
+            @Override
+            protected void onValue(boolean on) {
+                handler.onLedOnOffStateChanged(on);
+            }
+        }).register("BRIGHTNESS=", new IntDecoder() {
+            @Override
+            protected void onValue(int brightness) {
+                handler.onBrightnessChanged(brightness);
+            }
+        }).onUnknownCommand(new CommandDecoder() {
+            @Override
+            public void decode(byte[] buffer, int offset, int length) {
+                logger.info("unknown incoming serial event: {}", Frames.toString(buffer, offset, length));
+            }
+        });
     }
 
     /**
      * @param serialPortToUse <code>null</code> if the default ports should be used, otherwise the port name (i.e.
      *            /dev/ttyAMC0)
-     * @return
+     * @throws IOException if the port could not be found or opened
      */
-    public String initialize(String serialPortToUse) {
+    public void initialize(String serialPortToUse) throws IOException {
+        initialize(serialPortToUse, DEFAULT_DATA_RATE);
+    }
 
-        // First, Find an instance of serial port as set in PORT_NAMES.
-        CommPortIdentifier port = findSerialPort(serialPortToUse);
+    /**
+     * @param serialPortToUse <code>null</code> if the default ports should be used, otherwise the port name (i.e.
+     *            /dev/ttyAMC0)
+     * @param dataRate bits per second, must match the rate of the device
+     * @throws IOException if the port could not be found or opened, the port is closed again
+     */
+    public void initialize(String serialPortToUse, int dataRate) throws IOException {
+
+        SerialTransport port = SerialTransports.findPort(TRANSPORT_PROVIDER, serialPortToUse);
 
         if (port == null) {
             logger.info("initialize: Could not find serial port");
-            return "Could not find serial port";
+            throw new IOException("Could not find serial port");
         }
 
         try {
-            // open serial port, and use class name for the appName.
-            serialPort = port.open(this.getClass().getName(), TIME_OUT);
-
-            // set port parameters
-            serialPort.setSerialPortParams(DATA_RATE, SerialPort.DATABITS_8, SerialPort.STOPBITS_1,
-                    SerialPort.PARITY_NONE);
-
-            // open the streams
-            input = new BufferedReader(new InputStreamReader(serialPort.getInputStream()));
-            output = serialPort.getOutputStream();
-
-            // add event listeners
-            serialPort.addEventListener(this);
-            serialPort.notifyOnDataAvailable(true);
-
-            return null;
-        } catch (Exception e) {
-            System.err.println(e.toString());
-            return e.getMessage();
+            port.open();
+            transport = port;
+            port.setBaudRate(dataRate);
+            port.setListener(this);
+        } catch (IOException e) {
+            logger.warn("initialize: serial port {} could not be opened: {}", port.getPortName(), e.getMessage());
+            close();
+            throw e;
         }
     }
 
     /**
-     * @param serialPortToUse <code>null</code> if the default ports should be used, otherwise the port name (i.e.
-     *            /dev/ttyAMC0)
+     * @return the name of the open port, <code>null</code> if closed
      */
-    private CommPortIdentifier findSerialPort(String serialPortToUse) {
-
-        logger.info("findSerialPort: "
-                + (serialPortToUse != null ? "use specific serial port configured by user: '" + serialPortToUse + "'"
-                        : "no special port defined. Try to find right port..."));
-
-        Enumeration<?> ports = CommPortIdentifier.getPortIdentifiers();
-
-        if (!ports.hasMoreElements()) {
-            // If Raspberry Pi is used need s special property have to be set:
-            // http://www.raspberrypi.org/phpBB3/viewtopic.php?f=81&t=32186
-            System.setProperty("gnu.io.rxtx.SerialPorts", "/dev/ttyACM0");
-            System.setProperty("gnu.io.rxtx.SerialPorts", "/dev/ttyUSB0");
-            ports = CommPortIdentifier.getPortIdentifiers();
-            logger.info("findSerialPort: add system property for raspi...");
-        }
-
-        while (ports.hasMoreElements()) {
-            CommPortIdentifier currPort = (CommPortIdentifier) ports.nextElement();
-
-            logger.info("findSerialPort: port found: " + currPort.getName() + " (type: " + currPort.getPortType()
-                    + ", owner: "
-                    + (currPort.isCurrentlyOwned() ? currPort.getCurrentOwner() : "[currently not owned]"));
-
-            if (serialPortToUse != null) {
-                if (currPort.getName().equals(serialPortToUse)) {
-                    logger.info("findSerialPort: '" + currPort.getName() + "' matches port to use. Use it!");
-                    return currPort;
-                }
-            } else {
-                for (String portName : PORT_NAMES) {
-                    if (currPort.getName().equals(portName)) {
-                        logger.info(
-                                "findSerialPort: '" + currPort.getName() + "' matches with a default port. Use it!");
-                        return currPort;
-                    }
-                }
-            }
-        }
-        return null;
+    public String getPortName() {
+        SerialTransport port = transport;
+        return port != null ? port.getPortName() : null;
     }
 
     /**
      * This should be called when you stop using the port.
      * This will prevent port locking on platforms like Linux.
      */
-    public synchronized void close() {
-        if (serialPort != null) {
-            serialPort.removeEventListener();
-            serialPort.close();
+    public void close() {
+        closed = true;
+        SerialTransport port = transport;
+        transport = null;
+        if (port != null) {
+            // waits for a running serial event, which never blocks
+            port.close();
         }
+        framer.release();
     }
 
     /**
-     * Handle an event on the serial port. Read the data and print it.
+     * Handle an event on the serial port. Read all available bytes and dispatch every complete line, an incomplete
+     * line is kept until its rest arrives with a later event.
      */
     @Override
-    public synchronized void serialEvent(SerialPortEvent oEvent) {
-        if (oEvent.getEventType() == SerialPortEvent.DATA_AVAILABLE) {
-            try {
-                String inputLine = input.readLine();
-
-                if (handler != null) {
-                    if (inputLine.startsWith("LEDSTATE=")) {
-                        handler.onLedOnOffStateChanged(parseLedOnOffState(inputLine));
-                    } else if (inputLine.startsWith("BRIGHTNESS=")) {
-                        handler.onBrightnessChanged(parseBrightness(inputLine));
-                    } else {
-                        logger.info("unknown incoming serial event: " + inputLine);
-                    }
+    public void onDataAvailable(SerialTransport source) {
+        try {
+            int count;
+            while (!closed && (count = source.read(receiveBuffer)) != 0) {
+                if (count < 0) {
+                    connectionLost("end of input stream");
+                    return;
                 }
-            } catch (Exception e) {
-                logger.error("error during serial input processing", e);
+                receiveBuffer.flip();
+                framer.feed(receiveBuffer);
+                receiveBuffer.clear();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                connectionLost(e.getMessage());
             }
         }
-        // Ignore all the other eventTypes, but you should consider the other ones.
-    }
-
-    private boolean parseLedOnOffState(String inputLine) {
-        return inputLine.endsWith("=ON") ? true : false;
     }
 
-    private int parseBrightness(String inputLine) {
-        return Integer.parseInt(inputLine.substring(inputLine.indexOf("=") + 1));
+    private void connectionLost(String cause) {
+        if (handler != null) {
+            handler.onConnectionLost(cause);
+        }
     }
 
     public void switchON() {
         try {
-            output.write("ON\n".getBytes());
+            write(ON);
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("error during switching on: {}", e.getMessage());
+            connectionLost(e.getMessage());
         }
     }
 
     public void switchOFF() {
         try {
-            output.write("OFF\n".getBytes());
+            write(OFF);
         } catch (IOException e) {
-            e.printStackTrace();
+            logger.error("error during switching off: {}", e.getMessage());
+            connectionLost(e.getMessage());
+        }
+    }
+
+    private void write(byte[] command) throws IOException {
+        SerialTransport port = transport;
+        if (port == null) {
+            throw new IOException("serial port closed");
         }
+        port.write(command, 0, command.length);
     }
 }
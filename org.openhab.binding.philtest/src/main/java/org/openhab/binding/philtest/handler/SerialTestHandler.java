@@ -5,4 +5,9 @@ public interface SerialTestHandler {
     void onBrightnessChanged(int brightness);
 
     void onLedOnOffStateChanged(boolean on);
+
+    /**
+     * Called if reading from or writing to the port failed, i.e. because the device has been unplugged.
+     */
+    void onConnectionLost(String cause);
 }
@@ -26,5 +26,7 @@ public class SerialLEDControlBindingConstants {
     public final static String CHANNEL_LEDONOFFSWITCH = "ledonoffswitch";
 
     public final static String PARAM_SERIALPORT = "serialport";
+    public final static String PARAM_BAUDRATE = "baudrate";
+    public final static String PARAM_METRICS_INTERVAL = "metricsinterval";
 
 }
@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialledcontrol.handler;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link CommandQueue} decouples the callers from the serial port. Commands are queued and written by a writer
+ * task of the given executor, all commands pending at that time in one write call.
+ * <p>
+ * A command with a key replaces a pending command with the same key, so only the last state is written. If the queue
+ * is full, further commands are dropped.
+ *
+ * @author Phil - Initial contribution
+ */
+public class CommandQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandQueue.class);
+
+    /** Prefix of the keys in {@link #toProperties()}. */
+    public static final String PROPERTY_PREFIX = "commandQueue.";
+
+    /**
+     * Writes the commands to the port.
+     */
+    public interface Sink {
+        void write(byte[] data, int offset, int length) throws IOException;
+    }
+
+    private static final class PendingCommand {
+
+        private final String key;
+        private byte[] data;
+        private long queuedAt;
+
+        private PendingCommand(String key, byte[] data, long queuedAt) {
+            this.key = key;
+            this.data = data;
+            this.queuedAt = queuedAt;
+        }
+    }
+
+    private final Sink sink;
+
+    private final Executor executor;
+
+    private final int capacity;
+
+    private final ArrayDeque<PendingCommand> pending;
+
+    private final Runnable writer = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+
+    private boolean writerActive;
+
+    private boolean closed;
+
+    /** Reused for every batch, only used by the writer task. */
+    private byte[] batch = new byte[64];
+
+    private long[] batchQueuedAt;
+
+    // statistics, guarded by this
+    private int maxDepth;
+    private long written;
+    private long writeCalls;
+    private long coalesced;
+    private long dropped;
+    private long failed;
+    private long totalLatency;
+    private long maxLatency;
+
+    /**
+     * @param executor runs the writer task, at most one at a time
+     * @param capacity the maximum number of pending commands
+     */
+    public CommandQueue(Sink sink, Executor executor, int capacity) {
+        this.sink = sink;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.pending = new ArrayDeque<PendingCommand>(capacity);
+        this.batchQueuedAt = new long[capacity];
+    }
+
+    /**
+     * Queues the command without waiting for the port.
+     *
+     * @param key identifies the state set by the command, <code>null</code> if the command must not be replaced
+     * @param data the complete command, must not be changed afterwards; it is only copied, so it may be shared
+     * @return <code>false</code> if the command has been dropped, because the queue is full or closed, or if the
+     *         writer could not be started
+     */
+    public synchronized boolean submit(String key, byte[] data) {
+        if (closed) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (key != null) {
+            for (PendingCommand command : pending) {
+                if (key.equals(command.key)) {
+                    // superseded, only the last state is written
+                    command.data = data;
+                    command.queuedAt = now;
+                    coalesced++;
+                    return true;
+                }
+            }
+        }
+        if (pending.size() >= capacity) {
+            dropped++;
+            logger.warn("command queue full ({} commands) -> command dropped", capacity);
+            return false;
+        }
+        pending.add(new PendingCommand(key, data, now));
+        maxDepth = Math.max(maxDepth, pending.size());
+        if (!writerActive) {
+            writerActive = true;
+            try {
+                executor.execute(writer);
+            } catch (RejectedExecutionException e) {
+                // nobody would write the pending commands, the next command tries to start the writer again
+                writerActive = false;
+                failed += pending.size();
+                pending.clear();
+                logger.warn("command writer could not be started -> command dropped: {}", e.getMessage());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Discards the pending commands. Commands submitted afterwards are dropped.
+     */
+    public synchronized void close() {
+        closed = true;
+        pending.clear();
+    }
+
+    /**
+     * @return the number of commands waiting to be written
+     */
+    public synchronized int getDepth() {
+        return pending.size();
+    }
+
+    public synchronized int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return the average time from submitting a command until it has been written
+     */
+    public synchronized long getAverageLatency(TimeUnit unit) {
+        return written > 0 ? unit.convert(totalLatency / written, TimeUnit.NANOSECONDS) : 0;
+    }
+
+    public synchronized long getMaxLatency(TimeUnit unit) {
+        return unit.convert(maxLatency, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the statistics since the queue has been created as thing properties
+     */
+    public synchronized Map<String, String> toProperties() {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        properties.put(PROPERTY_PREFIX + "written", Long.toString(written));
+        properties.put(PROPERTY_PREFIX + "writeCalls", Long.toString(writeCalls));
+        properties.put(PROPERTY_PREFIX + "coalesced", Long.toString(coalesced));
+        properties.put(PROPERTY_PREFIX + "dropped", Long.toString(dropped));
+        properties.put(PROPERTY_PREFIX + "failed", Long.toString(failed));
+        properties.put(PROPERTY_PREFIX + "depth", Integer.toString(pending.size()));
+        properties.put(PROPERTY_PREFIX + "maxDepth", Integer.toString(maxDepth));
+        properties.put(PROPERTY_PREFIX + "avgLatencyMicros", Long.toString(getAverageLatency(TimeUnit.MICROSECONDS)));
+        properties.put(PROPERTY_PREFIX + "maxLatencyMicros", Long.toString(getMaxLatency(TimeUnit.MICROSECONDS)));
+        return properties;
+    }
+
+    private void writePending() {
+        while (true) {
+            int count = 0;
+            int length = 0;
+            synchronized (this) {
+                if (closed || pending.isEmpty()) {
+                    writerActive = false;
+                    return;
+                }
+                for (Iterator<PendingCommand> it = pending.iterator(); it.hasNext();) {
+                    PendingCommand command = it.next();
+                    it.remove();
+                    if (length + command.data.length > batch.length) {
+                        byte[] larger = new byte[Math.max(batch.length * 2, length + command.data.length)];
+                        System.arraycopy(batch, 0, larger, 0, length);
+                        batch = larger;
+                    }
+                    System.arraycopy(command.data, 0, batch, length, command.data.length);
+                    length += command.data.length;
+                    batchQueuedAt[count++] = command.queuedAt;
+                }
+            }
+
+            boolean success = true;
+            try {
+                sink.write(batch, 0, length);
+            } catch (IOException e) {
+                success = false;
+                logger.warn("{} command(s) could not be written: {}", count, e.getMessage());
+            }
+            long now = System.nanoTime();
+
+            synchronized (this) {
+                writeCalls++;
+                if (!success) {
+                    failed += count;
+                    continue;
+                }
+                written += count;
+                for (int i = 0; i < count; i++) {
+                    long latency = now - batchQueuedAt[i];
+                    totalLatency += latency;
+                    maxLatency = Math.max(maxLatency, latency);
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("{} command(s) written in {} bytes, latency {} us, queue depth {}", count, length,
+                            TimeUnit.NANOSECONDS.toMicros(now - batchQueuedAt[0]), pending.size());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the statistics since the queue has been created, i.e. for logging
+     */
+    @Override
+    public synchronized String toString() {
+        return "written=" + written + ", writeCalls=" + writeCalls + ", coalesced=" + coalesced + ", dropped="
+                + dropped + ", failed=" + failed + ", depth=" + pending.size() + ", maxDepth=" + maxDepth
+                + ", avgLatency=" + getAverageLatency(TimeUnit.MICROSECONDS) + " us, maxLatency="
+                + getMaxLatency(TimeUnit.MICROSECONDS) + " us";
+    }
+}
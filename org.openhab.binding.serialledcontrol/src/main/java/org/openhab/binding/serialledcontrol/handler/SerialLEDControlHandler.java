@@ -9,13 +9,16 @@ package org.openhab.binding.serialledcontrol.handler;
 
 import static org.openhab.binding.serialledcontrol.SerialLEDControlBindingConstants.*;
 
+import java.io.IOException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
 import org.eclipse.smarthome.core.library.types.OnOffType;
 import org.eclipse.smarthome.core.thing.ChannelUID;
 import org.eclipse.smarthome.core.thing.Thing;
-import org.eclipse.smarthome.core.thing.ThingStatus;
-import org.eclipse.smarthome.core.thing.ThingStatusDetail;
-import org.eclipse.smarthome.core.thing.binding.BaseThingHandler;
 import org.eclipse.smarthome.core.types.Command;
+import org.openhab.binding.serialthing.handler.SupervisedSerialHandler;
+import org.openhab.binding.serialthing.transport.SerialTransportProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -25,14 +28,31 @@ import org.slf4j.LoggerFactory;
  *
  * @author Phil - Initial contribution
  */
-public class SerialLEDControlHandler extends BaseThingHandler {
+public class SerialLEDControlHandler extends SupervisedSerialHandler {
 
     private Logger logger = LoggerFactory.getLogger(SerialLEDControlHandler.class);
 
-    private SerialPortCommunicator serialPortComm;
+    /** Maximum number of commands waiting for the serial port. */
+    private static final int COMMAND_QUEUE_CAPACITY = 16;
+
+    /** Default of {@link #PARAM_METRICS_INTERVAL} in seconds. */
+    private static final int DEFAULT_METRICS_INTERVAL = 60;
+
+    private volatile SerialPortCommunicator serialPortComm;
+
+    /** Changed with the {@link #connectionLock}, read by the framework threads sending commands. */
+    private volatile CommandQueue commandQueue;
+
+    /** Publishes the statistics of the {@link #commandQueue} as thing properties. */
+    private ScheduledFuture<?> metricsJob;
 
     public SerialLEDControlHandler(Thing thing) {
-        super(thing);
+        super(thing, PARAM_SERIALPORT, PARAM_BAUDRATE);
+    }
+
+    @Override
+    protected SerialTransportProvider getTransportProvider() {
+        return SerialPortCommunicator.TRANSPORT_PROVIDER;
     }
 
     @Override
@@ -40,61 +60,99 @@ public class SerialLEDControlHandler extends BaseThingHandler {
         if (channelUID.getId().equals(CHANNEL_LEDONOFFSWITCH)) {
             if (command instanceof OnOffType) {
                 OnOffType onOffType = (OnOffType) command;
-                switch (onOffType) {
-                    case ON:
-                        serialPortComm.switchON();
-                        break;
-                    case OFF:
-                        serialPortComm.switchOFF();
-                        break;
+                CommandQueue queue = commandQueue;
+                if (queue == null) {
+                    logger.warn("handleCommand: serial port not initialized -> command {} ignored", command);
+                    return;
                 }
+                // a pending switch command is replaced, only the last state is sent
+                queue.submit(CHANNEL_LEDONOFFSWITCH, SerialPortCommunicator.switchCommand(onOffType == OnOffType.ON));
             }
-
-            // Note: if communication with thing fails for some reason,
-            // indicate that by setting the status with detail information
-            // updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
-            // "Could not control device at IP address x.x.x.x");
         }
     }
 
     @Override
     public void initialize() {
-        updateStatus(ThingStatus.INITIALIZING);
-
-        String serialPortToUse = getConfiguredSerialPort();
-
-        if (serialPortToUse != null) {
-            logger.info("initialize: use specific serial port configured by user: '" + serialPortToUse + "'");
-        }
-
-        serialPortComm = new SerialPortCommunicator();
-        String errorMesssage = serialPortComm.initialize(serialPortToUse);
-
-        if (errorMesssage == null) {
-            updateStatus(ThingStatus.ONLINE);
-        } else {
-            updateStatus(ThingStatus.UNINITIALIZED, ThingStatusDetail.HANDLER_INITIALIZING_ERROR, errorMesssage);
+        synchronized (connectionLock) {
+            // commands are queued while the port is reconnected, but fail until it is open again
+            if (commandQueue == null) {
+                commandQueue = new CommandQueue(createCommandSink(), scheduler, COMMAND_QUEUE_CAPACITY);
+                startMetrics(commandQueue);
+            }
         }
+        super.initialize();
+    }
 
-        // Note: When initialization can NOT be done set the status with more details for further
-        // analysis. See also class ThingStatusDetail for all available status details.
-        // Add a description to give user information to understand why thing does not work
-        // as expected. E.g.
-        // updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.CONFIGURATION_ERROR,
-        // "Can not access device as username and/or password are invalid");
+    /**
+     * The port is opened by the {@link org.openhab.binding.serialthing.handler.ReconnectSupervisor}, see
+     * {@link SupervisedSerialHandler}.
+     */
+    @Override
+    protected String openConnection(String serialPortToUse, int baudRate) throws IOException {
+        SerialPortCommunicator communicator = new SerialPortCommunicator();
+        communicator.initialize(serialPortToUse, baudRate);
+        serialPortComm = communicator;
+        return communicator.getPortName();
     }
 
     @Override
     public void dispose() {
-        serialPortComm.close();
+        synchronized (connectionLock) {
+            if (metricsJob != null) {
+                metricsJob.cancel(false);
+                metricsJob = null;
+            }
+            if (commandQueue != null) {
+                commandQueue.close();
+                logger.debug("dispose: command queue statistics: {}", commandQueue);
+                commandQueue = null;
+            }
+        }
         super.dispose();
     }
 
-    private String getConfiguredSerialPort() {
-        Object portObj = getThing().getConfiguration().get(PARAM_SERIALPORT);
-        if (portObj != null) {
-            return (String) portObj;
+    /**
+     * Publishes the statistics of the command queue as thing properties, if configured.
+     */
+    private void startMetrics(final CommandQueue queue) {
+        int interval = getIntConfig(PARAM_METRICS_INTERVAL, DEFAULT_METRICS_INTERVAL);
+        if (interval > 0) {
+            metricsJob = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    updateProperties(queue.toProperties());
+                }
+            }, interval, interval, TimeUnit.SECONDS);
         }
-        return null;
+    }
+
+    @Override
+    protected void closeConnection() {
+        if (serialPortComm != null) {
+            serialPortComm.close();
+            serialPortComm = null;
+        }
+    }
+
+    /**
+     * Writes to the port open at that time. A failed write lets the port be reopened, see
+     * {@link #connectionLost(Exception)}.
+     */
+    private CommandQueue.Sink createCommandSink() {
+        return new CommandQueue.Sink() {
+            @Override
+            public void write(byte[] data, int offset, int length) throws IOException {
+                SerialPortCommunicator communicator = serialPortComm;
+                if (communicator == null) {
+                    throw new IOException("serial port not connected");
+                }
+                try {
+                    communicator.write(data, offset, length);
+                } catch (IOException e) {
+                    connectionLost(e);
+                    throw e;
+                }
+            }
+        };
     }
 }
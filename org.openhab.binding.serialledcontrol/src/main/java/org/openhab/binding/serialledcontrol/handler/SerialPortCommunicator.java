@@ -1,140 +1,109 @@
 package org.openhab.binding.serialledcontrol.handler;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.util.Enumeration;
+import java.nio.charset.StandardCharsets;
 
+import org.openhab.binding.serialthing.transport.RxtxSerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransportProvider;
+import org.openhab.binding.serialthing.transport.SerialTransports;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import gnu.io.CommPortIdentifier;
-import gnu.io.SerialPort;
-
+/**
+ * Accesses the port by RXTX through the {@link SerialTransport} of the serial thing binding. The LED controller is
+ * only written to.
+ */
 public class SerialPortCommunicator {
 
     private static final Logger logger = LoggerFactory.getLogger(SerialPortCommunicator.class);
 
-    /** The port we're normally going to use. */
-    private static final String PORT_NAMES[] = { "/dev/tty.usbserial-A9007UX1", // Mac OS X
-            "/dev/ttyACM0", // Raspberry Pi
-            "/dev/ttyUSB0", // Linux
-            "COM3", // Windows
-    };
+    /** Default bits per second for COM port. */
+    public static final int DEFAULT_DATA_RATE = 9600;
 
-    SerialPort serialPort;
+    /** The ports are accessed by RXTX, independent of the library selected for the serial thing binding. */
+    public static final SerialTransportProvider TRANSPORT_PROVIDER = new RxtxSerialTransport.Provider();
 
-    /** The output stream to the port */
-    private OutputStream output;
-    /** Milliseconds to block while waiting for port open */
-    private static final int TIME_OUT = 2000;
-    /** Default bits per second for COM port. */
-    private static final int DATA_RATE = 9600;
+    private static final byte[] ON = "ON\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] OFF = "OFF\n".getBytes(StandardCharsets.US_ASCII);
+
+    /** Set by {@link #initialize(String, int)} and cleared by {@link #close()} */
+    private volatile SerialTransport transport;
 
     public SerialPortCommunicator() {
     }
 
+    /**
+     * @return the shared command which switches the LED, i.e. to be queued; must not be changed
+     */
+    public static byte[] switchCommand(boolean on) {
+        return on ? ON : OFF;
+    }
+
     /**
      * @param serialPortToUse <code>null</code> if the default ports should be used, otherwise the port name (i.e.
      *            /dev/ttyAMC0)
-     * @return
+     * @throws IOException if the port could not be found or opened
      */
-    public String initialize(String serialPortToUse) {
+    public void initialize(String serialPortToUse) throws IOException {
+        initialize(serialPortToUse, DEFAULT_DATA_RATE);
+    }
 
-        // First, Find an instance of serial port as set in PORT_NAMES.
-        CommPortIdentifier port = findSerialPort(serialPortToUse);
+    /**
+     * @param serialPortToUse <code>null</code> if the default ports should be used, otherwise the port name (i.e.
+     *            /dev/ttyAMC0)
+     * @param dataRate bits per second, must match the rate of the device
+     * @throws IOException if the port could not be found or opened, the port is closed again
+     */
+    public void initialize(String serialPortToUse, int dataRate) throws IOException {
+
+        SerialTransport port = SerialTransports.findPort(TRANSPORT_PROVIDER, serialPortToUse);
 
         if (port == null) {
             logger.info("initialize: Could not find serial port");
-            return "Could not find serial port";
+            throw new IOException("Could not find serial port");
         }
 
         try {
-            // open serial port, and use class name for the appName.
-            serialPort = port.open(this.getClass().getName(), TIME_OUT);
-
-            // set port parameters
-            serialPort.setSerialPortParams(DATA_RATE, SerialPort.DATABITS_8, SerialPort.STOPBITS_1,
-                    SerialPort.PARITY_NONE);
-
-            output = serialPort.getOutputStream();
-
-            return null;
-        } catch (Exception e) {
-            System.err.println(e.toString());
-            return e.getMessage();
+            port.open();
+            transport = port;
+            port.setBaudRate(dataRate);
+        } catch (IOException e) {
+            logger.warn("initialize: serial port {} could not be opened: {}", port.getPortName(), e.getMessage());
+            close();
+            throw e;
         }
     }
 
     /**
-     * @param serialPortToUse <code>null</code> if the default ports should be used, otherwise the port name (i.e.
-     *            /dev/ttyAMC0)
+     * @return the name of the open port, <code>null</code> if closed
      */
-    private CommPortIdentifier findSerialPort(String serialPortToUse) {
-
-        logger.info("findSerialPort: "
-                + (serialPortToUse != null ? "use specific serial port configured by user: '" + serialPortToUse + "'"
-                        : "no special port defined. Try to find right port..."));
-
-        Enumeration<?> ports = CommPortIdentifier.getPortIdentifiers();
-
-        if (!ports.hasMoreElements()) {
-            // If Raspberry Pi is used need s special property have to be set:
-            // http://www.raspberrypi.org/phpBB3/viewtopic.php?f=81&t=32186
-            System.setProperty("gnu.io.rxtx.SerialPorts", "/dev/ttyACM0");
-            System.setProperty("gnu.io.rxtx.SerialPorts", "/dev/ttyUSB0");
-            ports = CommPortIdentifier.getPortIdentifiers();
-            logger.info("findSerialPort: add system property for raspi...");
-        }
-
-        while (ports.hasMoreElements()) {
-            CommPortIdentifier currPort = (CommPortIdentifier) ports.nextElement();
-
-            logger.info("findSerialPort: port found: " + currPort.getName() + " (type: " + currPort.getPortType()
-                    + ", owner: "
-                    + (currPort.isCurrentlyOwned() ? currPort.getCurrentOwner() : "[currently not owned]"));
-
-            if (serialPortToUse != null) {
-                if (currPort.getName().equals(serialPortToUse)) {
-                    logger.info("findSerialPort: '" + currPort.getName() + "' matches port to use. Use it!");
-                    return currPort;
-                }
-            } else {
-                for (String portName : PORT_NAMES) {
-                    if (currPort.getName().equals(portName)) {
-                        logger.info(
-                                "findSerialPort: '" + currPort.getName() + "' matches with a default port. Use it!");
-                        return currPort;
-                    }
-                }
-            }
-        }
-        return null;
+    public String getPortName() {
+        SerialTransport port = transport;
+        return port != null ? port.getPortName() : null;
     }
 
     /**
      * This should be called when you stop using the port.
      * This will prevent port locking on platforms like Linux.
      */
-    public synchronized void close() {
-        if (serialPort != null) {
-            serialPort.removeEventListener();
-            serialPort.close();
-        }
-    }
-
-    public void switchON() {
-        try {
-            output.write("ON\n".getBytes());
-        } catch (IOException e) {
-            e.printStackTrace();
+    public void close() {
+        SerialTransport port = transport;
+        transport = null;
+        if (port != null) {
+            port.close();
         }
     }
 
-    public void switchOFF() {
-        try {
-            output.write("OFF\n".getBytes());
-        } catch (IOException e) {
-            e.printStackTrace();
+    /**
+     * Writes the given bytes in one call, blocking until the port has taken them.
+     */
+    public void write(byte[] data, int offset, int length) throws IOException {
+        SerialTransport port = transport;
+        if (port == null) {
+            throw new IOException("serial port not initialized");
         }
+        port.write(data, offset, length);
     }
 }
@@ -0,0 +1,355 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.benchmark;
+
+import static org.openhab.binding.serialthing.SerialThingBindingConstants.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.eclipse.smarthome.config.core.Configuration;
+import org.eclipse.smarthome.core.library.types.DecimalType;
+import org.eclipse.smarthome.core.thing.ChannelUID;
+import org.eclipse.smarthome.core.thing.Thing;
+import org.eclipse.smarthome.core.thing.ThingStatus;
+import org.eclipse.smarthome.core.thing.ThingStatusDetail;
+import org.eclipse.smarthome.core.thing.ThingUID;
+import org.eclipse.smarthome.core.types.State;
+import org.openhab.binding.serialthing.handler.SerialListenerImpl.SerialThing;
+import org.openhab.binding.serialthing.handler.SerialThingHandler;
+import org.openhab.binding.serialthing.metrics.LatencyHistogram;
+import org.openhab.binding.serialthing.protocol.BinaryFrames;
+import org.openhab.binding.serialthing.protocol.Sample;
+import org.openhab.binding.serialthing.simulator.DeviceSimulator;
+import org.openhab.binding.serialthing.simulator.Firmware;
+import org.openhab.binding.serialthing.simulator.SimulatedDevice;
+
+/**
+ * The {@link HandlerLoadBenchmark} starts many {@link SerialThingHandler}s against simulated room sensors (see
+ * {@link DeviceSimulator}) and measures how many sensors one hub can handle. Every device sends temperatures at the
+ * given rate through the real transport, framing, dispatch and publishing path. The latency is measured from the
+ * write of the device to the <code>updateState</code> call of the handler, which records it instead of posting it to
+ * the event bus.
+ * <p>
+ * The report contains the latency percentiles, the throughput, the threads and the heap growth. The test fails with
+ * exit code 1, if the 99th percentile exceeds the budget.
+ * <p>
+ * Usage: <code>java -cp ... org.openhab.binding.serialthing.benchmark.HandlerLoadBenchmark [devices]
+ * [messages per second per device] [seconds] [p99 budget ms] [ascii|binary|combined]</code>
+ *
+ * @author Philipp - Initial contribution
+ */
+public class HandlerLoadBenchmark {
+
+    private static final String PORT_PREFIX = "/dev/ttyLOAD";
+
+    /** The sent temperatures start here, so they can not be mistaken for the initial values of the devices. */
+    private static final int FIRST_VALUE = 100000;
+
+    /** Number of send times kept per device, the values are published long before they are overwritten. */
+    private static final int SEND_TIMES = 4096;
+
+    /** Every power of two is split into 128 buckets, so the percentiles are precise to 1%. */
+    private static final int HISTOGRAM_PRECISION = 7;
+
+    private static final long ONLINE_TIMEOUT = 30000;
+
+    private static final long DRAIN_TIME = 1000;
+
+    private final LatencyHistogram latency = new LatencyHistogram(HISTOGRAM_PRECISION);
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong published = new AtomicLong();
+
+    /**
+     * Records the published values instead of posting them. The scheduler of the handler is the one of the running
+     * framework, in the benchmark it is the shared pool of all thing handlers.
+     */
+    private class LoadTestHandler extends SerialThingHandler {
+
+        private final AtomicLongArray sendTimes = new AtomicLongArray(SEND_TIMES);
+
+        private volatile ThingStatus status = ThingStatus.UNINITIALIZED;
+
+        private volatile boolean valuesReceived;
+
+        private LoadTestHandler(Thing thing) {
+            super(thing);
+        }
+
+        /**
+         * @return the value to send
+         */
+        private int sending(int sequence) {
+            int value = FIRST_VALUE + sequence;
+            sendTimes.lazySet(value & (SEND_TIMES - 1), System.nanoTime());
+            return value;
+        }
+
+        @Override
+        protected void updateState(ChannelUID channelUID, State state) {
+            valuesReceived = true;
+            if (state instanceof DecimalType) {
+                int value = ((DecimalType) state).intValue();
+                if (value >= FIRST_VALUE) {
+                    latency.record(System.nanoTime() - sendTimes.get(value & (SEND_TIMES - 1)));
+                    published.incrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        protected void updateStatus(ThingStatus status) {
+            this.status = status;
+        }
+
+        @Override
+        protected void updateStatus(ThingStatus status, ThingStatusDetail statusDetail) {
+            this.status = status;
+        }
+
+        @Override
+        protected void updateStatus(ThingStatus status, ThingStatusDetail statusDetail, String description) {
+            this.status = status;
+        }
+
+        @Override
+        protected void updateProperty(String name, String value) {
+            getThing().getProperties().put(name, value);
+        }
+
+        @Override
+        protected void updateProperties(Map<String, String> properties) {
+            getThing().getProperties().putAll(properties);
+        }
+    }
+
+    private final int deviceCount;
+    private final int rate;
+    private final long duration;
+    private final long budget;
+    private final String framing;
+
+    private final List<SimulatedDevice> devices = new ArrayList<SimulatedDevice>();
+    private final List<LoadTestHandler> handlers = new ArrayList<LoadTestHandler>();
+
+    /**
+     * @param rate the messages per second sent by every device
+     * @param duration the measured time in milliseconds, after a warm up of a third of it
+     * @param budget the highest accepted 99th percentile in milliseconds
+     */
+    public HandlerLoadBenchmark(int deviceCount, int rate, long duration, long budget, String framing) {
+        this.deviceCount = deviceCount;
+        this.rate = rate;
+        this.duration = duration;
+        this.budget = budget;
+        this.framing = framing;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int deviceCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long duration = TimeUnit.SECONDS.toMillis(args.length > 2 ? Long.parseLong(args[2]) : 30);
+        long budget = args.length > 3 ? Long.parseLong(args[3]) : 50;
+        String framing = args.length > 4 ? args[4] : BinaryFrames.FRAMING_ASCII;
+
+        boolean passed = new HandlerLoadBenchmark(deviceCount, rate, duration, budget, framing).run();
+        System.exit(passed ? 0 : 1);
+    }
+
+    /**
+     * @return <code>true</code> if the 99th percentile is within the budget
+     */
+    public boolean run() throws InterruptedException {
+        DeviceSimulator simulator = new DeviceSimulator(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+        ScheduledExecutorService senders = Executors
+                .newScheduledThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors() / 2));
+        simulator.install();
+        try {
+            long heapBefore = usedHeap();
+            int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            start(simulator);
+            if (!awaitValues()) {
+                System.out.println("FAILED: not all things online with values within " + ONLINE_TIMEOUT + " ms");
+                return false;
+            }
+
+            List<ScheduledFuture<?>> sending = startSending(senders);
+            Thread.sleep(duration / 3);
+            latency.reset();
+            published.set(0);
+            sent.set(0);
+
+            long start = System.nanoTime();
+            Thread.sleep(duration);
+            long sentDuringTest = sent.get();
+            long seconds = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start);
+            for (ScheduledFuture<?> task : sending) {
+                task.cancel(false);
+            }
+            Thread.sleep(DRAIN_TIME);
+
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+            int peakThreads = ManagementFactory.getThreadMXBean().getPeakThreadCount();
+            long heapAfter = usedHeap();
+            return report(sentDuringTest, Math.max(1, seconds), threads - threadsBefore, peakThreads,
+                    heapAfter - heapBefore);
+        } finally {
+            senders.shutdownNow();
+            for (LoadTestHandler handler : handlers) {
+                handler.dispose();
+            }
+            simulator.shutdown();
+        }
+    }
+
+    private void start(DeviceSimulator simulator) throws InterruptedException {
+        try {
+            devices.addAll(simulator.attach(Firmware.ROOMSENSOR, PORT_PREFIX, deviceCount));
+        } catch (IOException e) {
+            throw new IllegalStateException("devices could not be attached: " + e.getMessage(), e);
+        }
+        for (int i = 0; i < deviceCount; i++) {
+            devices.get(i).setValueInterval(0);
+            LoadTestHandler handler = new LoadTestHandler(createThing(i));
+            handlers.add(handler);
+            handler.initialize();
+        }
+    }
+
+    /**
+     * Waits until all handlers are online and have published the values requested after the connect.
+     */
+    private boolean awaitValues() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + ONLINE_TIMEOUT;
+        for (LoadTestHandler handler : handlers) {
+            while (handler.status != ThingStatus.ONLINE || !handler.valuesReceived) {
+                if (System.currentTimeMillis() > deadline) {
+                    return false;
+                }
+                Thread.sleep(50);
+            }
+        }
+        return true;
+    }
+
+    private List<ScheduledFuture<?>> startSending(ScheduledExecutorService senders) {
+        long period = TimeUnit.SECONDS.toMicros(1) / Math.max(1, rate);
+        List<ScheduledFuture<?>> tasks = new ArrayList<ScheduledFuture<?>>();
+        for (int i = 0; i < deviceCount; i++) {
+            final SimulatedDevice device = devices.get(i);
+            final LoadTestHandler handler = handlers.get(i);
+            tasks.add(senders.scheduleAtFixedRate(new Runnable() {
+
+                private int sequence;
+
+                @Override
+                public void run() {
+                    device.send(Sample.TEMPERATURE, handler.sending(sequence++));
+                    sent.incrementAndGet();
+                }
+            }, ThreadLocalRandom.current().nextLong(period), period, TimeUnit.MICROSECONDS));
+        }
+        return tasks;
+    }
+
+    private boolean report(long sentDuringTest, long seconds, int addedThreads, int peakThreads, long heapGrowth) {
+        System.out.println(String.format("%d devices, %d messages/s each, %s framing, %d s", deviceCount, rate,
+                framing, seconds));
+        // the senders fall behind, if the hub is saturated
+        System.out.println(String.format("sent      %10d (%.0f/s of %d/s offered)", sentDuringTest,
+                (double) sentDuringTest / seconds, (long) deviceCount * rate));
+        System.out.println(String.format("published %10d (%.0f/s), %d lost or coalesced", published.get(),
+                (double) published.get() / seconds, Math.max(0, sentDuringTest - published.get())));
+        System.out.println(String.format("latency   p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, p99.9 %.2f ms, max %.2f ms",
+                millis(latency.getPercentile(50, TimeUnit.NANOSECONDS)),
+                millis(latency.getPercentile(90, TimeUnit.NANOSECONDS)),
+                millis(latency.getPercentile(99, TimeUnit.NANOSECONDS)),
+                millis(latency.getPercentile(99.9, TimeUnit.NANOSECONDS)),
+                millis(latency.getMax(TimeUnit.NANOSECONDS))));
+        System.out.println(String.format("threads   %d added, %d peak", addedThreads, peakThreads));
+        System.out.println(String.format("heap      %.1f MB growth", heapGrowth / (1024.0 * 1024.0)));
+
+        double p99 = millis(latency.getPercentile(99, TimeUnit.NANOSECONDS));
+        if (latency.getCount() == 0) {
+            System.out.println("FAILED: no values published");
+            return false;
+        }
+        if (p99 > budget) {
+            System.out.println(String.format("FAILED: p99 %.2f ms exceeds the budget of %d ms", p99, budget));
+            return false;
+        }
+        System.out.println(String.format("PASSED: p99 %.2f ms within the budget of %d ms", p99, budget));
+        return true;
+    }
+
+    /**
+     * Creates a room sensor thing as the discovery would, with the framing and baud rates of the simulated device.
+     */
+    private Thing createThing(int index) {
+        final ThingUID uid = new ThingUID(THING_TYPE_ROOMSENSOR, "load" + index);
+        final Map<String, String> properties = new ConcurrentHashMap<String, String>();
+        properties.put(SerialThing.PORT, PORT_PREFIX + index);
+        properties.put(SerialThing.FRAMING, framing);
+        properties.put(SerialThing.BAUDRATES, Firmware.ROOMSENSOR.getBaudRates());
+        final Configuration configuration = new Configuration(new HashMap<String, Object>());
+
+        return (Thing) Proxy.newProxyInstance(Thing.class.getClassLoader(), new Class<?>[] { Thing.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        switch (method.getName()) {
+                            case "getUID":
+                                return uid;
+                            case "getThingTypeUID":
+                                return THING_TYPE_ROOMSENSOR;
+                            case "getProperties":
+                                return properties;
+                            case "getConfiguration":
+                                return configuration;
+                            case "setProperty":
+                                return properties.put((String) args[0], (String) args[1]);
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "equals":
+                                return proxy == args[0];
+                            case "toString":
+                                return uid.toString();
+                            default:
+                                return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                        }
+                    }
+                });
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
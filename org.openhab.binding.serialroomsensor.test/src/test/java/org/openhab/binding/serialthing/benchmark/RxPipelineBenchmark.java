@@ -0,0 +1,254 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.Random;
+
+import org.openhab.binding.serialthing.handler.SerialPortCommunicator;
+import org.openhab.binding.serialthing.handler.SerialPortCommunicator.SerialTestHandler;
+import org.openhab.binding.serialthing.protocol.Frames;
+import org.openhab.binding.serialthing.protocol.LineFramer;
+import org.openhab.binding.serialthing.protocol.Sample;
+
+/**
+ * The {@link RxPipelineBenchmark} feeds synthetic byte streams through the receive path of the serial things
+ * (framing and command dispatch down to the {@link SerialTestHandler} callbacks). No hardware is needed.
+ * <p>
+ * Every combination of fragmentation, message mix and line length is measured. The report contains the frames per
+ * second and the bytes allocated per frame on the benchmark thread.
+ * <p>
+ * Usage: <code>java -cp ... org.openhab.binding.serialthing.benchmark.RxPipelineBenchmark [seconds per run]</code>
+ *
+ * @author Philipp - Initial contribution
+ */
+public class RxPipelineBenchmark {
+
+    /** Chunk sizes in bytes, 0 means whole frames. */
+    private static final int[] FRAGMENTATIONS = { 1, 7, 64, 0 };
+
+    /** Length of the log message lines. */
+    private static final int[] LINE_LENGTHS = { 16, 64, 256 };
+
+    private static final int FRAMES_PER_STREAM = 10000;
+
+    private static final int WARMUP_RUNS = 3;
+
+    private enum MessageMix {
+        /** Brightness, temperature and humidity readings. */
+        ROOMSENSOR,
+        /** Brightness, temperature and humidity readings in combined lines. */
+        COMBINED,
+        /** Doorbell presses. */
+        DOORBELL,
+        /** Readings mixed with log messages and unknown commands. */
+        MIXED
+    }
+
+    /** Consumes the values, so the dispatch can not be optimized away. */
+    private static final class CountingHandler implements SerialTestHandler {
+
+        private long sum;
+        private long count;
+
+        @Override
+        public void onBrightnessChanged(int brightness) {
+            sum += brightness;
+            count++;
+        }
+
+        @Override
+        public void onTemperatureChanged(int temperature) {
+            sum += temperature;
+            count++;
+        }
+
+        @Override
+        public void onHumidityChanged(int humidity) {
+            sum += humidity;
+            count++;
+        }
+
+        @Override
+        public void onDoorbellPressed(boolean pressed) {
+            sum += pressed ? 1 : 0;
+            count++;
+        }
+
+        @Override
+        public void onSample(Sample sample) {
+            sum += sample.get(Sample.BRIGHTNESS) + sample.get(Sample.TEMPERATURE) + sample.get(Sample.HUMIDITY);
+            count++;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long runMillis = args.length > 0 ? Long.parseLong(args[0]) * 1000 : 1000;
+
+        System.out.println(String.format("%-10s %-8s %6s %14s %10s %12s", "mix", "chunk", "line", "frames/s",
+                "MB/s", "bytes/frame"));
+
+        for (MessageMix mix : MessageMix.values()) {
+            for (int lineLength : LINE_LENGTHS) {
+                if (mix != MessageMix.MIXED && lineLength != LINE_LENGTHS[0]) {
+                    // the line length only changes the log messages
+                    continue;
+                }
+                byte[] stream = createStream(mix, lineLength);
+                for (int fragmentation : FRAGMENTATIONS) {
+                    run(mix, lineLength, fragmentation, stream, runMillis);
+                }
+            }
+        }
+    }
+
+    private static void run(MessageMix mix, int lineLength, int fragmentation, byte[] stream, long runMillis) {
+        byte[][] chunks = split(stream, fragmentation);
+        CountingHandler handler = new CountingHandler();
+        LineFramer receiver = SerialPortCommunicator.createReceiver(handler);
+
+        for (int i = 0; i < WARMUP_RUNS; i++) {
+            feed(receiver, chunks, runMillis / 2);
+        }
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        long streams = feed(receiver, chunks, runMillis);
+        long duration = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+
+        receiver.release();
+
+        long frames = streams * FRAMES_PER_STREAM;
+        double seconds = duration / 1e9;
+        System.out.println(String.format("%-10s %-8s %6d %14.0f %10.2f %12s", mix,
+                fragmentation == 0 ? "frame" : String.valueOf(fragmentation), lineLength, frames / seconds,
+                streams * stream.length / seconds / (1024 * 1024),
+                allocated < 0 ? "n/a" : String.format("%.3f", (double) allocated / frames)));
+        if (handler.count == 0) {
+            System.out.println("no values received, sum = " + handler.sum);
+        }
+    }
+
+    /**
+     * Feeds the whole stream as often as possible within the given time.
+     *
+     * @return the number of streams fed
+     */
+    private static long feed(LineFramer receiver, byte[][] chunks, long runMillis) {
+        long end = System.nanoTime() + runMillis * 1000000;
+        long streams = 0;
+        do {
+            for (byte[] chunk : chunks) {
+                receiver.feed(chunk, 0, chunk.length);
+            }
+            streams++;
+        } while (System.nanoTime() < end);
+        return streams;
+    }
+
+    private static byte[] createStream(MessageMix mix, int lineLength) {
+        Random random = new Random(42);
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        StringBuilder log = new StringBuilder("LOG=");
+        while (log.length() < lineLength) {
+            log.append((char) ('a' + random.nextInt(26)));
+        }
+
+        for (int i = 0; i < FRAMES_PER_STREAM; i++) {
+            String line;
+            switch (mix) {
+                case DOORBELL:
+                    line = "DOORBELL_PRESSED=" + (i % 2 == 0);
+                    break;
+                case COMBINED:
+                    line = new Sample().set(Sample.BRIGHTNESS, random.nextInt(101))
+                            .set(Sample.TEMPERATURE, 15 + random.nextInt(15))
+                            .set(Sample.HUMIDITY, 30 + random.nextInt(40)).toString();
+                    break;
+                case MIXED:
+                    int kind = random.nextInt(10);
+                    if (kind < 2) {
+                        line = log.toString();
+                    } else if (kind == 2) {
+                        line = "UNKNOWN=" + i;
+                    } else {
+                        line = reading(random, i);
+                    }
+                    break;
+                default:
+                    line = reading(random, i);
+                    break;
+            }
+            byte[] bytes = Frames.bytes(line + "\r\n");
+            stream.write(bytes, 0, bytes.length);
+        }
+        return stream.toByteArray();
+    }
+
+    private static String reading(Random random, int index) {
+        switch (index % 3) {
+            case 0:
+                return "BRIGHTNESS=" + random.nextInt(101);
+            case 1:
+                return "TEMPERATURE=" + (15 + random.nextInt(15));
+            default:
+                return "HUMIDITY=" + (30 + random.nextInt(40));
+        }
+    }
+
+    /**
+     * Splits the stream into the chunks a serial port would deliver.
+     *
+     * @param fragmentation the chunk size, 0 to split after every line
+     */
+    private static byte[][] split(byte[] stream, int fragmentation) {
+        if (fragmentation == 0) {
+            byte[][] chunks = new byte[FRAMES_PER_STREAM][];
+            int start = 0;
+            int count = 0;
+            for (int i = 1; i < stream.length; i++) {
+                if (stream[i] == '\n' && stream[i - 1] == '\r') {
+                    chunks[count++] = copy(stream, start, i + 1 - start);
+                    start = i + 1;
+                }
+            }
+            return chunks;
+        }
+        byte[][] chunks = new byte[(stream.length + fragmentation - 1) / fragmentation][];
+        for (int i = 0; i < chunks.length; i++) {
+            int start = i * fragmentation;
+            chunks[i] = copy(stream, start, Math.min(fragmentation, stream.length - start));
+        }
+        return chunks;
+    }
+
+    private static byte[] copy(byte[] source, int offset, int length) {
+        byte[] copy = new byte[length];
+        System.arraycopy(source, offset, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * @return the bytes allocated by the current thread so far or -1 if the JVM does not provide it
+     */
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        try {
+            // only available on HotSpot based JVMs (com.sun.management.ThreadMXBean)
+            Method method = threads.getClass().getMethod("getThreadAllocatedBytes", long.class);
+            method.setAccessible(true);
+            return (Long) method.invoke(threads, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.capture;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.serialthing.handler.SerialPortCommunicator;
+import org.openhab.binding.serialthing.handler.SerialPortCommunicator.SerialTestHandler;
+import org.openhab.binding.serialthing.metrics.PortMetrics;
+import org.openhab.binding.serialthing.metrics.SerialMetrics;
+import org.openhab.binding.serialthing.protocol.Sample;
+import org.openhab.binding.serialthing.transport.SerialTransports;
+
+/**
+ * The {@link CaptureReplay} replays a capture file through the receive path of a {@link SerialPortCommunicator} and
+ * reports what has been decoded, i.e. to reproduce a field problem or to measure the throughput with real traffic.
+ * <p>
+ * Usage: <code>java -cp ... org.openhab.binding.serialthing.capture.CaptureReplay capture-file
+ * [speed, 1 for the captured pace, 0 for as fast as possible] [-v]</code>
+ *
+ * @author Philipp - Initial contribution
+ */
+public class CaptureReplay {
+
+    /** Counts the decoded values and prints them, if verbose. */
+    private static final class PrintingHandler implements SerialTestHandler {
+
+        private final boolean verbose;
+        private long values;
+        private long samples;
+        private long presses;
+
+        private PrintingHandler(boolean verbose) {
+            this.verbose = verbose;
+        }
+
+        @Override
+        public void onBrightnessChanged(int brightness) {
+            value("brightness", brightness);
+        }
+
+        @Override
+        public void onTemperatureChanged(int temperature) {
+            value("temperature", temperature);
+        }
+
+        @Override
+        public void onHumidityChanged(int humidity) {
+            value("humidity", humidity);
+        }
+
+        @Override
+        public void onDoorbellPressed(boolean pressed) {
+            presses++;
+            if (verbose) {
+                System.out.println("doorbell " + pressed);
+            }
+        }
+
+        @Override
+        public void onSample(Sample sample) {
+            samples++;
+            if (verbose) {
+                System.out.println("sample " + sample);
+            }
+        }
+
+        private void value(String channel, int value) {
+            values++;
+            if (verbose) {
+                System.out.println(channel + " " + value);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("usage: CaptureReplay capture-file [speed] [-v]");
+            return;
+        }
+        File file = new File(args[0]);
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        boolean verbose = args.length > 2 && "-v".equals(args[2]);
+
+        ReplayTransport.Provider provider = new ReplayTransport.Provider(speed);
+        String port = provider.add(file);
+        SerialTransports.setProvider(provider);
+
+        // the metrics of a port are kept across connections
+        SerialMetrics.forPort(port).reset();
+
+        PrintingHandler handler = new PrintingHandler(verbose);
+        SerialPortCommunicator communicator = new SerialPortCommunicator(handler);
+        long start = System.nanoTime();
+        communicator.initialize(port);
+        PortMetrics metrics = communicator.getMetrics();
+        provider.getTransport(port).awaitReplayed(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        long duration = System.nanoTime() - start;
+        communicator.close();
+        SerialTransports.setProvider(null);
+        SerialMetrics.remove(port);
+
+        double seconds = Math.max(1, duration) / 1e9;
+        System.out.println(String.format("replayed %s of port %s at %s", file, port,
+                speed > 0 ? speed + "x speed" : "full speed"));
+        System.out.println(String.format("%d bytes in %.3f s (%.2f MB/s)", metrics.getBytesIn(), seconds,
+                metrics.getBytesIn() / seconds / (1024 * 1024)));
+        System.out.println(String.format("%d frames, %d parse errors, %d unknown commands", metrics.getFramesDecoded(),
+                metrics.getParseErrors(), metrics.getUnknownCommands()));
+        System.out.println(String.format("%d values, %d combined samples, %d doorbell events", handler.values,
+                handler.samples, handler.presses));
+    }
+}
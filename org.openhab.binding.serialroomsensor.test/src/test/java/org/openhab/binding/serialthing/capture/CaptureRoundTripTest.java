@@ -0,0 +1,148 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.capture;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.serialthing.protocol.BinaryFrameListener;
+import org.openhab.binding.serialthing.protocol.BinaryFrames;
+import org.openhab.binding.serialthing.protocol.ByteBufferPool;
+import org.openhab.binding.serialthing.protocol.FrameListener;
+import org.openhab.binding.serialthing.protocol.Frames;
+import org.openhab.binding.serialthing.protocol.LineFramer;
+import org.openhab.binding.serialthing.transport.SerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransportListener;
+
+/**
+ * Writes a capture like a port in the field, reads it back and replays it through the framer.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class CaptureRoundTripTest {
+
+    private static final String PORT = "/dev/ttyACM0";
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("serialthing", CaptureWriter.FILE_EXTENSION);
+        CaptureWriter writer = new CaptureWriter(file, PORT, CaptureWriter.DEFAULT_MAX_SIZE);
+        try {
+            record(writer, CaptureWriter.TX, Frames.bytes("CURRENTVALUES\n"));
+            // a line split across two serial events, then a binary frame between two lines
+            record(writer, CaptureWriter.RX, Frames.bytes("TEMPERATURE=21\r\nBRIGHT"));
+            record(writer, CaptureWriter.RX, Frames.bytes("NESS=42\r\n"));
+            record(writer, CaptureWriter.RX, BinaryFrames.encode(BinaryFrames.HUMIDITY, -7));
+            record(writer, CaptureWriter.RX, Frames.bytes("LOG=done\r\n"));
+        } finally {
+            writer.close();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void readsRecords() throws IOException {
+        CaptureReader reader = new CaptureReader(file);
+        try {
+            assertEquals(PORT, reader.getPortName());
+
+            assertTrue(reader.next());
+            assertEquals(CaptureWriter.TX, reader.getKind());
+            assertEquals("CURRENTVALUES\n", data(reader));
+
+            assertTrue(reader.next());
+            assertEquals(CaptureWriter.RX, reader.getKind());
+            assertEquals("TEMPERATURE=21\r\nBRIGHT", data(reader));
+            long time = reader.getTime();
+
+            assertTrue(reader.next());
+            assertEquals("NESS=42\r\n", data(reader));
+            assertTrue(reader.getTime() >= time);
+
+            assertTrue(reader.next());
+            assertEquals(BinaryFrames.encode(BinaryFrames.HUMIDITY, -7).length, reader.getLength());
+
+            assertTrue(reader.next());
+            assertFalse(reader.next());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void replaysReceivedBytes() throws IOException, InterruptedException {
+        final List<String> frames = new ArrayList<String>();
+        final LineFramer framer = new LineFramer(new FrameListener() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                frames.add(Frames.toString(buffer, offset, length));
+            }
+        }, new BinaryFrameListener() {
+            @Override
+            public void onMessage(int messageId, byte[] buffer, int offset, int length) {
+                frames.add(messageId + ":" + BinaryFrames.decodeVarint(buffer, offset, length));
+            }
+        }, ByteBufferPool.shared());
+
+        ReplayTransport.Provider provider = new ReplayTransport.Provider(ReplayTransport.AS_FAST_AS_POSSIBLE);
+        assertEquals(PORT, provider.add(file));
+        ReplayTransport replay = (ReplayTransport) provider.createTransport(PORT);
+        replay.open();
+        try {
+            final ByteBuffer buffer = ByteBuffer.allocate(64);
+            replay.setListener(new SerialTransportListener() {
+                @Override
+                public void onDataAvailable(SerialTransport source) {
+                    try {
+                        while (source.read(buffer) > 0) {
+                            buffer.flip();
+                            framer.feed(buffer);
+                            buffer.clear();
+                        }
+                    } catch (IOException e) {
+                        frames.add(e.getMessage());
+                    }
+                }
+            });
+            assertTrue(replay.awaitReplayed(5, TimeUnit.SECONDS));
+        } finally {
+            replay.close();
+            framer.release();
+        }
+
+        // the written bytes are not replayed
+        assertEquals("[TEMPERATURE=21, BRIGHTNESS=42, " + BinaryFrames.HUMIDITY + ":-7, LOG=done]",
+                frames.toString());
+        assertEquals(0, framer.getCorruptFrames());
+    }
+
+    private static void record(CaptureWriter writer, byte kind, byte[] data) {
+        writer.record(kind, data, 0, data.length);
+    }
+
+    private static String data(CaptureReader reader) {
+        ByteBuffer data = ByteBuffer.allocate(reader.getLength());
+        reader.getData(data);
+        return Frames.toString(data.array(), 0, data.position());
+    }
+}
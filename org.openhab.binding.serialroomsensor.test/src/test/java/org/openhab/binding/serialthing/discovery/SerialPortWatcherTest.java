@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.discovery;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Plays udev in a temporary directory: device nodes are created as files and the by-id links as symbolic links.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class SerialPortWatcherTest {
+
+    private static final long TIMEOUT = 10000;
+
+    private final BlockingQueue<String> events = new LinkedBlockingQueue<String>();
+
+    private Path dev;
+
+    private Path byId;
+
+    private SerialPortWatcher watcher;
+
+    @Before
+    public void setUp() throws IOException {
+        dev = Files.createTempDirectory("dev").toRealPath();
+        byId = dev.resolve("serial").resolve("by-id");
+        watcher = new SerialPortWatcher(SerialPortWatcher.LINUX_PORT_NAMES, new SerialPortWatcher.PortListener() {
+            @Override
+            public void portAdded(String port) {
+                events.add("added " + port);
+            }
+
+            @Override
+            public void portRemoved(String port) {
+                events.add("removed " + port);
+            }
+        }, dev, byId);
+        assertTrue(watcher.start());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        watcher.stop();
+        Files.walkFileTree(dev, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    @Test
+    public void reportsDeviceNodes() throws IOException, InterruptedException {
+        Path port = Files.createFile(dev.resolve("ttyACM0"));
+        Files.createFile(dev.resolve("null"));
+
+        assertEquals("added " + port, awaitEvent());
+
+        Files.delete(port);
+
+        assertEquals("removed " + port, awaitEvent());
+        assertNull(events.poll(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void reportsLinksInDirectoryCreatedLater() throws IOException, InterruptedException {
+        Path port = Files.createFile(dev.resolve("ttyUSB0"));
+        assertEquals("added " + port, awaitEvent());
+
+        // udev creates the directory and the link at once, the link is reported with its target
+        Files.createDirectories(byId);
+        Files.createSymbolicLink(byId.resolve("usb-Arduino_Uno-if00"), port);
+
+        assertEquals("added " + port, awaitEvent());
+    }
+
+    @Test
+    public void watchesDirectoryAgainAfterItIsRecreated() throws IOException, InterruptedException {
+        Path port = Files.createFile(dev.resolve("ttyACM1"));
+        assertEquals("added " + port, awaitEvent());
+        Files.createDirectories(byId);
+        Path link = Files.createSymbolicLink(byId.resolve("usb-Arduino_Uno-if00"), port);
+        assertEquals("added " + port, awaitEvent());
+
+        Files.delete(link);
+        Files.delete(byId);
+        Files.delete(byId.getParent());
+        Thread.sleep(200);
+        Files.createDirectories(byId);
+        Files.createSymbolicLink(link, port);
+
+        assertEquals("added " + port, awaitEvent());
+    }
+
+    private String awaitEvent() throws InterruptedException {
+        String event = events.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        assertNotNull("no port event within " + TIMEOUT + " ms", event);
+        return event;
+    }
+}
@@ -0,0 +1,230 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.openhab.binding.serialthing.handler.SerialPortCommunicator.BaudRateListener;
+import org.openhab.binding.serialthing.protocol.Frames;
+import org.openhab.binding.serialthing.transport.SerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransportListener;
+
+/**
+ * Drives the upgrade with a {@link ManualScheduler}; the transport records the written lines and the baud rates.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class BaudRateUpgradeTest {
+
+    private static final int FROM = 9600;
+
+    private static final int TO = 115200;
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+
+    private final BaudRateUpgrade upgrade = new BaudRateUpgrade(scheduler);
+
+    private final List<String> events = new ArrayList<String>();
+
+    private final List<Integer> selected = new ArrayList<Integer>();
+
+    /** Number of writes which fail before the next one succeeds. */
+    private int failingWrites;
+
+    private final SerialTransport transport = new SerialTransport() {
+        @Override
+        public String getPortName() {
+            return "/dev/ttyTEST";
+        }
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void setBaudRate(int baudRate) {
+            events.add("baud " + baudRate);
+        }
+
+        @Override
+        public void setListener(SerialTransportListener listener) {
+        }
+
+        @Override
+        public int read(ByteBuffer buffer) {
+            return 0;
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            if (failingWrites > 0) {
+                failingWrites--;
+                throw new IOException("port closed");
+            }
+            events.add(Frames.toString(data, offset, length).trim());
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final BaudRateListener listener = new BaudRateListener() {
+        @Override
+        public void onBaudRateSelected(int baudRate) {
+            selected.add(baudRate);
+        }
+    };
+
+    @Test
+    public void switchesAfterAcknowledgeAndEcho() {
+        upgrade.start(transport, FROM, TO, listener);
+        assertEquals("[BAUDRATE=115200]", events.toString());
+
+        upgrade.onAcknowledged(TO);
+        // the device needs a moment to switch
+        assertEquals(0, scheduler.runFor(BaudRateUpgrade.SWITCH_DELAY - 1));
+        scheduler.runFor(1);
+        assertEquals("baud 115200", events.get(1));
+
+        upgrade.onEcho(echoToken());
+        assertTrue(selected.isEmpty());
+        scheduler.runDue();
+
+        assertEquals("[115200]", selected.toString());
+        assertEquals(3, events.size());
+        assertEquals(0, scheduler.pending());
+    }
+
+    @Test
+    public void revertsWithoutAcknowledge() {
+        upgrade.start(transport, FROM, TO, listener);
+
+        scheduler.runFor(BaudRateUpgrade.ANSWER_TIMEOUT);
+        assertEquals("[BAUDRATE=115200, baud 9600]", events.toString());
+
+        // a late answer does not restart the switch
+        upgrade.onAcknowledged(TO);
+        scheduler.runFor(BaudRateUpgrade.DEVICE_REVERT_TIMEOUT - 1);
+        assertTrue(selected.isEmpty());
+        scheduler.runFor(1);
+
+        assertEquals("[9600]", selected.toString());
+        assertEquals(2, events.size());
+        assertEquals(0, scheduler.pending());
+    }
+
+    @Test
+    public void revertsWithoutEcho() {
+        upgrade.start(transport, FROM, TO, listener);
+        upgrade.onAcknowledged(TO);
+        scheduler.runFor(BaudRateUpgrade.SWITCH_DELAY);
+        String token = echoToken();
+
+        scheduler.runFor(BaudRateUpgrade.ANSWER_TIMEOUT);
+        assertEquals("baud 9600", events.get(events.size() - 1));
+
+        // the echo at the new rate is too late, the device reverts as well
+        upgrade.onEcho(token);
+        scheduler.runFor(BaudRateUpgrade.DEVICE_REVERT_TIMEOUT);
+
+        assertEquals("[9600]", selected.toString());
+    }
+
+    @Test
+    public void ignoresOtherRateAndOtherEcho() {
+        upgrade.start(transport, FROM, TO, listener);
+
+        upgrade.onAcknowledged(57600);
+        upgrade.onEcho("garbled");
+        scheduler.runFor(BaudRateUpgrade.SWITCH_DELAY);
+        assertEquals(1, events.size());
+
+        upgrade.onAcknowledged(TO);
+        scheduler.runFor(BaudRateUpgrade.SWITCH_DELAY);
+        upgrade.onEcho(echoToken() + "0");
+        scheduler.runFor(BaudRateUpgrade.ANSWER_TIMEOUT + BaudRateUpgrade.DEVICE_REVERT_TIMEOUT);
+
+        assertEquals("[9600]", selected.toString());
+    }
+
+    @Test
+    public void staysAtRateIfRequestCannotBeWritten() {
+        failingWrites = 1;
+
+        upgrade.start(transport, FROM, TO, listener);
+        scheduler.runDue();
+
+        assertEquals("[9600]", selected.toString());
+        assertTrue(events.isEmpty());
+        assertEquals(0, scheduler.pending());
+    }
+
+    @Test
+    public void revertsIfEchoCannotBeWritten() {
+        upgrade.start(transport, FROM, TO, listener);
+        upgrade.onAcknowledged(TO);
+        failingWrites = 1;
+
+        scheduler.runFor(BaudRateUpgrade.SWITCH_DELAY);
+        assertEquals("[BAUDRATE=115200, baud 115200, baud 9600]", events.toString());
+        scheduler.runFor(BaudRateUpgrade.DEVICE_REVERT_TIMEOUT);
+
+        assertEquals("[9600]", selected.toString());
+    }
+
+    @Test
+    public void cancelCallsNoListener() {
+        upgrade.start(transport, FROM, TO, listener);
+        upgrade.onAcknowledged(TO);
+        scheduler.runFor(BaudRateUpgrade.SWITCH_DELAY);
+        String token = echoToken();
+
+        upgrade.cancel();
+        upgrade.onEcho(token);
+        scheduler.runFor(BaudRateUpgrade.ANSWER_TIMEOUT + BaudRateUpgrade.DEVICE_REVERT_TIMEOUT);
+
+        assertTrue(selected.isEmpty());
+        assertEquals(0, scheduler.pending());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void startsOnce() {
+        upgrade.start(transport, FROM, TO, listener);
+
+        upgrade.start(transport, FROM, TO, listener);
+    }
+
+    @Test
+    public void selectsHighestCommonRate() {
+        assertEquals(115200, BaudRateUpgrade.selectBaudRate("9600,57600,115200", 115200));
+        assertEquals(57600, BaudRateUpgrade.selectBaudRate("115200, 57600 ,9600", 76800));
+        // 250000 is not supported by the host
+        assertEquals(57600, BaudRateUpgrade.selectBaudRate("57600,250000", 500000));
+        assertEquals(19200, BaudRateUpgrade.selectBaudRate("fast,19200,", 115200));
+        assertEquals(0, BaudRateUpgrade.selectBaudRate("115200", 57600));
+        assertEquals(0, BaudRateUpgrade.selectBaudRate(null, 115200));
+    }
+
+    private String echoToken() {
+        String echo = events.get(events.size() - 1);
+        assertTrue(echo, echo.startsWith("ECHO="));
+        return echo.substring("ECHO=".length());
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ScheduledExecutorService} with a clock of its own: the tasks run by the test thread, when the test
+ * advances the clock with {@link #runFor(long)} or runs the due tasks with {@link #runDue()}.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class ManualScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+
+    private final class Task implements ScheduledFuture<Object> {
+
+        private final Runnable task;
+        private final long period;
+        private final long sequence = nextSequence++;
+        private long time;
+        private boolean cancelled;
+        private boolean done;
+
+        private Task(Runnable task, long time, long period) {
+            this.task = task;
+            this.time = time;
+            this.period = period;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(time - now, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Task that = (Task) other;
+            if (time != that.time) {
+                return time < that.time ? -1 : 1;
+            }
+            return sequence < that.sequence ? -1 : sequence == that.sequence ? 0 : 1;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (done || cancelled) {
+                return false;
+            }
+            cancelled = true;
+            tasks.remove(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done || cancelled;
+        }
+
+        @Override
+        public Object get() {
+            throw new UnsupportedOperationException("the test runs the tasks");
+        }
+
+        @Override
+        public Object get(long timeout, TimeUnit unit) {
+            throw new UnsupportedOperationException("the test runs the tasks");
+        }
+    }
+
+    private final List<Task> tasks = new ArrayList<Task>();
+
+    private long now;
+
+    private long nextSequence;
+
+    /**
+     * @return the time of the clock in milliseconds
+     */
+    public long now() {
+        return now;
+    }
+
+    /**
+     * @return the number of tasks which are neither done nor cancelled
+     */
+    public int pending() {
+        return tasks.size();
+    }
+
+    /**
+     * Runs the tasks which are due now, also the tasks they submit without delay.
+     *
+     * @return the number of run tasks
+     */
+    public int runDue() {
+        return runUntil(now);
+    }
+
+    /**
+     * Advances the clock and runs the tasks due until then in the order of their times.
+     *
+     * @return the number of run tasks
+     */
+    public int runFor(long millis) {
+        return runUntil(now + millis);
+    }
+
+    private int runUntil(long end) {
+        int run = 0;
+        while (!tasks.isEmpty()) {
+            Task next = Collections.min(tasks);
+            if (next.time > end) {
+                break;
+            }
+            now = Math.max(now, next.time);
+            tasks.remove(next);
+            if (next.period > 0) {
+                next.time = now + next.period;
+                tasks.add(next);
+            } else {
+                next.done = true;
+            }
+            next.task.run();
+            run++;
+        }
+        now = end;
+        return run;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return add(command, delay, 0, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return add(command, initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return add(command, initialDelay, delay, unit);
+    }
+
+    private Task add(Runnable command, long delay, long period, TimeUnit unit) {
+        Task task = new Task(command, now + unit.toMillis(delay), unit.toMillis(period));
+        tasks.add(task);
+        return task;
+    }
+
+    @Override
+    public void shutdown() {
+        tasks.clear();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = new ArrayList<Runnable>();
+        for (Task task : tasks) {
+            pending.add(task.task);
+        }
+        tasks.clear();
+        return pending;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return false;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return false;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return true;
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Drives the supervisor with a {@link ManualScheduler}; the connection records what the supervisor asks of it.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class ReconnectSupervisorTest {
+
+    private static final long MAX_FIRST_BACKOFF = ReconnectSupervisor.INITIAL_BACKOFF
+            * (100 + ReconnectSupervisor.JITTER_PERCENT) / 100;
+
+    private final ManualScheduler scheduler = new ManualScheduler();
+
+    private final List<String> events = new ArrayList<String>();
+
+    private int failingConnects;
+
+    private boolean present = true;
+
+    /** Run by the connection while it is opened, like a serial event arriving before connect() has returned. */
+    private Runnable duringConnect;
+
+    private final ReconnectSupervisor.Connection connection = new ReconnectSupervisor.Connection() {
+        @Override
+        public void connect() throws IOException {
+            if (failingConnects > 0) {
+                failingConnects--;
+                events.add("connect failed");
+                throw new IOException("port busy");
+            }
+            events.add("connect");
+            if (duringConnect != null) {
+                Runnable task = duringConnect;
+                duringConnect = null;
+                task.run();
+            }
+        }
+
+        @Override
+        public void disconnect(Exception cause) {
+            events.add("disconnect " + cause.getMessage());
+        }
+
+        @Override
+        public boolean isPresent() {
+            return present;
+        }
+
+        @Override
+        public void onConnectFailed(IOException cause, int attempts, long retryDelay) {
+            events.add("failed " + attempts);
+        }
+
+        @Override
+        public void onReconnected(int attempts, long recoveryTime) {
+            events.add("reconnected " + attempts);
+        }
+    };
+
+    private final ReconnectSupervisor supervisor = new ReconnectSupervisor(scheduler, connection);
+
+    @Test
+    public void connectsByCallingThread() {
+        supervisor.start();
+
+        assertTrue(supervisor.isConnected());
+        assertEquals("[connect]", events.toString());
+        // only the presence check
+        assertEquals(1, scheduler.pending());
+    }
+
+    @Test
+    public void retriesWithGrowingBackoff() {
+        failingConnects = 2;
+
+        supervisor.start();
+        assertFalse(supervisor.isConnected());
+        scheduler.runFor(ReconnectSupervisor.MAX_BACKOFF);
+
+        assertTrue(supervisor.isConnected());
+        assertEquals("[connect failed, failed 1, connect failed, failed 2, connect, reconnected 2]",
+                events.toString());
+        // 2 s and 4 s, both varied by the jitter
+        assertTrue(scheduler.now() >= 6000 * (100 - ReconnectSupervisor.JITTER_PERCENT) / 100);
+    }
+
+    @Test
+    public void reconnectsAfterLoss() {
+        supervisor.start();
+        events.clear();
+
+        supervisor.connectionLost(new IOException("read failed"));
+        supervisor.connectionLost(new IOException("write failed"));
+        assertFalse(supervisor.isConnected());
+        scheduler.runFor(MAX_FIRST_BACKOFF);
+
+        assertTrue(supervisor.isConnected());
+        assertEquals("[disconnect read failed, connect, reconnected 0]", events.toString());
+    }
+
+    @Test
+    public void reconnectsIfPortDisappears() {
+        supervisor.start();
+        events.clear();
+
+        present = false;
+        scheduler.runFor(ReconnectSupervisor.PRESENCE_CHECK_INTERVAL);
+        present = true;
+        scheduler.runFor(MAX_FIRST_BACKOFF);
+
+        assertEquals("[disconnect port disappeared, connect, reconnected 0]", events.toString());
+    }
+
+    @Test
+    public void handlesLossReportedWhileConnecting() {
+        duringConnect = new Runnable() {
+            @Override
+            public void run() {
+                supervisor.connectionLost(new IOException("read failed"));
+            }
+        };
+
+        supervisor.start();
+
+        assertFalse(supervisor.isConnected());
+        scheduler.runFor(MAX_FIRST_BACKOFF);
+
+        assertTrue(supervisor.isConnected());
+        assertEquals("[connect, disconnect read failed, connect, reconnected 0]", events.toString());
+        assertEquals(1, scheduler.pending());
+    }
+
+    @Test
+    public void schedulesNothingIfCancelledWhileConnecting() {
+        duringConnect = new Runnable() {
+            @Override
+            public void run() {
+                supervisor.cancel();
+            }
+        };
+
+        supervisor.start();
+
+        assertEquals(0, scheduler.pending());
+        supervisor.connectionLost(new IOException("read failed"));
+        assertEquals(0, scheduler.runFor(ReconnectSupervisor.MAX_BACKOFF));
+    }
+
+    @Test
+    public void stopsRetryingIfCancelled() {
+        failingConnects = 1;
+        supervisor.start();
+
+        supervisor.cancel();
+
+        assertEquals(0, scheduler.runFor(ReconnectSupervisor.MAX_BACKOFF));
+        assertEquals("[connect failed, failed 1]", events.toString());
+    }
+
+    @Test
+    public void variesBackoffWithinJitter() {
+        for (int failed = 0; failed < 20; failed++) {
+            long delay = Math.min(ReconnectSupervisor.MAX_BACKOFF, ReconnectSupervisor.INITIAL_BACKOFF << failed);
+            long backoff = ReconnectSupervisor.backoff(failed);
+            assertTrue(backoff >= delay * (100 - ReconnectSupervisor.JITTER_PERCENT) / 100);
+            assertTrue(backoff <= delay * (100 + ReconnectSupervisor.JITTER_PERCENT) / 100);
+        }
+    }
+}
@@ -0,0 +1,327 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+import static org.junit.Assert.*;
+import static org.openhab.binding.serialthing.protocol.Sample.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+import org.openhab.binding.serialthing.handler.StateQueue.OverflowPolicy;
+import org.openhab.binding.serialthing.protocol.Sample;
+
+/**
+ * The consumer tasks are run by the test, so the order of producing and consuming is fixed.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class StateQueueTest {
+
+    private static final byte[] NONE = new byte[0];
+
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    private final List<String> published = new ArrayList<String>();
+
+    private final List<String> lost = new ArrayList<String>();
+
+    private final Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+    };
+
+    private final StateQueue.Consumer consumer = new StateQueue.Consumer() {
+        @Override
+        public void onValue(byte key, int value, long time, long receiveStarted) {
+            published.add((char) key + "=" + value);
+        }
+
+        @Override
+        public void onSample(Sample sample, long time, long receiveStarted) {
+            published.add(sample.toString());
+        }
+
+        @Override
+        public void onLost(byte key, boolean coalesced) {
+            lost.add((coalesced ? "coalesced " : "dropped ") + (char) key);
+        }
+    };
+
+    @Test
+    public void publishesInOfferedOrderWithOneConsumer() {
+        StateQueue queue = new StateQueue(8, OverflowPolicy.COALESCE, NONE, NONE, executor, consumer);
+
+        queue.offer(TEMPERATURE, 21, 1, 0);
+        queue.offer(BRIGHTNESS, 40, 2, 0);
+        queue.offer(HUMIDITY, 55, 3, 0);
+
+        assertEquals(1, tasks.size());
+        assertEquals(3, queue.size());
+
+        runTasks();
+
+        assertEquals("[T=21, B=40, H=55]", published.toString());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        assertEquals(8, new StateQueue(5, OverflowPolicy.COALESCE, NONE, NONE, executor, consumer).getCapacity());
+        assertEquals(8, new StateQueue(8, OverflowPolicy.COALESCE, NONE, NONE, executor, consumer).getCapacity());
+    }
+
+    @Test
+    public void dropsOldestIfFull() {
+        StateQueue queue = new StateQueue(4, OverflowPolicy.DROP_OLDEST, new byte[] { TEMPERATURE }, NONE,
+                executor, consumer);
+
+        for (int value = 1; value <= 6; value++) {
+            queue.offer(TEMPERATURE, value, value, 0);
+        }
+        runTasks();
+
+        assertEquals("[T=3, T=4, T=5, T=6]", published.toString());
+        assertEquals("[dropped T, dropped T]", lost.toString());
+        assertEquals(2, queue.getDropped());
+    }
+
+    @Test
+    public void coalescesNewestValueIfFull() {
+        StateQueue queue = new StateQueue(4, OverflowPolicy.COALESCE, new byte[] { TEMPERATURE }, NONE, executor,
+                consumer);
+
+        for (int value = 1; value <= 6; value++) {
+            queue.offer(TEMPERATURE, value, value, 0);
+        }
+        runTasks();
+
+        // the queued values stay, the values behind them are replaced by the newest one
+        assertEquals("[T=1, T=2, T=3, T=4, T=6]", published.toString());
+        assertEquals("[coalesced T]", lost.toString());
+        assertEquals(1, queue.getCoalesced());
+        assertEquals(0, queue.getDropped());
+    }
+
+    @Test
+    public void keepsOrderOfKeyWhileCoalescedValueIsPending() {
+        StateQueue queue = new StateQueue(2, OverflowPolicy.COALESCE, new byte[] { TEMPERATURE }, NONE, executor,
+                consumer);
+
+        queue.offer(TEMPERATURE, 1, 1, 0);
+        queue.offer(BRIGHTNESS, 10, 2, 0);
+        queue.offer(TEMPERATURE, 2, 3, 0);
+        runTasks();
+        // the queue has room again, but a newer value must not overtake the pending one
+        queue.offer(TEMPERATURE, 3, 4, 0);
+        queue.offer(TEMPERATURE, 4, 5, 0);
+        runTasks();
+
+        assertEquals("[T=1, B=10, T=2, T=3, T=4]", published.toString());
+        assertTrue(lost.isEmpty());
+    }
+
+    @Test
+    public void dropsOldestForKeysWhichMayNotBeCoalesced() {
+        StateQueue queue = new StateQueue(2, OverflowPolicy.COALESCE, new byte[] { TEMPERATURE }, NONE, executor,
+                consumer);
+
+        queue.offer(BRIGHTNESS, 1, 1, 0);
+        queue.offer(BRIGHTNESS, 2, 2, 0);
+        queue.offer(BRIGHTNESS, 3, 3, 0);
+        runTasks();
+
+        assertEquals("[B=2, B=3]", published.toString());
+        assertEquals("[dropped B]", lost.toString());
+    }
+
+    @Test
+    public void deliversUrgentValuesAheadOfQueuedOnes() {
+        StateQueue queue = new StateQueue(8, OverflowPolicy.COALESCE, NONE, new byte[] { DOORBELL_PRESSED },
+                executor, consumer);
+
+        queue.offer(TEMPERATURE, 21, 1, 0);
+        queue.offer(BRIGHTNESS, 40, 2, 0);
+        queue.offer(DOORBELL_PRESSED, 1, 3, 0);
+        runTasks();
+
+        assertEquals("[D=1, T=21, B=40]", published.toString());
+    }
+
+    @Test
+    public void urgentValueOvertakesValuesQueuedBeforeDuringDrain() {
+        final StateQueue[] queue = new StateQueue[1];
+        queue[0] = new StateQueue(8, OverflowPolicy.COALESCE, NONE, new byte[] { DOORBELL_PRESSED }, executor,
+                new StateQueue.Consumer() {
+                    @Override
+                    public void onValue(byte key, int value, long time, long receiveStarted) {
+                        published.add((char) key + "=" + value);
+                        if (key == TEMPERATURE) {
+                            // pressed while the first value is published
+                            queue[0].offer(DOORBELL_PRESSED, 1, 4, 0);
+                        }
+                    }
+
+                    @Override
+                    public void onSample(Sample sample, long time, long receiveStarted) {
+                    }
+
+                    @Override
+                    public void onLost(byte key, boolean coalesced) {
+                    }
+                });
+
+        queue[0].offer(TEMPERATURE, 21, 1, 0);
+        queue[0].offer(BRIGHTNESS, 40, 2, 0);
+        queue[0].offer(HUMIDITY, 55, 3, 0);
+        runTasks();
+
+        assertEquals("[T=21, D=1, B=40, H=55]", published.toString());
+    }
+
+    @Test
+    public void neverCoalescesUrgentValues() {
+        StateQueue queue = new StateQueue(2, OverflowPolicy.COALESCE, new byte[] { DOORBELL_PRESSED },
+                new byte[] { DOORBELL_PRESSED }, executor, consumer);
+
+        queue.offer(TEMPERATURE, 21, 1, 0);
+        queue.offer(TEMPERATURE, 22, 2, 0);
+        queue.offer(DOORBELL_PRESSED, 1, 3, 0);
+        queue.offer(DOORBELL_PRESSED, 0, 4, 0);
+        runTasks();
+
+        assertEquals("[D=1, D=0, T=21, T=22]", published.toString());
+        assertTrue(lost.isEmpty());
+    }
+
+    @Test
+    public void startsConsumerAgainAfterDrain() {
+        StateQueue queue = new StateQueue(8, OverflowPolicy.COALESCE, NONE, NONE, executor, consumer);
+
+        queue.offer(TEMPERATURE, 21, 1, 0);
+        runTasks();
+        queue.offer(TEMPERATURE, 22, 2, 0);
+
+        assertEquals(1, tasks.size());
+        runTasks();
+        assertEquals("[T=21, T=22]", published.toString());
+    }
+
+    @Test
+    public void ignoresShutDownExecutor() {
+        StateQueue queue = new StateQueue(8, OverflowPolicy.COALESCE, NONE, NONE, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new RejectedExecutionException("shut down");
+            }
+        }, consumer);
+
+        queue.offer(TEMPERATURE, 21, 1, 0);
+
+        assertTrue(published.isEmpty());
+        assertFalse(queue.isEmpty());
+    }
+
+    @Test
+    public void publishesSampleAsOneEntry() {
+        StateQueue queue = new StateQueue(8, OverflowPolicy.COALESCE, NONE, new byte[] { DOORBELL_PRESSED },
+                executor, consumer);
+        Sample sample = new Sample().set(BRIGHTNESS, 40).set(TEMPERATURE, 21).set(DOORBELL_PRESSED, 1);
+
+        queue.offer(HUMIDITY, 55, 1, 0);
+        queue.offerSample(sample, 2, 0);
+        // the sample has been copied
+        sample.set(TEMPERATURE, 99);
+        runTasks();
+
+        assertEquals("[D=1, H=55, V:B=40;T=21]", published.toString());
+    }
+
+    @Test
+    public void dropsOldestSampleAsWhole() {
+        StateQueue queue = new StateQueue(2, OverflowPolicy.DROP_OLDEST, NONE, NONE, executor, consumer);
+
+        for (int value = 1; value <= 3; value++) {
+            queue.offerSample(new Sample().set(TEMPERATURE, 20 + value).set(HUMIDITY, 50 + value), value, 0);
+        }
+        runTasks();
+
+        assertEquals("[V:H=52;T=22, V:H=53;T=23]", published.toString());
+        assertEquals("[dropped " + (char) StateQueue.SAMPLE + "]", lost.toString());
+    }
+
+    @Test
+    public void coalescesSampleAsWhole() {
+        StateQueue queue = new StateQueue(2, OverflowPolicy.COALESCE, new byte[] { TEMPERATURE, HUMIDITY }, NONE,
+                executor, consumer);
+
+        for (int value = 1; value <= 4; value++) {
+            queue.offerSample(new Sample().set(TEMPERATURE, 20 + value).set(HUMIDITY, 50 + value), value, 0);
+        }
+        runTasks();
+
+        // the third sample is replaced by the fourth, never only a part of it
+        assertEquals("[V:H=51;T=21, V:H=52;T=22, V:H=54;T=24]", published.toString());
+        assertEquals("[coalesced " + (char) StateQueue.SAMPLE + "]", lost.toString());
+    }
+
+    @Test
+    public void dropsSampleWithValuesWhichMayNotBeCoalesced() {
+        StateQueue queue = new StateQueue(2, OverflowPolicy.COALESCE, new byte[] { TEMPERATURE }, NONE, executor,
+                consumer);
+
+        for (int value = 1; value <= 3; value++) {
+            queue.offerSample(new Sample().set(TEMPERATURE, 20 + value).set(BRIGHTNESS, 40 + value), value, 0);
+        }
+        runTasks();
+
+        assertEquals("[V:B=42;T=22, V:B=43;T=23]", published.toString());
+        assertEquals(1, queue.getDropped());
+    }
+
+    @Test
+    public void publishesNothingAfterClose() {
+        StateQueue queue = new StateQueue(8, OverflowPolicy.COALESCE, new byte[] { TEMPERATURE },
+                new byte[] { DOORBELL_PRESSED }, executor, consumer);
+
+        queue.offer(TEMPERATURE, 21, 1, 0);
+        queue.offer(DOORBELL_PRESSED, 1, 2, 0);
+        queue.offerSample(new Sample().set(TEMPERATURE, 22), 3, 0);
+        // the consumer task has been submitted before
+        queue.close();
+        queue.offer(TEMPERATURE, 23, 4, 0);
+        runTasks();
+
+        assertTrue(published.isEmpty());
+        assertTrue(queue.isEmpty());
+        assertTrue(queue.isClosed());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidKey() {
+        new StateQueue(8, OverflowPolicy.COALESCE, NONE, NONE, executor, consumer).offer((byte) 'x', 1, 1, 0);
+    }
+
+    @Test
+    public void parsesPolicy() {
+        assertEquals(OverflowPolicy.DROP_OLDEST, OverflowPolicy.parse("dropOldest"));
+        assertEquals(OverflowPolicy.COALESCE, OverflowPolicy.parse("coalesce"));
+        assertEquals(OverflowPolicy.COALESCE, OverflowPolicy.parse(null));
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+}
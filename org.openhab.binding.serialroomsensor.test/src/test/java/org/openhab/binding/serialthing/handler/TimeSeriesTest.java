@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.openhab.binding.serialthing.handler.TimeSeries.Aggregate;
+
+/**
+ * @author Philipp - Initial contribution
+ */
+public class TimeSeriesTest {
+
+    private static final double DELTA = 1e-9;
+
+    private final Aggregate result = new Aggregate();
+
+    @Test
+    public void aggregatesWindowInclusive() {
+        TimeSeries series = new TimeSeries(8);
+        series.add(100, 10);
+        series.add(200, 20);
+        series.add(300, 60);
+        series.add(400, 5);
+
+        assertTrue(series.aggregate(200, 300, result));
+
+        assertEquals(2, result.getCount());
+        assertEquals(20, result.getMin());
+        assertEquals(60, result.getMax());
+        assertEquals(40, result.getAverage(), DELTA);
+        assertEquals(200, result.getFirstTime());
+        assertEquals(300, result.getLastTime());
+    }
+
+    @Test
+    public void reportsEmptyWindow() {
+        TimeSeries series = new TimeSeries(8);
+        series.add(100, 10);
+
+        assertFalse(series.aggregate(101, 200, result));
+        assertTrue(result.isEmpty());
+        assertEquals("[]", result.toString());
+    }
+
+    @Test
+    public void overwritesOldestReadingsIfFull() {
+        TimeSeries series = new TimeSeries(3);
+        for (int i = 1; i <= 5; i++) {
+            series.add(i * 10, i);
+        }
+
+        assertEquals(3, series.size());
+        assertTrue(series.aggregate(0, 100, result));
+        assertEquals(3, result.getCount());
+        assertEquals(3, result.getMin());
+        assertEquals(5, result.getMax());
+        assertEquals(30, result.getFirstTime());
+    }
+
+    @Test
+    public void takesEarlierTimeAsLastOne() {
+        TimeSeries series = new TimeSeries(4);
+        series.add(1000, 1);
+        // the clock has been set back
+        series.add(500, 2);
+
+        assertTrue(series.aggregate(1000, 1000, result));
+        assertEquals(2, result.getCount());
+        assertFalse(series.aggregate(0, 999, result));
+    }
+
+    @Test
+    public void downsamplesIntoBuckets() {
+        TimeSeries series = new TimeSeries(16);
+        series.add(0, 1);
+        series.add(10, 3);
+        series.add(25, 7);
+        series.add(39, 9);
+        Aggregate[] buckets = { new Aggregate(), new Aggregate(), new Aggregate(), new Aggregate() };
+
+        // buckets of 10 ms each: 0-9, 10-19, 20-29, 30-39
+        assertEquals(4, series.downsample(0, 39, buckets));
+        assertEquals(1, buckets[0].getMax());
+        assertEquals(3, buckets[1].getMax());
+        assertEquals(7, buckets[2].getMax());
+        assertEquals(9, buckets[3].getMax());
+
+        series.clear();
+        series.add(5, 4);
+
+        assertEquals(1, series.downsample(0, 39, buckets));
+        assertEquals(1, buckets[0].getCount());
+        assertTrue(buckets[1].isEmpty());
+    }
+
+    @Test
+    public void downsamplesEmptyOrReversedWindow() {
+        TimeSeries series = new TimeSeries(4);
+        series.add(5, 1);
+
+        assertEquals(0, series.downsample(0, 10, new Aggregate[0]));
+        assertEquals(0, series.downsample(10, 0, new Aggregate[] { new Aggregate() }));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsWindowTooLongToBeSplit() {
+        new TimeSeries(4).downsample(Long.MIN_VALUE, Long.MAX_VALUE, new Aggregate[] { new Aggregate() });
+    }
+
+    @Test
+    public void computesCapacityOfMemory() {
+        assertEquals(0, TimeSeries.capacityOf(-1));
+        assertEquals(1, TimeSeries.capacityOf(TimeSeries.BYTES_PER_SAMPLE));
+        assertEquals(1000, TimeSeries.capacityOf(1000L * TimeSeries.BYTES_PER_SAMPLE + 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCapacityZero() {
+        new TimeSeries(0);
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Philipp - Initial contribution
+ */
+public class BinaryFramesTest {
+
+    private final List<String> frames = new ArrayList<String>();
+
+    private LineFramer framer;
+
+    @Before
+    public void setUp() {
+        framer = new LineFramer(new FrameListener() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                frames.add(Frames.toString(buffer, offset, length));
+            }
+        }, new BinaryFrameListener() {
+            @Override
+            public void onMessage(int messageId, byte[] buffer, int offset, int length) {
+                frames.add(messageId + ":" + BinaryFrames.decodeVarint(buffer, offset, length));
+            }
+        }, new ByteBufferPool(64, 1));
+    }
+
+    @Test
+    public void crc8MatchesCheckValue() {
+        // CRC-8 with polynomial 0x07 and initial value 0, like the sketches compute it
+        byte[] check = Frames.bytes("123456789");
+
+        assertEquals(0xF4, BinaryFrames.crc8(check, 0, check.length));
+        assertEquals(0, BinaryFrames.crc8(check, 0, 0));
+    }
+
+    @Test
+    public void crc8CoversOnlyGivenRange() {
+        byte[] data = Frames.bytes("xx123456789yy");
+
+        assertEquals(0xF4, BinaryFrames.crc8(data, 2, 9));
+    }
+
+    @Test
+    public void varintRoundTrip() {
+        byte[] buffer = new byte[5];
+        for (int value : new int[] { 0, 1, -1, 63, -64, 64, 1023, -1024, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+            int length = BinaryFrames.encodeVarint(value, buffer, 0);
+
+            assertEquals(value, BinaryFrames.decodeVarint(buffer, 0, length));
+        }
+    }
+
+    @Test
+    public void varintIsZigzagEncoded() {
+        byte[] buffer = new byte[5];
+
+        assertEquals(1, BinaryFrames.encodeVarint(-1, buffer, 0));
+        assertEquals(1, buffer[0]);
+        assertEquals(1, BinaryFrames.encodeVarint(63, buffer, 0));
+        assertEquals(2, BinaryFrames.encodeVarint(64, buffer, 0));
+        assertEquals(5, BinaryFrames.encodeVarint(Integer.MIN_VALUE, buffer, 0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsIncompleteVarint() {
+        BinaryFrames.decodeVarint(new byte[] { (byte) 0x80, (byte) 0x80 }, 0, 2);
+    }
+
+    @Test
+    public void encodesCompleteFrame() {
+        byte[] frame = BinaryFrames.encode(BinaryFrames.BRIGHTNESS, 42);
+
+        assertEquals(BinaryFrames.SYNC, frame[0]);
+        assertEquals(BinaryFrames.BRIGHTNESS, frame[1]);
+        assertEquals(1, frame[2]);
+        assertEquals(BinaryFrames.HEADER_LENGTH + 1 + BinaryFrames.CRC_LENGTH, frame.length);
+        assertEquals(BinaryFrames.crc8(frame, 1, 3), frame[frame.length - 1] & 0xFF);
+    }
+
+    @Test
+    public void framerAcceptsFramesBetweenLines() {
+        byte[] frame = BinaryFrames.encode(BinaryFrames.TEMPERATURE, 215);
+        feed("A=1\r\n");
+        // the frame arrives in two parts
+        framer.feed(frame, 0, 2);
+        framer.feed(frame, 2, frame.length - 2);
+        feed("B=2\r\n");
+
+        assertEquals("[A=1, " + BinaryFrames.TEMPERATURE + ":215, B=2]", frames.toString());
+        assertEquals(0, framer.getCorruptFrames());
+    }
+
+    @Test
+    public void framerSkipsFrameWithWrongChecksum() {
+        byte[] corrupt = BinaryFrames.encode(BinaryFrames.HUMIDITY, 40);
+        corrupt[corrupt.length - 1] ^= 0x01;
+        byte[] valid = BinaryFrames.encode(BinaryFrames.HUMIDITY, 41);
+
+        framer.feed(corrupt, 0, corrupt.length);
+        framer.feed(valid, 0, valid.length);
+        feed("A=1\r\n");
+
+        assertEquals("[" + BinaryFrames.HUMIDITY + ":41, A=1]", frames.toString());
+        assertEquals(1, framer.getCorruptFrames());
+    }
+
+    @Test
+    public void framerSkipsFrameWithTooLongPayload() {
+        byte[] frame = new byte[] { BinaryFrames.SYNC, BinaryFrames.HUMIDITY, BinaryFrames.MAX_PAYLOAD_LENGTH + 1 };
+
+        framer.feed(frame, 0, frame.length);
+        feed("A=1\r\n");
+
+        assertEquals(1, framer.getCorruptFrames());
+        assertTrue(frames.get(frames.size() - 1).endsWith("A=1"));
+    }
+
+    private void feed(String data) {
+        byte[] bytes = Frames.bytes(data);
+        framer.feed(bytes, 0, bytes.length);
+    }
+}
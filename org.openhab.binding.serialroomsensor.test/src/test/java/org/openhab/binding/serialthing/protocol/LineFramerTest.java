@@ -0,0 +1,124 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author Philipp - Initial contribution
+ */
+public class LineFramerTest {
+
+    private final List<String> frames = new ArrayList<String>();
+
+    private LineFramer framer;
+
+    @Before
+    public void setUp() {
+        framer = new LineFramer(new FrameListener() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                frames.add(Frames.toString(buffer, offset, length));
+            }
+        }, new ByteBufferPool(16, 1));
+    }
+
+    @Test
+    public void dispatchesCompleteLines() {
+        feed("A=1\r\nB=2\r\n");
+
+        assertEquals("[A=1, B=2]", frames.toString());
+        assertEquals(2, framer.getFrames());
+        assertEquals(0, framer.pending());
+    }
+
+    @Test
+    public void keepsIncompleteLineUntilItsRestArrives() {
+        feed("A=");
+        feed("1\r");
+
+        assertTrue(frames.isEmpty());
+        assertEquals(4, framer.pending());
+
+        feed("\nB");
+
+        assertEquals("[A=1]", frames.toString());
+        assertEquals(1, framer.pending());
+    }
+
+    @Test
+    public void splitsByteByByte() {
+        for (byte b : Frames.bytes("LEDSTATE=ON\r\nBRIGHTNESS=5\r\n")) {
+            framer.feed(new byte[] { b }, 0, 1);
+        }
+
+        assertEquals("[LEDSTATE=ON, BRIGHTNESS=5]", frames.toString());
+    }
+
+    @Test
+    public void ignoresEmptyLinesAndKeepsBareLineFeeds() {
+        feed("\r\nA=1\nB=2\r\n");
+
+        assertEquals("[A=1\nB=2]", frames.toString());
+    }
+
+    @Test
+    public void discardsLineLongerThanBuffer() {
+        feed("A=1\r\n0123456789abcdefghij\r\nB=2\r\n");
+
+        assertEquals("[A=1, B=2]", frames.toString());
+        assertEquals(1, framer.getCorruptFrames());
+    }
+
+    @Test
+    public void discardsTailOfLongLineAcrossFeeds() {
+        feed("0123456789abcdef");
+        feed("ghij");
+        feed("klm\r\nB=2\r\n");
+
+        assertEquals("[B=2]", frames.toString());
+        assertEquals(1, framer.getCorruptFrames());
+    }
+
+    @Test
+    public void countsRejectedFramesAsCorrupt() {
+        framer = new LineFramer(new FrameListener() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                frames.add(Frames.toString(buffer, offset, length));
+                Frames.parseInt(buffer, offset, length);
+            }
+        });
+
+        feed("42\r\nX\r\n7\r\n");
+
+        assertEquals(2, framer.getFrames());
+        assertEquals(1, framer.getCorruptFrames());
+    }
+
+    @Test
+    public void ignoresInputAfterRelease() {
+        feed("A=1\r\nB=");
+        framer.release();
+        feed("2\r\n");
+
+        assertEquals("[A=1]", frames.toString());
+        assertEquals(0, framer.pending());
+    }
+
+    private void feed(String data) {
+        byte[] bytes = Frames.bytes(data);
+        framer.feed(bytes, 0, bytes.length);
+    }
+}
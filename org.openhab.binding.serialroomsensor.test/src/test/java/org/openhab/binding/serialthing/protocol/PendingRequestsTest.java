@@ -0,0 +1,227 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * The timeouts are run by a {@link TimerWheel} which the test advances, so a response and a timeout never race by
+ * chance.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class PendingRequestsTest {
+
+    private static final long TICK = 10;
+
+    private static final long TIMEOUT = 3 * TICK;
+
+    private final TimerWheel wheel = new TimerWheel("test", TICK, 8, false);
+
+    private final List<String> lines = new ArrayList<String>();
+
+    private final List<String> sent = new ArrayList<String>();
+
+    private final PendingRequests requests = new PendingRequests(new FrameListener() {
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length) {
+            lines.add(Frames.toString(buffer, offset, length));
+        }
+    }, new BinaryFrameListener() {
+        @Override
+        public void onMessage(int messageId, byte[] buffer, int offset, int length) {
+            lines.add(messageId + ":" + length);
+        }
+    }, wheel);
+
+    private final PendingRequests.Sender sender = new PendingRequests.Sender() {
+        @Override
+        public void send(byte[] request) {
+            sent.add(Frames.toString(request, 0, request.length));
+        }
+    };
+
+    @Test
+    public void completesWithMatchingLineAndDispatchesAllLines() throws Exception {
+        RequestFuture future = send("TYPEID\n", ResponseMatcher.kind("TYPEID="));
+
+        receive("LOG=booting");
+        assertFalse(future.isDone());
+        receive("TYPEID=roomsensor");
+
+        assertEquals("TYPEID=roomsensor", future.get(0, TimeUnit.MILLISECONDS));
+        assertEquals("[LOG=booting, TYPEID=roomsensor]", lines.toString());
+        assertEquals("[TYPEID\n]", sent.toString());
+        assertEquals(0, requests.outstanding());
+        // the timeout has been cancelled
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void answersRequestsOfSameKindInOrder() throws Exception {
+        RequestFuture first = send("TYPEID\n", ResponseMatcher.kind("TYPEID="));
+        RequestFuture second = send("TYPEID\n", ResponseMatcher.kind("TYPEID="));
+
+        receive("TYPEID=first");
+        assertFalse(second.isDone());
+        receive("TYPEID=second");
+
+        assertEquals("TYPEID=first", first.get());
+        assertEquals("TYPEID=second", second.get());
+    }
+
+    @Test
+    public void matchesTaggedResponseOnly() throws Exception {
+        RequestFuture future = send("ECHO=ab12\n", ResponseMatcher.tagged("ECHO=", "ab12"));
+
+        receive("ECHO=ab1");
+        receive("ECHO=ab123");
+        assertFalse(future.isDone());
+        receive("ECHO=ab12");
+
+        assertEquals("ECHO=ab12", future.get());
+    }
+
+    @Test
+    public void failsOnTimeoutAndIgnoresLateResponse() {
+        RequestFuture future = send("TYPEID\n", ResponseMatcher.kind("TYPEID="));
+
+        ticks(2);
+        assertFalse(future.isDone());
+        ticks(1);
+
+        assertTrue(future.getFailure() instanceof TimeoutException);
+        assertEquals(0, requests.outstanding());
+
+        receive("TYPEID=roomsensor");
+        assertTrue(future.getFailure() instanceof TimeoutException);
+        assertEquals("[TYPEID=roomsensor]", lines.toString());
+    }
+
+    @Test
+    public void responseBeforeTimeoutTickWins() throws Exception {
+        RequestFuture future = send("TYPEID\n", ResponseMatcher.kind("TYPEID="));
+
+        ticks(2);
+        receive("TYPEID=roomsensor");
+        ticks(1);
+
+        assertEquals("TYPEID=roomsensor", future.get());
+    }
+
+    @Test
+    public void completesWithResponseReceivedDuringWrite() throws Exception {
+        RequestFuture future = requests.send(Frames.bytes("TYPEID\n"), ResponseMatcher.kind("TYPEID="),
+                new PendingRequests.Sender() {
+                    @Override
+                    public void send(byte[] request) {
+                        // the device answers before the write returns
+                        receive("TYPEID=roomsensor");
+                    }
+                }, TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertEquals("TYPEID=roomsensor", future.get(0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void failsIfRequestCouldNotBeSent() {
+        RequestFuture future = requests.send(Frames.bytes("TYPEID\n"), ResponseMatcher.kind("TYPEID="),
+                new PendingRequests.Sender() {
+                    @Override
+                    public void send(byte[] request) throws IOException {
+                        throw new IOException("port closed");
+                    }
+                }, TIMEOUT, TimeUnit.MILLISECONDS);
+
+        assertTrue(future.getFailure() instanceof IOException);
+        assertEquals(0, requests.outstanding());
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void cancelledRequestGetsNoResponse() throws Exception {
+        RequestFuture cancelled = send("TYPEID\n", ResponseMatcher.kind("TYPEID="));
+        RequestFuture next = send("TYPEID\n", ResponseMatcher.kind("TYPEID="));
+
+        assertTrue(cancelled.cancel(false));
+        assertEquals(1, wheel.pending());
+        receive("TYPEID=roomsensor");
+
+        assertTrue(cancelled.isCancelled());
+        assertEquals("TYPEID=roomsensor", next.get());
+        assertFalse(cancelled.cancel(false));
+    }
+
+    @Test
+    public void limitsOutstandingRequests() {
+        for (int i = 0; i < PendingRequests.MAX_OUTSTANDING; i++) {
+            assertFalse(send("TYPEID\n", ResponseMatcher.kind("TYPEID=")).isDone());
+        }
+
+        RequestFuture rejected = send("TYPEID\n", ResponseMatcher.kind("TYPEID="));
+
+        assertTrue(rejected.getFailure() instanceof IOException);
+        assertEquals(PendingRequests.MAX_OUTSTANDING, requests.outstanding());
+        assertEquals(PendingRequests.MAX_OUTSTANDING, sent.size());
+    }
+
+    @Test
+    public void failsPendingAndLaterRequestsOnClose() {
+        RequestFuture pending = send("TYPEID\n", ResponseMatcher.kind("TYPEID="));
+
+        requests.close();
+        RequestFuture later = send("TYPEID\n", ResponseMatcher.kind("TYPEID="));
+
+        assertTrue(pending.getFailure() instanceof IOException);
+        assertTrue(later.getFailure() instanceof IOException);
+        assertEquals(0, wheel.pending());
+        assertEquals("[TYPEID\n]", sent.toString());
+    }
+
+    @Test
+    public void passesBinaryFramesOn() {
+        send("TYPEID\n", ResponseMatcher.kind("TYPEID="));
+
+        requests.onMessage(BinaryFrames.TEMPERATURE, new byte[2], 0, 2);
+
+        assertEquals("[" + BinaryFrames.TEMPERATURE + ":2]", lines.toString());
+        assertEquals(1, requests.outstanding());
+    }
+
+    @Test(expected = ExecutionException.class)
+    public void getThrowsFailure() throws Exception {
+        RequestFuture future = send("TYPEID\n", ResponseMatcher.kind("TYPEID="));
+        ticks(3);
+
+        future.get();
+    }
+
+    private RequestFuture send(String request, ResponseMatcher matcher) {
+        return requests.send(Frames.bytes(request), matcher, sender, TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private void receive(String line) {
+        byte[] bytes = Frames.bytes(line);
+        requests.onFrame(bytes, 0, bytes.length);
+    }
+
+    private void ticks(int count) {
+        for (int i = 0; i < count; i++) {
+            wheel.tick();
+        }
+    }
+}
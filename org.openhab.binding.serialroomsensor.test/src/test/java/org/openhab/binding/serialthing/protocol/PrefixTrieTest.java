@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+/**
+ * @author Philipp - Initial contribution
+ */
+public class PrefixTrieTest {
+
+    private final PrefixTrie<String> trie = new PrefixTrie<String>();
+
+    @Test
+    public void findsLongestRegisteredPrefix() {
+        trie.put(Frames.bytes("B"), "b");
+        trie.put(Frames.bytes("BRIGHTNESS="), "brightness");
+        trie.put(Frames.bytes("BAUDRATE="), "baudrate");
+
+        assertEquals("brightness", lookup("BRIGHTNESS=42"));
+        assertEquals("baudrate", lookup("BAUDRATE=9600"));
+        assertEquals("b", lookup("BRIGHT"));
+        assertEquals("b", lookup("B"));
+        assertNull(lookup("TEMPERATURE=21"));
+        assertNull(lookup(""));
+    }
+
+    @Test
+    public void replacesValueOfSamePrefix() {
+        assertNull(trie.put(Frames.bytes("LEDSTATE="), "first"));
+        assertEquals("first", trie.put(Frames.bytes("LEDSTATE="), "second"));
+
+        assertEquals("second", lookup("LEDSTATE=ON"));
+    }
+
+    @Test
+    public void emptyPrefixMatchesEverything() {
+        trie.put(new byte[0], "any");
+        trie.put(Frames.bytes("LOG="), "log");
+
+        assertEquals("any", lookup("UNKNOWN"));
+        assertEquals("log", lookup("LOG=started"));
+    }
+
+    @Test
+    public void looksUpWithinBuffer() {
+        trie.put(Frames.bytes("HUMIDITY="), "humidity");
+        byte[] buffer = Frames.bytes("xxHUMIDITY=55yy");
+
+        assertEquals("humidity", trie.longestPrefix(buffer, 2, 11));
+        // the prefix is cut off by the length
+        assertNull(trie.longestPrefix(buffer, 2, 5));
+    }
+
+    @Test
+    public void keepsChildrenSortedForManyEntries() {
+        for (char c = 'Z'; c >= 'A'; c--) {
+            trie.put(Frames.bytes(c + "="), String.valueOf(c));
+        }
+        // labels of all byte values, also negative ones
+        trie.put(new byte[] { (byte) 0xA5 }, "sync");
+
+        for (char c = 'A'; c <= 'Z'; c++) {
+            assertEquals(String.valueOf(c), lookup(c + "=1"));
+        }
+        assertEquals("sync", trie.longestPrefix(new byte[] { (byte) 0xA5, 1 }, 0, 2));
+    }
+
+    @Test
+    public void dispatcherPassesValueBehindPrefix() {
+        final StringBuilder received = new StringBuilder();
+        CommandDispatcher dispatcher = new CommandDispatcher();
+        dispatcher.register("BRIGHTNESS=", new CommandDispatcher.IntDecoder() {
+            @Override
+            protected void onValue(int value) {
+                received.append("brightness ").append(value).append(';');
+            }
+        }).register("LEDSTATE=", new CommandDispatcher.BooleanDecoder("ON") {
+            @Override
+            protected void onValue(boolean value) {
+                received.append("led ").append(value).append(';');
+            }
+        }).onUnknownCommand(new CommandDispatcher.CommandDecoder() {
+            @Override
+            public void decode(byte[] buffer, int offset, int length) {
+                received.append("unknown ").append(Frames.toString(buffer, offset, length)).append(';');
+            }
+        });
+
+        assertTrue(dispatch(dispatcher, "BRIGHTNESS=512"));
+        assertTrue(dispatch(dispatcher, "LEDSTATE=ON"));
+        assertTrue(dispatch(dispatcher, "LEDSTATE=OFF"));
+        assertFalse(dispatch(dispatcher, "LOG=hello"));
+
+        assertEquals("brightness 512;led true;led false;unknown LOG=hello;", received.toString());
+    }
+
+    private String lookup(String frame) {
+        byte[] bytes = Frames.bytes(frame);
+        return trie.longestPrefix(bytes, 0, bytes.length);
+    }
+
+    private static boolean dispatch(CommandDispatcher dispatcher, String frame) {
+        byte[] bytes = Frames.bytes(frame);
+        return dispatcher.dispatch(bytes, 0, bytes.length);
+    }
+}
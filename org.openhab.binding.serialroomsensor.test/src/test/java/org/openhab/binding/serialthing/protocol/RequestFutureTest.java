@@ -0,0 +1,147 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * The listeners are executed by an executor which only collects them, so the test decides when they run.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class RequestFutureTest {
+
+    private final List<Runnable> tasks = new ArrayList<Runnable>();
+
+    private final Executor executor = new Executor() {
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+    };
+
+    private final RequestFuture future = new RequestFuture(ResponseMatcher.kind("TYPEID="));
+
+    private final List<String> notified = new ArrayList<String>();
+
+    @Test
+    public void completesOnce() throws Exception {
+        assertTrue(future.complete("TYPEID=roomsensor"));
+        assertFalse(future.complete("TYPEID=doorbell"));
+        assertFalse(future.fail(new TimeoutException()));
+        assertFalse(future.cancel(false));
+
+        assertEquals("TYPEID=roomsensor", future.get());
+        assertTrue(future.isDone());
+        assertNull(future.getFailure());
+        assertTrue(future.getRoundTripTime(TimeUnit.NANOSECONDS) >= 0);
+    }
+
+    @Test
+    public void executesListenerOnCompletion() {
+        future.addListener(listener("first"), executor);
+        future.addListener(listener("second"), executor);
+        assertTrue(tasks.isEmpty());
+
+        future.complete("TYPEID=roomsensor");
+        runTasks();
+
+        assertEquals("[first, second]", notified.toString());
+    }
+
+    @Test
+    public void executesListenerAddedWhenDone() {
+        future.fail(new IOException("port closed"));
+
+        future.addListener(listener("late"), executor);
+        runTasks();
+
+        assertEquals("[late]", notified.toString());
+    }
+
+    @Test
+    public void survivesRejectingExecutor() {
+        future.addListener(listener("rejected"), new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                throw new IllegalStateException("shut down");
+            }
+        });
+        future.addListener(listener("accepted"), executor);
+
+        assertTrue(future.complete("TYPEID=roomsensor"));
+        runTasks();
+
+        assertEquals("[accepted]", notified.toString());
+    }
+
+    @Test
+    public void runsCancelActionOnce() {
+        final List<String> cancelled = new ArrayList<String>();
+        future.onCancel = new Runnable() {
+            @Override
+            public void run() {
+                cancelled.add("removed");
+            }
+        };
+
+        assertTrue(future.cancel(true));
+        assertFalse(future.cancel(true));
+        assertFalse(future.complete("TYPEID=roomsensor"));
+
+        assertEquals("[removed]", cancelled.toString());
+        assertTrue(future.isCancelled());
+        assertEquals(-1, future.getRoundTripTime(TimeUnit.MILLISECONDS));
+    }
+
+    @Test(expected = CancellationException.class)
+    public void getThrowsIfCancelled() throws Exception {
+        future.cancel(false);
+
+        future.get();
+    }
+
+    @Test(expected = TimeoutException.class)
+    public void getWaitsOnlyForGivenTime() throws Exception {
+        future.get(10, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void failedFutureIsDone() {
+        RequestFuture failed = RequestFuture.failed(ResponseMatcher.kind("TYPEID="), new IOException("no port"));
+
+        assertTrue(failed.isDone());
+        assertEquals("no port", failed.getFailure().getMessage());
+        assertEquals(-1, failed.getRoundTripTime(TimeUnit.MILLISECONDS));
+    }
+
+    private Runnable listener(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                notified.add(name);
+            }
+        };
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * The wheel is advanced by the test with {@link TimerWheel#tick()}, except in {@link #runsTimeoutsByOwnThread()}.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class TimerWheelTest {
+
+    private static final long TICK = 10;
+
+    private final TimerWheel wheel = new TimerWheel("test", TICK, 8, false);
+
+    private final List<String> fired = new ArrayList<String>();
+
+    @Test
+    public void firesOnTickAfterDelay() {
+        wheel.schedule(task("a"), 25, TimeUnit.MILLISECONDS);
+
+        // rounded up to 3 ticks
+        assertEquals(0, ticks(2));
+        assertEquals(1, wheel.tick());
+        assertEquals("[a]", fired.toString());
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void firesWithoutDelayOnNextTick() {
+        wheel.schedule(task("a"), 0, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, wheel.tick());
+    }
+
+    @Test
+    public void waitsForMoreRoundsIfDelayExceedsWheel() {
+        // 20 ticks on a wheel of 8 slots
+        wheel.schedule(task("late"), 20 * TICK, TimeUnit.MILLISECONDS);
+        wheel.schedule(task("early"), 4 * TICK, TimeUnit.MILLISECONDS);
+
+        assertEquals(1, ticks(19));
+        assertEquals("[early]", fired.toString());
+        assertEquals(1, wheel.tick());
+        assertEquals("[early, late]", fired.toString());
+    }
+
+    @Test
+    public void cancelsTimeoutInSlotWithOthers() {
+        wheel.schedule(task("a"), TICK, TimeUnit.MILLISECONDS);
+        TimerWheel.Timeout b = wheel.schedule(task("b"), TICK, TimeUnit.MILLISECONDS);
+        wheel.schedule(task("c"), TICK, TimeUnit.MILLISECONDS);
+
+        assertTrue(wheel.cancel(b));
+        assertFalse(wheel.cancel(b));
+        assertEquals(2, wheel.pending());
+        assertEquals(2, wheel.tick());
+
+        assertFalse(fired.contains("b"));
+        assertEquals(2, fired.size());
+    }
+
+    @Test
+    public void doesNotCancelTimeoutWhichHasRun() {
+        TimerWheel.Timeout a = wheel.schedule(task("a"), TICK, TimeUnit.MILLISECONDS);
+        wheel.tick();
+
+        assertFalse(wheel.cancel(a));
+        assertEquals(0, wheel.pending());
+    }
+
+    @Test
+    public void runsOtherTimeoutsIfOneFails() {
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failing task");
+            }
+        }, TICK, TimeUnit.MILLISECONDS);
+        wheel.schedule(task("a"), TICK, TimeUnit.MILLISECONDS);
+
+        assertEquals(2, wheel.tick());
+        assertEquals("[a]", fired.toString());
+    }
+
+    @Test
+    public void schedulesFromTimeoutTask() {
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                wheel.schedule(task("again"), TICK, TimeUnit.MILLISECONDS);
+            }
+        }, TICK, TimeUnit.MILLISECONDS);
+
+        wheel.tick();
+        assertEquals(1, wheel.pending());
+        wheel.tick();
+        assertEquals("[again]", fired.toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void isNotTickedIfThreaded() {
+        new TimerWheel("threaded", TICK, 8).tick();
+    }
+
+    @Test
+    public void runsTimeoutsByOwnThread() throws InterruptedException {
+        TimerWheel threaded = new TimerWheel("threaded", 1, 16);
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable countDown = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+
+        threaded.schedule(countDown, 5, TimeUnit.MILLISECONDS);
+        // more than one turn of the wheel
+        threaded.schedule(countDown, 40, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(0, threaded.pending());
+    }
+
+    private Runnable task(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                fired.add(name);
+            }
+        };
+    }
+
+    private int ticks(int count) {
+        int run = 0;
+        for (int i = 0; i < count; i++) {
+            run += wheel.tick();
+        }
+        return run;
+    }
+}
@@ -0,0 +1,203 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.simulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.serialthing.transport.LoopbackSerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransports;
+
+/**
+ * The {@link DeviceSimulator} attaches {@link SimulatedDevice}s to in-memory serial lines, so the discovery and the
+ * handlers can be tested without hardware, also with hundreds of devices. The devices are plugged in and out by
+ * {@link #attach(Firmware, String)}, {@link #unplug(String)} and {@link #replug(String, String)}. After
+ * {@link #install()} the bindings open the simulated ports instead of the real ones.
+ * <p>
+ * Started as a program, one device is simulated at a real port, i.e. one end of a pseudo terminal pair created by
+ * <code>socat -d -d pty,raw,echo=0 pty,raw,echo=0</code>, whose other end is configured in openHAB:
+ * <p>
+ * Usage: <code>java -cp ... org.openhab.binding.serialthing.simulator.DeviceSimulator
+ * roomsensor|doorbell|led port [value interval ms] [log interval ms] [fragmentation] [noise rate]</code>
+ *
+ * @author Philipp - Initial contribution
+ */
+public class DeviceSimulator {
+
+    private final LoopbackSerialTransport.Provider provider;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final boolean ownScheduler;
+
+    private final Map<String, SimulatedDevice> devices = new TreeMap<String, SimulatedDevice>();
+
+    private long seed;
+
+    /**
+     * Creates a simulator with its own lines and scheduler.
+     *
+     * @param threads the number of threads shared by the devices
+     */
+    public DeviceSimulator(int threads) {
+        this(new LoopbackSerialTransport.Provider(), Executors.newScheduledThreadPool(threads), true);
+    }
+
+    /**
+     * @param scheduler runs the devices, is not shut down by {@link #shutdown()}
+     */
+    public DeviceSimulator(LoopbackSerialTransport.Provider provider, ScheduledExecutorService scheduler) {
+        this(provider, scheduler, false);
+    }
+
+    private DeviceSimulator(LoopbackSerialTransport.Provider provider, ScheduledExecutorService scheduler,
+            boolean ownScheduler) {
+        this.provider = provider;
+        this.scheduler = scheduler;
+        this.ownScheduler = ownScheduler;
+    }
+
+    /**
+     * @param seed the seed of the next attached device, the following devices get the next seeds
+     */
+    public synchronized void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Plugs in a new device, replacing a device at the same port.
+     *
+     * @return the started device, which can be configured further
+     */
+    public SimulatedDevice attach(Firmware firmware, String portName) throws IOException {
+        unplug(portName);
+        LoopbackSerialTransport deviceEnd = provider.attach(portName);
+        SimulatedDevice device;
+        synchronized (this) {
+            device = new SimulatedDevice(firmware, deviceEnd, scheduler, seed++);
+            devices.put(portName, device);
+        }
+        device.start();
+        return device;
+    }
+
+    /**
+     * Plugs in devices at the ports <code>portPrefix0</code> to <code>portPrefix(count - 1)</code>.
+     */
+    public List<SimulatedDevice> attach(Firmware firmware, String portPrefix, int count) throws IOException {
+        List<SimulatedDevice> attached = new ArrayList<SimulatedDevice>(count);
+        for (int i = 0; i < count; i++) {
+            attached.add(attach(firmware, portPrefix + i));
+        }
+        return attached;
+    }
+
+    /**
+     * Pulls the plug: the device stops and both ends of its line are closed, the port disappears.
+     */
+    public void unplug(String portName) {
+        SimulatedDevice device;
+        synchronized (this) {
+            device = devices.remove(portName);
+        }
+        if (device != null) {
+            device.stop();
+        }
+        provider.detach(portName);
+    }
+
+    /**
+     * Unplugs the device and plugs in a device with the same firmware at another port, like an USB adapter which gets
+     * a new device node. The device is reset.
+     *
+     * @return the new device, <code>null</code> if there was no device at the port
+     */
+    public SimulatedDevice replug(String portName, String newPortName) throws IOException {
+        SimulatedDevice device = getDevice(portName);
+        if (device == null) {
+            return null;
+        }
+        unplug(portName);
+        return attach(device.getFirmware(), newPortName);
+    }
+
+    public synchronized SimulatedDevice getDevice(String portName) {
+        return devices.get(portName);
+    }
+
+    public synchronized Collection<SimulatedDevice> getDevices() {
+        return new ArrayList<SimulatedDevice>(devices.values());
+    }
+
+    public LoopbackSerialTransport.Provider getProvider() {
+        return provider;
+    }
+
+    /**
+     * Lets the bindings use the simulated ports, see {@link SerialTransports#setProvider}.
+     */
+    public void install() {
+        SerialTransports.setProvider(provider);
+    }
+
+    /**
+     * Unplugs all devices and lets the bindings use the real ports again, if {@link #install()}ed.
+     */
+    public void shutdown() {
+        for (SimulatedDevice device : getDevices()) {
+            unplug(device.getPortName());
+        }
+        if (SerialTransports.getProvider() == provider) {
+            SerialTransports.setProvider(null);
+        }
+        if (ownScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("usage: DeviceSimulator roomsensor|doorbell|led port [value interval ms]"
+                    + " [log interval ms] [fragmentation] [noise rate]");
+            return;
+        }
+        Firmware firmware = Firmware.of(args[0]);
+        SerialTransport port = SerialTransports.getProvider().createTransport(args[1]);
+        port.open();
+
+        final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        final SimulatedDevice device = new SimulatedDevice(firmware, port, scheduler, System.nanoTime());
+        device.start();
+        device.setValueInterval(args.length > 2 ? Long.parseLong(args[2]) : 2000);
+        device.setLogInterval(args.length > 3 ? Long.parseLong(args[3]) : 0);
+        if (firmware == Firmware.DOORBELL) {
+            device.setPressInterval(args.length > 2 ? Long.parseLong(args[2]) : 10000);
+        }
+        device.setFragmentation(args.length > 4 ? Integer.parseInt(args[4]) : 0);
+        device.setNoiseRate(args.length > 5 ? Double.parseDouble(args[5]) : 0);
+        System.out.println("simulating " + firmware + " at " + port.getPortName());
+
+        while (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+            System.out.println(device);
+            if (!device.isRunning()) {
+                break;
+            }
+        }
+        device.stop();
+        port.close();
+        scheduler.shutdownNow();
+    }
+}
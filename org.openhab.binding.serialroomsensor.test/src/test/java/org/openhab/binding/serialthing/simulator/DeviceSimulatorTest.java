@@ -0,0 +1,173 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.simulator;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openhab.binding.serialthing.protocol.FrameListener;
+import org.openhab.binding.serialthing.protocol.Frames;
+import org.openhab.binding.serialthing.protocol.LineFramer;
+import org.openhab.binding.serialthing.transport.SerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransportListener;
+
+/**
+ * Talks to the simulated firmwares through the host end of their lines, like a handler does.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class DeviceSimulatorTest {
+
+    private static final String PORT = "/dev/ttySIM0";
+
+    private static final long TIMEOUT = 5000;
+
+    private DeviceSimulator simulator;
+
+    private SerialTransport host;
+
+    private final BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+
+    @Before
+    public void setUp() {
+        simulator = new DeviceSimulator(2);
+        simulator.setSeed(42);
+    }
+
+    @After
+    public void tearDown() {
+        if (host != null) {
+            host.close();
+        }
+        simulator.shutdown();
+    }
+
+    @Test
+    public void answersTypeId() throws IOException, InterruptedException {
+        SimulatedDevice device = simulator.attach(Firmware.ROOMSENSOR, PORT);
+        device.setValueInterval(0);
+        open();
+
+        send("TYPEID\n");
+
+        assertEquals("FRAMINGS=" + Firmware.ROOMSENSOR.getFramings(), awaitLine("FRAMINGS="));
+        assertEquals("TYPEID=roomsensor", awaitLine("TYPEID="));
+    }
+
+    @Test
+    public void switchesLed() throws IOException, InterruptedException {
+        SimulatedDevice device = simulator.attach(Firmware.LED, PORT);
+        device.setValueInterval(0);
+        open();
+
+        send("ON\n");
+
+        assertEquals("LEDSTATE=ON", awaitLine("LEDSTATE="));
+        assertTrue(device.isLedOn());
+
+        send("OFF\n");
+
+        assertEquals("LEDSTATE=OFF", awaitLine("LEDSTATE="));
+        assertFalse(device.isLedOn());
+        assertEquals(2, device.getCommandsReceived());
+    }
+
+    @Test
+    public void sendsCurrentValuesInFragments() throws IOException, InterruptedException {
+        SimulatedDevice device = simulator.attach(Firmware.ROOMSENSOR, PORT);
+        device.setValueInterval(0);
+        device.setValues(40, 21, 55);
+        device.setFragmentation(3);
+        open();
+
+        send("CURRENTVALUES\n");
+
+        assertEquals("BRIGHTNESS=40", awaitLine("BRIGHTNESS="));
+        assertEquals("HUMIDITY=55", awaitLine("HUMIDITY="));
+        assertEquals("TEMPERATURE=21", awaitLine("TEMPERATURE="));
+    }
+
+    @Test
+    public void unplugRemovesPort() throws IOException {
+        simulator.attach(Firmware.DOORBELL, PORT);
+        open();
+
+        simulator.unplug(PORT);
+
+        assertFalse(Arrays.asList(simulator.getProvider().getPortNames()).contains(PORT));
+        assertNull(simulator.getDevice(PORT));
+        assertEquals(-1, host.read(ByteBuffer.allocate(16)));
+    }
+
+    @Test
+    public void replugMovesDevice() throws IOException {
+        simulator.attach(Firmware.DOORBELL, PORT);
+
+        SimulatedDevice device = simulator.replug(PORT, "/dev/ttySIM1");
+
+        assertEquals("/dev/ttySIM1", device.getPortName());
+        assertEquals(Firmware.DOORBELL, device.getFirmware());
+        assertEquals(Arrays.asList("/dev/ttySIM1"), Arrays.asList(simulator.getProvider().getPortNames()));
+    }
+
+    private void open() throws IOException {
+        host = simulator.getProvider().createTransport(PORT);
+        host.open();
+        host.setBaudRate(SimulatedDevice.DEFAULT_BAUDRATE);
+        final LineFramer framer = new LineFramer(new FrameListener() {
+            @Override
+            public void onFrame(byte[] buffer, int offset, int length) {
+                lines.add(Frames.toString(buffer, offset, length));
+            }
+        });
+        final ByteBuffer buffer = ByteBuffer.allocate(256);
+        host.setListener(new SerialTransportListener() {
+            @Override
+            public synchronized void onDataAvailable(SerialTransport source) {
+                try {
+                    while (source.read(buffer) > 0) {
+                        buffer.flip();
+                        framer.feed(buffer);
+                        buffer.clear();
+                    }
+                } catch (IOException e) {
+                    // unplugged, the test sees the missing lines
+                }
+            }
+        });
+    }
+
+    private void send(String command) throws IOException {
+        byte[] data = Frames.bytes(command);
+        host.write(data, 0, data.length);
+    }
+
+    /**
+     * @return the next received line with the prefix, the other lines (i.e. log messages) are skipped
+     */
+    private String awaitLine(String prefix) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        String line;
+        do {
+            line = lines.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            if (line == null) {
+                fail("no line " + prefix + " received within " + TIMEOUT + " ms");
+            }
+        } while (!line.startsWith(prefix));
+        return line;
+    }
+}
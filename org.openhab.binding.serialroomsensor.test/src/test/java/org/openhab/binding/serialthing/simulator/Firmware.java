@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.simulator;
+
+/**
+ * The {@link Firmware} describes the protocol of a device emulated by a {@link SimulatedDevice}, like the sketches in
+ * the <code>arduino</code> folder of this binding.
+ *
+ * @author Philipp - Initial contribution
+ */
+public enum Firmware {
+
+    /** Sends brightness, temperature and humidity, as text lines, combined lines or binary frames. */
+    ROOMSENSOR("roomsensor", "binary,combined", "9600,19200,38400,57600,115200"),
+
+    /** Sends the presses of the button, as text lines or binary frames. */
+    DOORBELL("doorbell", "binary", "9600,19200,38400,57600,115200"),
+
+    /**
+     * Switches its LED by <code>ON</code> and <code>OFF</code>, answered by <code>LEDSTATE=</code>, and sends the
+     * brightness. Only text lines at a fixed baud rate.
+     */
+    LED("led", null, null);
+
+    private final String typeId;
+    private final String framings;
+    private final String baudRates;
+
+    private Firmware(String typeId, String framings, String baudRates) {
+        this.typeId = typeId;
+        this.framings = framings;
+        this.baudRates = baudRates;
+    }
+
+    /**
+     * @return the answer to <code>TYPEID</code>, the id of the thing type
+     */
+    public String getTypeId() {
+        return typeId;
+    }
+
+    /**
+     * @return the framings announced before the type id, <code>null</code> if only text lines are supported
+     */
+    public String getFramings() {
+        return framings;
+    }
+
+    /**
+     * @return the baud rates announced before the type id, <code>null</code> if the rate can not be switched
+     */
+    public String getBaudRates() {
+        return baudRates;
+    }
+
+    /**
+     * @param typeId i.e. <code>roomsensor</code>
+     * @throws IllegalArgumentException if there is no firmware with the type id
+     */
+    public static Firmware of(String typeId) {
+        for (Firmware firmware : values()) {
+            if (firmware.typeId.equalsIgnoreCase(typeId)) {
+                return firmware;
+            }
+        }
+        throw new IllegalArgumentException("unknown firmware: " + typeId);
+    }
+}
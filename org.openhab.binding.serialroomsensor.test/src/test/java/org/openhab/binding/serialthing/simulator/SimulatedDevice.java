@@ -0,0 +1,610 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.simulator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.binding.serialthing.protocol.BinaryFrames;
+import org.openhab.binding.serialthing.protocol.Frames;
+import org.openhab.binding.serialthing.protocol.Sample;
+import org.openhab.binding.serialthing.transport.SerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransportListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SimulatedDevice} emulates the firmware of a device at the device end of a serial line, i.e. a
+ * {@link org.openhab.binding.serialthing.transport.LoopbackSerialTransport} or a pseudo terminal. Like the sketches,
+ * it answers <code>TYPEID</code>, <code>CURRENTVALUES</code>, <code>FRAMING=</code>, <code>BAUDRATE=</code> and
+ * <code>ECHO=</code>, switches the LED by <code>ON</code> and <code>OFF</code> and sends changed values and log
+ * messages in the configured intervals.
+ * <p>
+ * The received commands are processed by the scheduler, not by the thread which has written them, so the device
+ * answers later like a real one. For tests, faults can be injected: the output can be split into fragments, lines can
+ * be garbled and answers delayed. The values are drawn from a random generator with a fixed seed, so a run can be
+ * repeated.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class SimulatedDevice implements SerialTransportListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SimulatedDevice.class);
+
+    /** The rate of the devices after a reset. */
+    public static final int DEFAULT_BAUDRATE = 9600;
+
+    /** The previous baud rate is used again, if no echo is received within this time after a switch. */
+    private static final long BAUDRATE_VERIFY_TIMEOUT = 5000;
+
+    /** Time the doorbell button is held. */
+    private static final long PRESS_DURATION = 200;
+
+    /** Longest incomplete line kept, like the input queue of the sketches. */
+    private static final int MAX_INPUT_LENGTH = 256;
+
+    private static final int MAX_NOISE_BYTES = 8;
+
+    private final Firmware firmware;
+
+    private final SerialTransport transport;
+
+    private final ScheduledExecutorService scheduler;
+
+    /** Guarded by this, like all state of the firmware. */
+    private final Random random;
+
+    private final StringBuilder input = new StringBuilder();
+
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(256);
+
+    /** Held while writing, so the output of a device is never interleaved. */
+    private final Object outputLock = new Object();
+
+    private final Runnable processInput = new Runnable() {
+        @Override
+        public void run() {
+            processInput();
+        }
+    };
+
+    // state of the firmware, guarded by this
+    private int brightness;
+    private int temperature;
+    private int humidity;
+    private boolean pressed;
+    private boolean ledOn;
+    private boolean sendAll = true;
+    private int lastBrightness = -1;
+    private int lastTemperature = -1;
+    private int lastHumidity = -1;
+    private String framing = BinaryFrames.FRAMING_ASCII;
+    private int baudRate = DEFAULT_BAUDRATE;
+    private int previousBaudRate = DEFAULT_BAUDRATE;
+    private boolean baudRateUnverified;
+    private boolean running;
+    private ScheduledFuture<?> valueTask;
+    private ScheduledFuture<?> logTask;
+    private ScheduledFuture<?> pressTask;
+    private ScheduledFuture<?> verifyTask;
+
+    // configuration, see the setters
+    private volatile long valueInterval = 500;
+    private volatile long logInterval = 0;
+    private volatile long pressInterval = 0;
+    private volatile long responseDelay = 0;
+    private volatile int fragmentation = 0;
+    private volatile double noiseRate = 0;
+
+    private final AtomicLong commandsReceived = new AtomicLong();
+    private final AtomicLong linesSent = new AtomicLong();
+    private final AtomicLong noiseInjected = new AtomicLong();
+
+    /**
+     * @param transport the opened device end of the line
+     * @param scheduler processes the commands and sends the values, may be shared by many devices
+     * @param seed the seed of the random values and faults
+     */
+    public SimulatedDevice(Firmware firmware, SerialTransport transport, ScheduledExecutorService scheduler,
+            long seed) {
+        this.firmware = firmware;
+        this.transport = transport;
+        this.scheduler = scheduler;
+        this.random = new Random(seed);
+        this.brightness = firmware == Firmware.LED ? random.nextInt(1024) : random.nextInt(101);
+        this.temperature = 18 + random.nextInt(8);
+        this.humidity = 35 + random.nextInt(20);
+    }
+
+    /**
+     * Resets the device: it listens at {@value #DEFAULT_BAUDRATE} baud, sends text lines and starts sending values.
+     */
+    public synchronized void start() throws IOException {
+        transport.setBaudRate(DEFAULT_BAUDRATE);
+        transport.setListener(this);
+        running = true;
+        reschedule();
+    }
+
+    /**
+     * Stops sending. The transport is not closed.
+     */
+    public synchronized void stop() {
+        running = false;
+        cancel(valueTask);
+        cancel(logTask);
+        cancel(pressTask);
+        cancel(verifyTask);
+        valueTask = null;
+        logTask = null;
+        pressTask = null;
+        verifyTask = null;
+        try {
+            transport.setListener(null);
+        } catch (IOException e) {
+            // already closed
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    private void reschedule() {
+        cancel(valueTask);
+        cancel(logTask);
+        cancel(pressTask);
+        valueTask = schedule(new Runnable() {
+            @Override
+            public void run() {
+                tick();
+            }
+        }, firmware == Firmware.DOORBELL ? 0 : valueInterval);
+        logTask = schedule(new Runnable() {
+            @Override
+            public void run() {
+                log("uptime tick");
+            }
+        }, logInterval);
+        pressTask = schedule(new Runnable() {
+            @Override
+            public void run() {
+                press();
+            }
+        }, firmware == Firmware.DOORBELL ? pressInterval : 0);
+    }
+
+    private ScheduledFuture<?> schedule(Runnable task, long interval) {
+        if (!running || interval <= 0) {
+            return null;
+        }
+        // the devices of a simulation do not send at the same time
+        long delay = 1 + (long) (random.nextDouble() * interval);
+        return scheduler.scheduleAtFixedRate(task, delay, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private static void cancel(ScheduledFuture<?> task) {
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    @Override
+    public void onDataAvailable(SerialTransport source) {
+        boolean complete = false;
+        synchronized (readBuffer) {
+            try {
+                int count;
+                while ((count = source.read(readBuffer)) > 0) {
+                    for (int i = 0; i < count; i++) {
+                        char ch = (char) (readBuffer.get(i) & 0xFF);
+                        complete |= ch == '\n';
+                        synchronized (input) {
+                            if (input.length() < MAX_INPUT_LENGTH || ch == '\n') {
+                                input.append(ch);
+                            }
+                        }
+                    }
+                    readBuffer.clear();
+                }
+            } catch (IOException e) {
+                LOG.debug("simulated {} at {} could not read: {}", firmware, transport.getPortName(), e.getMessage());
+            }
+        }
+        if (complete) {
+            long delay = responseDelay;
+            if (delay > 0) {
+                scheduler.schedule(processInput, delay, TimeUnit.MILLISECONDS);
+            } else {
+                scheduler.execute(processInput);
+            }
+        }
+    }
+
+    private void processInput() {
+        while (true) {
+            String command;
+            synchronized (input) {
+                int end = input.indexOf("\n");
+                if (end < 0) {
+                    return;
+                }
+                command = input.substring(0, end).trim();
+                input.delete(0, end + 1);
+            }
+            if (!command.isEmpty()) {
+                commandsReceived.incrementAndGet();
+                handleCommand(command);
+            }
+        }
+    }
+
+    private synchronized void handleCommand(String command) {
+        if (!running) {
+            return;
+        }
+        if (baudRateUnverified) {
+            // everything else is garbage received at the wrong rate
+            if (command.startsWith("ECHO=")) {
+                baudRateUnverified = false;
+                cancel(verifyTask);
+                sendLine("ECHO=" + command.substring("ECHO=".length()));
+            }
+            return;
+        }
+        log("read serial input = " + command);
+
+        if (command.equals("TYPEID")) {
+            log("type id requested. send type id...");
+            if (firmware.getFramings() != null) {
+                sendLine("FRAMINGS=" + firmware.getFramings());
+            }
+            if (firmware.getBaudRates() != null) {
+                sendLine("BAUDRATES=" + firmware.getBaudRates());
+            }
+            sendLine("TYPEID=" + firmware.getTypeId());
+        } else if (command.equals("CURRENTVALUES")) {
+            sendCurrentValues();
+        } else if (command.startsWith("FRAMING=") && firmware.getFramings() != null
+                && firmware.getFramings().contains(command.substring("FRAMING=".length()))) {
+            framing = command.substring("FRAMING=".length());
+            sendLine(command);
+            sendCurrentValues();
+        } else if (command.startsWith("BAUDRATE=") && firmware.getBaudRates() != null) {
+            switchBaudRate(command.substring("BAUDRATE=".length()));
+        } else if (firmware == Firmware.LED && (command.equals("ON") || command.equals("OFF"))) {
+            ledOn = command.equals("ON");
+            sendLine("LEDSTATE=" + command);
+        } else {
+            log("unknown command: " + command);
+        }
+    }
+
+    private void switchBaudRate(String requested) {
+        int rate;
+        try {
+            rate = Integer.parseInt(requested);
+        } catch (NumberFormatException e) {
+            rate = 0;
+        }
+        if (!("," + firmware.getBaudRates() + ",").contains("," + rate + ",")) {
+            log("unsupported baud rate requested: " + requested);
+            return;
+        }
+        // acknowledged at the old rate
+        sendLine("BAUDRATE=" + rate);
+        previousBaudRate = baudRate;
+        setBaudRate(rate);
+        baudRateUnverified = true;
+        verifyTask = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedDevice.this) {
+                    if (baudRateUnverified) {
+                        baudRateUnverified = false;
+                        setBaudRate(previousBaudRate);
+                    }
+                }
+            }
+        }, BAUDRATE_VERIFY_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private void setBaudRate(int rate) {
+        try {
+            transport.setBaudRate(rate);
+            baudRate = rate;
+        } catch (IOException e) {
+            LOG.debug("simulated {} at {} could not switch baud rate: {}", firmware, transport.getPortName(),
+                    e.getMessage());
+        }
+        synchronized (input) {
+            input.setLength(0);
+        }
+    }
+
+    private void sendCurrentValues() {
+        if (firmware == Firmware.LED) {
+            sendLine("LEDSTATE=" + (ledOn ? "ON" : "OFF"));
+            sendLine("BRIGHTNESS=" + brightness);
+        } else if (firmware == Firmware.DOORBELL) {
+            sendPressed();
+        } else {
+            sendAll = true;
+            sendChangedValues();
+        }
+    }
+
+    /**
+     * Changes the values like the sensors would and sends the changed ones.
+     */
+    private synchronized void tick() {
+        if (firmware == Firmware.LED) {
+            brightness = Math.max(0, Math.min(1023, brightness + random.nextInt(33) - 16));
+            sendLine("BRIGHTNESS=" + brightness);
+            return;
+        }
+        int step = 1 + random.nextInt(3);
+        brightness = Math.max(0, Math.min(100, brightness + (random.nextBoolean() ? step : -step)));
+        if (random.nextInt(5) == 0) {
+            temperature += random.nextBoolean() ? 1 : -1;
+        }
+        if (random.nextInt(5) == 0) {
+            humidity = Math.max(0, Math.min(100, humidity + (random.nextBoolean() ? 1 : -1)));
+        }
+        sendChangedValues();
+    }
+
+    private void sendChangedValues() {
+        boolean all = sendAll;
+        sendAll = false;
+        if (Sample.FRAMING_COMBINED.equals(framing)) {
+            if (all || brightness != lastBrightness || temperature != lastTemperature || humidity != lastHumidity) {
+                sendLine(Sample.PREFIX + "B=" + brightness + ";T=" + temperature + ";H=" + humidity);
+            }
+        } else {
+            if (all || brightness != lastBrightness) {
+                sendValue("BRIGHTNESS", BinaryFrames.BRIGHTNESS, brightness);
+            }
+            if (all || humidity != lastHumidity) {
+                sendValue("HUMIDITY", BinaryFrames.HUMIDITY, humidity);
+            }
+            if (all || temperature != lastTemperature) {
+                sendValue("TEMPERATURE", BinaryFrames.TEMPERATURE, temperature);
+            }
+        }
+        lastBrightness = brightness;
+        lastTemperature = temperature;
+        lastHumidity = humidity;
+    }
+
+    /**
+     * Presses the doorbell button and releases it after {@value #PRESS_DURATION} ms.
+     */
+    public synchronized void press() {
+        pressed = true;
+        sendPressed();
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SimulatedDevice.this) {
+                    pressed = false;
+                    sendPressed();
+                }
+            }
+        }, PRESS_DURATION, TimeUnit.MILLISECONDS);
+    }
+
+    private void sendPressed() {
+        if (BinaryFrames.FRAMING_BINARY.equals(framing)) {
+            write(BinaryFrames.encode(BinaryFrames.DOORBELL_PRESSED, pressed ? 1 : 0), true);
+        } else {
+            sendLine("DOORBELL_PRESSED=" + pressed);
+        }
+    }
+
+    /**
+     * Sends a value at once in the current framing, i.e. to drive a load test with known values. The value is not
+     * kept as state of the device.
+     *
+     * @param key the key of the value in a combined line, i.e. {@link Sample#TEMPERATURE}
+     */
+    public synchronized void send(byte key, int value) {
+        if (Sample.FRAMING_COMBINED.equals(framing)) {
+            sendLine(Sample.PREFIX + (char) key + "=" + value);
+            return;
+        }
+        switch (key) {
+            case Sample.BRIGHTNESS:
+                sendValue("BRIGHTNESS", BinaryFrames.BRIGHTNESS, value);
+                break;
+            case Sample.TEMPERATURE:
+                sendValue("TEMPERATURE", BinaryFrames.TEMPERATURE, value);
+                break;
+            case Sample.HUMIDITY:
+                sendValue("HUMIDITY", BinaryFrames.HUMIDITY, value);
+                break;
+            case Sample.DOORBELL_PRESSED:
+                if (BinaryFrames.FRAMING_BINARY.equals(framing)) {
+                    write(BinaryFrames.encode(BinaryFrames.DOORBELL_PRESSED, value), true);
+                } else {
+                    sendLine("DOORBELL_PRESSED=" + (value != 0));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("unknown key: " + (char) key);
+        }
+    }
+
+    private void sendValue(String name, int messageId, int value) {
+        if (BinaryFrames.FRAMING_BINARY.equals(framing)) {
+            write(BinaryFrames.encode(messageId, value), true);
+        } else {
+            sendLine(name + "=" + value);
+        }
+    }
+
+    private void log(String message) {
+        sendLine("LOG=" + message);
+    }
+
+    /**
+     * Sends a line terminated like <code>Serial.println</code>.
+     */
+    public void sendLine(String line) {
+        write(Frames.bytes(line + "\r\n"), false);
+    }
+
+    /**
+     * Writes the bytes as configured: garbled with the noise rate and split into fragments.
+     */
+    private void write(byte[] data, boolean binary) {
+        synchronized (this) {
+            if (noiseRate > 0 && random.nextDouble() < noiseRate) {
+                data = garble(data, binary);
+                noiseInjected.incrementAndGet();
+            }
+        }
+        try {
+            synchronized (outputLock) {
+                int maxFragment = fragmentation;
+                int offset = 0;
+                while (offset < data.length) {
+                    int length = data.length - offset;
+                    if (maxFragment > 0) {
+                        synchronized (this) {
+                            length = Math.min(length, 1 + random.nextInt(maxFragment));
+                        }
+                    }
+                    transport.write(data, offset, length);
+                    offset += length;
+                }
+            }
+            linesSent.incrementAndGet();
+        } catch (IOException e) {
+            LOG.debug("simulated {} at {} disconnected: {}", firmware, transport.getPortName(), e.getMessage());
+            stop();
+        }
+    }
+
+    /**
+     * Inserts random bytes before the data or flips a bit in it, the line delimiter is kept.
+     */
+    private byte[] garble(byte[] data, boolean binary) {
+        int payload = binary ? data.length : data.length - 2;
+        if (random.nextBoolean() || payload <= 0) {
+            byte[] garbled = new byte[data.length + 1 + random.nextInt(MAX_NOISE_BYTES)];
+            for (int i = 0; i < garbled.length - data.length; i++) {
+                garbled[i] = (byte) random.nextInt(256);
+            }
+            System.arraycopy(data, 0, garbled, garbled.length - data.length, data.length);
+            return garbled;
+        }
+        byte[] garbled = data.clone();
+        garbled[random.nextInt(payload)] ^= 1 << random.nextInt(7);
+        return garbled;
+    }
+
+    /**
+     * @param interval the interval in milliseconds in which the values change and are sent, 0 to send only on
+     *            request. Not used by the doorbell.
+     */
+    public synchronized void setValueInterval(long interval) {
+        this.valueInterval = interval;
+        reschedule();
+    }
+
+    /**
+     * @param interval the interval in milliseconds in which a log message is sent, 0 for none
+     */
+    public synchronized void setLogInterval(long interval) {
+        this.logInterval = interval;
+        reschedule();
+    }
+
+    /**
+     * @param interval the interval in milliseconds in which the doorbell is pressed, 0 to press only by
+     *            {@link #press()}
+     */
+    public synchronized void setPressInterval(long interval) {
+        this.pressInterval = interval;
+        reschedule();
+    }
+
+    /**
+     * @param delay the time in milliseconds until a received command is processed
+     */
+    public void setResponseDelay(long delay) {
+        this.responseDelay = delay;
+    }
+
+    /**
+     * @param maxFragment the maximum number of bytes written at once, 0 to write every line at once
+     */
+    public void setFragmentation(int maxFragment) {
+        this.fragmentation = maxFragment;
+    }
+
+    /**
+     * @param rate the probability a line or frame is garbled, from 0 to 1
+     */
+    public void setNoiseRate(double rate) {
+        this.noiseRate = rate;
+    }
+
+    public synchronized void setValues(int brightness, int temperature, int humidity) {
+        this.brightness = brightness;
+        this.temperature = temperature;
+        this.humidity = humidity;
+    }
+
+    public Firmware getFirmware() {
+        return firmware;
+    }
+
+    public String getPortName() {
+        return transport.getPortName();
+    }
+
+    public synchronized boolean isLedOn() {
+        return ledOn;
+    }
+
+    public synchronized String getFraming() {
+        return framing;
+    }
+
+    public synchronized int getBaudRate() {
+        return baudRate;
+    }
+
+    public long getCommandsReceived() {
+        return commandsReceived.get();
+    }
+
+    /**
+     * @return the number of lines and frames sent
+     */
+    public long getLinesSent() {
+        return linesSent.get();
+    }
+
+    public long getNoiseInjected() {
+        return noiseInjected.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SimulatedDevice [" + firmware + " at " + transport.getPortName() + ", received=" + getCommandsReceived()
+                + ", sent=" + getLinesSent() + ", noise=" + getNoiseInjected() + "]";
+    }
+}
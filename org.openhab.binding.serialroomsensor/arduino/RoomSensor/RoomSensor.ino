@@ -4,16 +4,48 @@ const String SERIALID_OUT_HUMIDITY = "HUMIDITY";
 const String SERIALID_OUT_TEMPERATURE = "TEMPERATURE";
 const String SERIALID_OUT_TYPEID = "TYPEID";
 
+// frame formats the device can send besides text lines, announced before the type id
+const String SERIALID_OUT_FRAMINGS = "FRAMINGS";
+// acknowledges the switch to binary frames or combined lines
+const String SERIALID_OUT_FRAMING = "FRAMING";
+// all values of a cycle in one line (i.e. V:B=51;T=21;H=40)
+const String SERIALID_OUT_SAMPLE = "V:";
+// baud rates the device can switch to, announced before the type id
+const String SERIALID_OUT_BAUDRATES = "BAUDRATES";
+// acknowledges a baud rate switch, sent before switching
+const String SERIALID_OUT_BAUDRATE = "BAUDRATE";
+// answers the echo request, which verifies the new baud rate
+const String SERIALID_OUT_ECHO = "ECHO";
+
 // Logging over serial bus for debugging
 const String SERIALID_OUT_LOG = "LOG";
 
 // separate command and value (i.e. BRIGHTNESS=100)
 const String SERIALID_OUT_SEPARATOR = "=";
 
+// binary frames: SYNC | message id | payload length | payload (zigzag varint) | CRC-8 (polynomial 0x07)
+const byte BINARY_SYNC = 0xA5;
+const byte BINARY_ID_BRIGHTNESS = 0x01;
+const byte BINARY_ID_TEMPERATURE = 0x02;
+const byte BINARY_ID_HUMIDITY = 0x03;
+
 // incoming command if device type is requested
 const String SERIALID_IN_TYPEID = "TYPEID";
 // incoming command to send all current values (i.e. for initialization of an ui element)
 const String SERIALID_IN_CURRENTVALUES = "CURRENTVALUES";
+// incoming command to send binary frames from now on, answered like CURRENTVALUES
+const String SERIALID_IN_FRAMING_BINARY = "FRAMING=binary";
+// incoming command to send combined lines from now on, answered like CURRENTVALUES
+const String SERIALID_IN_FRAMING_COMBINED = "FRAMING=combined";
+// incoming command to switch the baud rate (i.e. BAUDRATE=115200)
+const String SERIALID_IN_BAUDRATE = "BAUDRATE=";
+// incoming command to verify the new baud rate, the value is sent back
+const String SERIALID_IN_ECHO = "ECHO=";
+
+// baud rate after reset
+const long DEFAULT_BAUDRATE = 9600;
+// the previous baud rate is used again, if no echo is received within this time after a switch (ms)
+const unsigned long BAUDRATE_VERIFY_TIMEOUT = 5000;
 
 // Input of the photo resistor sensor
 const int PIN_IN_BRIGHTNESS = A5;
@@ -30,6 +62,17 @@ int lastBrightness = -1;
 byte lastHumidity = -1;
 byte lastTemperature = -1;
 
+// send binary frames instead of text lines, requested by the binding
+bool binaryFraming = false;
+// send all values of a cycle in one line, requested by the binding
+bool combinedFraming = false;
+
+// baud rate switch, which is not verified by an echo yet
+long baudRate = DEFAULT_BAUDRATE;
+long previousBaudRate = DEFAULT_BAUDRATE;
+bool baudRateUnverified = false;
+unsigned long baudRateSwitchTime = 0;
+
 // queue of all incoming serial commands. Holds more than one, if the processing speed is not fast enough.
 String queue = "";
 // contains the current incoming command. See serialEvent().
@@ -42,15 +85,17 @@ void setup() {
   pinMode(PIN_IN_HUMI_TEMP, OUTPUT);
   pinMode(PIN_OUT_REFRESH, OUTPUT);
   
-  Serial.begin(9600);
+  Serial.begin(DEFAULT_BAUDRATE);
 }
 
 // the loop routine runs over and over again forever
 void loop() {
 
+  checkBaudRateVerified();
+  checkBaudRateRequested();
   checkTypeIdRequested();
   
-  if (isCurrentValuesRequested()) {
+  if (isCurrentValuesRequested() || isBinaryFramingRequested() || isCombinedFramingRequested()) {
     lastBrightness = -1;
     lastHumidity = -1;
     lastTemperature = -1;
@@ -60,22 +105,31 @@ void loop() {
 
 	int brightness = readBrightness();
 
-	if (lastBrightness != brightness) {
-	  lastBrightness = brightness;
-	  writeBrightnessToSerial(brightness);
-	}
-
 	byte humiTemp[5];
 	readHumiTemp(humiTemp);
 
-	if (lastHumidity != humiTemp[0]) {
-	  lastHumidity = humiTemp[0];
-	  writeHumidityToSerial(humiTemp[0]);
-	}
-
-	if (lastTemperature != humiTemp[2]) {
-	  lastTemperature = humiTemp[2];
-	  writeTemperatureToSerial(humiTemp[2]);
+	if (combinedFraming) {
+	  if (lastBrightness != brightness || lastHumidity != humiTemp[0] || lastTemperature != humiTemp[2]) {
+	    lastBrightness = brightness;
+	    lastHumidity = humiTemp[0];
+	    lastTemperature = humiTemp[2];
+	    writeSampleToSerial(brightness, humiTemp[2], humiTemp[0]);
+	  }
+	} else {
+	  if (lastBrightness != brightness) {
+	    lastBrightness = brightness;
+	    writeBrightnessToSerial(brightness);
+	  }
+
+	  if (lastHumidity != humiTemp[0]) {
+	    lastHumidity = humiTemp[0];
+	    writeHumidityToSerial(humiTemp[0]);
+	  }
+
+	  if (lastTemperature != humiTemp[2]) {
+	    lastTemperature = humiTemp[2];
+	    writeTemperatureToSerial(humiTemp[2]);
+	  }
 	}
 
 	switchUpdateLEDOff();
@@ -188,18 +242,32 @@ bool isCurrentValuesRequested() {
 }
 
 void writeBrightnessToSerial(int brightness) {
-  writeToSerial(SERIALID_OUT_BRIGHTNESS, (String) brightness);
+  if (binaryFraming) {
+    writeBinaryToSerial(BINARY_ID_BRIGHTNESS, brightness);
+  } else {
+    writeToSerial(SERIALID_OUT_BRIGHTNESS, (String) brightness);
+  }
 }
 
 void writeHumidityToSerial(byte humidity) {
-  writeToSerial(SERIALID_OUT_HUMIDITY, (String) humidity);
+  if (binaryFraming) {
+    writeBinaryToSerial(BINARY_ID_HUMIDITY, humidity);
+  } else {
+    writeToSerial(SERIALID_OUT_HUMIDITY, (String) humidity);
+  }
 }
 
 void writeTemperatureToSerial(byte temperature) {
-  writeToSerial(SERIALID_OUT_TEMPERATURE, (String) temperature);
+  if (binaryFraming) {
+    writeBinaryToSerial(BINARY_ID_TEMPERATURE, temperature);
+  } else {
+    writeToSerial(SERIALID_OUT_TEMPERATURE, (String) temperature);
+  }
 }
 
 void writeTypeIdToSerial() {
+  writeToSerial(SERIALID_OUT_FRAMINGS, "binary,combined");
+  writeToSerial(SERIALID_OUT_BAUDRATES, "9600,19200,38400,57600,115200");
 	writeToSerial(SERIALID_OUT_TYPEID, "roomsensor");
 }
 
@@ -207,6 +275,119 @@ void writeToSerial(String command, String value) {
   Serial.println(command + SERIALID_OUT_SEPARATOR + value);
 }
 
+bool isBinaryFramingRequested() {
+
+  if (serialInputComplete && SERIALID_IN_FRAMING_BINARY.equals(serialInput)) {
+    writeLog("FRAMING command received");
+    serialInput = "";
+    serialInputComplete = false;
+    writeToSerial(SERIALID_OUT_FRAMING, "binary");
+    combinedFraming = false;
+    binaryFraming = true;
+    return true;
+  }
+  return false;
+}
+
+bool isCombinedFramingRequested() {
+
+  if (serialInputComplete && SERIALID_IN_FRAMING_COMBINED.equals(serialInput)) {
+    writeLog("FRAMING command received");
+    serialInput = "";
+    serialInputComplete = false;
+    writeToSerial(SERIALID_OUT_FRAMING, "combined");
+    binaryFraming = false;
+    combinedFraming = true;
+    return true;
+  }
+  return false;
+}
+
+// all values of a cycle at once, so they are published together
+void writeSampleToSerial(int brightness, byte temperature, byte humidity) {
+  Serial.println(SERIALID_OUT_SAMPLE + "B=" + brightness + ";T=" + temperature + ";H=" + humidity);
+}
+
+void checkBaudRateRequested() {
+
+  if (serialInputComplete && serialInput.startsWith(SERIALID_IN_BAUDRATE)) {
+    long requested = serialInput.substring(SERIALID_IN_BAUDRATE.length()).toInt();
+    serialInput = "";
+    serialInputComplete = false;
+    if (!isSupportedBaudRate(requested)) {
+      writeLog("unsupported baud rate requested: ", (String) requested);
+      return;
+    }
+    writeToSerial(SERIALID_OUT_BAUDRATE, (String) requested);
+    previousBaudRate = baudRate;
+    switchBaudRate(requested);
+    baudRateUnverified = true;
+    baudRateSwitchTime = millis();
+  }
+}
+
+// Until the echo is received, all other input is garbage received at a wrong baud rate.
+void checkBaudRateVerified() {
+
+  if (!baudRateUnverified) {
+    return;
+  }
+  if (serialInputComplete) {
+    if (serialInput.startsWith(SERIALID_IN_ECHO)) {
+      writeToSerial(SERIALID_OUT_ECHO, serialInput.substring(SERIALID_IN_ECHO.length()));
+      baudRateUnverified = false;
+    }
+    serialInput = "";
+    serialInputComplete = false;
+  }
+  if (baudRateUnverified && millis() - baudRateSwitchTime > BAUDRATE_VERIFY_TIMEOUT) {
+    switchBaudRate(previousBaudRate);
+    baudRateUnverified = false;
+  }
+}
+
+bool isSupportedBaudRate(long rate) {
+  return rate == 9600 || rate == 19200 || rate == 38400 || rate == 57600 || rate == 115200;
+}
+
+void switchBaudRate(long rate) {
+  // send the pending output at the old rate
+  Serial.flush();
+  Serial.end();
+  Serial.begin(rate);
+  baudRate = rate;
+  queue = "";
+  serialInput = "";
+  serialInputComplete = false;
+}
+
+void writeBinaryToSerial(byte messageId, long value) {
+  byte frame[9];
+  unsigned long zigzag = (value << 1) ^ (value >> 31);
+  byte length = 0;
+  while (zigzag >= 0x80) {
+    frame[3 + length++] = (zigzag & 0x7F) | 0x80;
+    zigzag >>= 7;
+  }
+  frame[3 + length++] = zigzag;
+  frame[0] = BINARY_SYNC;
+  frame[1] = messageId;
+  frame[2] = length;
+  frame[3 + length] = crc8(frame + 1, 2 + length);
+  Serial.write(frame, 4 + length);
+}
+
+byte crc8(const byte data[], int length) {
+  byte crc = 0;
+  for (int i = 0; i < length; i++) {
+    crc ^= data[i];
+    for (int bit = 0; bit < 8; bit++) {
+      crc = (crc & 0x80) ? (crc << 1) ^ 0x07 : crc << 1;
+    }
+  }
+  return crc;
+}
+
 void switchUpdateLEDOn() {
   digitalWrite(13, HIGH);
 }
@@ -43,6 +43,15 @@ public class SerialThingBindingConstants {
 
     public final static String PARAM_SERIALPORT = "serialport";
     public final static String PARAM_REFRESHRATE = "refreshrate";
+    public final static String PARAM_BRIGHTNESS_DEADBAND = "brightnessdeadband";
+    public final static String PARAM_TEMPERATURE_DEADBAND = "temperaturedeadband";
+    public final static String PARAM_HUMIDITY_DEADBAND = "humiditydeadband";
+    public final static String PARAM_MAX_SILENCE = "maxsilence";
+    public final static String PARAM_BAUDRATE = "baudrate";
+    public final static String PARAM_MAX_BAUDRATE = "maxbaudrate";
+    public final static String PARAM_METRICS_INTERVAL = "metricsinterval";
+    public final static String PARAM_HISTORY_BUDGET = "historybudget";
+    public final static String PARAM_OVERFLOW_POLICY = "overflowpolicy";
 
     public final static String LINE_DELIMITER = "\r\n";
 }
@@ -0,0 +1,178 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.capture;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * The {@link CaptureReader} reads the records of a capture file written by a {@link CaptureWriter} one after the
+ * other. The file is mapped, so the records are not copied until the data is read.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class CaptureReader implements Closeable {
+
+    private final File file;
+
+    private final RandomAccessFile access;
+
+    private final ByteBuffer buffer;
+
+    private final long startTime;
+
+    private final String portName;
+
+    private byte kind;
+    private long time;
+    private int offset;
+    private int length;
+
+    /**
+     * @throws IOException if the file can not be read or is no capture file
+     */
+    public CaptureReader(File file) throws IOException {
+        this.file = file;
+        this.access = new RandomAccessFile(file, "r");
+        try {
+            long size = access.length();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("capture file " + file + " too large");
+            }
+            buffer = access.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            byte[] magic = new byte[CaptureWriter.MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, CaptureWriter.MAGIC) || buffer.get() != CaptureWriter.VERSION) {
+                throw new IOException(file + " is no capture file of version " + CaptureWriter.VERSION);
+            }
+            startTime = buffer.getLong();
+            byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            portName = new String(name, "UTF-8");
+        } catch (IOException | RuntimeException e) {
+            access.close();
+            throw e instanceof IOException ? (IOException) e : new IOException(file + " is no capture file", e);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the port the traffic has been captured at
+     */
+    public String getPortName() {
+        return portName;
+    }
+
+    /**
+     * @return the start of the capture in milliseconds since the epoch
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return <code>false</code> at the end of the data, also if the last record is incomplete
+     */
+    public boolean next() {
+        if (!buffer.hasRemaining()) {
+            return false;
+        }
+        int start = buffer.position();
+        try {
+            byte nextKind = buffer.get();
+            if (nextKind == CaptureWriter.END) {
+                buffer.position(start);
+                return false;
+            }
+            long delay = getVarint();
+            int nextLength = (int) getVarint();
+            if (nextLength < 0 || nextLength > buffer.remaining()) {
+                buffer.position(start);
+                return false;
+            }
+            kind = nextKind;
+            time += delay;
+            offset = buffer.position();
+            length = nextLength;
+            buffer.position(offset + length);
+            return true;
+        } catch (BufferUnderflowException e) {
+            buffer.position(start);
+            return false;
+        }
+    }
+
+    /**
+     * @return {@link CaptureWriter#RX} or {@link CaptureWriter#TX}
+     */
+    public byte getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the time of the record in microseconds since the start of the capture
+     */
+    public long getTime() {
+        return time;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Copies the bytes of the record, as many as fit into the target.
+     *
+     * @return the number of bytes copied
+     */
+    public int getData(ByteBuffer target) {
+        int count = Math.min(length, target.remaining());
+        ByteBuffer data = buffer.duplicate();
+        data.limit(offset + count);
+        data.position(offset);
+        target.put(data);
+        return count;
+    }
+
+    private long getVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new BufferUnderflowException();
+    }
+
+    @Override
+    public void close() {
+        try {
+            access.close();
+        } catch (IOException e) {
+            // nothing left to release
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "CaptureReader [" + file + ", port=" + portName + "]";
+    }
+}
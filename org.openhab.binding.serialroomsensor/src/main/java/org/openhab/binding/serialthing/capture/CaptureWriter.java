@@ -0,0 +1,228 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.capture;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+import org.openhab.binding.serialthing.protocol.Frames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link CaptureWriter} appends the raw chunks of a serial port to a memory-mapped capture file, so field
+ * problems can be reproduced by a {@link ReplayTransport}. Capturing is enabled by the system property
+ * {@value #PROPERTY}, which names the directory of the files. Every opened port gets its own file.
+ * <p>
+ * The file starts with a header: the magic <code>STCP</code>, the version, the start time in milliseconds and the
+ * port name. Every record is the kind ({@link #RX} or {@link #TX}), the microseconds since the previous record and the
+ * length as varints, then the bytes. The mapped region behind the last record is zero, which marks the end of the
+ * data, so a file is readable also if the process has been killed.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class CaptureWriter implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CaptureWriter.class);
+
+    /** The directory of the capture files, capturing is disabled if not set. */
+    public static final String PROPERTY = "org.openhab.binding.serialthing.capture";
+
+    /** The maximum size of a capture file in megabytes, see {@link #DEFAULT_MAX_SIZE}. */
+    public static final String MAX_SIZE_PROPERTY = "org.openhab.binding.serialthing.capture.maxsize";
+
+    public static final long DEFAULT_MAX_SIZE = 64L * 1024 * 1024;
+
+    public static final String FILE_EXTENSION = ".cap";
+
+    static final byte[] MAGIC = Frames.bytes("STCP");
+
+    static final byte VERSION = 1;
+
+    /** Marks the end of the data. */
+    static final byte END = 0;
+
+    /** Bytes received from the device. */
+    public static final byte RX = 1;
+
+    /** Bytes written to the device. */
+    public static final byte TX = 2;
+
+    /** The file is mapped in regions of this size. */
+    private static final int REGION_SIZE = 1024 * 1024;
+
+    /** The kind and two varints. */
+    private static final int MAX_RECORD_HEADER = 1 + 10 + 5;
+
+    private final File file;
+
+    private final RandomAccessFile access;
+
+    private final FileChannel channel;
+
+    private final long maxSize;
+
+    // guarded by this
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long lastNanos;
+    private boolean full;
+    private boolean closed;
+
+    /**
+     * Creates the file, an existing file is overwritten.
+     *
+     * @param maxSize the size in bytes after which nothing is captured anymore
+     */
+    public CaptureWriter(File file, String portName, long maxSize) throws IOException {
+        this.file = file;
+        this.maxSize = maxSize;
+        this.access = new RandomAccessFile(file, "rw");
+        try {
+            access.setLength(0);
+            this.channel = access.getChannel();
+            byte[] name = portName.getBytes("UTF-8");
+            map(0, MAGIC.length + 1 + 8 + 2 + name.length);
+            region.put(MAGIC);
+            region.put(VERSION);
+            region.putLong(System.currentTimeMillis());
+            region.putShort((short) name.length);
+            region.put(name);
+        } catch (IOException e) {
+            access.close();
+            throw e;
+        }
+        lastNanos = System.nanoTime();
+    }
+
+    /**
+     * Creates the capture file of the port, if enabled by the system property {@value #PROPERTY}.
+     *
+     * @return the writer, <code>null</code> if capturing is disabled or the file could not be created
+     */
+    public static CaptureWriter forPort(String portName) {
+        String directory = System.getProperty(PROPERTY);
+        if (directory == null || directory.isEmpty()) {
+            return null;
+        }
+        long maxSize = DEFAULT_MAX_SIZE;
+        String size = System.getProperty(MAX_SIZE_PROPERTY);
+        if (size != null) {
+            try {
+                maxSize = Long.parseLong(size) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                LOG.warn("invalid capture size '{}' -> use {} bytes", size, maxSize);
+            }
+        }
+        String time = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        File file = new File(directory, portName.replaceAll("[^A-Za-z0-9]+", "_") + "-" + time + FILE_EXTENSION);
+        try {
+            file.getParentFile().mkdirs();
+            CaptureWriter writer = new CaptureWriter(file, portName, maxSize);
+            LOG.info("capturing the traffic of {} to {}", portName, file);
+            return writer;
+        } catch (IOException e) {
+            LOG.warn("could not capture the traffic of {} to {}: {}", portName, file, e.getMessage());
+            return null;
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Appends the received or written bytes. Called by the serial event thread and the writers of the port.
+     *
+     * @param kind {@link #RX} or {@link #TX}
+     */
+    public synchronized void record(byte kind, byte[] data, int offset, int length) {
+        if (full || closed) {
+            return;
+        }
+        long now = System.nanoTime();
+        try {
+            if (region.remaining() < MAX_RECORD_HEADER + length) {
+                long position = regionStart + region.position();
+                if (position + MAX_RECORD_HEADER + length > maxSize) {
+                    full = true;
+                    LOG.warn("capture file {} reached its maximum size of {} bytes, capturing stopped", file,
+                            maxSize);
+                    return;
+                }
+                map(position, Math.max(REGION_SIZE, MAX_RECORD_HEADER + length));
+            }
+        } catch (IOException e) {
+            full = true;
+            LOG.warn("capture file {} could not be extended, capturing stopped: {}", file, e.getMessage());
+            return;
+        }
+        region.put(kind);
+        putVarint(region, Math.max(0, (now - lastNanos) / 1000));
+        putVarint(region, length);
+        region.put(data, offset, length);
+        // the time of the skipped sub-microsecond rest is added to the next record
+        lastNanos = now - (now - lastNanos) % 1000;
+    }
+
+    /**
+     * Appends the remaining bytes of the buffer without consuming them.
+     */
+    public void record(byte kind, ByteBuffer buffer) {
+        record(kind, buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * Cuts the file after the last record and closes it.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        long size = regionStart + region.position();
+        try {
+            region.force();
+            channel.truncate(size);
+        } catch (IOException e) {
+            // the zeros behind the records mark the end as well, i.e. if the mapping prevents truncating
+            LOG.debug("capture file {} not truncated: {}", file, e.getMessage());
+        }
+        try {
+            access.close();
+        } catch (IOException e) {
+            LOG.debug("capture file {} not closed: {}", file, e.getMessage());
+        }
+    }
+
+    private void map(long position, int size) throws IOException {
+        region = channel.map(FileChannel.MapMode.READ_WRITE, position, size);
+        regionStart = position;
+    }
+
+    static void putVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    @Override
+    public String toString() {
+        return "CaptureWriter [" + file + "]";
+    }
+}
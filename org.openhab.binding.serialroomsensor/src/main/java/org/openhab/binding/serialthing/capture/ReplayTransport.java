@@ -0,0 +1,291 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.capture;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openhab.binding.serialthing.transport.SerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransportListener;
+import org.openhab.binding.serialthing.transport.SerialTransportProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ReplayTransport} plays the received chunks of a capture file (see {@link CaptureWriter}) back to its
+ * listener, so the handlers and the discovery process them like the traffic of the real device. The chunks keep
+ * their size and are delivered at the captured pace, faster or as fast as possible. The replay starts when the first
+ * listener is set, bytes written to the port are dropped.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class ReplayTransport implements SerialTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReplayTransport.class);
+
+    /** Replays without pauses. */
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+
+    /**
+     * Provides the captured ports, i.e. for {@link org.openhab.binding.serialthing.transport.SerialTransports}.
+     */
+    public static class Provider implements SerialTransportProvider {
+
+        private final Map<String, File> captures = new TreeMap<String, File>();
+
+        private final Map<String, ReplayTransport> transports = new TreeMap<String, ReplayTransport>();
+
+        private final double speed;
+
+        /**
+         * @param speed the factor the captured pace is speeded up by, {@link ReplayTransport#AS_FAST_AS_POSSIBLE}
+         *            for no pauses
+         */
+        public Provider(double speed) {
+            this.speed = speed;
+        }
+
+        /**
+         * Adds the capture as the port it has been captured at, replacing a capture of the same port.
+         *
+         * @return the port name
+         */
+        public String add(File capture) throws IOException {
+            CaptureReader reader = new CaptureReader(capture);
+            try {
+                return add(reader.getPortName(), capture);
+            } finally {
+                reader.close();
+            }
+        }
+
+        /**
+         * Adds the capture as the given port.
+         *
+         * @return the port name
+         */
+        public synchronized String add(String portName, File capture) {
+            captures.put(portName, capture);
+            return portName;
+        }
+
+        @Override
+        public synchronized String[] getPortNames() {
+            return captures.keySet().toArray(new String[captures.size()]);
+        }
+
+        @Override
+        public synchronized SerialTransport createTransport(String portName) {
+            ReplayTransport transport = new ReplayTransport(portName, captures.get(portName), speed);
+            transports.put(portName, transport);
+            return transport;
+        }
+
+        /**
+         * @return the transport last created for the port, i.e. to wait until it has been replayed, <code>null</code>
+         *         if none
+         */
+        public synchronized ReplayTransport getTransport(String portName) {
+            return transports.get(portName);
+        }
+    }
+
+    private final String portName;
+
+    private final File capture;
+
+    private final double speed;
+
+    /** Holds the replayed bytes not read yet, from index 0 up to the buffer position. */
+    private final ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+
+    /** Held while the listener is called, so {@link #close()} can wait for it. */
+    private final Object listenerLock = new Object();
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /** Ends the pauses of the replay, when the port is closed. */
+    private final CountDownLatch closing = new CountDownLatch(1);
+
+    private final AtomicLong replayedBytes = new AtomicLong();
+
+    private volatile SerialTransportListener listener;
+
+    private volatile boolean open;
+
+    private CaptureReader reader;
+
+    private Thread replay;
+
+    /**
+     * @param capture the capture file, <code>null</code> if the port does not exist
+     */
+    public ReplayTransport(String portName, File capture, double speed) {
+        this.portName = portName;
+        this.capture = capture;
+        this.speed = speed;
+    }
+
+    @Override
+    public String getPortName() {
+        return portName;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        if (capture == null) {
+            throw new IOException("port " + portName + " does not exist");
+        }
+        if (open) {
+            throw new IOException("port " + portName + " currently in use");
+        }
+        if (reader != null) {
+            throw new IOException("capture of port " + portName + " already replayed");
+        }
+        reader = new CaptureReader(capture);
+        open = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void setBaudRate(int baudRate) throws IOException {
+        checkOpen();
+    }
+
+    @Override
+    public synchronized void setListener(SerialTransportListener listener) throws IOException {
+        checkOpen();
+        this.listener = listener;
+        if (listener != null && replay == null) {
+            replay = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    replay();
+                }
+            }, "serial replay " + portName);
+            replay.setDaemon(true);
+            replay.start();
+        }
+    }
+
+    private void replay() {
+        CaptureReader records = reader;
+        long start = System.nanoTime();
+        try {
+            while (open && records.next()) {
+                if (records.getKind() != CaptureWriter.RX) {
+                    continue;
+                }
+                if (speed > 0) {
+                    long due = start + (long) (TimeUnit.MICROSECONDS.toNanos(records.getTime()) / speed);
+                    long delay = due - System.nanoTime();
+                    if (delay > 0 && closing.await(delay, TimeUnit.NANOSECONDS)) {
+                        break;
+                    }
+                }
+                synchronized (pending) {
+                    records.getData(pending);
+                }
+                replayedBytes.addAndGet(records.getLength());
+                synchronized (listenerLock) {
+                    SerialTransportListener current = listener;
+                    if (open && current != null) {
+                        current.onDataAvailable(this);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (RuntimeException e) {
+            LOG.error("replay of {} failed", capture, e);
+        } finally {
+            done.countDown();
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        if (!open) {
+            return -1;
+        }
+        synchronized (pending) {
+            int count = Math.min(pending.position(), buffer.remaining());
+            if (count > 0) {
+                pending.flip();
+                int limit = pending.limit();
+                pending.limit(count);
+                buffer.put(pending);
+                pending.limit(limit);
+                pending.compact();
+            }
+            return count;
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        checkOpen();
+    }
+
+    /**
+     * Waits until all received chunks of the capture have been replayed.
+     *
+     * @return <code>false</code> if the timeout elapsed before
+     */
+    public boolean awaitReplayed(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    /**
+     * @return the number of bytes handed to the listener so far
+     */
+    public long getReplayedBytes() {
+        return replayedBytes.get();
+    }
+
+    @Override
+    public void close() {
+        Thread running;
+        synchronized (this) {
+            open = false;
+            running = replay;
+        }
+        closing.countDown();
+        if (running != null && running != Thread.currentThread()) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (listenerLock) {
+            listener = null;
+        }
+        synchronized (this) {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (!open) {
+            throw new IOException("port " + portName + " not open");
+        }
+    }
+}
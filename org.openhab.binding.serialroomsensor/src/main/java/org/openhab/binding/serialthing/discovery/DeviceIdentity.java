@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.discovery;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link DeviceIdentity} describes the device behind a serial port independent of the port name, which may change
+ * after a reconnect or a reboot.
+ * <p>
+ * On Linux the USB vendor id, product id and serial number are read from sysfs. If they are not available, the
+ * port name is used instead.
+ *
+ * @author Philipp - Initial contribution
+ */
+public final class DeviceIdentity {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeviceIdentity.class);
+
+    private static final Path SYSFS_TTY = Paths.get("/sys/class/tty");
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final String id;
+
+    private final boolean stable;
+
+    private DeviceIdentity(String id, boolean stable) {
+        this.id = id;
+        this.stable = stable;
+    }
+
+    /**
+     * @param port the port name, i.e. /dev/ttyACM0 or /dev/serial/by-id/usb-Arduino...
+     * @return the identity of the device currently attached to the port
+     */
+    public static DeviceIdentity of(String port) {
+        try {
+            Path devicePath = Paths.get(port);
+            if (Files.exists(devicePath)) {
+                String ttyName = devicePath.toRealPath().getFileName().toString();
+                Path usbDevice = findUsbDevice(SYSFS_TTY.resolve(ttyName).resolve("device"));
+                if (usbDevice != null) {
+                    String serial = read(usbDevice.resolve("serial"));
+                    return new DeviceIdentity("usb:" + read(usbDevice.resolve("idVendor")) + ":"
+                            + read(usbDevice.resolve("idProduct")) + ":"
+                            // without a serial number the USB bus path identifies the device
+                            + (serial != null ? serial : "@" + usbDevice.getFileName()), true);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("identity of port {} could not be determined, use port name: {}", port, e.getMessage());
+        }
+        return new DeviceIdentity("port:" + port, false);
+    }
+
+    /**
+     * @return the identity as string, i.e. <code>usb:2341:0043:75439333335351F0E1D1</code>
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return <code>true</code> if the identity is read from the device, <code>false</code> if only the port name
+     *         is known
+     */
+    public boolean isStable() {
+        return stable;
+    }
+
+    private static Path findUsbDevice(Path ttyDevice) throws IOException {
+        if (!Files.exists(ttyDevice)) {
+            return null;
+        }
+        // the tty device is an interface of the usb device, which is one of its parents
+        Path current = ttyDevice.toRealPath();
+        while (current != null && current.getNameCount() > 1) {
+            if (Files.exists(current.resolve("idVendor")) && Files.exists(current.resolve("idProduct"))) {
+                return current;
+            }
+            current = current.getParent();
+        }
+        return null;
+    }
+
+    private static String read(Path file) throws IOException {
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+        return new String(Files.readAllBytes(file), ASCII).trim();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof DeviceIdentity && id.equals(((DeviceIdentity) obj).id);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
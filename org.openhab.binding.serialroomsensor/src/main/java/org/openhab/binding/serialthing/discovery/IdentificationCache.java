@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.discovery;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+import org.eclipse.smarthome.config.core.ConfigConstants;
+import org.eclipse.smarthome.core.thing.ThingTypeUID;
+import org.openhab.binding.serialthing.handler.SerialPortCommunicator;
+import org.openhab.binding.serialthing.protocol.BinaryFrames;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link IdentificationCache} remembers the thing type of every device which was identified successfully, so it
+ * can be reported again without the type id handshake. The entries are stored in the user data folder and survive a
+ * restart.
+ * <p>
+ * Only devices with a stable {@link DeviceIdentity} are cached. An identity derived from the port name can not tell
+ * a replaced device from the old one, so such a device always gets the full handshake.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class IdentificationCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IdentificationCache.class);
+
+    private static final String FILE_NAME = "serialthing" + File.separator + "identification.properties";
+
+    private static final String SEPARATOR = ",";
+
+    /** Separates the baud rates within their field. */
+    private static final String BAUDRATE_SEPARATOR = " ";
+
+    private static final String DEFAULT_BAUDRATES = String.valueOf(SerialPortCommunicator.DEFAULT_BAUDRATE);
+
+    /**
+     * A cached thing type.
+     */
+    public static final class Entry {
+
+        private final ThingTypeUID thingTypeUID;
+        private final long lastVerified;
+        private final String framing;
+        private final String baudRates;
+
+        private Entry(ThingTypeUID thingTypeUID, long lastVerified, String framing, String baudRates) {
+            this.thingTypeUID = thingTypeUID;
+            this.lastVerified = lastVerified;
+            this.framing = framing;
+            this.baudRates = baudRates;
+        }
+
+        public ThingTypeUID getThingTypeUID() {
+            return thingTypeUID;
+        }
+
+        /**
+         * @return the time of the last successful handshake in milliseconds
+         */
+        public long getLastVerified() {
+            return lastVerified;
+        }
+
+        /**
+         * @return the frame format announced by the device
+         */
+        public String getFraming() {
+            return framing;
+        }
+
+        /**
+         * @return the comma separated baud rates announced by the device
+         */
+        public String getBaudRates() {
+            return baudRates;
+        }
+    }
+
+    private final File file;
+
+    private final Properties entries = new Properties();
+
+    public IdentificationCache() {
+        this(new File(ConfigConstants.getUserDataFolder(), FILE_NAME));
+    }
+
+    public IdentificationCache(File file) {
+        this.file = file;
+        load();
+    }
+
+    /**
+     * @return the cached entry of the device or <code>null</code> if the device is unknown or its identity is not
+     *         stable
+     */
+    public synchronized Entry get(DeviceIdentity identity) {
+        if (!identity.isStable()) {
+            return null;
+        }
+        String value = entries.getProperty(identity.getId());
+        if (value == null) {
+            return null;
+        }
+        // entries written before the framing and the baud rates have been added have less fields
+        String[] fields = value.split(SEPARATOR);
+        try {
+            return new Entry(new ThingTypeUID(fields[0]), Long.parseLong(fields[1]),
+                    fields.length > 2 ? fields[2] : BinaryFrames.FRAMING_ASCII,
+                    fields.length > 3 ? fields[3].replace(BAUDRATE_SEPARATOR, SEPARATOR) : DEFAULT_BAUDRATES);
+        } catch (RuntimeException e) {
+            LOG.debug("ignore invalid cache entry {}={}", identity, value);
+            return null;
+        }
+    }
+
+    /**
+     * Stores the thing type of a device after a successful handshake, if its identity is stable.
+     */
+    public synchronized void put(DeviceIdentity identity, ThingTypeUID thingTypeUID, String framing,
+            String baudRates) {
+        if (!identity.isStable()) {
+            // entries of the port name may have been stored before
+            remove(identity);
+            return;
+        }
+        entries.setProperty(identity.getId(), thingTypeUID.getAsString() + SEPARATOR + System.currentTimeMillis()
+                + SEPARATOR + framing + SEPARATOR + baudRates.replace(SEPARATOR, BAUDRATE_SEPARATOR));
+        store();
+    }
+
+    public synchronized void remove(DeviceIdentity identity) {
+        if (entries.remove(identity.getId()) != null) {
+            store();
+        }
+    }
+
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            entries.load(in);
+            LOG.debug("{} identified device(s) loaded from {}", entries.size(), file);
+        } catch (IOException e) {
+            LOG.warn("identification cache {} could not be loaded: {}", file, e.getMessage());
+        }
+    }
+
+    private void store() {
+        File tmp = new File(file.getPath() + ".tmp");
+        try {
+            file.getParentFile().mkdirs();
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                entries.store(out, "serial things identified by their type id");
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.warn("identification cache {} could not be stored: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.discovery;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SerialPortWatcher} reports serial port device nodes which appear or disappear. It is driven by file
+ * system change notifications, so nothing is polled.
+ * <p>
+ * Symbolic links (i.e. in <code>/dev/serial/by-id</code>) are reported with the port they point to.
+ * <p>
+ * A directory which does not exist yet is watched through its nearest existing parent and registered as soon as it is
+ * created, i.e. <code>/dev/serial/by-id</code>, which udev creates for the first USB serial device plugged in. If a
+ * watched directory is removed again, the watcher falls back to its parent.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class SerialPortWatcher implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SerialPortWatcher.class);
+
+    /** The serial port names on Linux, like the port names jssc lists. */
+    public static final Pattern LINUX_PORT_NAMES = Pattern.compile("(ttyS|ttyUSB|ttyACM|ttyAMA|rfcomm|ttyO)[0-9]{1,3}");
+
+    public interface PortListener {
+
+        /**
+         * @param port the absolute port name, i.e. /dev/ttyACM0
+         */
+        void portAdded(String port);
+
+        /**
+         * @param port the absolute port name, i.e. /dev/ttyACM0
+         */
+        void portRemoved(String port);
+    }
+
+    private final Path[] directories;
+
+    private final Pattern portNames;
+
+    private final PortListener listener;
+
+    private WatchService watchService;
+
+    /** The directories of the registered keys. */
+    private final Map<WatchKey, Path> watchedDirectories = new HashMap<WatchKey, Path>();
+
+    private Thread thread;
+
+    /**
+     * @param portNames the pattern of the device node names to report; links are reported if their target matches
+     * @param directories the directories to watch, missing directories are watched as soon as they are created
+     */
+    public SerialPortWatcher(Pattern portNames, PortListener listener, Path... directories) {
+        this.portNames = portNames;
+        this.listener = listener;
+        this.directories = directories;
+    }
+
+    /**
+     * @return a watcher for <code>/dev</code> and <code>/dev/serial/by-id</code>
+     */
+    public static SerialPortWatcher forLinux(PortListener listener) {
+        return new SerialPortWatcher(LINUX_PORT_NAMES, listener, Paths.get("/dev"), Paths.get("/dev/serial/by-id"));
+    }
+
+    /**
+     * Starts watching in a new thread.
+     *
+     * @return <code>false</code> if none of the directories nor any of their parents exists
+     */
+    public synchronized boolean start() throws IOException {
+        if (thread != null) {
+            return true;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        for (Path directory : directories) {
+            watch(directory);
+        }
+        if (watchedDirectories.isEmpty()) {
+            watchService.close();
+            watchService = null;
+            return false;
+        }
+        thread = new Thread(this, "serialthing-port-watcher");
+        thread.setDaemon(true);
+        thread.start();
+        LOG.debug("watching {} for serial ports", watchedDirectories.values());
+        return true;
+    }
+
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOG.debug("error during closing watch service", e);
+        }
+        thread.interrupt();
+        thread = null;
+        watchService = null;
+        watchedDirectories.clear();
+    }
+
+    @Override
+    public void run() {
+        WatchService service = watchService;
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = service.take();
+                Path directory;
+                synchronized (this) {
+                    directory = watchedDirectories.get(key);
+                }
+                if (directory != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        handle(directory, event);
+                    }
+                }
+                if (!key.reset()) {
+                    unwatched(key);
+                }
+            }
+        } catch (ClosedWatchServiceException | InterruptedException e) {
+            // stopped
+        }
+    }
+
+    /**
+     * Registers the directory, or its nearest existing parent if it does not exist yet. Called with the lock held.
+     */
+    private void watch(Path directory) throws IOException {
+        Path existing = directory;
+        while (existing != null && !Files.isDirectory(existing)) {
+            existing = existing.getParent();
+        }
+        while (existing != null) {
+            if (!watchedDirectories.containsValue(existing)) {
+                watchedDirectories.put(existing.register(watchService, ENTRY_CREATE, ENTRY_DELETE), existing);
+            }
+            if (existing.equals(directory)) {
+                return;
+            }
+            // the next directory may have been created before the registration, its creation is not reported then
+            Path next = existing.resolve(directory.getName(existing.getNameCount()));
+            if (!Files.isDirectory(next)) {
+                LOG.debug("{} does not exist yet, watching {} for it", directory, existing);
+                return;
+            }
+            existing = next;
+        }
+    }
+
+    /**
+     * Registers the watched directories which are the created directory or below it. The entries they already
+     * contain have been created before the registration, so they are reported now.
+     */
+    private void directoryCreated(Path created) throws IOException {
+        List<Path> registered = new ArrayList<Path>();
+        synchronized (this) {
+            if (watchService == null) {
+                return;
+            }
+            for (Path directory : directories) {
+                if (directory.startsWith(created) && !watchedDirectories.containsValue(directory)) {
+                    watch(directory);
+                    if (watchedDirectories.containsValue(directory)) {
+                        registered.add(directory);
+                    }
+                }
+            }
+        }
+        for (Path directory : registered) {
+            LOG.debug("{} has been created, watching it for serial ports", directory);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    portCreated(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets a removed directory and watches the parents of the directories which have been watched through it.
+     */
+    private synchronized void unwatched(WatchKey key) {
+        Path removed = watchedDirectories.remove(key);
+        if (removed == null || watchService == null) {
+            return;
+        }
+        for (Path directory : directories) {
+            if (directory.startsWith(removed)) {
+                try {
+                    watch(directory);
+                } catch (IOException | ClosedWatchServiceException e) {
+                    LOG.debug("parent of {} could not be watched: {}", directory, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void handle(Path directory, WatchEvent<?> event) {
+        if (event.kind() == OVERFLOW) {
+            LOG.debug("events of {} lost", directory);
+            return;
+        }
+        Path path = directory.resolve((Path) event.context());
+        try {
+            if (event.kind() == ENTRY_CREATE) {
+                if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                    directoryCreated(path);
+                } else {
+                    portCreated(path);
+                }
+            } else if (event.kind() == ENTRY_DELETE) {
+                // the target of a removed link is unknown, the removal of the device node itself is reported
+                if (portNames.matcher(path.getFileName().toString()).matches()) {
+                    listener.portRemoved(path.toString());
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("event {} of {} ignored: {}", event.kind(), path, e.getMessage());
+        }
+    }
+
+    private void portCreated(Path path) throws IOException {
+        if (Files.isSymbolicLink(path)) {
+            path = path.toRealPath();
+        }
+        if (portNames.matcher(path.getFileName().toString()).matches()) {
+            listener.portAdded(path.toString());
+        }
+    }
+}
@@ -1,18 +1,28 @@
 package org.openhab.binding.serialthing.discovery;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.smarthome.config.discovery.AbstractDiscoveryService;
 import org.eclipse.smarthome.config.discovery.DiscoveryResult;
 import org.eclipse.smarthome.config.discovery.DiscoveryResultBuilder;
 import org.eclipse.smarthome.core.thing.ThingTypeUID;
 import org.openhab.binding.serialthing.SerialThingBindingConstants;
+import org.openhab.binding.serialthing.discovery.SerialPortWatcher.PortListener;
+import org.openhab.binding.serialthing.handler.SerialListenerImpl;
 import org.openhab.binding.serialthing.handler.SerialListenerImpl.SerialThing;
 import org.openhab.binding.serialthing.handler.SerialListenerImpl.SerialThingListener;
 import org.openhab.binding.serialthing.handler.SerialPortCommunicator;
+import org.openhab.binding.serialthing.handler.SerialThingSearch;
+import org.openhab.binding.serialthing.handler.SerialThingSearch.CompletionListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,13 +30,24 @@ public class SerialThingDiscoveryService extends AbstractDiscoveryService {
 
     private static Logger LOG = LoggerFactory.getLogger(SerialThingDiscoveryService.class);
 
-    // private final static int INITIAL_DELAY = 15;
-    // private final static int SCAN_INTERVAL = 10;
     private static final int DISCOVER_TIMEOUT = 30;
 
-    private Map<String, SerialThing> discoveredThings = new HashMap<String, SerialThing>();
+    /** Time between the creation of a device node and its identification (in milliseconds). */
+    private static final long PORT_SETTLE_DELAY = 1000;
 
-    // private ScheduledFuture<?> scanningJob;
+    /** Identified devices are checked again by a handshake after this time (in milliseconds). */
+    private static final long VERIFICATION_INTERVAL = TimeUnit.DAYS.toMillis(1);
+
+    private Map<String, SerialThing> discoveredThings = new ConcurrentHashMap<String, SerialThing>();
+
+    private Map<String, DeviceIdentity> discoveredIdentities = new ConcurrentHashMap<String, DeviceIdentity>();
+
+    private final IdentificationCache identificationCache = new IdentificationCache();
+
+    /** Ports which are waiting for their identification after they have been attached. */
+    private final Set<String> attachedPorts = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private SerialPortWatcher portWatcher;
 
     public SerialThingDiscoveryService() throws IllegalArgumentException {
         super(SerialThingBindingConstants.SUPPORTED_THING_TYPES, DISCOVER_TIMEOUT, true);
@@ -48,19 +69,43 @@ public class SerialThingDiscoveryService extends AbstractDiscoveryService {
      * Starts background scanning for attached devices.
      */
     @Override
-    protected void startBackgroundDiscovery() {
-        // if (scanningJob == null || scanningJob.isCancelled()) {
-        // scanningJob = scheduler.scheduleWithFixedDelay(new Runnable() {
-        // @Override
-        // public void run() {
-        // LOG.debug("start scanning process...");
-        // scan();
-        // }
-        // }, INITIAL_DELAY, SCAN_INTERVAL, TimeUnit.SECONDS);
-        // LOG.debug("discovery service started");
-        // } else {
-        // LOG.debug("discovery service active");
-        // }
+    protected synchronized void startBackgroundDiscovery() {
+        if (portWatcher != null) {
+            LOG.debug("discovery service active");
+            return;
+        }
+        portWatcher = SerialPortWatcher.forLinux(new PortListener() {
+
+            @Override
+            public void portAdded(String port) {
+                portAttached(port);
+            }
+
+            @Override
+            public void portRemoved(String port) {
+                portDetached(port);
+            }
+        });
+        try {
+            if (!portWatcher.start()) {
+                LOG.info("no serial device directory to watch -> background discovery not available");
+                portWatcher = null;
+                return;
+            }
+        } catch (IOException e) {
+            LOG.warn("background discovery could not be started", e);
+            portWatcher = null;
+            return;
+        }
+        LOG.debug("discovery service started");
+
+        // find the devices attached before, known devices are taken from the identification cache
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                search(null, false);
+            }
+        });
     }
 
     @Override
@@ -72,50 +117,180 @@ public class SerialThingDiscoveryService extends AbstractDiscoveryService {
      * Stops background scanning for attached devices.
      */
     @Override
-    protected void stopBackgroundDiscovery() {
-        // if (scanningJob != null && !scanningJob.isCancelled()) {
-        // scanningJob.cancel(false);
-        // scanningJob = null;
-        // LOG.debug("discovery service stopped");
-        // }
+    protected synchronized void stopBackgroundDiscovery() {
+        if (portWatcher != null) {
+            portWatcher.stop();
+            portWatcher = null;
+            LOG.debug("discovery service stopped");
+        }
+    }
+
+    private void scan() {
+        search(null, true);
+    }
+
+    /**
+     * Identifies a port after its device node has been created. Multiple notifications for the same port are
+     * handled once.
+     */
+    private void portAttached(final String port) {
+        if (!attachedPorts.add(port)) {
+            return;
+        }
+        LOG.debug("portAttached: {}", port);
+        // wait until the device node is ready to be opened
+        scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                attachedPorts.remove(port);
+                search(new String[] { port }, false);
+            }
+        }, PORT_SETTLE_DELAY, TimeUnit.MILLISECONDS);
     }
 
-    private synchronized void scan() {
+    private void portDetached(String port) {
+        LOG.debug("portDetached: {}", port);
+        attachedPorts.remove(port);
+        discoveredIdentities.remove(port);
+        SerialThing thing = discoveredThings.remove(port);
+        if (thing != null) {
+            thingRemoved(thing.getThingUID());
+            LOG.debug("thing removed: {}", thing.getThingUID());
+        }
+    }
+
+    /**
+     * @param ports the ports to identify or <code>null</code> for all ports. Things of vanished ports are only
+     *            removed if all ports are searched.
+     * @param scanRequest <code>true</code> if the scan is finished after the search
+     */
+    private synchronized void search(final String[] ports, final boolean scanRequest) {
 
         final HashMap<String, SerialThing> oldDiscoveredThings = new HashMap<>(discoveredThings);
+        final List<String> unverifiedPorts = new ArrayList<String>();
 
-        LOG.debug("scan: oldDiscoveredThings.size = " + oldDiscoveredThings.size() + ", discoveredThings.size = "
-                + discoveredThings.size());
+        LOG.debug("scan: oldDiscoveredThings.size = {}, discoveredThings.size = {}", oldDiscoveredThings.size(),
+                discoveredThings.size());
 
-        Set<String> serialThings = SerialPortCommunicator.searchSerialThings(getSupportedThingTypes(),
+        SerialThingListener listener = new SerialThingListener() {
+
+            @Override
+            public void onFound(SerialThing thing) {
+                identified(thing);
+            }
+
+            @Override
+            public boolean isNew(String port) {
+                DeviceIdentity identity = DeviceIdentity.of(port);
+                boolean isNew = !oldDiscoveredThings.containsKey(port)
+                        || !identity.equals(discoveredIdentities.get(port));
+                if (isNew) {
+                    isNew = !discoveredFromCache(port, identity, unverifiedPorts);
+                }
+                LOG.debug("isNew: {} = {}", port, isNew);
+                return isNew;
+            }
+        };
+
+        SerialThingSearch search = ports == null
+                ? SerialPortCommunicator.searchSerialThings(getSupportedThingTypes(), listener, scheduler)
+                : SerialPortCommunicator.searchSerialThings(ports, getSupportedThingTypes(), listener, scheduler);
+
+        search.addCompletionListener(new CompletionListener() {
+
+            @Override
+            public void onCompleted(SerialThingSearch search) {
+                if (ports == null) {
+                    removeVanishedThings(oldDiscoveredThings, search.getAvailablePorts());
+                }
+                if (scanRequest) {
+                    stopScan();
+                }
+                verify(unverifiedPorts);
+            }
+        });
+    }
+
+    /**
+     * Reports the thing if the device attached to the port is known from an earlier identification.
+     *
+     * @param unverifiedPorts gets the port if the last identification of the device is older than
+     *            {@link #VERIFICATION_INTERVAL}
+     * @return <code>true</code> if the thing has been reported
+     */
+    private boolean discoveredFromCache(String port, DeviceIdentity identity, List<String> unverifiedPorts) {
+        IdentificationCache.Entry entry = identificationCache.get(identity);
+        if (entry == null || !getSupportedThingTypes().contains(entry.getThingTypeUID())) {
+            return false;
+        }
+        LOG.debug("discoveredFromCache: {} is known as {}", identity, entry.getThingTypeUID());
+        discovered(SerialListenerImpl.createSerialThing(port, entry.getThingTypeUID(), entry.getFraming(),
+                entry.getBaudRates()), identity);
+        if (entry.getLastVerified() + VERIFICATION_INTERVAL < System.currentTimeMillis()) {
+            unverifiedPorts.add(port);
+        }
+        return true;
+    }
+
+    /**
+     * Identifies the devices at the given ports again in the background, to update outdated cache entries.
+     */
+    private void verify(List<String> ports) {
+        if (ports.isEmpty()) {
+            return;
+        }
+        LOG.debug("verify: identify devices at {} again", ports);
+        SerialPortCommunicator.searchSerialThings(ports.toArray(new String[ports.size()]), getSupportedThingTypes(),
                 new SerialThingListener() {
 
                     @Override
                     public void onFound(SerialThing thing) {
-                        thingDiscovered(createDiscoveryResult(thing));
-                        discoveredThings.put(thing.getPort(), thing);
-                        LOG.debug("thing discovered: " + thing.getThingUID());
+                        identified(thing);
                     }
 
                     @Override
                     public boolean isNew(String port) {
-                        boolean isNew = !oldDiscoveredThings.containsKey(port);
-                        LOG.debug("isNew: " + port + " = " + isNew);
-                        return isNew;
+                        return true;
                     }
-                });
+                }, scheduler);
+    }
+
+    /**
+     * Called after a successful type id handshake.
+     */
+    private void identified(SerialThing thing) {
+        DeviceIdentity identity = DeviceIdentity.of(thing.getPort());
+        identificationCache.put(identity, thing.getTypeUID(), thing.getFraming(), thing.getBaudRates());
+
+        SerialThing previous = discoveredThings.get(thing.getPort());
+        if (previous != null && !previous.getThingUID().equals(thing.getThingUID())) {
+            thingRemoved(previous.getThingUID());
+            LOG.debug("thing removed: {}", previous.getThingUID());
+        }
+        discovered(thing, identity);
+    }
+
+    private void discovered(SerialThing thing, DeviceIdentity identity) {
+        thingDiscovered(createDiscoveryResult(thing));
+        discoveredThings.put(thing.getPort(), thing);
+        discoveredIdentities.put(thing.getPort(), identity);
+        LOG.debug("thing discovered: {}", thing.getThingUID());
+    }
 
+    private void removeVanishedThings(Map<String, SerialThing> oldDiscoveredThings, Set<String> availablePorts) {
         for (Entry<String, SerialThing> discoveredThing : oldDiscoveredThings.entrySet()) {
-            if (!serialThings.contains(discoveredThing.getKey())) {
+            if (!availablePorts.contains(discoveredThing.getKey())) {
                 thingRemoved(discoveredThing.getValue().getThingUID());
                 discoveredThings.remove(discoveredThing.getKey());
-                LOG.debug("thing removed: " + discoveredThing.getValue().getThingUID());
+                discoveredIdentities.remove(discoveredThing.getKey());
+                LOG.debug("thing removed: {}", discoveredThing.getValue().getThingUID());
             }
         }
     }
 
     private DiscoveryResult createDiscoveryResult(SerialThing thing) {
         return DiscoveryResultBuilder.create(thing.getThingUID()).withThingType(thing.getTypeUID())
-                .withProperty(SerialThing.PORT, thing.getPort()).withLabel(thing.getLabel()).build();
+                .withProperty(SerialThing.PORT, thing.getPort()).withProperty(SerialThing.FRAMING, thing.getFraming())
+                .withProperty(SerialThing.BAUDRATES, thing.getBaudRates()).withLabel(thing.getLabel()).build();
     }
 }
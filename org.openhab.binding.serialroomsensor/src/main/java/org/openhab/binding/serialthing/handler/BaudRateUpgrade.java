@@ -0,0 +1,246 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openhab.binding.serialthing.handler.SerialPortCommunicator.BaudRateListener;
+import org.openhab.binding.serialthing.protocol.Frames;
+import org.openhab.binding.serialthing.transport.SerialTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link BaudRateUpgrade} switches the link of a device to a higher baud rate. Both sides start at the rate the
+ * device uses after a reset:
+ * <ol>
+ * <li>the host asks the device to switch: <code>BAUDRATE=115200</code></li>
+ * <li>the device answers with the same line at the old rate and switches</li>
+ * <li>the host switches as well and sends <code>ECHO=&lt;token&gt;</code>, which the device returns at the new
+ * rate</li>
+ * </ol>
+ * A device goes back to the old rate if it does not get the echo within {@link #DEVICE_REVERT_TIMEOUT}. So if an
+ * answer is missing or garbled, the host goes back to the old rate too and reports it after the device has reverted.
+ * <p>
+ * Only devices which announced their baud rates during the type id handshake understand the requests.
+ *
+ * @author Philipp - Initial contribution
+ */
+class BaudRateUpgrade {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BaudRateUpgrade.class);
+
+    /** The rates the host can switch to, ascending. */
+    static final int[] SUPPORTED_BAUDRATES = { 9600, 19200, 38400, 57600, 115200 };
+
+    /** Time to get an answer of the device, which handles commands once per loop. */
+    static final long ANSWER_TIMEOUT = 2000;
+
+    /** Time after its switch, until a device without echo goes back to the old rate. */
+    static final long DEVICE_REVERT_TIMEOUT = 5000;
+
+    /** The device sends the answer before it switches, so it needs a moment until it receives at the new rate. */
+    static final long SWITCH_DELAY = 100;
+
+    private enum State {
+        IDLE,
+        WAIT_ACK,
+        SWITCHING,
+        WAIT_ECHO,
+        REVERTING,
+        DONE
+    }
+
+    private final ScheduledExecutorService scheduler;
+
+    private State state = State.IDLE;
+    private SerialTransport transport;
+    private int fromBaudRate;
+    private int toBaudRate;
+    private String token;
+    private BaudRateListener listener;
+    private ScheduledFuture<?> timeout;
+
+    BaudRateUpgrade(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @param deviceBaudRates comma separated rates announced by the device
+     * @param maxBaudRate the highest rate to use
+     * @return the highest rate supported by both sides up to the given maximum, 0 if there is none
+     */
+    static int selectBaudRate(String deviceBaudRates, int maxBaudRate) {
+        int selected = 0;
+        if (deviceBaudRates == null) {
+            return selected;
+        }
+        for (String rate : deviceBaudRates.split(",")) {
+            int baudRate;
+            try {
+                baudRate = Integer.parseInt(rate.trim());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (baudRate > selected && baudRate <= maxBaudRate && isSupported(baudRate)) {
+                selected = baudRate;
+            }
+        }
+        return selected;
+    }
+
+    private static boolean isSupported(int baudRate) {
+        for (int supported : SUPPORTED_BAUDRATES) {
+            if (supported == baudRate) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Asks the device to switch. The listener is called once by the scheduler, also if the device does not answer.
+     */
+    synchronized void start(SerialTransport transport, int fromBaudRate, int toBaudRate, BaudRateListener listener) {
+        if (state != State.IDLE) {
+            throw new IllegalStateException("baud rate upgrade already started");
+        }
+        this.transport = transport;
+        this.fromBaudRate = fromBaudRate;
+        this.toBaudRate = toBaudRate;
+        this.listener = listener;
+
+        LOG.debug("{}: switch from {} to {} baud", transport.getPortName(), fromBaudRate, toBaudRate);
+        state = State.WAIT_ACK;
+        // before the request, the answer may be received before the write returns
+        timeout = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(State.WAIT_ACK);
+            }
+        }, ANSWER_TIMEOUT, TimeUnit.MILLISECONDS);
+        try {
+            write("BAUDRATE=" + toBaudRate + "\n");
+        } catch (IOException e) {
+            LOG.warn("{}: baud rate switch could not be requested: {}", transport.getPortName(), e.getMessage());
+            timeout.cancel(false);
+            complete(fromBaudRate);
+        }
+    }
+
+    /**
+     * Called with the answer of the device to the switch request.
+     */
+    synchronized void onAcknowledged(int baudRate) {
+        if (state != State.WAIT_ACK || baudRate != toBaudRate) {
+            return;
+        }
+        timeout.cancel(false);
+        state = State.SWITCHING;
+        // not written by the receiving thread, the echo may be answered before this call returns
+        timeout = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                switchAndEcho();
+            }
+        }, SWITCH_DELAY, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Called with the echo of the device.
+     */
+    synchronized void onEcho(String echo) {
+        if (state != State.WAIT_ECHO || !echo.equals(token)) {
+            return;
+        }
+        timeout.cancel(false);
+        LOG.info("{}: switched to {} baud", transport.getPortName(), toBaudRate);
+        complete(toBaudRate);
+    }
+
+    /**
+     * Stops a running upgrade without calling the listener, i.e. because the port is closed.
+     */
+    synchronized void cancel() {
+        if (timeout != null) {
+            timeout.cancel(false);
+        }
+        state = State.DONE;
+    }
+
+    private synchronized void switchAndEcho() {
+        if (state != State.SWITCHING) {
+            return;
+        }
+        token = Long.toHexString(System.nanoTime());
+        state = State.WAIT_ECHO;
+        timeout = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                onTimeout(State.WAIT_ECHO);
+            }
+        }, ANSWER_TIMEOUT, TimeUnit.MILLISECONDS);
+        try {
+            transport.setBaudRate(toBaudRate);
+            write("ECHO=" + token + "\n");
+        } catch (IOException e) {
+            LOG.warn("{}: baud rate switch failed: {}", transport.getPortName(), e.getMessage());
+            timeout.cancel(false);
+            // the device reverts without the echo
+            revert();
+        }
+    }
+
+    private synchronized void onTimeout(State expected) {
+        if (state != expected) {
+            return;
+        }
+        LOG.warn("{}: no valid answer of the device -> stay at {} baud", transport.getPortName(), fromBaudRate);
+        // the device may have switched without a readable answer, it reverts without the echo
+        revert();
+    }
+
+    private void revert() {
+        try {
+            transport.setBaudRate(fromBaudRate);
+        } catch (IOException e) {
+            LOG.warn("{}: baud rate could not be reset: {}", transport.getPortName(), e.getMessage());
+        }
+        state = State.REVERTING;
+        timeout = scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (BaudRateUpgrade.this) {
+                    if (state == State.REVERTING) {
+                        complete(fromBaudRate);
+                    }
+                }
+            }
+        }, DEVICE_REVERT_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    private void complete(final int baudRate) {
+        state = State.DONE;
+        final BaudRateListener completed = listener;
+        // never called with the lock held
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                completed.onBaudRateSelected(baudRate);
+            }
+        });
+    }
+
+    private void write(String command) throws IOException {
+        byte[] data = Frames.bytes(command);
+        transport.write(data, 0, data.length);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+import org.eclipse.smarthome.core.thing.ChannelUID;
+
+/**
+ * The {@link ChannelState} remembers the last published value of a numeric channel. A new reading is only published
+ * if it differs from that value by more than the deadband, or if nothing has been published for the maximum silence
+ * interval.
+ * <p>
+ * If the channel has a {@link TimeSeries}, every reading is recorded there, also if it is not published.
+ *
+ * @author Philipp - Initial contribution
+ */
+class ChannelState {
+
+    private final ChannelUID channelUID;
+
+    private final int deadband;
+
+    private final long maxSilence;
+
+    private final TimeSeries history;
+
+    private boolean published = false;
+
+    private int lastValue;
+
+    private long lastPublished;
+
+    /**
+     * @param deadband readings within +/- deadband of the last published value are dropped, 0 drops only unchanged
+     *            values
+     * @param maxSilence the maximum time in milliseconds a reading is dropped after the last published value, 0 to
+     *            never force a refresh
+     * @param history records all readings, may be <code>null</code>
+     */
+    ChannelState(ChannelUID channelUID, int deadband, long maxSilence, TimeSeries history) {
+        this.channelUID = channelUID;
+        this.deadband = Math.max(0, deadband);
+        this.maxSilence = maxSilence;
+        this.history = history;
+    }
+
+    ChannelUID getUID() {
+        return channelUID;
+    }
+
+    /**
+     * @return the recent readings, <code>null</code> if not recorded
+     */
+    TimeSeries getHistory() {
+        return history;
+    }
+
+    /**
+     * @param now the current time in milliseconds
+     * @return <code>true</code> if the reading has to be published, the value is remembered then
+     */
+    synchronized boolean accept(int value, long now) {
+        if (history != null) {
+            history.add(now, value);
+        }
+        if (published && Math.abs((long) value - lastValue) <= deadband
+                && (maxSilence <= 0 || now - lastPublished < maxSilence)) {
+            return false;
+        }
+        published = true;
+        lastValue = value;
+        lastPublished = now;
+        return true;
+    }
+
+    /**
+     * Forces the next reading to be published.
+     */
+    synchronized void invalidate() {
+        published = false;
+    }
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link ReconnectSupervisor} keeps the connection to a device open. If the connection fails or the port
+ * disappears (i.e. the USB adapter has been unplugged), it is closed and opened again, first after
+ * {@value #INITIAL_BACKOFF} ms, then with a doubled delay after every failed attempt up to {@value #MAX_BACKOFF} ms.
+ * Every delay is varied by up to {@value #JITTER_PERCENT}%, so things which lost their ports at the same time do not
+ * retry at the same time.
+ * <p>
+ * The supervisor is shared by the serial bindings, see {@link SupervisedSerialHandler}.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class ReconnectSupervisor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ReconnectSupervisor.class);
+
+    static final long INITIAL_BACKOFF = 1000;
+
+    static final long MAX_BACKOFF = 60000;
+
+    static final int JITTER_PERCENT = 20;
+
+    /** Interval in milliseconds in which the presence of the port is checked. */
+    static final long PRESENCE_CHECK_INTERVAL = 10000;
+
+    /**
+     * The supervised connection.
+     */
+    public interface Connection {
+
+        /**
+         * Opens the connection, also finds the port of the device again if it has been renamed.
+         *
+         * @throws IOException if the port could not be found or opened
+         */
+        void connect() throws IOException;
+
+        /**
+         * Closes the connection, which has failed.
+         */
+        void disconnect(Exception cause);
+
+        /**
+         * @return <code>false</code> if the port of the open connection does not exist any longer
+         */
+        boolean isPresent();
+
+        /**
+         * Called after a failed attempt to connect.
+         *
+         * @param retryDelay the time in milliseconds until the next attempt
+         */
+        void onConnectFailed(IOException cause, int attempts, long retryDelay);
+
+        /**
+         * Called after a connection has been opened again.
+         *
+         * @param attempts the number of failed attempts before
+         * @param recoveryTime the time in milliseconds since the connection has been lost
+         */
+        void onReconnected(int attempts, long recoveryTime);
+    }
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Connection connection;
+
+    private final Runnable attempt = new Runnable() {
+        @Override
+        public void run() {
+            attempt();
+        }
+    };
+
+    private final Runnable presenceCheck = new Runnable() {
+        @Override
+        public void run() {
+            if (!connection.isPresent()) {
+                connectionLost(new IOException("port disappeared"));
+            }
+        }
+    };
+
+    // guarded by this
+    private boolean connected;
+    private boolean connecting;
+    private boolean cancelled;
+    /** A failure reported while the connection was being opened, handled as soon as it is open. */
+    private Exception lostWhileConnecting;
+    private boolean reconnect;
+    private int attempts;
+    private long lostAt;
+    private ScheduledFuture<?> retry;
+    private ScheduledFuture<?> presence;
+
+    public ReconnectSupervisor(ScheduledExecutorService scheduler, Connection connection) {
+        this.scheduler = scheduler;
+        this.connection = connection;
+    }
+
+    /**
+     * Opens the connection by the calling thread. If that fails, it is retried in the background.
+     */
+    public void start() {
+        synchronized (this) {
+            lostAt = System.currentTimeMillis();
+        }
+        attempt();
+    }
+
+    /**
+     * Must be called if the connection fails. The connection is closed and opened again in the background. Does
+     * nothing if the connection is already being reopened. A failure reported while the connection is being opened
+     * (i.e. by the serial event thread of the new port) is handled as soon as it is open.
+     */
+    public void connectionLost(final Exception cause) {
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            if (connecting) {
+                if (lostWhileConnecting == null) {
+                    lostWhileConnecting = cause;
+                }
+                return;
+            }
+            if (!connected) {
+                return;
+            }
+            connected = false;
+            reconnect = true;
+            lostAt = System.currentTimeMillis();
+            cancelPresenceCheck();
+        }
+        reconnect(cause);
+    }
+
+    private void reconnect(final Exception cause) {
+        LOG.warn("connection lost: {} -> reconnect", cause.getMessage());
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                connection.disconnect(cause);
+                synchronized (ReconnectSupervisor.this) {
+                    if (!cancelled) {
+                        retry = scheduler.schedule(attempt, backoff(0), TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+        });
+    }
+
+    public synchronized boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Stops reconnecting. The connection itself is not closed.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        if (retry != null) {
+            retry.cancel(false);
+        }
+        cancelPresenceCheck();
+    }
+
+    private void attempt() {
+        synchronized (this) {
+            if (cancelled || connected || connecting) {
+                return;
+            }
+            connecting = true;
+        }
+        try {
+            connection.connect();
+        } catch (IOException e) {
+            long delay;
+            int failed;
+            synchronized (this) {
+                // the failed connection is closed already
+                connecting = false;
+                lostWhileConnecting = null;
+                if (cancelled) {
+                    return;
+                }
+                failed = ++attempts;
+                delay = backoff(failed);
+                retry = scheduler.schedule(attempt, delay, TimeUnit.MILLISECONDS);
+            }
+            connection.onConnectFailed(e, failed, delay);
+            return;
+        }
+
+        int failed = 0;
+        long recoveryTime = 0;
+        boolean reconnected = false;
+        Exception lost;
+        synchronized (this) {
+            connecting = false;
+            lost = lostWhileConnecting;
+            lostWhileConnecting = null;
+            if (cancelled) {
+                return;
+            }
+            if (lost != null) {
+                // failed before it has been reported as reconnected, so the outage goes on
+                reconnect = true;
+            } else {
+                connected = true;
+                failed = attempts;
+                recoveryTime = System.currentTimeMillis() - lostAt;
+                reconnected = reconnect || failed > 0;
+                attempts = 0;
+                presence = scheduler.scheduleWithFixedDelay(presenceCheck, PRESENCE_CHECK_INTERVAL,
+                        PRESENCE_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (lost != null) {
+            reconnect(lost);
+        } else if (reconnected) {
+            LOG.info("reconnected after {} failed attempt(s) in {} ms", failed, recoveryTime);
+            connection.onReconnected(failed, recoveryTime);
+        }
+    }
+
+    private void cancelPresenceCheck() {
+        if (presence != null) {
+            presence.cancel(false);
+            presence = null;
+        }
+    }
+
+    /**
+     * @param failedAttempts the attempts since the connection has been lost
+     * @return the delay of the next attempt
+     */
+    static long backoff(int failedAttempts) {
+        long delay = Math.min(MAX_BACKOFF, INITIAL_BACKOFF << Math.min(failedAttempts, 16));
+        long jitter = delay * JITTER_PERCENT / 100;
+        return delay - jitter + ThreadLocalRandom.current().nextLong(2 * jitter + 1);
+    }
+}
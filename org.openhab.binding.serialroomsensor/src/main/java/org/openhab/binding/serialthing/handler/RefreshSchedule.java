@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RefreshSchedule} requests the current values of a device periodically.
+ * <p>
+ * Every thing starts at a random phase within the interval and every period is varied by up to
+ * {@value #JITTER_PERCENT}%, so things configured with the same interval do not poll at the same time. While the
+ * device pushes values on its own, the requests are skipped; as soon as it has been quiet for a whole interval, they
+ * are sent again. Values received within {@link #RESPONSE_WINDOW} (at most half the interval) after a request are
+ * taken as its answer, not as pushed values.
+ *
+ * @author Philipp - Initial contribution
+ */
+class RefreshSchedule implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RefreshSchedule.class);
+
+    static final int JITTER_PERCENT = 10;
+
+    /** Time in milliseconds the device needs to answer a request, it handles commands once per loop. */
+    static final long RESPONSE_WINDOW = 2000;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final long interval;
+
+    private final long responseWindow;
+
+    private final Runnable request;
+
+    private volatile long lastRequest;
+
+    private volatile long lastPush;
+
+    private ScheduledFuture<?> next;
+
+    private boolean cancelled;
+
+    private long requests;
+
+    private long skipped;
+
+    /**
+     * @param interval the time between two requests in milliseconds
+     * @param request requests the current values
+     */
+    RefreshSchedule(ScheduledExecutorService scheduler, long interval, Runnable request) {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("refresh interval must be positive: " + interval);
+        }
+        this.scheduler = scheduler;
+        this.interval = interval;
+        this.responseWindow = Math.min(RESPONSE_WINDOW, interval / 2);
+        this.request = request;
+    }
+
+    /**
+     * Schedules the first request at a random time within the interval.
+     */
+    synchronized void start() {
+        if (!cancelled && next == null) {
+            next = scheduler.schedule(this, ThreadLocalRandom.current().nextLong(interval), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    synchronized void cancel() {
+        cancelled = true;
+        if (next != null) {
+            next.cancel(false);
+        }
+        LOG.debug("refresh cancelled after {} request(s), {} skipped", requests, skipped);
+    }
+
+    /**
+     * Must be called with every value received from the device.
+     */
+    void onValueReceived() {
+        long now = System.currentTimeMillis();
+        if (now - lastRequest > responseWindow) {
+            lastPush = now;
+        }
+    }
+
+    /**
+     * Must be called if the values have been requested by someone else, i.e. after the port has been opened.
+     */
+    void onRequested() {
+        lastRequest = System.currentTimeMillis();
+    }
+
+    @Override
+    public void run() {
+        long now = System.currentTimeMillis();
+        boolean pushing = now - lastPush < interval;
+        if (!pushing) {
+            onRequested();
+            try {
+                request.run();
+            } catch (RuntimeException e) {
+                LOG.error("error during refresh", e);
+            }
+        }
+        synchronized (this) {
+            if (pushing) {
+                skipped++;
+            } else {
+                requests++;
+            }
+            if (!cancelled) {
+                next = scheduler.schedule(this, nextDelay(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private long nextDelay() {
+        long jitter = interval * JITTER_PERCENT / 100;
+        return interval - jitter + ThreadLocalRandom.current().nextLong(2 * jitter + 1);
+    }
+}
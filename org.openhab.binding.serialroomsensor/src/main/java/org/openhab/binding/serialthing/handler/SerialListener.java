@@ -2,12 +2,12 @@ package org.openhab.binding.serialthing.handler;
 
 import java.io.IOException;
 
-import jssc.SerialPort;
-import jssc.SerialPortEventListener;
+import org.openhab.binding.serialthing.transport.SerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransportListener;
 
-public interface SerialListener extends SerialPortEventListener {
+public interface SerialListener extends SerialTransportListener {
 
-    void setSerialPort(SerialPort port) throws IOException;
+    void setTransport(SerialTransport transport) throws IOException;
 
     /**
      * Removes all resources, closes the streams and the serial port.
@@ -1,25 +1,28 @@
 package org.openhab.binding.serialthing.handler;
 
-import static org.openhab.binding.serialthing.SerialThingBindingConstants.LINE_DELIMITER;
-
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.smarthome.core.thing.ThingTypeUID;
 import org.eclipse.smarthome.core.thing.ThingUID;
+import org.openhab.binding.serialthing.metrics.FlightRecorder;
+import org.openhab.binding.serialthing.metrics.RecordingFrameListener;
+import org.openhab.binding.serialthing.protocol.BinaryFrames;
+import org.openhab.binding.serialthing.protocol.CommandDispatcher;
+import org.openhab.binding.serialthing.protocol.CommandDispatcher.CommandDecoder;
+import org.openhab.binding.serialthing.protocol.Frames;
+import org.openhab.binding.serialthing.protocol.LineFramer;
+import org.openhab.binding.serialthing.protocol.Sample;
+import org.openhab.binding.serialthing.transport.SerialTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import jssc.SerialPort;
-import jssc.SerialPortEvent;
-import jssc.SerialPortException;
-
 public class SerialListenerImpl implements SerialListener {
 
     private static final Logger LOG = LoggerFactory.getLogger(SerialListenerImpl.class);
 
-    private final static int TIMEOUT_IDENTIFICATION = 30000;
-
     public interface SerialThingListener {
         void onFound(SerialThing thing);
 
@@ -33,6 +36,12 @@ public class SerialListenerImpl implements SerialListener {
     public interface SerialThing {
         String PORT = "port";
 
+        /** The frame format the device supports besides single text lines, see {@link BinaryFrames}, {@link Sample}. */
+        String FRAMING = "framing";
+
+        /** The baud rates the device can switch to, see {@link SerialPortCommunicator#upgradeBaudRate}. */
+        String BAUDRATES = "baudrates";
+
         String getId();
 
         String getLabel();
@@ -43,114 +52,194 @@ public class SerialListenerImpl implements SerialListener {
         ThingUID getThingUID();
 
         ThingTypeUID getTypeUID();
+
+        /**
+         * @return {@link Sample#FRAMING_COMBINED} if the device announced combined lines,
+         *         {@link BinaryFrames#FRAMING_BINARY} if it announced binary frames only, otherwise
+         *         {@link BinaryFrames#FRAMING_ASCII}
+         */
+        String getFraming();
+
+        /**
+         * @return the comma separated baud rates announced by the device, only the default rate if the device did
+         *         not announce any
+         */
+        String getBaudRates();
     }
 
-    private String serialInputBuffer = "";
-    private SerialPort serialPort = null;
+    private static final String DEFAULT_BAUDRATES = String.valueOf(SerialPortCommunicator.DEFAULT_BAUDRATE);
+
+    /** Large enough for the type id answer. */
+    private static final int RECEIVE_CHUNK_SIZE = 64;
+
+    /** Number of frames kept for the log, if the device does not identify itself. */
+    private static final int RECORDER_CAPACITY = 32;
+
+    private final FlightRecorder recorder = new FlightRecorder(RECORDER_CAPACITY);
+    private final LineFramer framer = new LineFramer(
+            new RecordingFrameListener(recorder, createCommandDispatcher(), null));
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocate(RECEIVE_CHUNK_SIZE);
+    private SerialTransport transport = null;
+    private final AtomicBoolean closed = new AtomicBoolean(false);
+
+    /** Announced by the device before its type id. */
+    private String framing = BinaryFrames.FRAMING_ASCII;
 
-    private long startTime = -1;
+    /** Announced by the device before its type id. */
+    private String baudRates = DEFAULT_BAUDRATES;
+
+    private Runnable closeCallback;
 
     private SerialThingListener listener;
 
     private Set<ThingTypeUID> supportedThingTypes;
 
-    public SerialListenerImpl(final SerialPort serialPort, final SerialThingListener listener,
+    public SerialListenerImpl(final SerialTransport transport, final SerialThingListener listener,
             final Set<ThingTypeUID> supportedThingTypes) {
-        this.serialPort = serialPort;
+        this.transport = transport;
         this.listener = listener;
         this.supportedThingTypes = supportedThingTypes;
     }
 
     @Override
-    public void serialEvent(SerialPortEvent oEvent) {
-
-        // terminate identification after timeout
-        if (startTime == -1) {
-            startTime = System.currentTimeMillis();
-        } else if (startTime + TIMEOUT_IDENTIFICATION < System.currentTimeMillis()) {
-            close();
+    public void onDataAvailable(SerialTransport source) {
+        if (closed.get()) {
             return;
         }
+        try {
+            // stops as soon as the port has been closed after the type id
+            SerialPortCommunicator.receive(source, receiveBuffer, framer);
+        } catch (Exception e) {
+            LOG.error("error during serial input processing ", e);
+        }
+    }
 
-        if (oEvent.isRXCHAR()) {
-            try {
-
-                byte[] buffer;
-                while ((buffer = serialPort.readBytes()) != null) {
-
-                    serialInputBuffer += new String(buffer);
-
-                    int newLineIndex;
-                    while ((newLineIndex = serialInputBuffer.indexOf(LINE_DELIMITER)) > -1) {
-
-                        if (newLineIndex > -1) {
-
-                            String command = serialInputBuffer.substring(0, newLineIndex);
-                            serialInputBuffer = serialInputBuffer.substring(command.length() + LINE_DELIMITER.length());
-
-                            if (command.startsWith("TYPEID=")) {
-
-                                ThingTypeUID typeUid = getSupportedTypeUid(parseTypeId(command), supportedThingTypes);
-
-                                if (typeUid != null) {
-                                    SerialThing thing = createSerialThing(serialPort, typeUid);
-                                    LOG.debug(serialPort.getPortName() + ": typeId = " + thing.getLabel());
-                                    listener.onFound(thing);
-                                }
-                                close();
-                                return;
-                            } else if (command.startsWith("LOG=")) {
-                                LOG.debug(serialPort.getPortName() + ": " + parseLogMessage(command));
-                            } else {
-                                LOG.debug(serialPort.getPortName() + ": unknown incoming identify event: " + command
-                                        + "; currently in queue: " + serialInputBuffer);
-                            }
-                        }
+    private CommandDispatcher createCommandDispatcher() {
+        CommandDispatcher dispatcher = new CommandDispatcher();
+        dispatcher.register("TYPEID=", new CommandDecoder() {
+            @Override
+            public void decode(byte[] buffer, int offset, int length) {
+                ThingTypeUID typeUid = getSupportedTypeUid(buffer, offset, length, supportedThingTypes);
+
+                if (typeUid != null) {
+                    SerialThing thing = createSerialThing(transport.getPortName(), typeUid, framing,
+                            baudRates);
+                    LOG.debug("{}: typeId = {}", transport.getPortName(), thing.getLabel());
+                    listener.onFound(thing);
+                }
+                close();
+            }
+        });
+        dispatcher.register("FRAMINGS=", new CommandDecoder() {
+            @Override
+            public void decode(byte[] buffer, int offset, int length) {
+                // comma separated list of the frame formats the device can send besides text lines, combined lines
+                // are preferred, because their values belong together
+                for (String name : Frames.toString(buffer, offset, length).split(",")) {
+                    if (Sample.FRAMING_COMBINED.equals(name.trim())) {
+                        framing = Sample.FRAMING_COMBINED;
+                    } else if (BinaryFrames.FRAMING_BINARY.equals(name.trim())
+                            && !Sample.FRAMING_COMBINED.equals(framing)) {
+                        framing = BinaryFrames.FRAMING_BINARY;
                     }
                 }
-            } catch (Exception e) {
-                LOG.error("error during serial input processing ", e);
             }
-        }
+        });
+        dispatcher.register("BAUDRATES=", new CommandDecoder() {
+            @Override
+            public void decode(byte[] buffer, int offset, int length) {
+                // comma separated list of the baud rates the device can switch to
+                baudRates = Frames.toString(buffer, offset, length).trim();
+            }
+        });
+        dispatcher.register("LOG=", new CommandDecoder() {
+            @Override
+            public void decode(byte[] buffer, int offset, int length) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("{}: {}", transport.getPortName(), Frames.toString(buffer, offset, length));
+                }
+            }
+        });
+        dispatcher.onUnknownCommand(new CommandDecoder() {
+            @Override
+            public void decode(byte[] buffer, int offset, int length) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("{}: unknown incoming identify event: {}; currently in queue: {} bytes",
+                            transport.getPortName(), Frames.toString(buffer, offset, length), framer.pending());
+                }
+            }
+        });
+        return dispatcher;
     }
 
     @Override
-    public void setSerialPort(SerialPort port) throws IOException {
-        serialPort = port;
+    public void setTransport(SerialTransport transport) throws IOException {
+        this.transport = transport;
+    }
+
+    /**
+     * @return the frames received during the identification
+     */
+    public FlightRecorder getRecorder() {
+        return recorder;
+    }
+
+    /**
+     * @param callback gets called after the port has been closed
+     */
+    public void onClose(Runnable callback) {
+        closeCallback = callback;
     }
 
     @Override
     public void close() {
-        if (serialPort != null) {
-            try {
-                // serialPort.removeEventListener();
-                serialPort.closePort();
-                LOG.debug("close: serial port '" + serialPort.getPortName() + "' after type identification closed");
-            } catch (SerialPortException e) {
-                LOG.error("error during close input stream", e);
-            }
-            // serialPort = null;
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (transport != null) {
+            // also waits for the event thread, if called by another thread
+            transport.close();
+            LOG.debug("close: serial port '{}' after type identification closed", transport.getPortName());
+        }
+        framer.release();
+        if (closeCallback != null) {
+            closeCallback.run();
         }
     }
 
-    private static ThingTypeUID getSupportedTypeUid(String typeId, Set<ThingTypeUID> supportedThingTypes) {
+    private static ThingTypeUID getSupportedTypeUid(byte[] buffer, int offset, int length,
+            Set<ThingTypeUID> supportedThingTypes) {
         for (ThingTypeUID thingTypeUID : supportedThingTypes) {
-            if (thingTypeUID.getId().equals(typeId)) {
+            byte[] typeId = Frames.bytes(thingTypeUID.getId());
+            if (typeId.length == length && Frames.startsWith(buffer, offset, length, typeId)) {
                 return thingTypeUID;
             }
         }
         return null;
     }
 
-    private static SerialThing createSerialThing(final SerialPort currPort, final ThingTypeUID typeUid) {
+    /**
+     * @param port the serial port name
+     * @param typeUid the thing type the device identified itself with
+     */
+    public static SerialThing createSerialThing(final String port, final ThingTypeUID typeUid) {
+        return createSerialThing(port, typeUid, BinaryFrames.FRAMING_ASCII, DEFAULT_BAUDRATES);
+    }
+
+    /**
+     * @param framing the frame format announced by the device, see {@link SerialThing#getFraming()}
+     * @param baudRates the baud rates announced by the device, see {@link SerialThing#getBaudRates()}
+     */
+    public static SerialThing createSerialThing(final String port, final ThingTypeUID typeUid,
+            final String framing, final String baudRates) {
 
-        final ThingUID thingUid = new ThingUID(typeUid, createUid(currPort.getPortName()));
+        final ThingUID thingUid = new ThingUID(typeUid, createUid(port));
 
         return new SerialThing() {
 
             @Override
             public String getPort() {
-                return currPort.getPortName();
+                return port;
             }
 
             @Override
@@ -173,18 +262,20 @@ public class SerialListenerImpl implements SerialListener {
             public ThingTypeUID getTypeUID() {
                 return typeUid;
             }
+
+            @Override
+            public String getFraming() {
+                return framing;
+            }
+
+            @Override
+            public String getBaudRates() {
+                return baudRates;
+            }
         };
     }
 
     private static String createUid(final String value) {
         return value.replaceAll("[^a-zA-Z0-9_-]", "");
     }
-
-    private static String parseTypeId(String inputLine) {
-        return inputLine.substring(inputLine.indexOf("=") + 1);
-    }
-
-    private static String parseLogMessage(String inputLine) {
-        return inputLine.substring(inputLine.indexOf("=") + 1);
-    }
 }
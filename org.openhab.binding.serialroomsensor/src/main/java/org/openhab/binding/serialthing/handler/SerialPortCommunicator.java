@@ -1,109 +1,238 @@
 package org.openhab.binding.serialthing.handler;
 
-import static org.openhab.binding.serialthing.SerialThingBindingConstants.LINE_DELIMITER;
-
 import java.io.IOException;
-import java.util.HashSet;
+import java.nio.ByteBuffer;
 import java.util.Set;
-import java.util.TooManyListenersException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.eclipse.smarthome.core.thing.ThingTypeUID;
+import org.openhab.binding.serialthing.capture.CaptureWriter;
 import org.openhab.binding.serialthing.handler.SerialListenerImpl.SerialThingListener;
+import org.openhab.binding.serialthing.metrics.FlightRecorder;
+import org.openhab.binding.serialthing.metrics.PortMetrics;
+import org.openhab.binding.serialthing.metrics.RecordingFrameListener;
+import org.openhab.binding.serialthing.metrics.SerialMetrics;
+import org.openhab.binding.serialthing.protocol.BinaryFrameListener;
+import org.openhab.binding.serialthing.protocol.BinaryFrames;
+import org.openhab.binding.serialthing.protocol.ByteBufferPool;
+import org.openhab.binding.serialthing.protocol.CommandDispatcher;
+import org.openhab.binding.serialthing.protocol.CommandDispatcher.BooleanDecoder;
+import org.openhab.binding.serialthing.protocol.CommandDispatcher.CommandDecoder;
+import org.openhab.binding.serialthing.protocol.CommandDispatcher.IntDecoder;
+import org.openhab.binding.serialthing.protocol.FrameListener;
+import org.openhab.binding.serialthing.protocol.Frames;
+import org.openhab.binding.serialthing.protocol.LineFramer;
+import org.openhab.binding.serialthing.protocol.PendingRequests;
+import org.openhab.binding.serialthing.protocol.RequestFuture;
+import org.openhab.binding.serialthing.protocol.ResponseMatcher;
+import org.openhab.binding.serialthing.protocol.Sample;
+import org.openhab.binding.serialthing.protocol.TimerWheel;
+import org.openhab.binding.serialthing.transport.SerialTransport;
+import org.openhab.binding.serialthing.transport.SerialTransports;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import jssc.SerialPort;
-import jssc.SerialPortEvent;
-import jssc.SerialPortException;
-import jssc.SerialPortList;
-
 public class SerialPortCommunicator {
 
     private static final Logger LOG = LoggerFactory.getLogger(SerialPortCommunicator.class);
 
-    /** The port we're normally going to use. */
-    private static final String PORT_NAMES[] = { "/dev/tty.usbserial-A9007UX1", // Mac OS X
-            "/dev/ttyACM0", // Raspberry Pi
-            "/dev/ttyUSB0", // Linux
-            "COM3", // Windows
-    };
+    /** The devices reset after opening the port and need some time before they are able to answer. */
+    private static final long TYPEID_DELAY = 3000;
 
-    private final class SerialCommunication implements SerialListener {
+    /** Time after opening a port until the type id has to be received. */
+    private static final long IDENTIFICATION_TIMEOUT = 10000;
 
-        private String serialInputBuffer = "";
-        private SerialPort serialPort = null;
+    private static final byte[] TYPEID_REQUEST = Frames.bytes("TYPEID\n");
 
-        @Override
-        public void serialEvent(SerialPortEvent oEvent) {
-            if (serialPort != null && oEvent.isRXCHAR() && oEvent.getEventValue() > 0) {
-                try {
-
-                    byte[] buffer;
-                    while ((buffer = serialPort.readBytes()) != null) {
-
-                        serialInputBuffer += new String(buffer);
-
-                        int newLineIndex;
-                        while ((newLineIndex = serialInputBuffer.indexOf(LINE_DELIMITER)) > -1) {
-
-                            if (newLineIndex > -1) {
-
-                                String command = serialInputBuffer.substring(0, newLineIndex);
-                                serialInputBuffer = serialInputBuffer
-                                        .substring(command.length() + LINE_DELIMITER.length());
-                                if (handler != null) {
-                                    if (command.startsWith("BRIGHTNESS=")) {
-                                        handler.onBrightnessChanged(parseBrightness(command));
-                                    } else if (command.startsWith("TEMPERATURE=")) {
-                                        handler.onTemperatureChanged(parseTemperature(command));
-                                    } else if (command.startsWith("HUMIDITY=")) {
-                                        handler.onHumidityChanged(parseHumidity(command));
-                                    } else if (command.startsWith("LOG=")) {
-                                        LOG.debug(parseLogMessage(command));
-                                    } else if (command.startsWith("DOORBELL_PRESSED=")) {
-                                        handler.onDoorbellPressed(parseButtonPressed(command));
-                                    } else {
-                                        LOG.info("unknown incoming serial event: " + command + "; currently in queue: "
-                                                + serialInputBuffer);
-                                    }
-                                }
-                            }
-                        }
+    private static final byte[] CURRENTVALUES_REQUEST = Frames.bytes("CURRENTVALUES\n");
+
+    /** The rate of the devices after a reset. */
+    public static final int DEFAULT_BAUDRATE = 9600;
+
+    /** Size of the buffer the received bytes are read into, before they are framed. */
+    private static final int RECEIVE_CHUNK_SIZE = 256;
+
+    /** Time the device gets to answer a request, it handles one command per loop. */
+    public static final long REQUEST_TIMEOUT = 2000;
+
+    private final class SerialCommunication implements SerialListener, PendingRequests.Sender {
+
+        private final PortMetrics metrics;
+        private final CommandDispatcher dispatcher = createLinkCommands();
+        private final PendingRequests requests = new PendingRequests(dispatcher, dispatcher, TimerWheel.shared());
+        private final LineFramer framer;
+        private final ByteBuffer receiveBuffer = ByteBuffer.allocate(RECEIVE_CHUNK_SIZE);
+        private volatile SerialTransport transport = null;
+        private volatile BaudRateUpgrade upgrade = null;
+        private final AtomicBoolean lost = new AtomicBoolean(false);
+
+        /** Captures the traffic, if enabled, see {@link CaptureWriter#PROPERTY}. */
+        private final CaptureWriter capture;
+
+        // counts of the framer already added to the metrics, only used by the serial event thread
+        private long countedFrames;
+        private long countedCorruptFrames;
+
+        private SerialCommunication(PortMetrics metrics, CaptureWriter capture) {
+            this.metrics = metrics;
+            this.capture = capture;
+            this.framer = createReceiver(handler, dispatcher, requests, metrics);
+        }
+
+        /**
+         * The answers of the device to the requests of a {@link BaudRateUpgrade}.
+         */
+        private CommandDispatcher createLinkCommands() {
+            CommandDispatcher dispatcher = new CommandDispatcher();
+            dispatcher.register("BAUDRATE=", new IntDecoder() {
+                @Override
+                protected void onValue(int value) {
+                    BaudRateUpgrade current = upgrade;
+                    if (current != null) {
+                        current.onAcknowledged(value);
+                    }
+                }
+            });
+            dispatcher.register("ECHO=", new CommandDecoder() {
+                @Override
+                public void decode(byte[] buffer, int offset, int length) {
+                    BaudRateUpgrade current = upgrade;
+                    if (current != null) {
+                        current.onEcho(Frames.toString(buffer, offset, length));
                     }
-                } catch (Exception e) {
-                    LOG.error("error during serial input processing", e);
                 }
+            });
+            return dispatcher;
+        }
+
+        @Override
+        public void onDataAvailable(SerialTransport source) {
+            metrics.receiveStarted();
+            try {
+                metrics.bytesReceived(receive(source, receiveBuffer, framer, capture));
+            } catch (IOException e) {
+                metrics.getRecorder().event(FlightRecorder.ERROR, 0);
+                connectionLost(e);
+            } catch (Exception e) {
+                FlightRecorder recorder = metrics.getRecorder();
+                byte[] error = Frames.bytes(e.getClass().getSimpleName());
+                recorder.record(FlightRecorder.ERROR, error, 0, error.length);
+                LOG.error("error during serial input processing, recent traffic of {}:\n{}", metrics.getPort(),
+                        recorder.dump(), e);
             }
+            long frames = framer.getFrames();
+            long corruptFrames = framer.getCorruptFrames();
+            metrics.framesDecoded(frames - countedFrames);
+            metrics.parseErrors(corruptFrames - countedCorruptFrames);
+            metrics.buffered(framer.getHighWaterMark());
+            countedFrames = frames;
+            countedCorruptFrames = corruptFrames;
+        }
 
+        @Override
+        public void setTransport(SerialTransport transport) throws IOException {
+            this.transport = transport;
+        }
+
+        /**
+         * Like {@link #send(byte[])}, but only logs that the port is closed.
+         */
+        public void write(byte[] data) throws IOException {
+            if (!transmit(data)) {
+                LOG.error("output stream already closed! Data '{}' could not be send.",
+                        Frames.toString(data, 0, data.length));
+            }
         }
 
         @Override
-        public void setSerialPort(SerialPort port) throws IOException {
-            serialPort = port;
+        public void send(byte[] request) throws IOException {
+            if (!transmit(request)) {
+                throw new IOException("output stream already closed");
+            }
         }
 
-        public void write(byte[] data) throws SerialPortException {
-            if (serialPort != null) {
-                serialPort.writeBytes(data);
-            } else {
-                LOG.error("output stream already closed! Data '" + data + "' could not be send.");
+        /**
+         * Writes the data and records it in the metrics, the flight recorder and the capture.
+         *
+         * @return <code>false</code> if the port is closed
+         */
+        private boolean transmit(byte[] data) throws IOException {
+            SerialTransport current = transport;
+            if (current == null) {
+                return false;
+            }
+            try {
+                current.write(data, 0, data.length);
+            } catch (IOException e) {
+                connectionLost(e);
+                throw e;
+            }
+            metrics.bytesSent(data.length);
+            metrics.getRecorder().record(FlightRecorder.TX, data, 0, data.length);
+            if (capture != null) {
+                capture.record(CaptureWriter.TX, data, 0, data.length);
+            }
+            return true;
+        }
+
+        /**
+         * Reports the first failure of the port to the {@link ConnectionListener}, unless the port is being closed.
+         */
+        private void connectionLost(IOException cause) {
+            ConnectionListener listener = connectionListener;
+            if (transport != null && lost.compareAndSet(false, true) && listener != null) {
+                listener.onConnectionLost(cause);
             }
         }
 
         @Override
         public void close() {
-            if (serialPort != null) {
-                try {
-                    serialPort.removeEventListener();
-                    serialPort.closePort();
-                } catch (SerialPortException e) {
-                    LOG.error("error during closing port", e);
-                }
-                serialPort = null;
+            lost.set(true);
+            BaudRateUpgrade running = upgrade;
+            if (running != null) {
+                running.cancel();
+            }
+            requests.close();
+            SerialTransport current = transport;
+            if (current != null) {
+                // also waits for the event thread, if called by another thread
+                current.close();
+                transport = null;
+                metrics.getRecorder().event(FlightRecorder.CLOSED, 0);
+            }
+            framer.release();
+            if (capture != null) {
+                capture.close();
             }
         }
     }
 
+    /**
+     * Gets the result of {@link SerialPortCommunicator#upgradeBaudRate}.
+     */
+    public interface BaudRateListener {
+
+        /**
+         * @param baudRate the rate both sides use from now on
+         */
+        void onBaudRateSelected(int baudRate);
+    }
+
+    /**
+     * Gets notified if the open port fails, i.e. because the device has been unplugged.
+     */
+    public interface ConnectionListener {
+
+        /**
+         * Called once per opened port, by the thread which noticed the failure. The port has to be closed by
+         * another thread, because {@link SerialPortCommunicator#close()} waits for the serial event thread.
+         */
+        void onConnectionLost(IOException cause);
+    }
+
     public interface SerialTestHandler {
         void onBrightnessChanged(int brightness);
 
@@ -112,12 +241,27 @@ public class SerialPortCommunicator {
         void onHumidityChanged(int humidity);
 
         void onDoorbellPressed(boolean pressed);
+
+        /**
+         * Called with all values of a combined line instead of the single value callbacks. The sample is reused
+         * for the next line, so it is only valid during this call.
+         */
+        void onSample(Sample sample);
     }
 
     /** This handler gets the value of an incoming serial event. */
     private SerialTestHandler handler;
 
-    private SerialCommunication serialCommunication = null;
+    /** Written by {@link #initialize(String, int)} and {@link #close()}, read once per call by the senders. */
+    private volatile SerialCommunication serialCommunication = null;
+
+    private volatile PortMetrics metrics = null;
+
+    private volatile ConnectionListener connectionListener = null;
+
+    private volatile String portName = null;
+
+    private volatile int baudRate = DEFAULT_BAUDRATE;
 
     public SerialPortCommunicator(SerialTestHandler handler) {
         this.handler = handler;
@@ -126,129 +270,245 @@ public class SerialPortCommunicator {
     /**
      * @param serialPortToUse <code>null</code> if the default ports should be used, otherwise the port name (i.e.
      *            /dev/ttyAMC0)
-     * @return
-     * @throws IOException
-     * @throws TooManyListenersException
-     * @throws UnsupportedCommOperationException
-     * @throws PortInUseException
-     * @throws SerialPortException
+     * @throws IOException if the port could not be found or opened
      */
-    public void initialize(String serialPortToUse) throws IOException, SerialPortException {
-
-        serialCommunication = new SerialCommunication();
-
-        SerialPort serialPort = findSerialPort(serialPortToUse);
-        serialPort.openPort();
-        initializePortAccess(serialPort, serialCommunication);
+    public void initialize(String serialPortToUse) throws IOException {
+        initialize(serialPortToUse, DEFAULT_BAUDRATE);
     }
 
-    public static final Set<String> searchSerialThings(Set<ThingTypeUID> supportedThingTypes,
-            SerialThingListener listener) {
-
-        Set<String> serialThings = new HashSet<String>();
-
-        String[] ports = findAllPorts();
+    /**
+     * @param serialPortToUse <code>null</code> if the default ports should be used, otherwise the port name (i.e.
+     *            /dev/ttyAMC0)
+     * @param baudRate the rate of the device after a reset
+     * @throws IOException if the port could not be found or opened
+     */
+    public void initialize(String serialPortToUse, int baudRate) throws IOException {
 
-        SerialPort serialPort;
-        for (String port : ports) {
-            serialPort = new SerialPort(port);
+        this.baudRate = baudRate;
 
-            try {
-                if (listener.isNew(serialPort.getPortName()) && serialPort.openPort()) {
-                    LOG.info("searchSerialThings: serial thing found at port " + serialPort.getPortName()
-                            + " send identify request...");
-                    identifySerialDevice(serialPort, listener, supportedThingTypes);
-                    serialThings.add(serialPort.getPortName());
-                } else {
-                    LOG.info("searchSerialThings: port " + serialPort.getPortName() + " currently in use -> ignore");
-                }
-            } catch (SerialPortException e) {
-                LOG.info("searchSerialThings: port " + serialPort.getPortName() + " currently in use -> ignore");
+        SerialTransport transport = SerialTransports.findPort(serialPortToUse);
+        if (transport == null) {
+            throw new IOException("initialize: Could not find serial port");
+        }
+        portName = transport.getPortName();
+        metrics = SerialMetrics.forPort(portName);
+        transport.open();
+        // a capture file is only created for a port which could be opened
+        CaptureWriter capture = CaptureWriter.forPort(portName);
+        SerialCommunication communication = new SerialCommunication(metrics, capture);
+        serialCommunication = communication;
+        try {
+            initializePortAccess(transport, communication, baudRate);
+        } catch (IOException e) {
+            serialCommunication = null;
+            if (capture != null) {
+                capture.close();
             }
+            transport.close();
+            throw e;
         }
-        return serialThings;
+        metrics.connected();
+        metrics.getRecorder().event(FlightRecorder.CONNECTED, baudRate);
     }
 
-    private static void identifySerialDevice(SerialPort currPort, SerialThingListener listener,
-            Set<ThingTypeUID> supportedThingTypes) {
-
-        try {
-            initializePortAccess(currPort, new SerialListenerImpl(currPort, listener, supportedThingTypes));
-            requestTypeId(currPort);
+    /**
+     * @param listener gets notified if the port fails after it has been opened, may be <code>null</code>
+     */
+    public void setConnectionListener(ConnectionListener listener) {
+        this.connectionListener = listener;
+    }
 
-        } catch (Exception e) {
-            LOG.error("error during identify serial port device on port %s", currPort.getPortName(), e);
-        }
+    /**
+     * @return the name of the port in use, <code>null</code> before the port has been found
+     */
+    public String getPortName() {
+        return portName;
     }
 
-    private static void requestTypeId(final SerialPort currPort) {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    Thread.sleep(3000);
-                    // request the type of the serial device
-                    currPort.writeBytes("TYPEID\n".getBytes());
-                } catch (Exception e) {
-                    LOG.error("error during requesting type id of serial thing", e);
-                }
-            }
-        }).start();
+    /**
+     * @return the metrics of the port, <code>null</code> before the port has been found
+     */
+    public PortMetrics getMetrics() {
+        return metrics;
     }
 
-    private static void initializePortAccess(SerialPort port, SerialListener listener)
-            throws SerialPortException, IOException {
+    /**
+     * Probes all ports which are new for the listener at the same time. Every port gets
+     * {@link #IDENTIFICATION_TIMEOUT} milliseconds to answer the type id request.
+     *
+     * @param scheduler runs the probes, the type id requests and the deadlines
+     * @return the handle of the running search
+     */
+    public static final SerialThingSearch searchSerialThings(Set<ThingTypeUID> supportedThingTypes,
+            SerialThingListener listener, ScheduledExecutorService scheduler) {
+        return searchSerialThings(findAllPorts(), supportedThingTypes, listener, scheduler);
+    }
 
-        if (port == null) {
-            throw new IOException("initialize: Could not find serial port");
-        }
+    /**
+     * Like {@link #searchSerialThings(Set, SerialThingListener, ScheduledExecutorService)}, but only probes the
+     * given ports.
+     */
+    public static final SerialThingSearch searchSerialThings(String[] ports, Set<ThingTypeUID> supportedThingTypes,
+            SerialThingListener listener, ScheduledExecutorService scheduler) {
 
-        port.setParams(SerialPort.BAUDRATE_9600, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
-        int mask = SerialPort.MASK_RXCHAR + SerialPort.MASK_CTS + SerialPort.MASK_DSR;// Prepare mask
-        port.setEventsMask(mask);
-        port.addEventListener(listener);
+        SerialThingSearch search = new SerialThingSearch(ports);
 
-        listener.setSerialPort(port);
+        for (String port : ports) {
+            if (listener.isNew(port)) {
+                search.probeStarted();
+                scheduler.execute(new PortProbe(SerialTransports.getProvider().createTransport(port), search, listener,
+                        supportedThingTypes, scheduler));
+            } else {
+                LOG.info("searchSerialThings: port {} currently in use -> ignore", port);
+            }
+        }
+        search.allProbesStarted();
+        return search;
     }
 
     /**
-     * @param serialPortToUse <code>null</code> if the default ports should be used, otherwise the port name (i.e.
-     *            /dev/ttyAMC0)
+     * Opens a port, requests the type id of the device and closes the port again as soon as the device has answered
+     * or the deadline is reached.
      */
-    private SerialPort findSerialPort(String serialPortToUse) {
-
-        LOG.info("findSerialPort: "
-                + (serialPortToUse != null ? "use specific serial port configured by user: '" + serialPortToUse + "'"
-                        : "no special port defined. Try to find right port..."));
+    private static final class PortProbe implements Runnable {
+
+        private final SerialTransport transport;
+        private final SerialThingSearch search;
+        private final SerialThingListener listener;
+        private final Set<ThingTypeUID> supportedThingTypes;
+        private final ScheduledExecutorService scheduler;
+
+        private final AtomicBoolean completed = new AtomicBoolean(false);
+
+        private volatile ScheduledFuture<?> typeIdRequest;
+        private volatile ScheduledFuture<?> deadline;
+
+        private PortProbe(SerialTransport transport, SerialThingSearch search, SerialThingListener listener,
+                Set<ThingTypeUID> supportedThingTypes, ScheduledExecutorService scheduler) {
+            this.transport = transport;
+            this.search = search;
+            this.listener = listener;
+            this.supportedThingTypes = supportedThingTypes;
+            this.scheduler = scheduler;
+        }
 
-        String[] ports = findAllPorts();
+        @Override
+        public void run() {
+            try {
+                transport.open();
+            } catch (IOException e) {
+                LOG.info("searchSerialThings: port {} currently in use -> ignore", transport.getPortName());
+                complete();
+                return;
+            }
 
-        for (String port : ports) {
+            LOG.info("searchSerialThings: serial thing found at port {} send identify request...",
+                    transport.getPortName());
+            search.portOpened(transport.getPortName());
 
-            SerialPort currPort = new SerialPort(port);
+            final SerialListenerImpl identification = new SerialListenerImpl(transport, listener,
+                    supportedThingTypes);
+            identification.onClose(new Runnable() {
+                @Override
+                public void run() {
+                    complete();
+                }
+            });
 
-            LOG.info("findSerialPort: port found: " + currPort.getPortName() + ", opened: " + currPort.isOpened());
+            try {
+                initializePortAccess(transport, identification, DEFAULT_BAUDRATE);
+            } catch (Exception e) {
+                LOG.error("error during identify serial port device on port {}", transport.getPortName(), e);
+                identification.close();
+                return;
+            }
 
-            if (serialPortToUse != null) {
-                if (currPort.getPortName().equals(serialPortToUse)) {
-                    LOG.info("findSerialPort: '" + currPort.getPortName() + "' matches port to use. Use it!");
-                    return currPort;
+            deadline = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("searchSerialThings: no type id received from port {} -> close, received:\n{}",
+                                transport.getPortName(), identification.getRecorder().dump());
+                    }
+                    identification.close();
                 }
-            } else {
-                for (String portName : PORT_NAMES) {
-                    if (currPort.getPortName().equals(portName)) {
-                        LOG.info("findSerialPort: '" + currPort.getPortName()
-                                + "' matches with a default port. Use it!");
-                        return currPort;
+            }, IDENTIFICATION_TIMEOUT, TimeUnit.MILLISECONDS);
+
+            typeIdRequest = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        // request the type of the serial device
+                        transport.write(TYPEID_REQUEST, 0, TYPEID_REQUEST.length);
+                    } catch (Exception e) {
+                        LOG.error("error during requesting type id of serial thing", e);
                     }
                 }
+            }, TYPEID_DELAY, TimeUnit.MILLISECONDS);
+
+            if (completed.get()) {
+                // answered or closed before the tasks were scheduled
+                cancelTasks();
+            }
+        }
+
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                cancelTasks();
+                search.probeCompleted();
+            }
+        }
+
+        private void cancelTasks() {
+            ScheduledFuture<?> request = typeIdRequest;
+            if (request != null) {
+                request.cancel(false);
+            }
+            ScheduledFuture<?> timeout = deadline;
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+        }
+    }
+
+    private static void initializePortAccess(SerialTransport transport, SerialListener listener, int baudRate)
+            throws IOException {
+
+        transport.setBaudRate(baudRate);
+        listener.setTransport(transport);
+        transport.setListener(listener);
+    }
+
+    /**
+     * Reads the received bytes until the transport has nothing left and feeds them to the framer.
+     *
+     * @return the number of bytes read
+     */
+    static int receive(SerialTransport transport, ByteBuffer buffer, LineFramer framer) throws IOException {
+        return receive(transport, buffer, framer, null);
+    }
+
+    /**
+     * @param capture gets every chunk before it is framed, may be <code>null</code>
+     */
+    static int receive(SerialTransport transport, ByteBuffer buffer, LineFramer framer, CaptureWriter capture)
+            throws IOException {
+        int total = 0;
+        int count;
+        while ((count = transport.read(buffer)) > 0) {
+            total += count;
+            buffer.flip();
+            if (capture != null) {
+                capture.record(CaptureWriter.RX, buffer);
             }
+            framer.feed(buffer);
+            buffer.clear();
         }
-        return null;
+        return total;
     }
 
     private static String[] findAllPorts() {
-        return SerialPortList.getPortNames();
+        return SerialTransports.getProvider().getPortNames();
     }
 
     /**
@@ -256,42 +516,215 @@ public class SerialPortCommunicator {
      * This will prevent port locking on platforms like Linux.
      */
     public synchronized void close() {
-        if (serialCommunication != null) {
-            serialCommunication.close();
+        SerialCommunication communication = serialCommunication;
+        if (communication != null) {
             serialCommunication = null;
+            communication.close();
+        }
+    }
+
+    /**
+     * Creates the receive path (framing and command dispatch) for the given handler. It is independent of a serial
+     * port, so received bytes can also be fed without hardware. Text lines and binary frames are accepted.
+     *
+     * @param handler gets the values of the incoming commands, may be <code>null</code>
+     */
+    public static LineFramer createReceiver(SerialTestHandler handler) {
+        return createReceiver(handler, new CommandDispatcher(), null, null);
+    }
+
+    /**
+     * @param dispatcher gets the commands of the handler in addition to the ones already registered
+     * @param requests gets all frames before the dispatcher, may be <code>null</code>
+     * @param metrics records all frames and counts the unknown commands, may be <code>null</code>
+     */
+    private static LineFramer createReceiver(SerialTestHandler handler, CommandDispatcher dispatcher,
+            PendingRequests requests, final PortMetrics metrics) {
+        FrameListener listener = requests != null ? requests : dispatcher;
+        BinaryFrameListener binaryListener = requests != null ? requests : dispatcher;
+        if (metrics != null) {
+            RecordingFrameListener recording = new RecordingFrameListener(metrics.getRecorder(), listener,
+                    binaryListener);
+            listener = recording;
+            binaryListener = recording;
+        }
+        final LineFramer framer = new LineFramer(listener, binaryListener, ByteBufferPool.shared());
+
+        dispatcher.register("LOG=", new CommandDecoder() {
+            @Override
+            public void decode(byte[] buffer, int offset, int length) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(Frames.toString(buffer, offset, length));
+                }
+            }
+        });
+        dispatcher.register("FRAMING=", new CommandDecoder() {
+            @Override
+            public void decode(byte[] buffer, int offset, int length) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("device sends {} frames from now on", Frames.toString(buffer, offset, length));
+                }
+            }
+        });
+        dispatcher.onUnknownCommand(new CommandDecoder() {
+            @Override
+            public void decode(byte[] buffer, int offset, int length) {
+                if (metrics != null) {
+                    metrics.unknownCommand();
+                    metrics.getRecorder().event(FlightRecorder.UNKNOWN, length);
+                }
+                // the line itself has already been recorded
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("unknown incoming serial event: {}; currently in queue: {} bytes",
+                            Frames.toString(buffer, offset, length), framer.pending());
+                }
+            }
+        });
+        if (handler != null) {
+            registerHandlerCommands(dispatcher, handler);
         }
+        return framer;
     }
 
-    private boolean parseButtonPressed(String command) {
-        return command.endsWith(Boolean.TRUE.toString());
+    private static void registerHandlerCommands(CommandDispatcher dispatcher, final SerialTestHandler handler) {
+        IntDecoder brightness = new IntDecoder() {
+            @Override
+            protected void onValue(int value) {
+                handler.onBrightnessChanged(value);
+            }
+        };
+        dispatcher.register("BRIGHTNESS=", brightness).register(BinaryFrames.BRIGHTNESS, brightness);
+
+        IntDecoder temperature = new IntDecoder() {
+            @Override
+            protected void onValue(int value) {
+                handler.onTemperatureChanged(value);
+            }
+        };
+        dispatcher.register("TEMPERATURE=", temperature).register(BinaryFrames.TEMPERATURE, temperature);
+
+        IntDecoder humidity = new IntDecoder() {
+            @Override
+            protected void onValue(int value) {
+                handler.onHumidityChanged(value);
+            }
+        };
+        dispatcher.register("HUMIDITY=", humidity).register(BinaryFrames.HUMIDITY, humidity);
+
+        BooleanDecoder doorbell = new BooleanDecoder(Boolean.TRUE.toString()) {
+            @Override
+            protected void onValue(boolean value) {
+                handler.onDoorbellPressed(value);
+            }
+        };
+        dispatcher.register("DOORBELL_PRESSED=", doorbell).register(BinaryFrames.DOORBELL_PRESSED, doorbell);
+
+        final Sample sample = new Sample();
+        dispatcher.register(Sample.PREFIX, new CommandDecoder() {
+            @Override
+            public void decode(byte[] buffer, int offset, int length) {
+                sample.decode(buffer, offset, length);
+                handler.onSample(sample);
+            }
+        });
     }
 
-    private int parseBrightness(String inputLine) {
-        return Integer.parseInt(inputLine.substring(inputLine.indexOf("=") + 1));
+    /**
+     * Sends a request to the device. Several requests may be outstanding, the answer is matched to the oldest request
+     * whose matcher accepts it. The answer is handled by the {@link SerialTestHandler} as usual, too.
+     * <p>
+     * Only text lines are matched, binary frames never complete a request.
+     *
+     * @param command the request including the line delimiter
+     * @return the future of the answer, failed with an {@link IOException} if the request could not be sent or the
+     *         port has been closed, with a {@link java.util.concurrent.TimeoutException} if the device did not answer
+     *         in time
+     */
+    public RequestFuture request(byte[] command, ResponseMatcher matcher, long timeout, TimeUnit unit) {
+        SerialCommunication communication = serialCommunication;
+        if (communication == null) {
+            LOG.warn("serialCommunication already closed! Request for {} could not be sent.", matcher);
+            return RequestFuture.failed(matcher, new IOException("port closed"));
+        }
+        return communication.requests.send(command, matcher, communication, timeout, unit);
     }
 
-    private int parseTemperature(String inputLine) {
-        return Integer.parseInt(inputLine.substring(inputLine.indexOf("=") + 1));
+    /**
+     * Requests the type id again, i.e. to check if the device is still connected.
+     *
+     * @return the future of the <code>TYPEID=</code> line
+     */
+    public RequestFuture requestTypeId() {
+        return request(TYPEID_REQUEST, ResponseMatcher.kind("TYPEID="), REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
     }
 
-    private int parseHumidity(String inputLine) {
-        return Integer.parseInt(inputLine.substring(inputLine.indexOf("=") + 1));
+    /**
+     * Asks the device to send binary frames ({@link BinaryFrames#FRAMING_BINARY}) or combined lines
+     * ({@link Sample#FRAMING_COMBINED}) from now on. Only devices which announced the framing during the type id
+     * handshake understand the request. They acknowledge it and then send all current values, like after
+     * {@link #sendRequestCurrentValues()}.
+     *
+     * @return the future of the acknowledgement <code>FRAMING=&lt;framing&gt;</code>
+     */
+    public RequestFuture requestFraming(String framing) {
+        return request(Frames.bytes("FRAMING=" + framing + "\n"), ResponseMatcher.tagged("FRAMING=", framing),
+                REQUEST_TIMEOUT, TimeUnit.MILLISECONDS);
     }
 
-    private static String parseLogMessage(String inputLine) {
-        return inputLine.substring(inputLine.indexOf("=") + 1);
+    /**
+     * Switches the link to the highest baud rate up to the given maximum, which both sides support, see
+     * {@link BaudRateUpgrade}. Only devices which announced their baud rates during the type id handshake understand
+     * the requests.
+     *
+     * @param deviceBaudRates the rates announced by the device
+     * @param scheduler runs the timeouts and calls the listener
+     * @param listener gets the rate in use afterwards, also if the link has not been switched
+     */
+    public void upgradeBaudRate(String deviceBaudRates, int maxBaudRate, ScheduledExecutorService scheduler,
+            final BaudRateListener listener) {
+
+        SerialCommunication communication = serialCommunication;
+        SerialTransport transport = communication != null ? communication.transport : null;
+        final int currentBaudRate = baudRate;
+        int selected = BaudRateUpgrade.selectBaudRate(deviceBaudRates, maxBaudRate);
+
+        if (transport == null || selected <= currentBaudRate) {
+            LOG.debug("no higher baud rate than {} supported by device ({}) and configuration ({})", currentBaudRate,
+                    deviceBaudRates, maxBaudRate);
+            scheduler.execute(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onBaudRateSelected(currentBaudRate);
+                }
+            });
+            return;
+        }
+
+        BaudRateUpgrade upgrade = new BaudRateUpgrade(scheduler);
+        communication.upgrade = upgrade;
+        upgrade.start(transport, currentBaudRate, selected, new BaudRateListener() {
+            @Override
+            public void onBaudRateSelected(int selectedBaudRate) {
+                baudRate = selectedBaudRate;
+                PortMetrics portMetrics = metrics;
+                if (portMetrics != null) {
+                    portMetrics.getRecorder().event(FlightRecorder.BAUDRATE, selectedBaudRate);
+                }
+                listener.onBaudRateSelected(selectedBaudRate);
+            }
+        });
     }
 
     public void sendRequestCurrentValues() {
+        SerialCommunication communication = serialCommunication;
+        if (communication == null) {
+            LOG.warn("serialCommunication already closed! Current values could not be requested.");
+            return;
+        }
         try {
-            if (serialCommunication != null) {
-                serialCommunication.write("CURRENTVALUES\n".getBytes());
-            } else {
-                LOG.warn("serialCommunication already closed! Current values could not be requested.");
-            }
-        } catch (Exception e) {
+            communication.write(CURRENTVALUES_REQUEST);
+        } catch (IOException e) {
             LOG.error("error during requesting current values", e);
         }
-
     }
 }
@@ -7,6 +7,11 @@
  */
 package org.openhab.binding.serialthing.handler;
 
+import static org.openhab.binding.serialthing.SerialThingBindingConstants.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -16,11 +21,22 @@ import org.eclipse.smarthome.core.thing.ChannelUID;
 import org.eclipse.smarthome.core.thing.Thing;
 import org.eclipse.smarthome.core.thing.ThingStatus;
 import org.eclipse.smarthome.core.thing.ThingStatusDetail;
+import org.eclipse.smarthome.core.thing.ThingUID;
 import org.eclipse.smarthome.core.thing.binding.BaseThingHandler;
 import org.eclipse.smarthome.core.types.Command;
 import org.openhab.binding.serialthing.SerialThingBindingConstants;
+import org.openhab.binding.serialthing.discovery.DeviceIdentity;
 import org.openhab.binding.serialthing.handler.SerialListenerImpl.SerialThing;
+import org.openhab.binding.serialthing.handler.SerialPortCommunicator.BaudRateListener;
+import org.openhab.binding.serialthing.handler.SerialPortCommunicator.ConnectionListener;
 import org.openhab.binding.serialthing.handler.SerialPortCommunicator.SerialTestHandler;
+import org.openhab.binding.serialthing.handler.StateQueue.OverflowPolicy;
+import org.openhab.binding.serialthing.metrics.PortMetrics;
+import org.openhab.binding.serialthing.metrics.SerialMetrics;
+import org.openhab.binding.serialthing.protocol.BinaryFrames;
+import org.openhab.binding.serialthing.protocol.RequestFuture;
+import org.openhab.binding.serialthing.protocol.Sample;
+import org.openhab.binding.serialthing.transport.SerialTransports;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,12 +50,63 @@ public class SerialThingHandler extends BaseThingHandler {
 
     private static final long CURRENTVALUES_DELAY = 2;
 
+    /** Default of {@link SerialThingBindingConstants#PARAM_MAX_SILENCE} in seconds. */
+    private static final int DEFAULT_MAX_SILENCE = 600;
+
+    /** Default of {@link SerialThingBindingConstants#PARAM_REFRESHRATE} in seconds, as declared in thing-types.xml. */
+    private static final int DEFAULT_REFRESH_RATE = 60;
+
+    /** The doorbell sends its events on its own, so it is only polled if configured. */
+    private static final int DEFAULT_DOORBELL_REFRESH_RATE = 0;
+
+    /**
+     * Default of {@link SerialThingBindingConstants#PARAM_HISTORY_BUDGET} in kilobytes, as declared in
+     * thing-types.xml. The doorbell has no numeric channels, so it keeps no history.
+     */
+    private static final int DEFAULT_HISTORY_BUDGET = 64;
+
+    /** The keys of the numeric channels, their values may be coalesced. */
+    private static final byte[] NUMERIC_KEYS = { Sample.BRIGHTNESS, Sample.TEMPERATURE, Sample.HUMIDITY };
+
+    /** The keys of the events users wait for, they are published ahead of the numeric values. */
+    private static final byte[] URGENT_KEYS = { Sample.DOORBELL_PRESSED };
+
     private static Logger LOG = LoggerFactory.getLogger(SerialThingHandler.class);
 
     private SerialPortCommunicator serialPortComm;
 
+    /** Publishes the values of the open connection, closed with it. */
+    private StateQueue stateQueue;
+
+    /** Opens the port and opens it again after a failure, guarded by {@link #connectionLock}. */
+    private ReconnectSupervisor supervisor;
+
+    private final Object connectionLock = new Object();
+
+    /** The configured port, or the one the device has been found at after a reconnect. */
+    private volatile String port;
+
+    /** The device found at the port on the first connect, <code>null</code> before. */
+    private volatile DeviceIdentity identity;
+
+    private int baudRate;
+
     private ScheduledFuture<?> refreshJob;
 
+    private volatile RefreshSchedule refreshSchedule;
+
+    private ScheduledFuture<?> metricsJob;
+
+    private volatile PortMetrics metrics;
+
+    private ChannelState temperatureState;
+    private ChannelState humidityState;
+    private ChannelState brightnessState;
+    private ChannelUID doorbellChannel;
+
+    /** The recent readings by channel id, kept across reconnects. */
+    private final Map<String, TimeSeries> histories = new HashMap<>();
+
     public SerialThingHandler(Thing thing) {
         super(thing);
     }
@@ -52,17 +119,45 @@ public class SerialThingHandler extends BaseThingHandler {
     @Override
     public void dispose() {
         reset();
+        PortMetrics portMetrics = metrics;
+        if (portMetrics != null) {
+            SerialMetrics.remove(portMetrics.getPort());
+            metrics = null;
+        }
         super.dispose();
     }
 
     private void reset() {
+        synchronized (connectionLock) {
+            if (supervisor != null) {
+                supervisor.cancel();
+                supervisor = null;
+            }
+            closeConnection();
+        }
+    }
+
+    private void closeConnection() {
         if (refreshJob != null) {
             refreshJob.cancel(true);
         }
+        if (refreshSchedule != null) {
+            refreshSchedule.cancel();
+            refreshSchedule = null;
+        }
+        if (metricsJob != null) {
+            metricsJob.cancel(false);
+            metricsJob = null;
+        }
         if (serialPortComm != null) {
             serialPortComm.close();
             serialPortComm = null;
         }
+        if (stateQueue != null) {
+            // the values of the old connection must not be published after the ones of the new one
+            stateQueue.close();
+            stateQueue = null;
+        }
     }
 
     @Override
@@ -72,57 +167,464 @@ public class SerialThingHandler extends BaseThingHandler {
 
         reset();
 
-        String serialPortToUse = getThing().getProperties().get(SerialThing.PORT);
+        port = getThing().getProperties().get(SerialThing.PORT);
+        identity = null;
+
+        initializeChannelStates();
+
+        baudRate = getIntConfig(PARAM_BAUDRATE, SerialPortCommunicator.DEFAULT_BAUDRATE);
+
+        ReconnectSupervisor connection;
+        synchronized (connectionLock) {
+            connection = new ReconnectSupervisor(scheduler, createConnection());
+            supervisor = connection;
+        }
+        connection.start();
+    }
+
+    /**
+     * The port of the thing supervised by the {@link ReconnectSupervisor}. While it is not connected, the thing is
+     * OFFLINE.
+     */
+    private ReconnectSupervisor.Connection createConnection() {
+        return new ReconnectSupervisor.Connection() {
 
+            private ReconnectSupervisor owner;
+
+            @Override
+            public void connect() throws IOException {
+                synchronized (connectionLock) {
+                    if (owner == null) {
+                        owner = supervisor;
+                    }
+                    if (owner != supervisor) {
+                        throw new IOException("handler disposed");
+                    }
+                    openConnection(owner);
+                }
+            }
+
+            @Override
+            public void disconnect(Exception cause) {
+                synchronized (connectionLock) {
+                    if (owner == supervisor) {
+                        closeConnection();
+                    }
+                }
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                        "connection lost: " + cause.getMessage());
+            }
+
+            @Override
+            public boolean isPresent() {
+                SerialPortCommunicator communicator = serialPortComm;
+                String portName = communicator != null ? communicator.getPortName() : null;
+                return portName == null || SerialTransports.isPortPresent(portName);
+            }
+
+            @Override
+            public void onConnectFailed(IOException cause, int attempts, long retryDelay) {
+                LOG.warn("{} could not be connected ({} attempts): {} -> retry in {} ms", getThing().getUID(),
+                        attempts, cause.getMessage(), retryDelay);
+                PortMetrics portMetrics = metrics;
+                if (portMetrics != null) {
+                    portMetrics.reconnectFailed();
+                }
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, cause.getMessage());
+            }
+
+            @Override
+            public void onReconnected(int attempts, long recoveryTime) {
+                PortMetrics portMetrics = metrics;
+                if (portMetrics != null) {
+                    portMetrics.recovered(recoveryTime);
+                }
+            }
+        };
+    }
+
+    /**
+     * Opens the port of the device and requests its values. Must be called with the {@link #connectionLock}.
+     */
+    private void openConnection(final ReconnectSupervisor owner) throws IOException {
+        String portToUse = resolvePort();
+        SerialPortCommunicator communicator = new SerialPortCommunicator(createSerialPortHandler());
+        communicator.setConnectionListener(new ConnectionListener() {
+            @Override
+            public void onConnectionLost(IOException cause) {
+                owner.connectionLost(cause);
+            }
+        });
         try {
-            serialPortComm = new SerialPortCommunicator(createSerialPortHandler());
-            serialPortComm.initialize(serialPortToUse);
+            communicator.initialize(portToUse, baudRate);
+        } catch (IOException | RuntimeException e) {
+            communicator.close();
+            stateQueue.close();
+            stateQueue = null;
+            throw e instanceof IOException ? (IOException) e : new IOException(e.getMessage(), e);
+        }
+        serialPortComm = communicator;
+        if (identity == null) {
+            identity = DeviceIdentity.of(communicator.getPortName());
+        }
 
-            updateStatus(ThingStatus.ONLINE);
-            requestInitialThingValues();
-        } catch (Exception e) {
-            updateStatus(ThingStatus.UNINITIALIZED, ThingStatusDetail.HANDLER_INITIALIZING_ERROR, e.getMessage());
+        PortMetrics previous = metrics;
+        if (previous != null && !previous.getPort().equals(communicator.getPortName())) {
+            SerialMetrics.remove(previous.getPort());
         }
+        startMetrics(communicator.getMetrics());
+
+        updateStatus(ThingStatus.ONLINE);
+        requestInitialThingValues(baudRate);
     }
 
+    /**
+     * Finds the device again, if it is attached to another port than before (i.e. /dev/ttyUSB1 instead of
+     * /dev/ttyUSB0 after it has been plugged in again). Only possible if the device has a
+     * {@link DeviceIdentity#isStable() stable identity}.
+     *
+     * @return the port to open, <code>null</code> for the default ports
+     * @throws IOException if another device is attached to the port and the device is attached to no other port
+     */
+    private String resolvePort() throws IOException {
+        String current = port;
+        DeviceIdentity known = identity;
+        if (known == null || !known.isStable()) {
+            return current;
+        }
+        DeviceIdentity attached = current != null ? DeviceIdentity.of(current) : null;
+        if (known.equals(attached)) {
+            return current;
+        }
+        for (String candidate : SerialTransports.getProvider().getPortNames()) {
+            if (!candidate.equals(current) && known.equals(DeviceIdentity.of(candidate))) {
+                LOG.info("device {} of {} found at port {} instead of {}", known, getThing().getUID(), candidate,
+                        current);
+                port = candidate;
+                updateProperty(SerialThing.PORT, candidate);
+                return candidate;
+            }
+        }
+        if (attached != null && attached.isStable()) {
+            throw new IOException("device " + known + " not attached, port " + current + " belongs to " + attached);
+        }
+        return current;
+    }
+
+    /**
+     * The values are decoded by the serial event thread and published by the scheduler, see {@link StateQueue}. The
+     * queue is kept in {@link #stateQueue}. Must be called with the {@link #connectionLock}.
+     */
     private SerialTestHandler createSerialPortHandler() {
+        final StateQueue queue = new StateQueue(StateQueue.DEFAULT_CAPACITY,
+                OverflowPolicy.parse(getStringConfig(PARAM_OVERFLOW_POLICY)), NUMERIC_KEYS, URGENT_KEYS, scheduler,
+                new StateQueue.Consumer() {
+                    @Override
+                    public void onValue(byte key, int value, long time, long receiveStarted) {
+                        if (key == Sample.DOORBELL_PRESSED) {
+                            updateState(doorbellChannel, value != 0 ? OnOffType.ON : OnOffType.OFF);
+                            urgentPublished(receiveStarted);
+                        } else {
+                            publish(stateOf(key), value, time, receiveStarted);
+                        }
+                    }
+
+                    @Override
+                    public void onSample(Sample sample, long time, long receiveStarted) {
+                        // one pass over the channels, the values of the sample are never published separately
+                        for (byte key : NUMERIC_KEYS) {
+                            if (sample.has(key)) {
+                                publish(stateOf(key), sample.get(key), time, receiveStarted);
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onLost(byte key, boolean coalesced) {
+                        PortMetrics portMetrics = metrics;
+                        if (portMetrics != null) {
+                            if (coalesced) {
+                                portMetrics.valueCoalesced();
+                            } else {
+                                portMetrics.valueDropped();
+                            }
+                        }
+                    }
+                });
+        stateQueue = queue;
+
         return new SerialTestHandler() {
 
             @Override
             public void onTemperatureChanged(int temperature) {
-                updateState(new ChannelUID(getThing().getUID(), SerialThingBindingConstants.CHANNEL_TEMPERATURE),
-                        new DecimalType(temperature));
+                received(queue, Sample.TEMPERATURE, temperature);
             }
 
             @Override
             public void onHumidityChanged(int humidity) {
-                updateState(new ChannelUID(getThing().getUID(), SerialThingBindingConstants.CHANNEL_HUMIDITY),
-                        new DecimalType(humidity));
+                received(queue, Sample.HUMIDITY, humidity);
             }
 
             @Override
             public void onBrightnessChanged(int brightness) {
-                updateState(new ChannelUID(getThing().getUID(), SerialThingBindingConstants.CHANNEL_BRIGHTNESS),
-                        new DecimalType(brightness));
+                received(queue, Sample.BRIGHTNESS, brightness);
             }
 
             @Override
             public void onDoorbellPressed(boolean pressed) {
-                updateState(new ChannelUID(getThing().getUID(), SerialThingBindingConstants.CHANNEL_DOORBELL),
-                        pressed ? OnOffType.ON : OnOffType.OFF);
+                received(queue, Sample.DOORBELL_PRESSED, pressed ? 1 : 0);
+            }
+
+            @Override
+            public void onSample(Sample sample) {
+                valueReceived();
+                // all values of the sample are measured at the same time, so they are queued as one entry
+                queue.offerSample(sample, System.currentTimeMillis(), receiveStarted());
             }
         };
     }
 
-    private void requestInitialThingValues() {
+    private void received(StateQueue queue, byte key, int value) {
+        valueReceived();
+        queue.offer(key, value, System.currentTimeMillis(), receiveStarted());
+    }
+
+    private void valueReceived() {
+        RefreshSchedule schedule = refreshSchedule;
+        if (schedule != null) {
+            schedule.onValueReceived();
+        }
+    }
+
+    /**
+     * @return the start of the current serial event, now if the port has no metrics yet
+     */
+    private long receiveStarted() {
+        PortMetrics portMetrics = metrics;
+        return portMetrics != null ? portMetrics.getReceiveStarted() : System.nanoTime();
+    }
+
+    /**
+     * @param key the key of a numeric channel, i.e. {@link Sample#TEMPERATURE}
+     */
+    private ChannelState stateOf(byte key) {
+        switch (key) {
+            case Sample.BRIGHTNESS:
+                return brightnessState;
+            case Sample.TEMPERATURE:
+                return temperatureState;
+            case Sample.HUMIDITY:
+                return humidityState;
+            default:
+                throw new IllegalArgumentException("no channel for key " + (char) key);
+        }
+    }
+
+    /**
+     * Records the latency from the serial event to the published state.
+     */
+    private void published(long receiveStarted) {
+        PortMetrics portMetrics = metrics;
+        if (portMetrics != null) {
+            portMetrics.valuePublished(receiveStarted);
+        }
+    }
+
+    /**
+     * Records the latency from the serial event to the published state of an urgent value.
+     */
+    private void urgentPublished(long receiveStarted) {
+        PortMetrics portMetrics = metrics;
+        if (portMetrics != null) {
+            portMetrics.urgentValuePublished(receiveStarted);
+        }
+    }
+
+    /**
+     * Publishes the metrics of the port as thing properties, if configured.
+     */
+    private void startMetrics(final PortMetrics portMetrics) {
+        metrics = portMetrics;
+        portMetrics.setThing(getThing().getUID().toString());
+        int interval = getIntConfig(PARAM_METRICS_INTERVAL, 0);
+        if (interval > 0) {
+            metricsJob = scheduler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    updateProperties(portMetrics.toProperties());
+                }
+            }, interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Creates the states of all channels. Must be called before the serial port is opened.
+     */
+    private void initializeChannelStates() {
+        ThingUID thingUID = getThing().getUID();
+        long maxSilence = TimeUnit.SECONDS.toMillis(getIntConfig(PARAM_MAX_SILENCE, DEFAULT_MAX_SILENCE));
+
+        // the budget is shared by the numeric channels
+        long historyBudget = 1024L * getIntConfig(PARAM_HISTORY_BUDGET,
+                THING_TYPE_DOORBELL.equals(getThing().getThingTypeUID()) ? 0 : DEFAULT_HISTORY_BUDGET) / 3;
+
+        temperatureState = new ChannelState(new ChannelUID(thingUID, CHANNEL_TEMPERATURE),
+                getIntConfig(PARAM_TEMPERATURE_DEADBAND, 0), maxSilence,
+                createHistory(CHANNEL_TEMPERATURE, historyBudget));
+        humidityState = new ChannelState(new ChannelUID(thingUID, CHANNEL_HUMIDITY),
+                getIntConfig(PARAM_HUMIDITY_DEADBAND, 0), maxSilence, createHistory(CHANNEL_HUMIDITY, historyBudget));
+        brightnessState = new ChannelState(new ChannelUID(thingUID, CHANNEL_BRIGHTNESS),
+                getIntConfig(PARAM_BRIGHTNESS_DEADBAND, 0), maxSilence,
+                createHistory(CHANNEL_BRIGHTNESS, historyBudget));
+        doorbellChannel = new ChannelUID(thingUID, CHANNEL_DOORBELL);
+    }
+
+    /**
+     * @return the history of the channel, the one of the last initialization if it has the same capacity
+     */
+    private TimeSeries createHistory(String channelId, long budget) {
+        int capacity = TimeSeries.capacityOf(budget);
+        synchronized (histories) {
+            TimeSeries history = histories.get(channelId);
+            if (capacity <= 0) {
+                histories.remove(channelId);
+                return null;
+            }
+            if (history == null || history.getCapacity() != capacity) {
+                history = new TimeSeries(capacity);
+                histories.put(channelId, history);
+            }
+            return history;
+        }
+    }
+
+    /**
+     * @param channelId i.e. {@link SerialThingBindingConstants#CHANNEL_TEMPERATURE}
+     * @return the recent readings of the numeric channel, also the ones which have not been published because of
+     *         the deadband, <code>null</code> if not recorded (see
+     *         {@link SerialThingBindingConstants#PARAM_HISTORY_BUDGET})
+     */
+    public TimeSeries getHistory(String channelId) {
+        synchronized (histories) {
+            return histories.get(channelId);
+        }
+    }
+
+    /**
+     * Publishes the reading, unless it is within the deadband of the last published value of the channel.
+     */
+    private void publish(ChannelState state, int value, long now, long receiveStarted) {
+        if (state.accept(value, now)) {
+            updateState(state.getUID(), new DecimalType(value));
+            published(receiveStarted);
+        }
+    }
+
+    private int getIntConfig(String name, int defaultValue) {
+        Object value = getThing().getConfiguration().get(name);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value instanceof String) {
+            try {
+                return Integer.parseInt((String) value);
+            } catch (NumberFormatException e) {
+                LOG.warn("invalid value '{}' of configuration parameter '{}' -> use {}", value, name, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @return the value of the parameter, <code>null</code> if not configured
+     */
+    private String getStringConfig(String name) {
+        Object value = getThing().getConfiguration().get(name);
+        return value != null ? value.toString() : null;
+    }
+
+    /**
+     * Switches to a higher baud rate first, if configured and announced by the device.
+     *
+     * @param baudRate the configured rate of the device after a reset
+     */
+    private void requestInitialThingValues(final int baudRate) {
+
+        final SerialPortCommunicator communicator = serialPortComm;
+        final String framing = getThing().getProperties().get(SerialThing.FRAMING);
+        final boolean framingAnnounced = BinaryFrames.FRAMING_BINARY.equals(framing)
+                || Sample.FRAMING_COMBINED.equals(framing);
+        final String deviceBaudRates = getThing().getProperties().get(SerialThing.BAUDRATES);
+        final int maxBaudRate = getIntConfig(PARAM_MAX_BAUDRATE, baudRate);
+        final boolean upgradeBaudRate = maxBaudRate > baudRate && deviceBaudRates != null;
+
+        final RefreshSchedule refresh = createRefreshSchedule(communicator);
+        refreshSchedule = refresh;
+
+        final BaudRateListener requestValues = new BaudRateListener() {
+            @Override
+            public void onBaudRateSelected(int selectedBaudRate) {
+                if (refresh != null) {
+                    refresh.onRequested();
+                }
+                if (framingAnnounced) {
+                    // the device answers with its current values
+                    requestFraming(communicator, framing);
+                } else {
+                    communicator.sendRequestCurrentValues();
+                }
+                if (refresh != null) {
+                    refresh.start();
+                }
+            }
+        };
 
         Runnable runnable = new Runnable() {
             @Override
             public void run() {
-                serialPortComm.sendRequestCurrentValues();
+                if (upgradeBaudRate) {
+                    communicator.upgradeBaudRate(deviceBaudRates, maxBaudRate, scheduler, requestValues);
+                } else {
+                    requestValues.onBaudRateSelected(baudRate);
+                }
             }
         };
 
         refreshJob = scheduler.schedule(runnable, CURRENTVALUES_DELAY, TimeUnit.SECONDS);
     }
+
+    /**
+     * Requests the framing; if the device does not acknowledge it, the values are requested as text lines instead.
+     */
+    private void requestFraming(final SerialPortCommunicator communicator, final String framing) {
+        final RequestFuture acknowledged = communicator.requestFraming(framing);
+        acknowledged.addListener(new Runnable() {
+            @Override
+            public void run() {
+                Throwable failure = acknowledged.getFailure();
+                if (failure != null) {
+                    LOG.warn("framing {} not acknowledged by {}, staying with text lines: {}", framing,
+                            getThing().getUID(), failure.getMessage());
+                    communicator.sendRequestCurrentValues();
+                }
+            }
+        }, scheduler);
+    }
+
+    /**
+     * @return the periodic request of the current values, <code>null</code> if not configured
+     */
+    private RefreshSchedule createRefreshSchedule(final SerialPortCommunicator communicator) {
+        int refreshRate = getIntConfig(PARAM_REFRESHRATE,
+                THING_TYPE_DOORBELL.equals(getThing().getThingTypeUID()) ? DEFAULT_DOORBELL_REFRESH_RATE
+                        : DEFAULT_REFRESH_RATE);
+        if (refreshRate <= 0) {
+            return null;
+        }
+        return new RefreshSchedule(scheduler, TimeUnit.SECONDS.toMillis(refreshRate), new Runnable() {
+            @Override
+            public void run() {
+                communicator.sendRequestCurrentValues();
+            }
+        });
+    }
 }
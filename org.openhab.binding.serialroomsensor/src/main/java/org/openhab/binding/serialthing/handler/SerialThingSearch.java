@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SerialThingSearch} is the handle of a running search for serial things, see
+ * {@link SerialPortCommunicator#searchSerialThings}. All ports are probed at the same time and the search is done as
+ * soon as every probed port has answered or reached its deadline.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class SerialThingSearch {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SerialThingSearch.class);
+
+    public interface CompletionListener {
+
+        /**
+         * Called once, on the thread which finished the last probe.
+         */
+        void onCompleted(SerialThingSearch search);
+    }
+
+    private final Set<String> availablePorts;
+
+    private final Set<String> ports = Collections.synchronizedSet(new HashSet<String>());
+
+    private final List<CompletionListener> listeners = new CopyOnWriteArrayList<CompletionListener>();
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /** Starts with one to not complete before all probes are started. */
+    private final AtomicInteger pendingProbes = new AtomicInteger(1);
+
+    private final long startTime = System.currentTimeMillis();
+
+    SerialThingSearch(String[] availablePorts) {
+        this.availablePorts = Collections.unmodifiableSet(new HashSet<String>(Arrays.asList(availablePorts)));
+    }
+
+    /**
+     * @return the names of all ports which existed at the start of the search
+     */
+    public Set<String> getAvailablePorts() {
+        return availablePorts;
+    }
+
+    /**
+     * @return the names of the ports which were opened for identification
+     */
+    public Set<String> getPorts() {
+        synchronized (ports) {
+            return new HashSet<String>(ports);
+        }
+    }
+
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * Waits until all ports have answered or reached their deadline.
+     *
+     * @return <code>true</code> if the search is done, <code>false</code> if the timeout elapsed before
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    /**
+     * Adds a listener which gets called when the search is done. If the search is already done, the listener is
+     * called immediately.
+     */
+    public void addCompletionListener(CompletionListener listener) {
+        listeners.add(listener);
+        if (isDone() && listeners.remove(listener)) {
+            listener.onCompleted(this);
+        }
+    }
+
+    void probeStarted() {
+        pendingProbes.incrementAndGet();
+    }
+
+    void portOpened(String port) {
+        ports.add(port);
+    }
+
+    void probeCompleted() {
+        if (pendingProbes.decrementAndGet() == 0) {
+            done.countDown();
+            LOG.debug("search done after {} ms, {} port(s) probed", System.currentTimeMillis() - startTime,
+                    ports.size());
+            for (CompletionListener listener : listeners) {
+                if (listeners.remove(listener)) {
+                    listener.onCompleted(this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Called after all probes are started.
+     */
+    void allProbesStarted() {
+        probeCompleted();
+    }
+}
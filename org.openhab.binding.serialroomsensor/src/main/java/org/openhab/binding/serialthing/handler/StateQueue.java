@@ -0,0 +1,550 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.openhab.binding.serialthing.protocol.Sample;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link StateQueue} hands the decoded values from the serial event thread to a consumer, which publishes them.
+ * So a slow event bus does not delay reading the port. The consumer is a task of the given executor, which runs while
+ * values are queued, at most one at a time.
+ * <p>
+ * The queue is a ring of preallocated primitive arrays for one producer and one consumer, neither of them locks. If
+ * it is full, the {@link OverflowPolicy} decides which value is lost.
+ * <p>
+ * Urgent values (i.e. doorbell presses) take a fast lane, a second ring which the consumer empties before every
+ * queued value. So they are delivered ahead of the pending telemetry and are never coalesced.
+ * <p>
+ * A combined {@link Sample} takes one slot of the ring, so its values are published, dropped or coalesced together.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class StateQueue {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StateQueue.class);
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    /** Urgent values are rare, the fast lane only has to hold a burst of them. */
+    private static final int FAST_LANE_CAPACITY = 16;
+
+    /** The keys of the values are the letters of {@link Sample}. */
+    private static final int KEY_COUNT = 'Z' - 'A' + 1;
+
+    /** The key of a combined sample in the ring and in {@link Consumer#onLost(byte, boolean)}. */
+    public static final byte SAMPLE = '@';
+
+    /** The index of the coalesced sample, after the ones of the keys. */
+    private static final int SAMPLE_INDEX = KEY_COUNT;
+
+    /**
+     * What happens to a value if the queue is full.
+     */
+    public enum OverflowPolicy {
+
+        /** The oldest queued value is dropped. */
+        DROP_OLDEST,
+
+        /**
+         * The value replaces the pending value of its channel, which is published after the queued ones. Values of
+         * channels which may not be coalesced (i.e. doorbell events) drop the oldest queued value instead.
+         */
+        COALESCE;
+
+        /**
+         * @param value the configured policy, i.e. <code>dropoldest</code>
+         * @return the policy, {@link #COALESCE} if not configured or unknown
+         */
+        public static OverflowPolicy parse(String value) {
+            return "dropoldest".equalsIgnoreCase(value) ? DROP_OLDEST : COALESCE;
+        }
+    }
+
+    /**
+     * Gets the values in the order they were offered, coalesced values after the queued ones.
+     */
+    public interface Consumer {
+
+        /**
+         * @param time the time the value has been received in milliseconds
+         * @param receiveStarted the start of the serial event which delivered the value, see
+         *            {@link System#nanoTime()}
+         */
+        void onValue(byte key, int value, long time, long receiveStarted);
+
+        /**
+         * @param sample the values measured at the same time, only valid during the call
+         * @param time the time the sample has been received in milliseconds
+         * @param receiveStarted the start of the serial event which delivered the sample
+         */
+        void onSample(Sample sample, long time, long receiveStarted);
+
+        /**
+         * Called by the producer if a value is lost, because the queue or the fast lane is full.
+         *
+         * @param key the key of the value, {@link StateQueue#SAMPLE} for a combined sample
+         * @param coalesced <code>true</code> if the value has been replaced by a newer value of the same key,
+         *            <code>false</code> if it has been dropped
+         */
+        void onLost(byte key, boolean coalesced);
+    }
+
+    private final int mask;
+    private final byte[] keys;
+    private final int[] values;
+    private final long[] times;
+    private final long[] receiveStarts;
+    /** The samples of the slots with the key {@link #SAMPLE}, created on first use. */
+    private final Sample[] samples;
+
+    /** Next value to consume. Advanced by the consumer, and by the producer if it drops the oldest value. */
+    private final AtomicLong head = new AtomicLong();
+
+    /** Next slot to fill, only advanced by the producer. */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The latest value per key if coalesced, guarded by a sequence number per key, odd while written. The combined
+     * sample is coalesced at {@link #SAMPLE_INDEX}.
+     */
+    private final AtomicLongArray coalescedSequences = new AtomicLongArray(KEY_COUNT + 1);
+    private final int[] coalescedValues = new int[KEY_COUNT];
+    private final Sample coalescedSample = new Sample();
+    private final long[] coalescedTimes = new long[KEY_COUNT + 1];
+    private final long[] coalescedReceiveStarts = new long[KEY_COUNT + 1];
+    /** The tail when the value has been coalesced, the queued values before are older. */
+    private final long[] coalescedPositions = new long[KEY_COUNT + 1];
+
+    /** The sequence of the coalesced value last consumed per key. */
+    private final AtomicLongArray consumedSequences = new AtomicLongArray(KEY_COUNT + 1);
+
+    /** Bit per key with a coalesced value not consumed yet, bit {@link #SAMPLE_INDEX} for the sample. */
+    private final AtomicInteger coalescedPending = new AtomicInteger();
+
+    /** The values of the offered sample without the urgent ones, only used by the producer. */
+    private final Sample offeredSample = new Sample();
+
+    /** Read by the consumer, the samples are not published from the ring. */
+    private final Sample consumedSample = new Sample();
+
+    /** Bit per key which may be coalesced. */
+    private final int coalescable;
+
+    /** Bit per key which takes the fast lane. */
+    private final int urgent;
+
+    // the fast lane, a ring like the one above
+    private final byte[] laneKeys = new byte[FAST_LANE_CAPACITY];
+    private final int[] laneValues = new int[FAST_LANE_CAPACITY];
+    private final long[] laneTimes = new long[FAST_LANE_CAPACITY];
+    private final long[] laneReceiveStarts = new long[FAST_LANE_CAPACITY];
+    private final AtomicLong laneHead = new AtomicLong();
+    private final AtomicLong laneTail = new AtomicLong();
+
+    private final OverflowPolicy policy;
+
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+
+    private volatile boolean closed;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    private final Executor executor;
+    private final Consumer consumer;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    /**
+     * @param capacity the number of queued values, rounded up to a power of two
+     * @param coalescableKeys the keys whose values may be coalesced
+     * @param urgentKeys the keys whose values take the fast lane
+     * @param executor runs the consumer
+     */
+    public StateQueue(int capacity, OverflowPolicy policy, byte[] coalescableKeys, byte[] urgentKeys,
+            Executor executor, Consumer consumer) {
+        int slots = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.mask = slots - 1;
+        this.keys = new byte[slots];
+        this.values = new int[slots];
+        this.times = new long[slots];
+        this.receiveStarts = new long[slots];
+        this.samples = new Sample[slots];
+        this.policy = policy;
+        int bits = 0;
+        for (byte key : coalescableKeys) {
+            bits |= bit(key);
+        }
+        this.coalescable = bits;
+        bits = 0;
+        for (byte key : urgentKeys) {
+            bits |= bit(key);
+        }
+        this.urgent = bits;
+        this.executor = executor;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Queues a value and starts the consumer, if not running. Must only be called by one thread at a time.
+     *
+     * @param key an upper case letter, i.e. {@link org.openhab.binding.serialthing.protocol.Sample#TEMPERATURE}
+     */
+    public void offer(byte key, int value, long time, long receiveStarted) {
+        if (closed) {
+            return;
+        }
+        int bit = bit(key);
+        if ((urgent & bit) != 0) {
+            offerUrgent(key, value, time, receiveStarted);
+            return;
+        }
+        boolean coalesce = policy == OverflowPolicy.COALESCE && (coalescable & bit) != 0;
+
+        long t = tail.get();
+        // a pending coalesced value is newer than the queued ones, so the following values have to replace it
+        if (coalesce && ((coalescedPending.get() & bit) != 0 || t - head.get() > mask)) {
+            coalesce(key, bit, value, time, receiveStarted, t);
+            startConsumer();
+            return;
+        }
+
+        long h = head.get();
+        if (t - h > mask && head.compareAndSet(h, h + 1)) {
+            // the consumer ignores the slot, if it has read it at the same time
+            dropped.incrementAndGet();
+            consumer.onLost(keys[(int) h & mask], false);
+        }
+        int slot = (int) t & mask;
+        keys[slot] = key;
+        values[slot] = value;
+        times[slot] = time;
+        receiveStarts[slot] = receiveStarted;
+        tail.lazySet(t + 1);
+        startConsumer();
+    }
+
+    /**
+     * Queues the values of a sample as one entry, the urgent ones take the fast lane. The sample is coalesced as a
+     * whole, if all of its values may be coalesced. Must only be called by the thread calling
+     * {@link #offer(byte, int, long, long)}.
+     *
+     * @param sample copied, so it may be reused afterwards
+     */
+    public void offerSample(Sample sample, long time, long receiveStarted) {
+        if (closed) {
+            return;
+        }
+        Sample queued = offeredSample;
+        queued.clear();
+        int present = 0;
+        for (byte key = 'A'; key <= 'Z'; key++) {
+            if (sample.has(key)) {
+                if ((urgent & bit(key)) != 0) {
+                    offerUrgent(key, sample.get(key), time, receiveStarted);
+                } else {
+                    queued.set(key, sample.get(key));
+                    present |= bit(key);
+                }
+            }
+        }
+        if (present == 0) {
+            return;
+        }
+        boolean coalesce = policy == OverflowPolicy.COALESCE && (present & ~coalescable) == 0;
+        int bit = 1 << SAMPLE_INDEX;
+
+        long t = tail.get();
+        if (coalesce && ((coalescedPending.get() & bit) != 0 || t - head.get() > mask)) {
+            boolean replaced = beginCoalesce(SAMPLE_INDEX);
+            coalescedSample.copyFrom(queued);
+            endCoalesce(SAMPLE_INDEX, SAMPLE, bit, replaced, time, receiveStarted, t);
+            startConsumer();
+            return;
+        }
+
+        long h = head.get();
+        if (t - h > mask && head.compareAndSet(h, h + 1)) {
+            dropped.incrementAndGet();
+            consumer.onLost(keys[(int) h & mask], false);
+        }
+        int slot = (int) t & mask;
+        if (samples[slot] == null) {
+            samples[slot] = new Sample();
+        }
+        keys[slot] = SAMPLE;
+        samples[slot].copyFrom(queued);
+        times[slot] = time;
+        receiveStarts[slot] = receiveStarted;
+        tail.lazySet(t + 1);
+        startConsumer();
+    }
+
+    /**
+     * Discards the pending values. Values offered afterwards are ignored, and a consumer task which is already
+     * submitted publishes nothing.
+     */
+    public void close() {
+        closed = true;
+        coalescedPending.set(0);
+        long h;
+        while ((h = head.get()) < tail.get() && !head.compareAndSet(h, tail.get())) {
+            // the consumer has advanced the head meanwhile
+        }
+        while ((h = laneHead.get()) < laneTail.get() && !laneHead.compareAndSet(h, laneTail.get())) {
+            // the consumer has advanced the head meanwhile
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void offerUrgent(byte key, int value, long time, long receiveStarted) {
+        long t = laneTail.get();
+        long h = laneHead.get();
+        if (t - h >= FAST_LANE_CAPACITY && laneHead.compareAndSet(h, h + 1)) {
+            dropped.incrementAndGet();
+            consumer.onLost(laneKeys[(int) h & (FAST_LANE_CAPACITY - 1)], false);
+        }
+        int slot = (int) t & (FAST_LANE_CAPACITY - 1);
+        laneKeys[slot] = key;
+        laneValues[slot] = value;
+        laneTimes[slot] = time;
+        laneReceiveStarts[slot] = receiveStarted;
+        laneTail.lazySet(t + 1);
+        startConsumer();
+    }
+
+    private void coalesce(byte key, int bit, int value, long time, long receiveStarted, long position) {
+        int index = key - 'A';
+        boolean replaced = beginCoalesce(index);
+        coalescedValues[index] = value;
+        endCoalesce(index, key, bit, replaced, time, receiveStarted, position);
+    }
+
+    /**
+     * Makes the sequence of the coalesced value odd, so the consumer does not read it while it is written.
+     *
+     * @return <code>true</code> if a value which has not been consumed is replaced
+     */
+    private boolean beginCoalesce(int index) {
+        boolean replaced = coalescedSequences.get(index) != consumedSequences.get(index);
+        coalescedSequences.incrementAndGet(index);
+        return replaced;
+    }
+
+    private void endCoalesce(int index, byte key, int bit, boolean replaced, long time, long receiveStarted,
+            long position) {
+        coalescedTimes[index] = time;
+        coalescedReceiveStarts[index] = receiveStarted;
+        coalescedPositions[index] = position;
+        coalescedSequences.incrementAndGet(index);
+
+        int pending = coalescedPending.get();
+        while (!coalescedPending.compareAndSet(pending, pending | bit)) {
+            pending = coalescedPending.get();
+        }
+        if (replaced) {
+            coalesced.incrementAndGet();
+            consumer.onLost(key, true);
+        }
+    }
+
+    private void startConsumer() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                LOG.debug("values not published, executor has been shut down");
+            }
+        }
+    }
+
+    private void drain() {
+        do {
+            if (closed) {
+                draining.set(false);
+                return;
+            }
+            drainUrgent();
+            drainQueued(Long.MAX_VALUE);
+            drainCoalesced();
+            draining.set(false);
+            // the producer does not start the consumer, if it has offered while the flag was still set
+        } while (!isEmpty() && draining.compareAndSet(false, true));
+    }
+
+    /**
+     * @param limit the position up to which the queued values are consumed
+     */
+    private void drainQueued(long limit) {
+        long h;
+        while ((h = head.get()) < Math.min(tail.get(), limit)) {
+            // an urgent value does not wait for the queued ones
+            drainUrgent();
+            int slot = (int) h & mask;
+            byte key = keys[slot];
+            int value = values[slot];
+            long time = times[slot];
+            long receiveStarted = receiveStarts[slot];
+            if (key == SAMPLE) {
+                // not yet visible if the producer has just dropped the slot and filled it again
+                Sample sample = samples[slot];
+                if (sample != null) {
+                    consumedSample.copyFrom(sample);
+                }
+            }
+            if (head.compareAndSet(h, h + 1)) {
+                if (key == SAMPLE) {
+                    publishSample(time, receiveStarted);
+                } else {
+                    publish(key, value, time, receiveStarted);
+                }
+            }
+        }
+    }
+
+    private void drainUrgent() {
+        long h;
+        while ((h = laneHead.get()) < laneTail.get()) {
+            int slot = (int) h & (FAST_LANE_CAPACITY - 1);
+            byte key = laneKeys[slot];
+            int value = laneValues[slot];
+            long time = laneTimes[slot];
+            long receiveStarted = laneReceiveStarts[slot];
+            if (laneHead.compareAndSet(h, h + 1)) {
+                publish(key, value, time, receiveStarted);
+            }
+        }
+    }
+
+    private void drainCoalesced() {
+        int pending = coalescedPending.getAndSet(0);
+        while (pending != 0) {
+            int index = Integer.numberOfTrailingZeros(pending);
+            pending &= pending - 1;
+            int value = 0;
+            long time;
+            long receiveStarted;
+            long position;
+            long sequence;
+            while (true) {
+                sequence = coalescedSequences.get(index);
+                if (index == SAMPLE_INDEX) {
+                    consumedSample.copyFrom(coalescedSample);
+                } else {
+                    value = coalescedValues[index];
+                }
+                time = coalescedTimes[index];
+                receiveStarted = coalescedReceiveStarts[index];
+                position = coalescedPositions[index];
+                // the exchange keeps the reads above from being reordered after the check
+                if ((sequence & 1) == 0 && coalescedSequences.compareAndSet(index, sequence, sequence)) {
+                    break;
+                }
+                Thread.yield();
+            }
+            if (sequence == consumedSequences.get(index)) {
+                // already consumed, the bit has been set again while the value was read
+                continue;
+            }
+            consumedSequences.lazySet(index, sequence);
+            // values of the key queued before are older, the ones queued after clearing the bit are newer
+            drainQueued(position);
+            if (index == SAMPLE_INDEX) {
+                publishSample(time, receiveStarted);
+            } else {
+                publish((byte) ('A' + index), value, time, receiveStarted);
+            }
+        }
+    }
+
+    private void publishSample(long time, long receiveStarted) {
+        if (closed) {
+            return;
+        }
+        try {
+            consumer.onSample(consumedSample, time, receiveStarted);
+        } catch (RuntimeException e) {
+            LOG.error("error during publishing sample {}", consumedSample, e);
+        }
+    }
+
+    private void publish(byte key, int value, long time, long receiveStarted) {
+        if (closed) {
+            return;
+        }
+        try {
+            consumer.onValue(key, value, time, receiveStarted);
+        } catch (RuntimeException e) {
+            LOG.error("error during publishing value {} of {}", value, (char) key, e);
+        }
+    }
+
+    public boolean isEmpty() {
+        return head.get() >= tail.get() && coalescedPending.get() == 0 && laneHead.get() >= laneTail.get();
+    }
+
+    /**
+     * @return the number of queued values, without the coalesced ones and the ones in the fast lane
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * @return the number of values dropped because the queue was full
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return the number of values replaced by a newer value of the same channel
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    private static int bit(byte key) {
+        if (key < 'A' || key > 'Z') {
+            throw new IllegalArgumentException("invalid key: " + key);
+        }
+        return 1 << (key - 'A');
+    }
+
+    @Override
+    public String toString() {
+        return "StateQueue [policy=" + policy + ", size=" + size() + ", dropped=" + getDropped() + ", coalesced="
+                + getCoalesced() + "]";
+    }
+}
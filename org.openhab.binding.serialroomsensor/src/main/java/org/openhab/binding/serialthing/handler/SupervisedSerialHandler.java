@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.smarthome.core.thing.Thing;
+import org.eclipse.smarthome.core.thing.ThingStatus;
+import org.eclipse.smarthome.core.thing.ThingStatusDetail;
+import org.eclipse.smarthome.core.thing.binding.BaseThingHandler;
+import org.openhab.binding.serialthing.transport.SerialTransportProvider;
+import org.openhab.binding.serialthing.transport.SerialTransports;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SupervisedSerialHandler} is the base of the handlers of the serial bindings whose thing is a device at a
+ * configured port, the names of the port and baud rate parameters are passed by the binding. The port is opened by a
+ * {@link ReconnectSupervisor}, so the thing is ONLINE while the port is open and the port is opened again after a
+ * failure. The reconnect statistics are published as thing properties.
+ * <p>
+ * A subclass opens and closes its connection in {@link #openConnection(String, int)} and {@link #closeConnection()}
+ * and reports a failure of the open connection by {@link #connectionLost(Exception)}.
+ *
+ * @author Philipp - Initial contribution
+ */
+public abstract class SupervisedSerialHandler extends BaseThingHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SupervisedSerialHandler.class);
+
+    /** Default bits per second of the port. */
+    public static final int DEFAULT_BAUDRATE = 9600;
+
+    // List of all properties set by the handler
+    public static final String PROPERTY_RECONNECTS = "reconnects";
+    public static final String PROPERTY_FAILED_RECONNECTS = "failedReconnects";
+    public static final String PROPERTY_LAST_RECOVERY_TIME = "lastRecoveryMillis";
+
+    /**
+     * Guards the connection of the subclass, which is opened and closed with the lock held. Also guards the
+     * {@link #supervisor} changes.
+     */
+    protected final Object connectionLock = new Object();
+
+    /** Opens the port again after a failure, changed with the {@link #connectionLock}. */
+    private volatile ReconnectSupervisor supervisor;
+
+    // reconnect statistics, published as thing properties
+    private int reconnects;
+    private long failedReconnects;
+
+    private final String serialPortParameter;
+
+    private final String baudRateParameter;
+
+    /**
+     * @param serialPortParameter the configuration parameter of the port name, the default ports are used without it
+     * @param baudRateParameter the configuration parameter of the baud rate, {@link #DEFAULT_BAUDRATE} without it
+     */
+    public SupervisedSerialHandler(Thing thing, String serialPortParameter, String baudRateParameter) {
+        super(thing);
+        this.serialPortParameter = serialPortParameter;
+        this.baudRateParameter = baudRateParameter;
+    }
+
+    @Override
+    public void initialize() {
+        updateStatus(ThingStatus.INITIALIZING);
+
+        String serialPortToUse = getConfiguredSerialPort();
+        if (serialPortToUse != null) {
+            LOG.info("initialize: use specific serial port configured by user: '{}'", serialPortToUse);
+        }
+
+        ReconnectSupervisor connection;
+        synchronized (connectionLock) {
+            if (supervisor != null) {
+                supervisor.cancel();
+            }
+            closeConnection();
+            connection = new ReconnectSupervisor(scheduler,
+                    createConnection(serialPortToUse, getIntConfig(baudRateParameter, DEFAULT_BAUDRATE)));
+            supervisor = connection;
+        }
+        connection.start();
+    }
+
+    @Override
+    public void dispose() {
+        synchronized (connectionLock) {
+            if (supervisor != null) {
+                supervisor.cancel();
+                supervisor = null;
+            }
+            closeConnection();
+        }
+        super.dispose();
+    }
+
+    /**
+     * Opens the connection, called with the {@link #connectionLock} held. If the port could not be opened, the
+     * connection must be closed again before the exception is thrown.
+     *
+     * @param serialPortToUse <code>null</code> if the default ports should be used, otherwise the port name (i.e.
+     *            /dev/ttyAMC0)
+     * @return the name of the opened port, whose presence is checked while it is open
+     * @throws IOException if the port could not be found or opened
+     */
+    protected abstract String openConnection(String serialPortToUse, int baudRate) throws IOException;
+
+    /**
+     * Closes the connection if it is open, called with the {@link #connectionLock} held.
+     */
+    protected abstract void closeConnection();
+
+    /**
+     * Must be called if the open connection fails. The connection is closed and opened again in the background.
+     * Does not wait for the {@link #connectionLock}, so it may be called by the serial event thread.
+     */
+    protected void connectionLost(Exception cause) {
+        ReconnectSupervisor current = supervisor;
+        if (current != null) {
+            current.connectionLost(cause);
+        }
+    }
+
+    /**
+     * @return the provider of the ports the subclass opens, used to check the presence of the open port; the one
+     *         selected for the serial thing binding by default
+     */
+    protected SerialTransportProvider getTransportProvider() {
+        return SerialTransports.getProvider();
+    }
+
+    protected int getIntConfig(String name, int defaultValue) {
+        Object value = getThing().getConfiguration().get(name);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        } else if (value instanceof String) {
+            try {
+                return Integer.parseInt((String) value);
+            } catch (NumberFormatException e) {
+                LOG.warn("invalid {} '{}' -> use {}", name, value, defaultValue);
+            }
+        }
+        return defaultValue;
+    }
+
+    private String getConfiguredSerialPort() {
+        Object portObj = getThing().getConfiguration().get(serialPortParameter);
+        if (portObj != null) {
+            return (String) portObj;
+        }
+        return null;
+    }
+
+    private ReconnectSupervisor.Connection createConnection(final String serialPortToUse, final int baudRate) {
+        return new ReconnectSupervisor.Connection() {
+
+            private ReconnectSupervisor owner;
+
+            private volatile String portName;
+
+            @Override
+            public void connect() throws IOException {
+                synchronized (connectionLock) {
+                    if (owner == null) {
+                        owner = supervisor;
+                    }
+                    if (owner != supervisor) {
+                        throw new IOException("handler disposed");
+                    }
+                    portName = openConnection(serialPortToUse, baudRate);
+                }
+                updateStatus(ThingStatus.ONLINE);
+            }
+
+            @Override
+            public void disconnect(Exception cause) {
+                synchronized (connectionLock) {
+                    if (owner == supervisor) {
+                        closeConnection();
+                    }
+                }
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR,
+                        "connection lost: " + cause.getMessage());
+            }
+
+            @Override
+            public boolean isPresent() {
+                String port = portName;
+                return port == null || SerialTransports.isPortPresent(getTransportProvider(), port);
+            }
+
+            @Override
+            public void onConnectFailed(IOException cause, int attempts, long retryDelay) {
+                LOG.warn("{}: serial port could not be opened ({} attempts): {} -> retry in {} ms",
+                        getThing().getUID(), attempts, cause.getMessage(), retryDelay);
+                failedReconnects++;
+                updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, cause.getMessage());
+            }
+
+            @Override
+            public void onReconnected(int attempts, long recoveryTime) {
+                reconnects++;
+                Map<String, String> properties = new HashMap<String, String>();
+                properties.put(PROPERTY_RECONNECTS, String.valueOf(reconnects));
+                properties.put(PROPERTY_FAILED_RECONNECTS, String.valueOf(failedReconnects));
+                properties.put(PROPERTY_LAST_RECOVERY_TIME, String.valueOf(recoveryTime));
+                updateProperties(properties);
+            }
+        };
+    }
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.handler;
+
+/**
+ * The {@link TimeSeries} keeps the most recent readings of a channel in a ring of primitive arrays, the oldest reading
+ * is overwritten when the ring is full. The timestamps never decrease, so a time window is found by binary search and
+ * a query takes time proportional to the readings within the window.
+ * <p>
+ * The queries fill {@link Aggregate}s given by the caller, so neither recording nor querying creates objects.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class TimeSeries {
+
+    /** Memory of one reading: timestamp and value. */
+    public static final int BYTES_PER_SAMPLE = 8 + 4;
+
+    /**
+     * The readings of a time window, reusable for several queries.
+     */
+    public static final class Aggregate {
+
+        private long count;
+        private int min;
+        private int max;
+        private long sum;
+        private long firstTime;
+        private long lastTime;
+
+        public long getCount() {
+            return count;
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * @return the smallest value, only valid if not empty
+         */
+        public int getMin() {
+            return min;
+        }
+
+        /**
+         * @return the largest value, only valid if not empty
+         */
+        public int getMax() {
+            return max;
+        }
+
+        /**
+         * @return the mean value, {@link Double#NaN} if empty
+         */
+        public double getAverage() {
+            return count > 0 ? (double) sum / count : Double.NaN;
+        }
+
+        /**
+         * @return the time of the first reading, only valid if not empty
+         */
+        public long getFirstTime() {
+            return firstTime;
+        }
+
+        /**
+         * @return the time of the last reading, only valid if not empty
+         */
+        public long getLastTime() {
+            return lastTime;
+        }
+
+        void clear() {
+            count = 0;
+            sum = 0;
+            min = Integer.MAX_VALUE;
+            max = Integer.MIN_VALUE;
+            firstTime = 0;
+            lastTime = 0;
+        }
+
+        void add(long time, int value) {
+            if (count == 0) {
+                firstTime = time;
+            }
+            lastTime = time;
+            count++;
+            sum += value;
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return count == 0 ? "[]"
+                    : "[count=" + count + ", min=" + min + ", max=" + max + ", avg=" + getAverage() + "]";
+        }
+    }
+
+    private final long[] times;
+
+    private final int[] values;
+
+    /** Physical index of the oldest reading. */
+    private int start;
+
+    private int size;
+
+    /**
+     * @param capacity the number of readings kept
+     */
+    public TimeSeries(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        times = new long[capacity];
+        values = new int[capacity];
+    }
+
+    /**
+     * @param bytes the memory the readings may use
+     * @return the number of readings fitting into the memory
+     */
+    public static int capacityOf(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, Math.max(0, bytes / BYTES_PER_SAMPLE));
+    }
+
+    /**
+     * @param time the time of the reading in milliseconds, an earlier time than the last one is taken as the last
+     *            one (i.e. if the clock has been set back)
+     */
+    public synchronized void add(long time, int value) {
+        int capacity = times.length;
+        if (size > 0) {
+            time = Math.max(time, times[physical(size - 1)]);
+        }
+        int index;
+        if (size < capacity) {
+            index = physical(size);
+            size++;
+        } else {
+            index = start;
+            start = start + 1 == capacity ? 0 : start + 1;
+        }
+        times[index] = time;
+        values[index] = value;
+    }
+
+    public int getCapacity() {
+        return times.length;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        start = 0;
+        size = 0;
+    }
+
+    /**
+     * Aggregates the readings from <code>from</code> to <code>to</code>, both inclusive.
+     *
+     * @return <code>false</code> if there is no reading within the window
+     */
+    public synchronized boolean aggregate(long from, long to, Aggregate result) {
+        result.clear();
+        for (int i = firstIndex(from); i < size; i++) {
+            int index = physical(i);
+            if (times[index] > to) {
+                break;
+            }
+            result.add(times[index], values[index]);
+        }
+        return !result.isEmpty();
+    }
+
+    /**
+     * Splits the window from <code>from</code> to <code>to</code> (both inclusive) into as many buckets of the same
+     * length as given and aggregates the readings of each bucket.
+     *
+     * @return the number of buckets with at least one reading
+     */
+    public synchronized int downsample(long from, long to, Aggregate[] buckets) {
+        for (Aggregate bucket : buckets) {
+            bucket.clear();
+        }
+        if (buckets.length == 0 || to < from) {
+            return 0;
+        }
+        long window = to - from + 1;
+        if (window <= 0 || window > Long.MAX_VALUE / buckets.length) {
+            throw new IllegalArgumentException("window too long to be split: " + from + " - " + to);
+        }
+        int filled = 0;
+        for (int i = firstIndex(from); i < size; i++) {
+            int index = physical(i);
+            long time = times[index];
+            if (time > to) {
+                break;
+            }
+            Aggregate bucket = buckets[(int) ((time - from) * buckets.length / window)];
+            if (bucket.isEmpty()) {
+                filled++;
+            }
+            bucket.add(time, values[index]);
+        }
+        return filled;
+    }
+
+    /**
+     * @return the logical index of the first reading at or after the time, {@link #size} if there is none
+     */
+    private int firstIndex(long time) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (times[physical(middle)] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int physical(int logical) {
+        int index = start + logical;
+        return index >= times.length ? index - times.length : index;
+    }
+}
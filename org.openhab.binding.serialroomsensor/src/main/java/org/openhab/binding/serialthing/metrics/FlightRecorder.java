@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.metrics;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@link FlightRecorder} keeps the last frames and events of a serial port in a ring of preallocated slots, so
+ * the traffic before a problem can be looked at without debug logging. Recording copies at most
+ * {@value #MAX_RECORDED_BYTES} bytes of a frame and creates no objects.
+ * <p>
+ * Writers claim a slot by an atomic counter and publish it by its sequence number, so several threads may record at
+ * the same time without locking. A dump skips the slots which are overwritten while it reads them.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class FlightRecorder {
+
+    public static final int DEFAULT_CAPACITY = 256;
+
+    public static final int MAX_RECORDED_BYTES = 48;
+
+    /** A received text line. */
+    public static final byte RX = 0;
+    /** A received binary frame, the value is the message id. */
+    public static final byte RX_BINARY = 1;
+    /** Bytes written to the device. */
+    public static final byte TX = 2;
+    /** The line received before has no decoder, the value is its length. */
+    public static final byte UNKNOWN = 3;
+    /** The port has been opened, the value is the baud rate. */
+    public static final byte CONNECTED = 4;
+    /** The port has been closed. */
+    public static final byte CLOSED = 5;
+    /** The link uses another baud rate, the value is the new rate. */
+    public static final byte BAUDRATE = 6;
+    /** An error during processing, the data is the type of the error. */
+    public static final byte ERROR = 7;
+
+    private static final String[] KIND_NAMES = { "RX", "RXB", "TX", "UNKNOWN", "CONNECTED", "CLOSED", "BAUDRATE",
+            "ERROR" };
+
+    private final int mask;
+
+    private final AtomicLong next = new AtomicLong();
+
+    /** Index of the recording in each slot, -1 while the slot is written. */
+    private final AtomicLongArray sequences;
+
+    private final long[] times;
+    private final byte[] kinds;
+    private final long[] values;
+    private final int[] lengths;
+    private final byte[][] data;
+
+    public FlightRecorder() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of recordings kept, rounded up to a power of two
+     */
+    public FlightRecorder(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+        this.mask = slots - 1;
+        this.sequences = new AtomicLongArray(slots);
+        this.times = new long[slots];
+        this.kinds = new byte[slots];
+        this.values = new long[slots];
+        this.lengths = new int[slots];
+        this.data = new byte[slots][MAX_RECORDED_BYTES];
+        for (int i = 0; i < slots; i++) {
+            sequences.set(i, -1);
+        }
+    }
+
+    /**
+     * Records a frame.
+     */
+    public void record(byte kind, byte[] buffer, int offset, int length) {
+        record(kind, 0, buffer, offset, length);
+    }
+
+    /**
+     * Records an event without data.
+     */
+    public void event(byte kind, long value) {
+        record(kind, value, null, 0, 0);
+    }
+
+    /**
+     * @param value the value of the event, i.e. the message id of a binary frame
+     */
+    public void record(byte kind, long value, byte[] buffer, int offset, int length) {
+        long index = next.getAndIncrement();
+        int slot = (int) index & mask;
+        // the atomic exchange keeps the writes below from being reordered before it
+        sequences.getAndSet(slot, -1);
+        times[slot] = System.currentTimeMillis();
+        kinds[slot] = kind;
+        values[slot] = value;
+        lengths[slot] = length;
+        if (buffer != null) {
+            System.arraycopy(buffer, offset, data[slot], 0, Math.min(length, MAX_RECORDED_BYTES));
+        }
+        sequences.set(slot, index);
+    }
+
+    /**
+     * @return the number of recordings since the recorder has been created
+     */
+    public long getRecorded() {
+        return next.get();
+    }
+
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the kept recordings, oldest first, one per line
+     */
+    public String dump() {
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+        byte[] bytes = new byte[MAX_RECORDED_BYTES];
+        StringBuilder text = new StringBuilder();
+        long end = next.get();
+        for (long index = Math.max(0, end - getCapacity()); index < end; index++) {
+            int slot = (int) index & mask;
+            if (sequences.get(slot) != index) {
+                continue;
+            }
+            long time = times[slot];
+            byte kind = kinds[slot];
+            long value = values[slot];
+            int length = lengths[slot];
+            System.arraycopy(data[slot], 0, bytes, 0, Math.min(length, MAX_RECORDED_BYTES));
+            // the exchange keeps the reads above from being reordered after the check
+            if (!sequences.compareAndSet(slot, index, index)) {
+                continue;
+            }
+            text.append(format.format(new Date(time))).append(' ').append(kindName(kind));
+            if (kind == RX_BINARY || (length == 0 && value != 0)) {
+                text.append(' ').append(value);
+            }
+            if (length > 0) {
+                text.append(' ');
+                appendBytes(text, bytes, Math.min(length, MAX_RECORDED_BYTES), kind == RX_BINARY);
+                if (length > MAX_RECORDED_BYTES) {
+                    text.append("... (").append(length).append(" bytes)");
+                }
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    private static String kindName(byte kind) {
+        return kind >= 0 && kind < KIND_NAMES.length ? KIND_NAMES[kind] : Byte.toString(kind);
+    }
+
+    private static void appendBytes(StringBuilder text, byte[] bytes, int length, boolean binary) {
+        for (int i = 0; i < length; i++) {
+            int b = bytes[i] & 0xFF;
+            if (!binary && b >= 0x20 && b < 0x7F && b != '\\') {
+                text.append((char) b);
+            } else if (!binary && b == '\r') {
+                text.append("\\r");
+            } else if (!binary && b == '\n') {
+                text.append("\\n");
+            } else {
+                text.append("\\x").append(Character.forDigit(b >> 4, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+        }
+    }
+}
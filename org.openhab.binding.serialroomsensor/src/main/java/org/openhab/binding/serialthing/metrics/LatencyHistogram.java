@@ -0,0 +1,141 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@link LatencyHistogram} records durations in nanoseconds with a fixed number of buckets. Every power of two is
+ * split into {@value #SUB_BUCKETS} buckets by default, so a percentile is at most 25% above the recorded value. More
+ * sub-buckets give more precise percentiles for more memory. Recording takes constant time and allocates nothing.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class LatencyHistogram {
+
+    static final int SUB_BUCKETS = 4;
+
+    private static final int SUB_BUCKET_BITS = 2;
+
+    /** Limits the size to 1024 sub-buckets per power of two. */
+    private static final int MAX_SUB_BUCKET_BITS = 10;
+
+    private final int subBucketBits;
+
+    private final int subBuckets;
+
+    /** Values below the sub-buckets have their own bucket, above every power of two up to 2^62 is split. */
+    private final int bucketCount;
+
+    private final AtomicLongArray buckets;
+
+    private final StripedCounter count = new StripedCounter();
+
+    private final StripedCounter sum = new StripedCounter();
+
+    private final AtomicLong max = new AtomicLong();
+
+    public LatencyHistogram() {
+        this(SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @param subBucketBits every power of two is split into 2^subBucketBits buckets, so a percentile is at most
+     *            2^-subBucketBits above the recorded value
+     */
+    public LatencyHistogram(int subBucketBits) {
+        if (subBucketBits < 1 || subBucketBits > MAX_SUB_BUCKET_BITS) {
+            throw new IllegalArgumentException("sub-bucket bits out of range: " + subBucketBits);
+        }
+        this.subBucketBits = subBucketBits;
+        this.subBuckets = 1 << subBucketBits;
+        this.bucketCount = subBuckets * (64 - subBucketBits);
+        this.buckets = new AtomicLongArray(bucketCount);
+    }
+
+    /**
+     * @param nanos the duration, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMean(TimeUnit unit) {
+        long recorded = count.sum();
+        return recorded > 0 ? unit.convert(sum.sum() / recorded, TimeUnit.NANOSECONDS) : 0;
+    }
+
+    public long getMax(TimeUnit unit) {
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param percentile i.e. 99.0
+     * @return the upper bound of the bucket containing the percentile, 0 if nothing has been recorded
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        long[] counts = new long[bucketCount];
+        long total = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+        long seen = 0;
+        for (int i = 0; i < bucketCount; i++) {
+            seen += counts[i];
+            if (seen >= Math.max(1, rank)) {
+                return unit.convert(Math.min(upperBound(i), max.get()), TimeUnit.NANOSECONDS);
+            }
+        }
+        return getMax(unit);
+    }
+
+    public void reset() {
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    int bucket(long value) {
+        if (value < subBuckets) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - subBucketBits)) & (subBuckets - 1);
+        return Math.min(bucketCount - 1, subBuckets * (exponent - subBucketBits + 1) + subBucket);
+    }
+
+    long upperBound(int bucket) {
+        if (bucket < subBuckets) {
+            return bucket;
+        }
+        int shift = bucket / subBuckets - 1;
+        long lower = (long) (subBuckets + bucket % subBuckets) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
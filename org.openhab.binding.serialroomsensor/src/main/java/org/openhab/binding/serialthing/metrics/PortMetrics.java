@@ -0,0 +1,331 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@link PortMetrics} count the traffic of one serial port and record its last frames in a
+ * {@link FlightRecorder}. They are kept by {@link SerialMetrics} across reconnects of the port.
+ * <p>
+ * The latency is measured from the serial event which delivered the bytes of a value until the value has been
+ * published by <code>updateState</code>. It includes the time the value waited for the publishing thread. Urgent
+ * values (i.e. doorbell presses) are measured separately, they take the fast lane of the
+ * {@link org.openhab.binding.serialthing.handler.StateQueue}.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class PortMetrics implements PortMetricsMBean {
+
+    /** Prefix of the keys in {@link #toProperties()}. */
+    public static final String PROPERTY_PREFIX = "metrics.";
+
+    private final String port;
+
+    private volatile String thing = "";
+
+    private final StripedCounter bytesIn = new StripedCounter();
+    private final StripedCounter bytesOut = new StripedCounter();
+    private final StripedCounter framesDecoded = new StripedCounter();
+    private final StripedCounter unknownCommands = new StripedCounter();
+    private final StripedCounter parseErrors = new StripedCounter();
+    private final StripedCounter connects = new StripedCounter();
+    private final AtomicInteger bufferHighWaterMark = new AtomicInteger();
+    private final StripedCounter failedReconnects = new StripedCounter();
+    private final StripedCounter valuesDropped = new StripedCounter();
+    private final StripedCounter valuesCoalesced = new StripedCounter();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram urgentLatency = new LatencyHistogram();
+    private final LatencyHistogram recovery = new LatencyHistogram();
+    private final FlightRecorder recorder = new FlightRecorder();
+
+    /** Start of the serial event being processed. */
+    private volatile long receiveStarted;
+
+    PortMetrics(String port) {
+        this.port = port;
+    }
+
+    /**
+     * Must be called at the start of every serial event.
+     */
+    public void receiveStarted() {
+        receiveStarted = System.nanoTime();
+    }
+
+    /**
+     * @return the start of the current serial event, see {@link System#nanoTime()}
+     */
+    public long getReceiveStarted() {
+        return receiveStarted;
+    }
+
+    /**
+     * Must be called after a value has been published.
+     *
+     * @param receiveStarted the start of the serial event which delivered the value
+     */
+    public void valuePublished(long receiveStarted) {
+        latency.record(System.nanoTime() - receiveStarted);
+    }
+
+    /**
+     * Must be called after an urgent value has been published, instead of {@link #valuePublished(long)}.
+     *
+     * @param receiveStarted the start of the serial event which delivered the value
+     */
+    public void urgentValuePublished(long receiveStarted) {
+        urgentLatency.record(System.nanoTime() - receiveStarted);
+    }
+
+    public void valueDropped() {
+        valuesDropped.increment();
+    }
+
+    public void valueCoalesced() {
+        valuesCoalesced.increment();
+    }
+
+    public void bytesReceived(int count) {
+        bytesIn.add(count);
+    }
+
+    public void bytesSent(int count) {
+        bytesOut.add(count);
+    }
+
+    public void framesDecoded(long count) {
+        framesDecoded.add(count);
+    }
+
+    public void unknownCommand() {
+        unknownCommands.increment();
+    }
+
+    public void parseErrors(long count) {
+        parseErrors.add(count);
+    }
+
+    public void connected() {
+        connects.increment();
+    }
+
+    /**
+     * Must be called after a failed attempt to open the port again.
+     */
+    public void reconnectFailed() {
+        failedReconnects.increment();
+    }
+
+    /**
+     * @param millis the time from the loss of the connection until it has been opened again
+     */
+    public void recovered(long millis) {
+        recovery.record(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /**
+     * @param bytes the number of bytes currently buffered, i.e. of an incomplete line
+     */
+    public void buffered(int bytes) {
+        int current = bufferHighWaterMark.get();
+        while (bytes > current && !bufferHighWaterMark.compareAndSet(current, bytes)) {
+            current = bufferHighWaterMark.get();
+        }
+    }
+
+    public void setThing(String thing) {
+        this.thing = thing != null ? thing : "";
+    }
+
+    @Override
+    public String getPort() {
+        return port;
+    }
+
+    @Override
+    public String getThing() {
+        return thing;
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getFramesDecoded() {
+        return framesDecoded.sum();
+    }
+
+    @Override
+    public long getUnknownCommands() {
+        return unknownCommands.sum();
+    }
+
+    @Override
+    public long getParseErrors() {
+        return parseErrors.sum();
+    }
+
+    @Override
+    public int getBufferHighWaterMark() {
+        return bufferHighWaterMark.get();
+    }
+
+    @Override
+    public long getValuesDropped() {
+        return valuesDropped.sum();
+    }
+
+    @Override
+    public long getValuesCoalesced() {
+        return valuesCoalesced.sum();
+    }
+
+    @Override
+    public long getReconnects() {
+        return Math.max(0, connects.sum() - 1);
+    }
+
+    @Override
+    public long getFailedReconnects() {
+        return failedReconnects.sum();
+    }
+
+    @Override
+    public long getRecoveryCount() {
+        return recovery.getCount();
+    }
+
+    @Override
+    public long getRecoveryMeanMillis() {
+        return recovery.getMean(TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long getRecoveryMaxMillis() {
+        return recovery.getMax(TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public long getLatencyCount() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getLatencyMeanMicros() {
+        return latency.getMean(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getLatencyP50Micros() {
+        return latency.getPercentile(50, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getLatencyP99Micros() {
+        return latency.getPercentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getLatencyMaxMicros() {
+        return latency.getMax(TimeUnit.MICROSECONDS);
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    @Override
+    public long getUrgentLatencyCount() {
+        return urgentLatency.getCount();
+    }
+
+    @Override
+    public long getUrgentLatencyP50Micros() {
+        return urgentLatency.getPercentile(50, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getUrgentLatencyP99Micros() {
+        return urgentLatency.getPercentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getUrgentLatencyMaxMicros() {
+        return urgentLatency.getMax(TimeUnit.MICROSECONDS);
+    }
+
+    public LatencyHistogram getUrgentLatency() {
+        return urgentLatency;
+    }
+
+    public FlightRecorder getRecorder() {
+        return recorder;
+    }
+
+    @Override
+    public String dumpFlightRecorder() {
+        return recorder.dump();
+    }
+
+    @Override
+    public void reset() {
+        bytesIn.reset();
+        bytesOut.reset();
+        framesDecoded.reset();
+        unknownCommands.reset();
+        parseErrors.reset();
+        connects.reset();
+        failedReconnects.reset();
+        valuesDropped.reset();
+        valuesCoalesced.reset();
+        recovery.reset();
+        bufferHighWaterMark.set(0);
+        latency.reset();
+        urgentLatency.reset();
+    }
+
+    /**
+     * @return the current values as thing properties
+     */
+    public Map<String, String> toProperties() {
+        Map<String, String> properties = new LinkedHashMap<String, String>();
+        properties.put(PROPERTY_PREFIX + "bytesIn", Long.toString(getBytesIn()));
+        properties.put(PROPERTY_PREFIX + "bytesOut", Long.toString(getBytesOut()));
+        properties.put(PROPERTY_PREFIX + "framesDecoded", Long.toString(getFramesDecoded()));
+        properties.put(PROPERTY_PREFIX + "unknownCommands", Long.toString(getUnknownCommands()));
+        properties.put(PROPERTY_PREFIX + "parseErrors", Long.toString(getParseErrors()));
+        properties.put(PROPERTY_PREFIX + "bufferHighWaterMark", Integer.toString(getBufferHighWaterMark()));
+        properties.put(PROPERTY_PREFIX + "valuesDropped", Long.toString(getValuesDropped()));
+        properties.put(PROPERTY_PREFIX + "valuesCoalesced", Long.toString(getValuesCoalesced()));
+        properties.put(PROPERTY_PREFIX + "reconnects", Long.toString(getReconnects()));
+        properties.put(PROPERTY_PREFIX + "failedReconnects", Long.toString(getFailedReconnects()));
+        properties.put(PROPERTY_PREFIX + "recoveryMaxMillis", Long.toString(getRecoveryMaxMillis()));
+        properties.put(PROPERTY_PREFIX + "latencyP50Micros", Long.toString(getLatencyP50Micros()));
+        properties.put(PROPERTY_PREFIX + "latencyP99Micros", Long.toString(getLatencyP99Micros()));
+        properties.put(PROPERTY_PREFIX + "latencyMaxMicros", Long.toString(getLatencyMaxMicros()));
+        properties.put(PROPERTY_PREFIX + "urgentLatencyP99Micros", Long.toString(getUrgentLatencyP99Micros()));
+        properties.put(PROPERTY_PREFIX + "urgentLatencyMaxMicros", Long.toString(getUrgentLatencyMaxMicros()));
+        return properties;
+    }
+
+    @Override
+    public String toString() {
+        return "PortMetrics [port=" + port + ", " + toProperties() + "]";
+    }
+}
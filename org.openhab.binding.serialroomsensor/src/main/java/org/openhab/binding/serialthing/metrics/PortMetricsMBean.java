@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.metrics;
+
+/**
+ * The management interface of {@link PortMetrics}. The latencies are in microseconds.
+ *
+ * @author Philipp - Initial contribution
+ */
+public interface PortMetricsMBean {
+
+    String getPort();
+
+    String getThing();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getFramesDecoded();
+
+    long getUnknownCommands();
+
+    long getParseErrors();
+
+    int getBufferHighWaterMark();
+
+    /**
+     * @return the number of values dropped, because they could not be published fast enough
+     */
+    long getValuesDropped();
+
+    /**
+     * @return the number of values replaced by a newer value of the same channel before they were published
+     */
+    long getValuesCoalesced();
+
+    long getReconnects();
+
+    long getFailedReconnects();
+
+    long getRecoveryCount();
+
+    /**
+     * @return the mean time in milliseconds from the loss of the connection until it has been opened again
+     */
+    long getRecoveryMeanMillis();
+
+    long getRecoveryMaxMillis();
+
+    long getLatencyCount();
+
+    long getLatencyMeanMicros();
+
+    long getLatencyP50Micros();
+
+    long getLatencyP99Micros();
+
+    long getLatencyMaxMicros();
+
+    /**
+     * @return the number of urgent values (i.e. doorbell presses) published, their latency is not included above
+     */
+    long getUrgentLatencyCount();
+
+    long getUrgentLatencyP50Micros();
+
+    long getUrgentLatencyP99Micros();
+
+    long getUrgentLatencyMaxMicros();
+
+    void reset();
+
+    /**
+     * @return the last frames and events of the port, see {@link FlightRecorder}
+     */
+    String dumpFlightRecorder();
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.metrics;
+
+import org.openhab.binding.serialthing.protocol.BinaryFrameListener;
+import org.openhab.binding.serialthing.protocol.FrameListener;
+
+/**
+ * The {@link RecordingFrameListener} records every frame in a {@link FlightRecorder} before passing it on.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class RecordingFrameListener implements FrameListener, BinaryFrameListener {
+
+    private final FlightRecorder recorder;
+
+    private final FrameListener listener;
+
+    private final BinaryFrameListener binaryListener;
+
+    /**
+     * @param binaryListener gets the binary frames, may be <code>null</code> if only lines are expected
+     */
+    public RecordingFrameListener(FlightRecorder recorder, FrameListener listener,
+            BinaryFrameListener binaryListener) {
+        this.recorder = recorder;
+        this.listener = listener;
+        this.binaryListener = binaryListener;
+    }
+
+    @Override
+    public void onFrame(byte[] buffer, int offset, int length) {
+        recorder.record(FlightRecorder.RX, buffer, offset, length);
+        listener.onFrame(buffer, offset, length);
+    }
+
+    @Override
+    public void onMessage(int messageId, byte[] buffer, int offset, int length) {
+        recorder.record(FlightRecorder.RX_BINARY, messageId, buffer, offset, length);
+        if (binaryListener != null) {
+            binaryListener.onMessage(messageId, buffer, offset, length);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SerialMetrics} keep the {@link PortMetrics} of all ports in use and register them as MBeans
+ * <code>org.openhab.binding.serialthing:type=SerialPort,port=&lt;port&gt;</code>.
+ *
+ * @author Philipp - Initial contribution
+ */
+public final class SerialMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SerialMetrics.class);
+
+    private static final String DOMAIN = "org.openhab.binding.serialthing";
+
+    private static final ConcurrentMap<String, PortMetrics> PORTS = new ConcurrentHashMap<String, PortMetrics>();
+
+    private SerialMetrics() {
+    }
+
+    /**
+     * @return the metrics of the port, created and registered on first use
+     */
+    public static PortMetrics forPort(String port) {
+        PortMetrics metrics = PORTS.get(port);
+        if (metrics == null) {
+            PortMetrics created = new PortMetrics(port);
+            metrics = PORTS.putIfAbsent(port, created);
+            if (metrics == null) {
+                metrics = created;
+                register(created);
+            }
+        }
+        return metrics;
+    }
+
+    /**
+     * Forgets the metrics of a port which is not used any longer.
+     */
+    public static void remove(String port) {
+        PortMetrics metrics = PORTS.remove(port);
+        if (metrics != null) {
+            unregister(metrics);
+        }
+    }
+
+    private static void register(PortMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName(metrics.getPort());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        } catch (JMException | SecurityException e) {
+            LOG.debug("metrics of port {} not available by JMX: {}", metrics.getPort(), e.getMessage());
+        }
+    }
+
+    private static void unregister(PortMetrics metrics) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName(metrics.getPort());
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException | SecurityException e) {
+            LOG.debug("metrics of port {} could not be unregistered: {}", metrics.getPort(), e.getMessage());
+        }
+    }
+
+    private static ObjectName objectName(String port) throws JMException {
+        return new ObjectName(DOMAIN + ":type=SerialPort,port=" + ObjectName.quote(port));
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The {@link StripedCounter} is a counter for the event path. Every thread adds to a stripe selected by its id, the
+ * stripes lie on different cache lines, so threads counting at the same time do not contend. Reading sums up all
+ * stripes and is only needed when the metrics are collected.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class StripedCounter {
+
+    /** Distance of two stripes in longs, 128 bytes keep them on separate cache lines. */
+    private static final int PADDING = 16;
+
+    private static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment() {
+        add(1);
+    }
+
+    public void add(long value) {
+        int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+        cells.addAndGet(stripe * PADDING, value);
+    }
+
+    /**
+     * @return the sum of all stripes, not an atomic snapshot while other threads are counting
+     */
+    public long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+
+    /**
+     * @return the next power of two of twice the processor count
+     */
+    private static int stripes(int processors) {
+        return Integer.highestOneBit(Math.max(1, 2 * processors - 1)) << 1;
+    }
+}
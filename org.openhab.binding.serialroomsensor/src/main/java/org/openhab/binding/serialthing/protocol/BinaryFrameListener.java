@@ -0,0 +1,22 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+/**
+ * Gets the binary frames found by the {@link LineFramer}, see {@link BinaryFrames}.
+ *
+ * @author Philipp - Initial contribution
+ */
+public interface BinaryFrameListener {
+
+    /**
+     * Called for every frame with a valid checksum. The payload is only valid during this call, like in
+     * {@link FrameListener#onFrame(byte[], int, int)}.
+     */
+    void onMessage(int messageId, byte[] buffer, int offset, int length);
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+/**
+ * The {@link BinaryFrames} describes the binary frame format, which devices may use instead of text lines after it
+ * has been requested (see {@link #FRAMING_REQUEST}):
+ *
+ * <pre>
+ * SYNC (0xA5) | message id | payload length | payload | CRC-8
+ * </pre>
+ *
+ * The CRC-8 (polynomial 0x07, initial value 0) covers the message id, the length and the payload. Numbers are
+ * encoded as zigzag varints, so small values of both signs take one byte. The sync byte never occurs in a text line,
+ * so both formats can be received on the same port.
+ *
+ * @author Philipp - Initial contribution
+ */
+public final class BinaryFrames {
+
+    public static final byte SYNC = (byte) 0xA5;
+
+    /** Sync byte, message id and payload length. */
+    public static final int HEADER_LENGTH = 3;
+
+    public static final int CRC_LENGTH = 1;
+
+    public static final int MAX_PAYLOAD_LENGTH = 32;
+
+    // message ids
+    public static final int BRIGHTNESS = 0x01;
+    public static final int TEMPERATURE = 0x02;
+    public static final int HUMIDITY = 0x03;
+    public static final int DOORBELL_PRESSED = 0x04;
+
+    /** Name of the binary framing in the <code>FRAMINGS=</code> line of the type id answer. */
+    public static final String FRAMING_BINARY = "binary";
+
+    public static final String FRAMING_ASCII = "ascii";
+
+    /** Asks the device to send binary frames from now on. */
+    public static final String FRAMING_REQUEST = "FRAMING=" + FRAMING_BINARY + "\n";
+
+    private static final int CRC8_POLYNOMIAL = 0x07;
+
+    private static final byte[] CRC8_TABLE = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? (crc << 1) ^ CRC8_POLYNOMIAL : crc << 1;
+            }
+            CRC8_TABLE[i] = (byte) crc;
+        }
+    }
+
+    private BinaryFrames() {
+    }
+
+    public static int crc8(byte[] buffer, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = CRC8_TABLE[(crc ^ buffer[i]) & 0xFF] & 0xFF;
+        }
+        return crc;
+    }
+
+    /**
+     * @return the zigzag varint at the beginning of the given bytes
+     * @throws IllegalArgumentException if the bytes do not start with a complete varint of at most 5 bytes
+     */
+    public static int decodeVarint(byte[] buffer, int offset, int length) {
+        int value = 0;
+        for (int i = 0; i < length && i < 5; i++) {
+            int b = buffer[offset + i];
+            value |= (b & 0x7F) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return (value >>> 1) ^ -(value & 1);
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    /**
+     * @return the number of bytes written
+     */
+    public static int encodeVarint(int value, byte[] buffer, int offset) {
+        int zigzag = (value << 1) ^ (value >> 31);
+        int count = 0;
+        while ((zigzag & ~0x7F) != 0) {
+            buffer[offset + count++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        buffer[offset + count++] = (byte) zigzag;
+        return count;
+    }
+
+    /**
+     * @return the complete frame of a message with one number, like a device sends it
+     */
+    public static byte[] encode(int messageId, int value) {
+        byte[] payload = new byte[5];
+        int payloadLength = encodeVarint(value, payload, 0);
+        byte[] frame = new byte[HEADER_LENGTH + payloadLength + CRC_LENGTH];
+        frame[0] = SYNC;
+        frame[1] = (byte) messageId;
+        frame[2] = (byte) payloadLength;
+        System.arraycopy(payload, 0, frame, HEADER_LENGTH, payloadLength);
+        frame[frame.length - 1] = (byte) crc8(frame, 1, 2 + payloadLength);
+        return frame;
+    }
+}
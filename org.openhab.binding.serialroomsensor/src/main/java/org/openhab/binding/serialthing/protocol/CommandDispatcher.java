@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+/**
+ * The {@link CommandDispatcher} hands every frame to the {@link CommandDecoder} registered for the longest matching
+ * command prefix (i.e. <code>TEMPERATURE=</code>). The decoder only gets the value behind the prefix.
+ * <p>
+ * Binary frames are handed to the {@link BinaryDecoder} registered for their message id.
+ * <p>
+ * All decoders have to be registered before the first frame is dispatched.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class CommandDispatcher implements FrameListener, BinaryFrameListener {
+
+    /**
+     * Decodes the value of a command directly from the receive buffer.
+     */
+    public interface CommandDecoder {
+
+        /**
+         * The given array is only valid during this call, see {@link FrameListener#onFrame(byte[], int, int)}.
+         */
+        void decode(byte[] buffer, int offset, int length);
+    }
+
+    /**
+     * Decodes the payload of a binary frame.
+     */
+    public interface BinaryDecoder {
+
+        /**
+         * The given array is only valid during this call, see {@link BinaryFrameListener}.
+         */
+        void decodeBinary(byte[] buffer, int offset, int length);
+    }
+
+    /**
+     * Decodes a decimal integer value like <code>21</code>, or a varint in a binary frame.
+     */
+    public abstract static class IntDecoder implements CommandDecoder, BinaryDecoder {
+
+        @Override
+        public void decode(byte[] buffer, int offset, int length) {
+            onValue(Frames.parseInt(buffer, offset, length));
+        }
+
+        @Override
+        public void decodeBinary(byte[] buffer, int offset, int length) {
+            onValue(BinaryFrames.decodeVarint(buffer, offset, length));
+        }
+
+        protected abstract void onValue(int value);
+    }
+
+    /**
+     * Decodes a boolean value. Everything ending with the given suffix (i.e. <code>true</code>) is <code>true</code>.
+     * In a binary frame every value except 0 is <code>true</code>.
+     */
+    public abstract static class BooleanDecoder implements CommandDecoder, BinaryDecoder {
+
+        private final byte[] trueSuffix;
+
+        public BooleanDecoder(String trueSuffix) {
+            this.trueSuffix = Frames.bytes(trueSuffix);
+        }
+
+        @Override
+        public void decode(byte[] buffer, int offset, int length) {
+            onValue(Frames.endsWith(buffer, offset, length, trueSuffix));
+        }
+
+        @Override
+        public void decodeBinary(byte[] buffer, int offset, int length) {
+            onValue(BinaryFrames.decodeVarint(buffer, offset, length) != 0);
+        }
+
+        protected abstract void onValue(boolean value);
+    }
+
+    private static final class Registration {
+
+        private final int prefixLength;
+        private final CommandDecoder decoder;
+
+        private Registration(int prefixLength, CommandDecoder decoder) {
+            this.prefixLength = prefixLength;
+            this.decoder = decoder;
+        }
+    }
+
+    private final PrefixTrie<Registration> registrations = new PrefixTrie<Registration>();
+
+    private final BinaryDecoder[] binaryDecoders = new BinaryDecoder[256];
+
+    private CommandDecoder unknownCommandDecoder;
+
+    /**
+     * Registers the decoder for all frames starting with the given prefix. A decoder registered for the same prefix
+     * before is replaced.
+     *
+     * @return this dispatcher
+     */
+    public CommandDispatcher register(String prefix, CommandDecoder decoder) {
+        byte[] bytes = Frames.bytes(prefix);
+        registrations.put(bytes, new Registration(bytes.length, decoder));
+        return this;
+    }
+
+    /**
+     * Registers the decoder for all binary frames with the given message id.
+     *
+     * @return this dispatcher
+     */
+    public CommandDispatcher register(int messageId, BinaryDecoder decoder) {
+        binaryDecoders[messageId & 0xFF] = decoder;
+        return this;
+    }
+
+    /**
+     * @param decoder gets the whole frame if no prefix matches, <code>null</code> to ignore such frames
+     * @return this dispatcher
+     */
+    public CommandDispatcher onUnknownCommand(CommandDecoder decoder) {
+        unknownCommandDecoder = decoder;
+        return this;
+    }
+
+    @Override
+    public void onFrame(byte[] buffer, int offset, int length) {
+        dispatch(buffer, offset, length);
+    }
+
+    @Override
+    public void onMessage(int messageId, byte[] buffer, int offset, int length) {
+        BinaryDecoder decoder = binaryDecoders[messageId & 0xFF];
+        // messages unknown to this binding version are ignored
+        if (decoder != null) {
+            decoder.decodeBinary(buffer, offset, length);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if a decoder for the frame was registered
+     */
+    public boolean dispatch(byte[] buffer, int offset, int length) {
+        Registration registration = registrations.longestPrefix(buffer, offset, length);
+        if (registration != null) {
+            registration.decoder.decode(buffer, offset + registration.prefixLength,
+                    length - registration.prefixLength);
+            return true;
+        }
+        if (unknownCommandDecoder != null) {
+            unknownCommandDecoder.decode(buffer, offset, length);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,28 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+/**
+ * The {@link FrameListener} receives the complete frames found by a {@link LineFramer}.
+ *
+ * @author Philipp - Initial contribution
+ */
+public interface FrameListener {
+
+    /**
+     * Called for every complete frame, without the line delimiter.
+     * <p>
+     * The given array is a view on the internal buffer of the framer and is only valid during this call. It must not
+     * be stored or modified.
+     *
+     * @param buffer the buffer containing the frame
+     * @param offset the start of the frame within the buffer
+     * @param length the number of bytes of the frame
+     */
+    void onFrame(byte[] buffer, int offset, int length);
+}
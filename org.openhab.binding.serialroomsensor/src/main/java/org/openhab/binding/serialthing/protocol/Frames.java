@@ -0,0 +1,108 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+import java.nio.charset.Charset;
+
+/**
+ * The {@link Frames} class contains helpers to work on frames directly in the receive buffer.
+ *
+ * @author Philipp - Initial contribution
+ */
+public final class Frames {
+
+    /** The serial things only send ASCII. */
+    public static final Charset CHARSET = Charset.forName("US-ASCII");
+
+    private Frames() {
+    }
+
+    /**
+     * @return the bytes of the given ASCII string, i.e. a command prefix
+     */
+    public static byte[] bytes(String value) {
+        return value.getBytes(CHARSET);
+    }
+
+    /**
+     * @return <code>true</code> if the frame starts with the given prefix
+     */
+    public static boolean startsWith(byte[] buffer, int offset, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return <code>true</code> if the frame ends with the given suffix
+     */
+    public static boolean endsWith(byte[] buffer, int offset, int length, byte[] suffix) {
+        return length >= suffix.length && startsWith(buffer, offset + length - suffix.length, suffix.length, suffix);
+    }
+
+    /**
+     * @return the index of the first occurrence of the given byte within the frame or <code>-1</code>
+     */
+    public static int indexOf(byte[] buffer, int offset, int length, byte value) {
+        for (int i = offset; i < offset + length; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a decimal integer like {@link Integer#parseInt(String)}, but without creating a string.
+     *
+     * @throws NumberFormatException if the bytes are no valid integer
+     */
+    public static int parseInt(byte[] buffer, int offset, int length) {
+        if (length <= 0) {
+            throw new NumberFormatException("empty value");
+        }
+        int i = offset;
+        int end = offset + length;
+        boolean negative = buffer[i] == '-';
+        if (negative || buffer[i] == '+') {
+            i++;
+            if (i == end) {
+                throw new NumberFormatException(toString(buffer, offset, length));
+            }
+        }
+        // accumulate negatively to cover Integer.MIN_VALUE
+        int limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        int multmin = limit / 10;
+        int result = 0;
+        for (; i < end; i++) {
+            int digit = buffer[i] - '0';
+            if (digit < 0 || digit > 9 || result < multmin) {
+                throw new NumberFormatException(toString(buffer, offset, length));
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new NumberFormatException(toString(buffer, offset, length));
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Creates a string of the frame. Only intended for logging and rarely used values.
+     */
+    public static String toString(byte[] buffer, int offset, int length) {
+        return new String(buffer, offset, length, CHARSET);
+    }
+}
@@ -0,0 +1,300 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link LineFramer} splits the incoming serial bytes into lines delimited by
+ * {@link org.openhab.binding.serialthing.SerialThingBindingConstants#LINE_DELIMITER}.
+ * <p>
+ * The bytes are collected in a pooled buffer and are scanned only once. Every complete line is handed to the
+ * {@link FrameListener} as a view on that buffer, so no objects are created per frame. A framer is used by one
+ * thread at a time.
+ * <p>
+ * If a {@link BinaryFrameListener} is given, binary frames (see {@link BinaryFrames}) are accepted between the lines
+ * as well. A binary frame with a wrong checksum is skipped from its sync byte on, so the framer finds the next frame,
+ * also if it follows without a line delimiter in between. The text lines are ASCII, so a sync byte never belongs to a
+ * line.
+ * Corrupt frames of both kinds are counted (see {@link #getCorruptFrames()}) instead of being dispatched. A line
+ * which does not fit into the buffer is counted as corrupt as well and skipped up to its line feed, so its tail is not
+ * taken for a frame of its own.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class LineFramer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LineFramer.class);
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final FrameListener listener;
+
+    private final BinaryFrameListener binaryListener;
+
+    private final ByteBufferPool pool;
+
+    /** Holds the pending bytes from index 0 up to the buffer position. */
+    private ByteBuffer buffer;
+
+    /** Index of the next pending byte which has not been checked for a delimiter yet. */
+    private int scanIndex = 0;
+
+    /** Set while the rest of a line which did not fit into the buffer is skipped. */
+    private boolean discarding;
+
+    /** Set after a corrupt binary frame until the next frame, its remaining bytes are counted as corrupt already. */
+    private boolean resyncing;
+
+    private long corruptFrames;
+
+    private long frames;
+
+    private int highWaterMark;
+
+    public LineFramer(FrameListener listener) {
+        this(listener, ByteBufferPool.shared());
+    }
+
+    public LineFramer(FrameListener listener, ByteBufferPool pool) {
+        this(listener, null, pool);
+    }
+
+    /**
+     * @param binaryListener gets the binary frames, <code>null</code> if only lines are expected
+     */
+    public LineFramer(FrameListener listener, BinaryFrameListener binaryListener, ByteBufferPool pool) {
+        this.listener = listener;
+        this.binaryListener = binaryListener;
+        this.pool = pool;
+        this.buffer = pool.acquire();
+    }
+
+    /**
+     * Appends the given bytes and dispatches all lines which are complete afterwards.
+     */
+    public void feed(byte[] data, int offset, int length) {
+        feed(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /**
+     * Appends the remaining bytes of the given buffer and dispatches all lines which are complete afterwards.
+     */
+    public void feed(ByteBuffer data) {
+        while (data.hasRemaining() && buffer != null) {
+            if (discarding && !skipLine(data)) {
+                return;
+            }
+            if (!buffer.hasRemaining()) {
+                LOG.warn("feed: no line delimiter within {} bytes -> discard input up to the next one",
+                        buffer.capacity());
+                buffer.clear();
+                scanIndex = 0;
+                corruptFrames++;
+                discarding = true;
+                continue;
+            }
+            int count = Math.min(data.remaining(), buffer.remaining());
+            int limit = data.limit();
+            data.limit(data.position() + count);
+            buffer.put(data);
+            data.limit(limit);
+            drain();
+        }
+    }
+
+    /**
+     * @return the number of bytes of the current, not yet complete line
+     */
+    public int pending() {
+        return buffer != null ? buffer.position() : 0;
+    }
+
+    /**
+     * @return the number of frames dispatched so far, lines and binary frames
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return the highest number of bytes buffered so far
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+
+    /**
+     * @return the number of frames discarded so far, because of a wrong checksum, an invalid value or a line
+     *         longer than the buffer
+     */
+    public long getCorruptFrames() {
+        return corruptFrames;
+    }
+
+    /**
+     * Discards the pending bytes of an incomplete line.
+     */
+    public void reset() {
+        if (buffer != null) {
+            buffer.clear();
+        }
+        scanIndex = 0;
+        discarding = false;
+        resyncing = false;
+    }
+
+    /**
+     * Gives the buffer back to the pool. The framer ignores all input afterwards, also if called by the listener
+     * during a dispatch.
+     */
+    public void release() {
+        ByteBuffer released = buffer;
+        buffer = null;
+        scanIndex = 0;
+        discarding = false;
+        resyncing = false;
+        pool.release(released);
+    }
+
+    /**
+     * Skips the bytes up to and including the next line feed.
+     *
+     * @return <code>false</code> if the data ended before
+     */
+    private boolean skipLine(ByteBuffer data) {
+        while (data.hasRemaining()) {
+            if (data.get() == LF) {
+                discarding = false;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void drain() {
+        final ByteBuffer current = buffer;
+        final byte[] array = current.array();
+        final int base = current.arrayOffset();
+        final int end = current.position();
+        if (end > highWaterMark) {
+            highWaterMark = end;
+        }
+
+        int frameStart = 0;
+        boolean incompleteBinaryFrame = false;
+        int i = scanIndex;
+        while (i < end) {
+            if (i == frameStart && binaryListener != null && array[base + i] == BinaryFrames.SYNC) {
+                int frameLength = binaryFrameLength(array, base + frameStart, end - frameStart);
+                if (frameLength == 0) {
+                    incompleteBinaryFrame = true;
+                    break;
+                }
+                if (frameLength > 0) {
+                    resyncing = false;
+                    dispatchBinary(array, base + frameStart, frameLength);
+                    if (buffer != current) {
+                        // released by the listener
+                        return;
+                    }
+                    frameStart += frameLength;
+                } else {
+                    // no valid frame starts here, search the next one behind the sync byte
+                    if (!resyncing) {
+                        corruptFrames++;
+                        resyncing = true;
+                    }
+                    frameStart++;
+                }
+                i = frameStart;
+                continue;
+            }
+            if (i > frameStart && binaryListener != null && array[base + i] == BinaryFrames.SYNC) {
+                // the bytes before are no line, but the rest of a corrupt frame or noise
+                if (!resyncing) {
+                    corruptFrames++;
+                    resyncing = true;
+                }
+                frameStart = i;
+                continue;
+            }
+            if (array[base + i] == LF && i > frameStart && array[base + i - 1] == CR) {
+                resyncing = false;
+                int length = i - 1 - frameStart;
+                if (length > 0) {
+                    dispatch(array, base + frameStart, length);
+                    if (buffer != current) {
+                        // released by the listener
+                        return;
+                    }
+                }
+                frameStart = i + 1;
+            }
+            i++;
+        }
+
+        if (frameStart > 0) {
+            System.arraycopy(array, base + frameStart, array, base, end - frameStart);
+            current.position(end - frameStart);
+        }
+        // an incomplete binary frame is checked again from its beginning
+        scanIndex = incompleteBinaryFrame ? 0 : current.position();
+    }
+
+    /**
+     * @return the length of the binary frame at the given offset, 0 if the frame is incomplete, -1 if the frame is
+     *         invalid
+     */
+    private static int binaryFrameLength(byte[] array, int offset, int available) {
+        if (available < BinaryFrames.HEADER_LENGTH) {
+            return 0;
+        }
+        int payloadLength = array[offset + 2] & 0xFF;
+        if (payloadLength > BinaryFrames.MAX_PAYLOAD_LENGTH) {
+            return -1;
+        }
+        int frameLength = BinaryFrames.HEADER_LENGTH + payloadLength + BinaryFrames.CRC_LENGTH;
+        if (available < frameLength) {
+            return 0;
+        }
+        int crc = BinaryFrames.crc8(array, offset + 1, 2 + payloadLength);
+        return crc == (array[offset + frameLength - 1] & 0xFF) ? frameLength : -1;
+    }
+
+    private void dispatch(byte[] array, int offset, int length) {
+        try {
+            listener.onFrame(array, offset, length);
+            frames++;
+        } catch (IllegalArgumentException e) {
+            corruptFrames++;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("corrupt frame '{}' ignored: {}", Frames.toString(array, offset, length), e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            LOG.error("error during serial input processing", e);
+        }
+    }
+
+    private void dispatchBinary(byte[] array, int offset, int frameLength) {
+        try {
+            binaryListener.onMessage(array[offset + 1] & 0xFF, array, offset + BinaryFrames.HEADER_LENGTH,
+                    frameLength - BinaryFrames.HEADER_LENGTH - BinaryFrames.CRC_LENGTH);
+            frames++;
+        } catch (IllegalArgumentException e) {
+            corruptFrames++;
+            LOG.debug("corrupt binary frame ignored: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            LOG.error("error during serial input processing", e);
+        }
+    }
+}
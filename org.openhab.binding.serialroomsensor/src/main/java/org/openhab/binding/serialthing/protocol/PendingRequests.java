@@ -0,0 +1,176 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * The {@link PendingRequests} keeps the requests sent to one device until they are answered. It sits between the
+ * {@link LineFramer} and the dispatcher: every received line is offered to the pending requests in the order they
+ * were sent, the first matching one completes, and the line is dispatched as usual afterwards.
+ * <p>
+ * Several requests may be outstanding, also of the same kind; the devices answer in order. Every request has a
+ * timeout, run by a {@link TimerWheel}.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class PendingRequests implements FrameListener, BinaryFrameListener {
+
+    /**
+     * Writes a request to the device.
+     */
+    public interface Sender {
+        void send(byte[] request) throws IOException;
+    }
+
+    /** More requests are failed immediately, the device does not answer anyway. */
+    public static final int MAX_OUTSTANDING = 32;
+
+    private final FrameListener frameListener;
+
+    private final BinaryFrameListener binaryFrameListener;
+
+    private final TimerWheel timerWheel;
+
+    private final LinkedList<RequestFuture> pending = new LinkedList<RequestFuture>();
+
+    /** Lets received lines pass without locking, while no request is pending. */
+    private volatile int pendingCount;
+
+    private boolean closed;
+
+    /**
+     * @param frameListener gets all lines after they have been offered to the requests
+     * @param binaryFrameListener gets all binary frames
+     */
+    public PendingRequests(FrameListener frameListener, BinaryFrameListener binaryFrameListener,
+            TimerWheel timerWheel) {
+        this.frameListener = frameListener;
+        this.binaryFrameListener = binaryFrameListener;
+        this.timerWheel = timerWheel;
+    }
+
+    /**
+     * Sends a request. The future is registered before the request is written, so an answer received during the
+     * write is not missed.
+     *
+     * @return the future of the response, failed if the request could not be sent
+     */
+    public RequestFuture send(byte[] request, ResponseMatcher matcher, Sender sender, long timeout, TimeUnit unit) {
+        final RequestFuture future = new RequestFuture(matcher);
+        synchronized (this) {
+            if (closed) {
+                future.fail(new IOException("port closed"));
+                return future;
+            }
+            if (pending.size() >= MAX_OUTSTANDING) {
+                future.fail(new IOException("too many outstanding requests: " + pending.size()));
+                return future;
+            }
+            pending.add(future);
+            pendingCount = pending.size();
+        }
+        future.onCancel = new Runnable() {
+            @Override
+            public void run() {
+                remove(future);
+            }
+        };
+        future.timeout = timerWheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (remove(future)) {
+                    future.fail(new TimeoutException("no response to " + future.getMatcher()));
+                }
+            }
+        }, timeout, unit);
+
+        try {
+            sender.send(request);
+        } catch (IOException e) {
+            if (remove(future)) {
+                future.fail(e);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * @return the number of requests waiting for their response
+     */
+    public int outstanding() {
+        return pendingCount;
+    }
+
+    /**
+     * Fails all pending requests. Requests sent afterwards fail immediately.
+     */
+    public void close() {
+        List<RequestFuture> failed;
+        synchronized (this) {
+            closed = true;
+            failed = new ArrayList<RequestFuture>(pending);
+            pending.clear();
+            pendingCount = 0;
+        }
+        for (RequestFuture future : failed) {
+            cancelTimeout(future);
+            future.fail(new IOException("port closed"));
+        }
+    }
+
+    @Override
+    public void onFrame(byte[] buffer, int offset, int length) {
+        if (pendingCount > 0) {
+            RequestFuture answered = null;
+            synchronized (this) {
+                for (Iterator<RequestFuture> it = pending.iterator(); it.hasNext();) {
+                    RequestFuture future = it.next();
+                    if (future.getMatcher().matches(buffer, offset, length)) {
+                        it.remove();
+                        pendingCount = pending.size();
+                        answered = future;
+                        break;
+                    }
+                }
+            }
+            if (answered != null) {
+                cancelTimeout(answered);
+                answered.complete(Frames.toString(buffer, offset, length));
+            }
+        }
+        frameListener.onFrame(buffer, offset, length);
+    }
+
+    @Override
+    public void onMessage(int messageId, byte[] buffer, int offset, int length) {
+        binaryFrameListener.onMessage(messageId, buffer, offset, length);
+    }
+
+    private synchronized boolean remove(RequestFuture future) {
+        boolean removed = pending.remove(future);
+        pendingCount = pending.size();
+        if (removed) {
+            cancelTimeout(future);
+        }
+        return removed;
+    }
+
+    private void cancelTimeout(RequestFuture future) {
+        TimerWheel.Timeout timeout = future.timeout;
+        if (timeout != null) {
+            timerWheel.cancel(timeout);
+        }
+    }
+}
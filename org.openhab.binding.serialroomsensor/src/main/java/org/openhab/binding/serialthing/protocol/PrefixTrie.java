@@ -0,0 +1,113 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+import java.util.Arrays;
+
+/**
+ * The {@link PrefixTrie} maps byte prefixes to values. The nodes are held in flat arrays and the child labels of
+ * every node are sorted, so a lookup only depends on the length of the prefix and not on the number of entries.
+ * <p>
+ * Entries are added once during setup. Lookups may happen from another thread afterwards, as long as the trie is
+ * safely published.
+ *
+ * @author Philipp - Initial contribution
+ */
+class PrefixTrie<V> {
+
+    private static final byte[] NO_LABELS = new byte[0];
+    private static final int[] NO_CHILDREN = new int[0];
+
+    /** The sorted labels of the outgoing edges per node. */
+    private byte[][] labels = new byte[16][];
+
+    /** The child node per label, same order as {@link #labels}. */
+    private int[][] children = new int[16][];
+
+    private Object[] values = new Object[16];
+
+    private int nodeCount = 1;
+
+    PrefixTrie() {
+        labels[0] = NO_LABELS;
+        children[0] = NO_CHILDREN;
+    }
+
+    /**
+     * @return the value which has been registered for the prefix before or <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    V put(byte[] prefix, V value) {
+        int node = 0;
+        for (byte label : prefix) {
+            int child = child(node, label);
+            if (child < 0) {
+                child = addNode();
+                insertChild(node, label, child);
+            }
+            node = child;
+        }
+        V previous = (V) values[node];
+        values[node] = value;
+        return previous;
+    }
+
+    /**
+     * @return the value of the longest registered prefix of the given bytes or <code>null</code>
+     */
+    @SuppressWarnings("unchecked")
+    V longestPrefix(byte[] buffer, int offset, int length) {
+        int node = 0;
+        Object match = values[0];
+        for (int i = offset; i < offset + length; i++) {
+            node = child(node, buffer[i]);
+            if (node < 0) {
+                break;
+            }
+            if (values[node] != null) {
+                match = values[node];
+            }
+        }
+        return (V) match;
+    }
+
+    private int child(int node, byte label) {
+        int index = Arrays.binarySearch(labels[node], label);
+        return index >= 0 ? children[node][index] : -1;
+    }
+
+    private int addNode() {
+        if (nodeCount == values.length) {
+            int capacity = nodeCount * 2;
+            labels = Arrays.copyOf(labels, capacity);
+            children = Arrays.copyOf(children, capacity);
+            values = Arrays.copyOf(values, capacity);
+        }
+        labels[nodeCount] = NO_LABELS;
+        children[nodeCount] = NO_CHILDREN;
+        return nodeCount++;
+    }
+
+    private void insertChild(int node, byte label, int child) {
+        byte[] oldLabels = labels[node];
+        int[] oldChildren = children[node];
+        int index = -Arrays.binarySearch(oldLabels, label) - 1;
+
+        byte[] newLabels = new byte[oldLabels.length + 1];
+        int[] newChildren = new int[oldChildren.length + 1];
+        System.arraycopy(oldLabels, 0, newLabels, 0, index);
+        System.arraycopy(oldChildren, 0, newChildren, 0, index);
+        newLabels[index] = label;
+        newChildren[index] = child;
+        System.arraycopy(oldLabels, index, newLabels, index + 1, oldLabels.length - index);
+        System.arraycopy(oldChildren, index, newChildren, index + 1, oldChildren.length - index);
+
+        labels[node] = newLabels;
+        children[node] = newChildren;
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link RequestFuture} is the answer of a request sent by {@link PendingRequests}. It completes with the
+ * response line (without line delimiter), or fails with a {@link TimeoutException} if the device did not answer in
+ * time, or with an {@link java.io.IOException} if the request could not be sent.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class RequestFuture implements Future<String> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestFuture.class);
+
+    private final ResponseMatcher matcher;
+
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private final long sentAt = System.nanoTime();
+
+    // guarded by this until done
+    private boolean completed;
+    private String response;
+    private Throwable failure;
+    private boolean cancelled;
+    private long completedAt;
+    private List<Runnable> listeners = new ArrayList<Runnable>(1);
+
+    /** Set by {@link PendingRequests} before the request is sent. */
+    volatile Runnable onCancel;
+    volatile TimerWheel.Timeout timeout;
+
+    RequestFuture(ResponseMatcher matcher) {
+        this.matcher = matcher;
+    }
+
+    /**
+     * @return a future which has already failed, for requests which could not even be sent
+     */
+    public static RequestFuture failed(ResponseMatcher matcher, Throwable failure) {
+        RequestFuture future = new RequestFuture(matcher);
+        future.fail(failure);
+        return future;
+    }
+
+    public ResponseMatcher getMatcher() {
+        return matcher;
+    }
+
+    /**
+     * Runs the listener by the executor as soon as the future is done, immediately if it is already done.
+     */
+    public void addListener(Runnable listener, Executor executor) {
+        Runnable execution = execution(listener, executor);
+        synchronized (this) {
+            if (!completed) {
+                listeners.add(execution);
+                return;
+            }
+        }
+        execution.run();
+    }
+
+    /**
+     * @return the time from sending the request until the response has been received, -1 if there is no response
+     */
+    public synchronized long getRoundTripTime(TimeUnit unit) {
+        return completed && response != null ? unit.convert(completedAt - sentAt, TimeUnit.NANOSECONDS) : -1;
+    }
+
+    /**
+     * @return the reason of the failure, <code>null</code> if not done or successful
+     */
+    public synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (!finish(null, null, true)) {
+            return false;
+        }
+        Runnable cancel = onCancel;
+        if (cancel != null) {
+            cancel.run();
+        }
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return completed;
+    }
+
+    @Override
+    public String get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    @Override
+    public String get(long time, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(time, unit)) {
+            throw new TimeoutException("no response to " + matcher + " yet");
+        }
+        return result();
+    }
+
+    private synchronized String result() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return response;
+    }
+
+    /**
+     * @return <code>false</code> if the future was already done
+     */
+    boolean complete(String response) {
+        return finish(response, null, false);
+    }
+
+    boolean fail(Throwable failure) {
+        return finish(null, failure, false);
+    }
+
+    private boolean finish(String response, Throwable failure, boolean cancel) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (completed) {
+                return false;
+            }
+            completed = true;
+            completedAt = System.nanoTime();
+            this.response = response;
+            this.failure = failure;
+            this.cancelled = cancel;
+            toRun = listeners;
+            listeners = null;
+        }
+        done.countDown();
+        for (Runnable listener : toRun) {
+            listener.run();
+        }
+        return true;
+    }
+
+    private static Runnable execution(final Runnable listener, final Executor executor) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    executor.execute(listener);
+                } catch (RuntimeException e) {
+                    LOG.error("listener of request could not be executed", e);
+                }
+            }
+        };
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "request for " + matcher + (completed ? (cancelled ? " cancelled" : failure != null ? " failed: "
+                + failure.getMessage() : " answered in " + getRoundTripTime(TimeUnit.MILLISECONDS) + " ms") : "");
+    }
+}
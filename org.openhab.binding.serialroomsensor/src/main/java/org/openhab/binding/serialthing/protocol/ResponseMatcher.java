@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+/**
+ * The {@link ResponseMatcher} recognizes the text line answering a request: by its kind, that is the command prefix
+ * (i.e. <code>TYPEID=</code>), or by a tag the device returns unchanged (i.e. the token of <code>ECHO=</code>).
+ *
+ * @author Philipp - Initial contribution
+ */
+public final class ResponseMatcher {
+
+    private final byte[][] prefixes;
+
+    private final byte[] tag;
+
+    private ResponseMatcher(byte[][] prefixes, byte[] tag) {
+        this.prefixes = prefixes;
+        this.tag = tag;
+    }
+
+    /**
+     * @return a matcher accepting every line starting with one of the prefixes
+     */
+    public static ResponseMatcher kind(String... prefixes) {
+        if (prefixes.length == 0) {
+            throw new IllegalArgumentException("at least one prefix required");
+        }
+        byte[][] bytes = new byte[prefixes.length][];
+        for (int i = 0; i < prefixes.length; i++) {
+            bytes[i] = Frames.bytes(prefixes[i]);
+        }
+        return new ResponseMatcher(bytes, null);
+    }
+
+    /**
+     * @return a matcher accepting only the line consisting of the prefix and the tag
+     */
+    public static ResponseMatcher tagged(String prefix, String tag) {
+        return new ResponseMatcher(new byte[][] { Frames.bytes(prefix) }, Frames.bytes(tag));
+    }
+
+    /**
+     * @param buffer the line without line delimiter
+     */
+    public boolean matches(byte[] buffer, int offset, int length) {
+        for (byte[] prefix : prefixes) {
+            if (Frames.startsWith(buffer, offset, length, prefix)) {
+                return tag == null || (length == prefix.length + tag.length
+                        && Frames.endsWith(buffer, offset, length, tag));
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (byte[] prefix : prefixes) {
+            if (text.length() > 0) {
+                text.append('|');
+            }
+            text.append(Frames.toString(prefix, 0, prefix.length));
+        }
+        if (tag != null) {
+            text.append(Frames.toString(tag, 0, tag.length));
+        }
+        return text.toString();
+    }
+}
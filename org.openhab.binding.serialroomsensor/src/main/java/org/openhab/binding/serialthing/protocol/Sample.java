@@ -0,0 +1,144 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+/**
+ * The {@link Sample} holds the values a device measured in one cycle. Devices which announced the combined framing
+ * send them in one text line after it has been requested (see {@link #FRAMING_REQUEST}):
+ *
+ * <pre>
+ * V:B=512;T=21;H=40
+ * </pre>
+ *
+ * Every field is a key letter, <code>=</code> and a decimal value. A line contains the values the device has, fields
+ * with unknown keys are ignored.
+ *
+ * @author Philipp - Initial contribution
+ */
+public final class Sample {
+
+    public static final String PREFIX = "V:";
+
+    // keys
+    public static final byte BRIGHTNESS = 'B';
+    public static final byte TEMPERATURE = 'T';
+    public static final byte HUMIDITY = 'H';
+    public static final byte DOORBELL_PRESSED = 'D';
+
+    /** Name of the combined framing in the <code>FRAMINGS=</code> line of the type id answer. */
+    public static final String FRAMING_COMBINED = "combined";
+
+    /** Asks the device to send combined lines from now on. */
+    public static final String FRAMING_REQUEST = "FRAMING=" + FRAMING_COMBINED + "\n";
+
+    private static final byte FIELD_SEPARATOR = ';';
+
+    private static final byte VALUE_SEPARATOR = '=';
+
+    private static final int KEY_COUNT = 'Z' - 'A' + 1;
+
+    private final int[] values = new int[KEY_COUNT];
+
+    /** Bit i is set if the value of key 'A' + i is present. */
+    private int present;
+
+    /**
+     * @return <code>true</code> if the sample contains a value with the given key
+     */
+    public boolean has(byte key) {
+        int index = key - 'A';
+        return index >= 0 && index < KEY_COUNT && (present & (1 << index)) != 0;
+    }
+
+    /**
+     * @return the value with the given key, 0 if it is not present
+     */
+    public int get(byte key) {
+        return has(key) ? values[key - 'A'] : 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the key is not an upper case letter
+     */
+    public Sample set(byte key, int value) {
+        int index = key - 'A';
+        if (index < 0 || index >= KEY_COUNT) {
+            throw new IllegalArgumentException("invalid key: " + (char) key);
+        }
+        values[index] = value;
+        present |= 1 << index;
+        return this;
+    }
+
+    /**
+     * Replaces the values by the ones of the other sample.
+     */
+    public void copyFrom(Sample other) {
+        System.arraycopy(other.values, 0, values, 0, KEY_COUNT);
+        present = other.present;
+    }
+
+    public boolean isEmpty() {
+        return present == 0;
+    }
+
+    public void clear() {
+        present = 0;
+    }
+
+    /**
+     * Replaces the values by the fields of a line without the {@link #PREFIX}. The sample is empty if the fields are
+     * malformed.
+     *
+     * @throws IllegalArgumentException if a field is malformed
+     */
+    public void decode(byte[] buffer, int offset, int length) {
+        clear();
+        int end = offset + length;
+        int fieldStart = offset;
+        while (fieldStart < end) {
+            int fieldEnd = fieldStart;
+            while (fieldEnd < end && buffer[fieldEnd] != FIELD_SEPARATOR) {
+                fieldEnd++;
+            }
+            if (fieldEnd - fieldStart < 3 || buffer[fieldStart + 1] != VALUE_SEPARATOR) {
+                clear();
+                throw new IllegalArgumentException("malformed sample field");
+            }
+            byte key = buffer[fieldStart];
+            if (key >= 'A' && key <= 'Z') {
+                int value;
+                try {
+                    value = Frames.parseInt(buffer, fieldStart + 2, fieldEnd - fieldStart - 2);
+                } catch (NumberFormatException e) {
+                    clear();
+                    throw e;
+                }
+                set(key, value);
+            }
+            fieldStart = fieldEnd + 1;
+        }
+    }
+
+    /**
+     * @return the line a device sends for this sample, without line delimiter
+     */
+    @Override
+    public String toString() {
+        StringBuilder line = new StringBuilder(PREFIX);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            if ((present & (1 << i)) != 0) {
+                if (line.length() > PREFIX.length()) {
+                    line.append((char) FIELD_SEPARATOR);
+                }
+                line.append((char) ('A' + i)).append((char) VALUE_SEPARATOR).append(values[i]);
+            }
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.protocol;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link TimerWheel} runs many short timeouts with one thread. The timeouts are hashed into the slots of a wheel
+ * by their deadline; the thread advances the wheel by one slot per tick and runs the expired timeouts of that slot.
+ * Scheduling and cancelling take constant time, a timeout fires up to one tick late.
+ * <p>
+ * The thread is started with the first timeout and ends when no timeout is pending. The tasks run on the thread of
+ * the wheel, so they must not block.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class TimerWheel implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimerWheel.class);
+
+    private static final long DEFAULT_TICK_MILLIS = 10;
+
+    private static final int DEFAULT_SLOTS = 512;
+
+    private static final TimerWheel SHARED = new TimerWheel("serialthing-timer", DEFAULT_TICK_MILLIS, DEFAULT_SLOTS);
+
+    /**
+     * A scheduled task, which can be cancelled until it has run.
+     */
+    public static final class Timeout {
+
+        private final Runnable task;
+        private long remainingRounds;
+        private int slot;
+
+        // linked list of the slot, guarded by the wheel
+        private Timeout previous;
+        private Timeout next;
+        private boolean scheduled;
+
+        private Timeout(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    private final String name;
+
+    private final long tickNanos;
+
+    /** <code>false</code> if the wheel is only advanced by {@link #tick()}. */
+    private final boolean threaded;
+
+    /** Heads of the lists of the slots. */
+    private final Timeout[] slots;
+
+    private int currentSlot;
+
+    private int pending;
+
+    private Thread thread;
+
+    /**
+     * @param tickMillis the time of one slot, the precision of the timeouts
+     * @param slotCount the number of slots, a timeout which does not fit into one turn waits for more turns
+     */
+    public TimerWheel(String name, long tickMillis, int slotCount) {
+        this(name, tickMillis, slotCount, true);
+    }
+
+    /**
+     * @param threaded <code>false</code> to advance the wheel only by {@link #tick()}, i.e. in tests
+     */
+    TimerWheel(String name, long tickMillis, int slotCount, boolean threaded) {
+        if (tickMillis <= 0 || slotCount <= 0) {
+            throw new IllegalArgumentException("tick and slot count must be positive");
+        }
+        this.name = name;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.slots = new Timeout[slotCount];
+        this.threaded = threaded;
+    }
+
+    /**
+     * @return the wheel used by all serial ports of this binding
+     */
+    public static TimerWheel shared() {
+        return SHARED;
+    }
+
+    /**
+     * Runs the task after the delay, rounded up to the next tick.
+     */
+    public synchronized Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long ticks = Math.max(1, (unit.toNanos(delay) + tickNanos - 1) / tickNanos);
+        Timeout timeout = new Timeout(task);
+        timeout.slot = (int) ((currentSlot + ticks) % slots.length);
+        timeout.remainingRounds = (ticks - 1) / slots.length;
+        timeout.next = slots[timeout.slot];
+        if (timeout.next != null) {
+            timeout.next.previous = timeout;
+        }
+        slots[timeout.slot] = timeout;
+        timeout.scheduled = true;
+        pending++;
+
+        if (thread == null && threaded) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        return timeout;
+    }
+
+    /**
+     * @return <code>false</code> if the task has already run or has been cancelled before
+     */
+    public synchronized boolean cancel(Timeout timeout) {
+        if (!timeout.scheduled) {
+            return false;
+        }
+        unlink(timeout);
+        return true;
+    }
+
+    /**
+     * @return the number of timeouts which have neither run nor been cancelled
+     */
+    public synchronized int pending() {
+        return pending;
+    }
+
+    @Override
+    public void run() {
+        long nextTick = System.nanoTime() + tickNanos;
+        while (true) {
+            long wait = nextTick - System.nanoTime();
+            while (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                wait = nextTick - System.nanoTime();
+            }
+            nextTick += tickNanos;
+
+            Timeout expired = advance();
+            if (expired == null && !isRunning()) {
+                return;
+            }
+            runExpired(expired);
+        }
+    }
+
+    /**
+     * Advances the wheel by one tick and runs the expired timeouts by the calling thread. Only for a wheel which is
+     * not threaded.
+     *
+     * @return the number of run timeouts
+     */
+    int tick() {
+        if (threaded) {
+            throw new IllegalStateException("the wheel is advanced by its thread");
+        }
+        return runExpired(advance());
+    }
+
+    private int runExpired(Timeout expired) {
+        int count = 0;
+        for (Timeout timeout = expired; timeout != null; timeout = timeout.next) {
+            count++;
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                LOG.error("error in timeout task", e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Moves to the next slot.
+     *
+     * @return the expired timeouts of the slot, linked by {@link Timeout#next}
+     */
+    private synchronized Timeout advance() {
+        currentSlot = (currentSlot + 1) % slots.length;
+        Timeout expired = null;
+        Timeout timeout = slots[currentSlot];
+        while (timeout != null) {
+            Timeout following = timeout.next;
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            } else {
+                unlink(timeout);
+                timeout.next = expired;
+                expired = timeout;
+            }
+            timeout = following;
+        }
+        return expired;
+    }
+
+    /**
+     * @return <code>false</code> if the thread has to end, because no timeout is pending
+     */
+    private synchronized boolean isRunning() {
+        if (pending == 0) {
+            thread = null;
+            return false;
+        }
+        return true;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.previous != null) {
+            timeout.previous.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.previous = timeout.previous;
+        }
+        timeout.previous = null;
+        timeout.next = null;
+        timeout.scheduled = false;
+        pending--;
+    }
+}
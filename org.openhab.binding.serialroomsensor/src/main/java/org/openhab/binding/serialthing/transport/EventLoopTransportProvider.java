@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.transport;
+
+/**
+ * The {@link EventLoopTransportProvider} lets a fixed number of {@link SerialEventLoop}s receive for all ports of
+ * another provider, so the number of threads does not grow with the number of ports. The ports do not get event
+ * threads of their own (i.e. jssc does not start one, because no listener is added to the port).
+ * <p>
+ * A new port is assigned to the loop serving the fewest ports.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class EventLoopTransportProvider implements SerialTransportProvider {
+
+    private final SerialTransportProvider delegate;
+
+    private final SerialEventLoop[] loops;
+
+    /**
+     * @param delegate accesses the ports
+     * @param loopCount the number of loop threads, i.e. the number of cores
+     */
+    public EventLoopTransportProvider(SerialTransportProvider delegate, int loopCount) {
+        if (loopCount < 1) {
+            throw new IllegalArgumentException("at least one event loop required: " + loopCount);
+        }
+        this.delegate = delegate;
+        this.loops = new SerialEventLoop[loopCount];
+        for (int i = 0; i < loopCount; i++) {
+            loops[i] = new SerialEventLoop("serialthing-event-loop-" + i);
+        }
+    }
+
+    @Override
+    public String[] getPortNames() {
+        return delegate.getPortNames();
+    }
+
+    @Override
+    public SerialTransport createTransport(String portName) {
+        return new LoopedSerialTransport(delegate.createTransport(portName), this);
+    }
+
+    SerialEventLoop nextLoop() {
+        SerialEventLoop leastUsed = loops[0];
+        for (int i = 1; i < loops.length; i++) {
+            if (loops[i].size() < leastUsed.size()) {
+                leastUsed = loops[i];
+            }
+        }
+        return leastUsed;
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
+import jssc.SerialPortException;
+import jssc.SerialPortList;
+
+/**
+ * The {@link JsscSerialTransport} accesses a serial port by jssc. Also pseudo terminals (i.e. /dev/pts/3) can be
+ * opened this way.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class JsscSerialTransport implements SerialTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JsscSerialTransport.class);
+
+    /**
+     * Provides the ports listed by jssc.
+     */
+    public static class Provider implements SerialTransportProvider {
+
+        @Override
+        public String[] getPortNames() {
+            return SerialPortList.getPortNames();
+        }
+
+        @Override
+        public SerialTransport createTransport(String portName) {
+            return new JsscSerialTransport(portName);
+        }
+    }
+
+    private final SerialPort serialPort;
+
+    public JsscSerialTransport(String portName) {
+        serialPort = new SerialPort(portName);
+    }
+
+    @Override
+    public String getPortName() {
+        return serialPort.getPortName();
+    }
+
+    @Override
+    public void open() throws IOException {
+        try {
+            if (!serialPort.openPort()) {
+                throw new IOException("port " + getPortName() + " could not be opened");
+            }
+        } catch (SerialPortException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return serialPort.isOpened();
+    }
+
+    @Override
+    public void setBaudRate(int baudRate) throws IOException {
+        try {
+            serialPort.setParams(baudRate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1, SerialPort.PARITY_NONE);
+        } catch (SerialPortException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void setListener(final SerialTransportListener listener) throws IOException {
+        try {
+            if (listener == null) {
+                serialPort.removeEventListener();
+                return;
+            }
+            serialPort.setEventsMask(SerialPort.MASK_RXCHAR + SerialPort.MASK_CTS + SerialPort.MASK_DSR);
+            serialPort.addEventListener(new SerialPortEventListener() {
+                @Override
+                public void serialEvent(SerialPortEvent event) {
+                    if (event.isRXCHAR() && event.getEventValue() > 0) {
+                        listener.onDataAvailable(JsscSerialTransport.this);
+                    }
+                }
+            });
+        } catch (SerialPortException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        if (!serialPort.isOpened()) {
+            return -1;
+        }
+        try {
+            int available = serialPort.getInputBufferBytesCount();
+            if (available <= 0 || !buffer.hasRemaining()) {
+                return 0;
+            }
+            // does not block, the bytes have already been received
+            byte[] bytes = serialPort.readBytes(Math.min(available, buffer.remaining()));
+            buffer.put(bytes);
+            return bytes.length;
+        } catch (SerialPortException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        byte[] bytes = data;
+        if (offset != 0 || length != data.length) {
+            bytes = new byte[length];
+            System.arraycopy(data, offset, bytes, 0, length);
+        }
+        try {
+            if (!serialPort.writeBytes(bytes)) {
+                throw new IOException("write to port " + getPortName() + " failed");
+            }
+        } catch (SerialPortException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (serialPort.isOpened()) {
+            try {
+                // also removes the listener and waits for the event thread, if called by another thread
+                serialPort.closePort();
+            } catch (SerialPortException e) {
+                LOG.error("error during closing port {}", getPortName(), e);
+            }
+        }
+    }
+}
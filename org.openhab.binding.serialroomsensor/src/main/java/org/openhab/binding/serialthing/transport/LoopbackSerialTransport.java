@@ -0,0 +1,241 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The {@link LoopbackSerialTransport} is one end of an in-memory serial line. The bytes written to one end can be
+ * read from the other end ({@link #getPeer()}), so the handlers can talk to a simulated device without hardware.
+ * <p>
+ * The listener of an end is called by the thread writing to the other end. Bytes sent to a closed end are lost, like
+ * on a real line. If the receive buffer is full, further bytes are counted as overrun and dropped. If both ends have
+ * set different baud rates, the bytes are not readable and counted as framing errors.
+ *
+ * @author Philipp - Initial contribution
+ */
+public class LoopbackSerialTransport implements SerialTransport {
+
+    /** Size of the receive buffer of every end in bytes. */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Provides the ports of the devices attached with {@link #attach(String)}. The transports created for the
+     * handlers are the host ends of the lines.
+     */
+    public static class Provider implements SerialTransportProvider {
+
+        private final Map<String, LoopbackSerialTransport> lines = new TreeMap<String, LoopbackSerialTransport>();
+
+        /**
+         * Creates a new line, replacing a line with the same port name.
+         *
+         * @return the opened device end of the line
+         */
+        public synchronized LoopbackSerialTransport attach(String portName) throws IOException {
+            LoopbackSerialTransport host = new LoopbackSerialTransport(portName);
+            lines.put(portName, host);
+            host.peer.open();
+            return host.peer;
+        }
+
+        /**
+         * Removes the line, both ends are closed.
+         */
+        public void detach(String portName) {
+            LoopbackSerialTransport host;
+            synchronized (this) {
+                host = lines.remove(portName);
+            }
+            if (host != null) {
+                host.close();
+                host.peer.close();
+            }
+        }
+
+        @Override
+        public synchronized String[] getPortNames() {
+            return lines.keySet().toArray(new String[lines.size()]);
+        }
+
+        @Override
+        public synchronized SerialTransport createTransport(String portName) {
+            LoopbackSerialTransport host = lines.get(portName);
+            // an unknown port can not be opened, like a missing device node
+            return host != null ? host : new LoopbackSerialTransport(portName, null);
+        }
+    }
+
+    private final String portName;
+
+    private final LoopbackSerialTransport peer;
+
+    /** Holds the received bytes from index 0 up to the buffer position. */
+    private final ByteBuffer received = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** Held while the listener is called, so {@link #close()} can wait for it. */
+    private final Object listenerLock = new Object();
+
+    private volatile boolean open;
+
+    private volatile SerialTransportListener listener;
+
+    private volatile int baudRate;
+
+    private long overrunBytes;
+
+    private long framingErrors;
+
+    /**
+     * Creates the host end of a new line.
+     */
+    public LoopbackSerialTransport(String portName) {
+        this.portName = portName;
+        this.peer = new LoopbackSerialTransport(portName, this);
+    }
+
+    private LoopbackSerialTransport(String portName, LoopbackSerialTransport peer) {
+        this.portName = portName;
+        this.peer = peer;
+    }
+
+    /**
+     * @return the other end of the line
+     */
+    public LoopbackSerialTransport getPeer() {
+        return peer;
+    }
+
+    @Override
+    public String getPortName() {
+        return portName;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        if (peer == null) {
+            throw new IOException("port " + portName + " does not exist");
+        }
+        if (open) {
+            throw new IOException("port " + portName + " currently in use");
+        }
+        open = true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void setBaudRate(int baudRate) throws IOException {
+        checkOpen();
+        this.baudRate = baudRate;
+    }
+
+    /**
+     * @return the last baud rate set, 0 if not set
+     */
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    @Override
+    public void setListener(SerialTransportListener listener) throws IOException {
+        checkOpen();
+        this.listener = listener;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        if (!open) {
+            return -1;
+        }
+        synchronized (received) {
+            int count = Math.min(received.position(), buffer.remaining());
+            if (count > 0) {
+                received.flip();
+                int limit = received.limit();
+                received.limit(count);
+                buffer.put(received);
+                received.limit(limit);
+                received.compact();
+            }
+            return count;
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        checkOpen();
+        peer.receive(data, offset, length, baudRate);
+    }
+
+    private void receive(byte[] data, int offset, int length, int senderBaudRate) {
+        if (!open) {
+            return;
+        }
+        if (senderBaudRate != 0 && baudRate != 0 && senderBaudRate != baudRate) {
+            synchronized (received) {
+                framingErrors += length;
+            }
+            return;
+        }
+        synchronized (received) {
+            int count = Math.min(length, received.remaining());
+            received.put(data, offset, count);
+            overrunBytes += length - count;
+        }
+        synchronized (listenerLock) {
+            SerialTransportListener current = listener;
+            if (open && current != null) {
+                current.onDataAvailable(this);
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes dropped so far, because the receive buffer was full
+     */
+    public long getOverrunBytes() {
+        synchronized (received) {
+            return overrunBytes;
+        }
+    }
+
+    /**
+     * @return the number of bytes dropped so far, because they were sent with another baud rate
+     */
+    public long getFramingErrors() {
+        synchronized (received) {
+            return framingErrors;
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            open = false;
+        }
+        synchronized (listenerLock) {
+            listener = null;
+        }
+        synchronized (received) {
+            received.clear();
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (!open) {
+            throw new IOException("port " + portName + " not open");
+        }
+    }
+}
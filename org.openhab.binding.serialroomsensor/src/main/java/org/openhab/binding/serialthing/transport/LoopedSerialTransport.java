@@ -0,0 +1,172 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link LoopedSerialTransport} is served by a {@link SerialEventLoop} instead of an event thread of its own. The
+ * loop reads the received bytes into the buffer of the port and calls the listener, which reads them from there.
+ * <p>
+ * If reading the port fails, the loop stops serving it and calls the listener a last time, so it gets the failure
+ * from {@link #read(ByteBuffer)} after the bytes received before.
+ *
+ * @author Philipp - Initial contribution
+ */
+class LoopedSerialTransport implements SerialTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoopedSerialTransport.class);
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private final SerialTransport delegate;
+
+    private final EventLoopTransportProvider provider;
+
+    /** Holds the received bytes from index 0 up to the buffer position. Only used by the loop thread. */
+    private final ByteBuffer received = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /** Held while the port is read and the listener is called, so {@link #close()} can wait for it. */
+    private final Object pollLock = new Object();
+
+    private SerialEventLoop loop;
+
+    private SerialTransportListener listener;
+
+    /** The reason the loop stopped reading the port, rethrown by {@link #read(ByteBuffer)}. */
+    private IOException failure;
+
+    LoopedSerialTransport(SerialTransport delegate, EventLoopTransportProvider provider) {
+        this.delegate = delegate;
+        this.provider = provider;
+    }
+
+    @Override
+    public String getPortName() {
+        return delegate.getPortName();
+    }
+
+    @Override
+    public void open() throws IOException {
+        delegate.open();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return delegate.isOpen();
+    }
+
+    @Override
+    public void setBaudRate(int baudRate) throws IOException {
+        delegate.setBaudRate(baudRate);
+    }
+
+    @Override
+    public void setListener(SerialTransportListener listener) throws IOException {
+        if (!delegate.isOpen()) {
+            throw new IOException("port " + getPortName() + " not open");
+        }
+        SerialEventLoop current;
+        synchronized (pollLock) {
+            this.listener = listener;
+            if (listener != null && loop == null) {
+                loop = provider.nextLoop();
+            }
+            current = loop;
+        }
+        if (current != null) {
+            if (listener != null) {
+                current.register(this);
+            } else {
+                current.unregister(this);
+            }
+        }
+    }
+
+    /**
+     * Reads the received bytes of the port and calls the listener. Only called by the loop thread.
+     *
+     * @return <code>true</code> if bytes have been received
+     */
+    boolean poll() {
+        synchronized (pollLock) {
+            if (listener == null || failure != null) {
+                return false;
+            }
+            int count;
+            try {
+                count = delegate.read(received);
+                if (count < 0) {
+                    throw new IOException("port " + getPortName() + " closed");
+                }
+            } catch (IOException e) {
+                LOG.error("error during reading port {} -> stop reading", getPortName(), e);
+                failure = e;
+                loop.unregister(this);
+                count = 0;
+            }
+            if (received.position() > 0 || failure != null) {
+                try {
+                    listener.onDataAvailable(this);
+                } catch (RuntimeException e) {
+                    LOG.error("error during serial input processing", e);
+                }
+            }
+            return count > 0;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        synchronized (pollLock) {
+            if (received.position() == 0 && failure != null) {
+                throw failure;
+            }
+            if (!delegate.isOpen()) {
+                return -1;
+            }
+            int count = Math.min(received.position(), buffer.remaining());
+            if (count > 0) {
+                received.flip();
+                int limit = received.limit();
+                received.limit(count);
+                buffer.put(received);
+                received.limit(limit);
+                received.compact();
+            }
+            return count;
+        }
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        delegate.write(data, offset, length);
+    }
+
+    @Override
+    public void close() {
+        SerialEventLoop current;
+        synchronized (pollLock) {
+            current = loop;
+        }
+        if (current != null) {
+            current.unregister(this);
+        }
+        // waits until a running poll has finished, unless called by the listener itself
+        synchronized (pollLock) {
+            listener = null;
+            failure = null;
+            received.clear();
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TooManyListenersException;
+
+import gnu.io.CommPortIdentifier;
+import gnu.io.NoSuchPortException;
+import gnu.io.PortInUseException;
+import gnu.io.SerialPort;
+import gnu.io.SerialPortEvent;
+import gnu.io.SerialPortEventListener;
+import gnu.io.UnsupportedCommOperationException;
+
+/**
+ * The {@link RxtxSerialTransport} accesses a serial port by RXTX (org.openhab.io.transport.serial).
+ *
+ * @author Philipp - Initial contribution
+ */
+public class RxtxSerialTransport implements SerialTransport {
+
+    /** Milliseconds to block while waiting for port open */
+    private static final int OPEN_TIMEOUT = 2000;
+
+    /**
+     * Provides the serial ports known by RXTX.
+     */
+    public static class Provider implements SerialTransportProvider {
+
+        @Override
+        public String[] getPortNames() {
+            List<String> portNames = new ArrayList<String>();
+            Enumeration<?> ports = CommPortIdentifier.getPortIdentifiers();
+            while (ports.hasMoreElements()) {
+                CommPortIdentifier port = (CommPortIdentifier) ports.nextElement();
+                if (port.getPortType() == CommPortIdentifier.PORT_SERIAL) {
+                    portNames.add(port.getName());
+                }
+            }
+            return portNames.toArray(new String[portNames.size()]);
+        }
+
+        @Override
+        public SerialTransport createTransport(String portName) {
+            return new RxtxSerialTransport(portName);
+        }
+    }
+
+    private final String portName;
+
+    private SerialPort serialPort;
+    private volatile InputStream input;
+    private volatile OutputStream output;
+
+    public RxtxSerialTransport(String portName) {
+        this.portName = portName;
+    }
+
+    @Override
+    public String getPortName() {
+        return portName;
+    }
+
+    @Override
+    public synchronized void open() throws IOException {
+        try {
+            serialPort = (SerialPort) CommPortIdentifier.getPortIdentifier(portName).open(getClass().getName(),
+                    OPEN_TIMEOUT);
+            input = serialPort.getInputStream();
+            output = serialPort.getOutputStream();
+        } catch (NoSuchPortException e) {
+            throw new IOException("port " + portName + " does not exist", e);
+        } catch (PortInUseException e) {
+            throw new IOException("port " + portName + " currently in use", e);
+        }
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return serialPort != null;
+    }
+
+    @Override
+    public synchronized void setBaudRate(int baudRate) throws IOException {
+        try {
+            openPort().setSerialPortParams(baudRate, SerialPort.DATABITS_8, SerialPort.STOPBITS_1,
+                    SerialPort.PARITY_NONE);
+        } catch (UnsupportedCommOperationException e) {
+            throw new IOException("baud rate " + baudRate + " not supported by port " + portName, e);
+        }
+    }
+
+    @Override
+    public synchronized void setListener(final SerialTransportListener listener) throws IOException {
+        SerialPort port = openPort();
+        port.removeEventListener();
+        if (listener == null) {
+            return;
+        }
+        try {
+            port.addEventListener(new SerialPortEventListener() {
+                @Override
+                public void serialEvent(SerialPortEvent event) {
+                    if (event.getEventType() == SerialPortEvent.DATA_AVAILABLE) {
+                        listener.onDataAvailable(RxtxSerialTransport.this);
+                    }
+                }
+            });
+        } catch (TooManyListenersException e) {
+            throw new IOException(e);
+        }
+        port.notifyOnDataAvailable(true);
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        InputStream in = input;
+        if (in == null) {
+            return -1;
+        }
+        int available = in.available();
+        if (available <= 0 || !buffer.hasRemaining()) {
+            return 0;
+        }
+        int length = Math.min(available, buffer.remaining());
+        int count;
+        if (buffer.hasArray()) {
+            count = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            if (count > 0) {
+                buffer.position(buffer.position() + count);
+            }
+        } else {
+            byte[] bytes = new byte[length];
+            count = in.read(bytes);
+            if (count > 0) {
+                buffer.put(bytes, 0, count);
+            }
+        }
+        return Math.max(count, 0);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        OutputStream out = output;
+        if (out == null) {
+            throw new IOException("port " + portName + " not open");
+        }
+        out.write(data, offset, length);
+        out.flush();
+    }
+
+    @Override
+    public void close() {
+        SerialPort port;
+        synchronized (this) {
+            port = serialPort;
+            serialPort = null;
+            input = null;
+            output = null;
+        }
+        if (port != null) {
+            // waits for the event thread and closes the streams
+            port.removeEventListener();
+            port.close();
+        }
+    }
+
+    private SerialPort openPort() throws IOException {
+        if (serialPort == null) {
+            throw new IOException("port " + portName + " not open");
+        }
+        return serialPort;
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.transport;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The {@link SerialEventLoop} is one thread serving the receive side of many ports. It reads whatever the ports have
+ * received and calls their listeners. While no port receives anything, the loop waits a little longer after every
+ * round, up to {@link #MAX_IDLE_WAIT}.
+ * <p>
+ * The thread is started with the first port and ends after the last port has been removed.
+ *
+ * @author Philipp - Initial contribution
+ */
+class SerialEventLoop implements Runnable {
+
+    /** Wait after a round without data, doubled for every further idle round. */
+    private static final long MIN_IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /** Longest wait between two rounds, about 5 characters at 9600 baud. */
+    private static final long MAX_IDLE_WAIT = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final String name;
+
+    private final List<LoopedSerialTransport> transports = new CopyOnWriteArrayList<LoopedSerialTransport>();
+
+    private Thread thread;
+
+    SerialEventLoop(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @return the number of ports served by this loop
+     */
+    int size() {
+        return transports.size();
+    }
+
+    synchronized void register(LoopedSerialTransport transport) {
+        if (!transports.contains(transport)) {
+            transports.add(transport);
+        }
+        if (thread == null) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    void unregister(LoopedSerialTransport transport) {
+        transports.remove(transport);
+    }
+
+    @Override
+    public void run() {
+        long idleWait = MIN_IDLE_WAIT;
+        while (true) {
+            if (transports.isEmpty()) {
+                synchronized (this) {
+                    if (transports.isEmpty()) {
+                        thread = null;
+                        return;
+                    }
+                }
+            }
+            boolean received = false;
+            for (LoopedSerialTransport transport : transports) {
+                received |= transport.poll();
+            }
+            if (received) {
+                idleWait = MIN_IDLE_WAIT;
+            } else {
+                LockSupport.parkNanos(this, idleWait);
+                idleWait = Math.min(idleWait * 2, MAX_IDLE_WAIT);
+            }
+        }
+    }
+}
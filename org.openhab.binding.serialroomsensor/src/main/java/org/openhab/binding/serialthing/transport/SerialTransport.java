@@ -0,0 +1,58 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * The {@link SerialTransport} is the connection to one serial port, independent of the library which accesses the
+ * port. The port is always used with 8 data bits, 1 stop bit and no parity.
+ * <p>
+ * Instances are created by a {@link SerialTransportProvider}, see {@link SerialTransports#getProvider()}.
+ *
+ * @author Philipp - Initial contribution
+ */
+public interface SerialTransport {
+
+    /**
+     * @return the port name, i.e. /dev/ttyACM0
+     */
+    String getPortName();
+
+    /**
+     * Opens the port for exclusive use.
+     *
+     * @throws IOException if the port does not exist or is used by someone else
+     */
+    void open() throws IOException;
+
+    boolean isOpen();
+
+    void setBaudRate(int baudRate) throws IOException;
+
+    /**
+     * @param listener gets notified about received bytes, <code>null</code> to remove the current listener
+     */
+    void setListener(SerialTransportListener listener) throws IOException;
+
+    /**
+     * Reads the bytes received so far into the given buffer without blocking.
+     *
+     * @return the number of bytes read, 0 if nothing has been received, -1 if the port is closed
+     */
+    int read(ByteBuffer buffer) throws IOException;
+
+    void write(byte[] data, int offset, int length) throws IOException;
+
+    /**
+     * Closes the port. If the listener is running in another thread, this waits until it has returned, so the
+     * listener is not called anymore afterwards.
+     */
+    void close();
+}
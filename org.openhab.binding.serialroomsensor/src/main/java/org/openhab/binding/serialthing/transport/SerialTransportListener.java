@@ -0,0 +1,22 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.transport;
+
+/**
+ * Gets the events of a {@link SerialTransport}.
+ *
+ * @author Philipp - Initial contribution
+ */
+public interface SerialTransportListener {
+
+    /**
+     * Called by the event thread of the transport as soon as bytes have been received. The listener should read
+     * until {@link SerialTransport#read(java.nio.ByteBuffer)} returns 0.
+     */
+    void onDataAvailable(SerialTransport transport);
+}
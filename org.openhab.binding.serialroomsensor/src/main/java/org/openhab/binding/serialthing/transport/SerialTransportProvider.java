@@ -0,0 +1,26 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.transport;
+
+/**
+ * Lists the serial ports of a backend and creates the {@link SerialTransport}s to access them.
+ *
+ * @author Philipp - Initial contribution
+ */
+public interface SerialTransportProvider {
+
+    /**
+     * @return the names of all serial ports currently available
+     */
+    String[] getPortNames();
+
+    /**
+     * @return a not yet opened transport for the given port
+     */
+    SerialTransport createTransport(String portName);
+}
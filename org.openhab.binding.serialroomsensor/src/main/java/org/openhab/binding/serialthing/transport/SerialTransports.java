@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2014-2015 openHAB UG (haftungsbeschraenkt) and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openhab.binding.serialthing.transport;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link SerialTransports} holds the {@link SerialTransportProvider} used by the handlers and the discovery.
+ * <p>
+ * The backend is selected by the system property {@value #PROPERTY}: <code>jssc</code> (default) or
+ * <code>rxtx</code>. Benchmarks and tests can install another provider, i.e. a
+ * {@link LoopbackSerialTransport.Provider}.
+ * <p>
+ * If the system property {@value #EVENT_LOOPS_PROPERTY} is set, all ports are received by that number of
+ * {@link EventLoopTransportProvider event loops} instead of an event thread per port. <code>auto</code> uses one loop
+ * per core.
+ * <p>
+ * {@link #findPort(String)} creates the transport of a configured port, or of the first default port which exists, for
+ * all serial bindings. A binding which has to stay with one library passes its own provider, see
+ * {@link #findPort(SerialTransportProvider, String)}.
+ *
+ * @author Philipp - Initial contribution
+ */
+public final class SerialTransports {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SerialTransports.class);
+
+    public static final String PROPERTY = "org.openhab.binding.serialthing.transport";
+
+    public static final String JSSC = "jssc";
+
+    public static final String RXTX = "rxtx";
+
+    public static final String EVENT_LOOPS_PROPERTY = "org.openhab.binding.serialthing.eventloops";
+
+    public static final String AUTO = "auto";
+
+    /** The ports tried if no port is configured. */
+    private static final String[] DEFAULT_PORT_NAMES = { "/dev/tty.usbserial-A9007UX1", // Mac OS X
+            "/dev/ttyACM0", // Raspberry Pi
+            "/dev/ttyUSB0", // Linux
+            "COM3", // Windows
+    };
+
+    private static volatile SerialTransportProvider provider;
+
+    private SerialTransports() {
+    }
+
+    /**
+     * @return the installed provider or the one selected by the system property
+     */
+    public static SerialTransportProvider getProvider() {
+        SerialTransportProvider current = provider;
+        if (current == null) {
+            synchronized (SerialTransports.class) {
+                if (provider == null) {
+                    provider = createDefaultProvider();
+                }
+                current = provider;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * @param newProvider the provider to use from now on, <code>null</code> to go back to the one selected by the
+     *            system property
+     */
+    public static void setProvider(SerialTransportProvider newProvider) {
+        provider = newProvider;
+    }
+
+    /**
+     * Finds the port and creates its transport, which still has to be opened.
+     *
+     * @param portName the port to use, <code>null</code> for the first default port which exists (i.e. /dev/ttyACM0)
+     * @return the transport, <code>null</code> if the port does not exist
+     */
+    public static SerialTransport findPort(String portName) {
+        return findPort(getProvider(), portName);
+    }
+
+    /**
+     * Finds the port among the ports of the given provider and creates its transport, which still has to be opened.
+     *
+     * @param portName the port to use, <code>null</code> for the first default port which exists (i.e. /dev/ttyACM0)
+     * @return the transport, <code>null</code> if the port does not exist
+     */
+    public static SerialTransport findPort(SerialTransportProvider current, String portName) {
+
+        LOG.info("findPort: " + (portName != null ? "use specific serial port configured by user: '" + portName + "'"
+                : "no special port defined. Try to find right port..."));
+
+        for (String port : current.getPortNames()) {
+
+            LOG.info("findPort: port found: {}", port);
+
+            if (portName != null) {
+                if (port.equals(portName)) {
+                    LOG.info("findPort: '{}' matches port to use. Use it!", port);
+                    return current.createTransport(port);
+                }
+            } else {
+                for (String defaultPortName : DEFAULT_PORT_NAMES) {
+                    if (port.equals(defaultPortName)) {
+                        LOG.info("findPort: '{}' matches with a default port. Use it!", port);
+                        return current.createTransport(port);
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return <code>true</code> if the port is listed by the transport or exists as device file (i.e. a link in
+     *         /dev/serial/by-id, which is not listed)
+     */
+    public static boolean isPortPresent(String portName) {
+        return isPortPresent(getProvider(), portName);
+    }
+
+    /**
+     * @return <code>true</code> if the port is listed by the given provider or exists as device file
+     */
+    public static boolean isPortPresent(SerialTransportProvider current, String portName) {
+        return Arrays.asList(current.getPortNames()).contains(portName) || new File(portName).exists();
+    }
+
+    private static SerialTransportProvider createDefaultProvider() {
+        SerialTransportProvider backend = createBackend();
+        String eventLoops = System.getProperty(EVENT_LOOPS_PROPERTY);
+        if (eventLoops == null || eventLoops.isEmpty()) {
+            return backend;
+        }
+        int loopCount = 0;
+        if (AUTO.equalsIgnoreCase(eventLoops)) {
+            loopCount = Runtime.getRuntime().availableProcessors();
+        } else {
+            try {
+                loopCount = Integer.parseInt(eventLoops);
+            } catch (NumberFormatException e) {
+                LOG.warn("invalid number of event loops '{}' -> use an event thread per port", eventLoops);
+            }
+        }
+        if (loopCount < 1) {
+            return backend;
+        }
+        LOG.info("serial ports are received by {} event loop(s)", loopCount);
+        return new EventLoopTransportProvider(backend, loopCount);
+    }
+
+    private static SerialTransportProvider createBackend() {
+        String backend = System.getProperty(PROPERTY, JSSC);
+        if (RXTX.equalsIgnoreCase(backend)) {
+            // the RXTX classes are only loaded if selected, the bundle imports them optionally
+            LOG.info("serial ports are accessed by RXTX");
+            return new RxtxSerialTransport.Provider();
+        }
+        if (!JSSC.equalsIgnoreCase(backend)) {
+            LOG.warn("unknown serial transport '{}' -> use {}", backend, JSSC);
+        }
+        return new JsscSerialTransport.Provider();
+    }
+}